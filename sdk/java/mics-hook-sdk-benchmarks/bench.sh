@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Usage:
+#   ./bench.sh baseline [jmh args...]   re-record baseline/jmh-baseline.json
+#   ./bench.sh compare  [jmh args...]   run into target/jmh-current.json and diff against the baseline
+# Extra args go straight to JMH (e.g. a benchmark regex such as HookSigner).
+
+module_dir="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+java_dir="$(cd "$module_dir/.." && pwd)"
+jar="$module_dir/target/benchmarks.jar"
+baseline="$module_dir/baseline/jmh-baseline.json"
+current="$module_dir/target/jmh-current.json"
+
+run() {
+  echo "==> $*"
+  "$@"
+}
+
+mode="${1:-compare}"
+shift || true
+
+(cd "$java_dir" && run mvn -B -q -pl mics-hook-sdk-benchmarks -am install -DskipTests)
+
+# Short iterations keep a full pass at a few minutes; -prof gc adds gc.alloc.rate.norm (B/op) to every result.
+jmh_args=(-wi 2 -i 3 -w 1 -r 1 -f 1 -prof gc -rf json)
+# BlockingHandler and TransportLoad are multi-threaded throughput scenarios (BlockingHandler needs JDK 21 for "virtual"); run them by name.
+if [[ $# -eq 0 ]]; then
+  jmh_args+=(-e 'BlockingHandler|TransportLoad')
+fi
+
+case "$mode" in
+  baseline)
+    mkdir -p "$(dirname "$baseline")"
+    run java -jar "$jar" "${jmh_args[@]}" -rff "$baseline" "$@"
+    ;;
+  compare)
+    run java -jar "$jar" "${jmh_args[@]}" -rff "$current" "$@"
+    run java -cp "$jar" com.mics.hooksdk.benchmarks.BaselineDiff "$baseline" "$current"
+    ;;
+  *)
+    echo "unknown mode: $mode (expected baseline or compare)" >&2
+    exit 1
+    ;;
+esac
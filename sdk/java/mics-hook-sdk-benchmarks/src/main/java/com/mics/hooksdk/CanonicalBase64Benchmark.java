@@ -0,0 +1,62 @@
+package com.mics.hooksdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// CanonicalBase64 is package-private, so this suite lives in the SDK package (plain classpath, no module split issues).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalBase64Benchmark {
+    private byte[] mac;
+    private String sign;
+    private byte[] signAscii;
+
+    @Setup
+    public void setup() {
+        mac = HmacSha256Key.of("bench-secret").sign("payload".getBytes(StandardCharsets.UTF_8));
+        sign = Base64.getEncoder().encodeToString(mac);
+        signAscii = sign.getBytes(StandardCharsets.US_ASCII);
+        if (!jdkDecodeAndCompare() || !matchesString() || !matchesBytes()) {
+            throw new IllegalStateException("encoding setup is broken");
+        }
+    }
+
+    // What verify did before the constant-time decoder: decode, re-encode for canonical form, compare.
+    @Benchmark
+    public boolean jdkDecodeAndCompare() {
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(sign);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return Base64.getEncoder().encodeToString(decoded).equals(sign) && MessageDigest.isEqual(mac, decoded);
+    }
+
+    @Benchmark
+    public boolean matchesString() {
+        return CanonicalBase64.matches(mac, sign);
+    }
+
+    @Benchmark
+    public boolean matchesBytes() {
+        return CanonicalBase64.matches(mac, signAscii, 0, signAscii.length);
+    }
+}
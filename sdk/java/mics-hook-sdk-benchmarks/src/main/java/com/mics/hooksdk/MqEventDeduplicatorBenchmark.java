@@ -0,0 +1,102 @@
+package com.mics.hooksdk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// MqEventDeduplicator with the default window and capacity (10 min, 1M ids) against a ConcurrentHashMap key set that
+// forgets the id checked WINDOW_IDS checks earlier. One in eight checks repeats an id from 64 checks before, like a
+// redelivered poll batch. The simulated clock advances 1 ms per check per thread, so generations rotate and a pass
+// over the id pool takes longer than the window.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqEventDeduplicatorBenchmark {
+    private static final int IDS = 1 << 20;
+    private static final int WINDOW_IDS = 600_000;
+    private static final int REPEAT_EVERY = 8;
+    private static final int REPEAT_DISTANCE = 64;
+
+    @Param({"1e-3", "1e-6"})
+    public double falsePositiveRate;
+
+    private String[] ids;
+    private String[] keys;
+    private MqEventDeduplicator dedup;
+    private Set<String> seen;
+    private volatile long now = 1_700_000_000_000L;
+
+    // Threads start an eighth of the pool apart, so contended runs check different ids.
+    @State(Scope.Thread)
+    public static class Cursor {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        int next = REPEAT_DISTANCE + THREADS.getAndIncrement() * (IDS / 8);
+    }
+
+    @Setup
+    public void setup() {
+        ids = new String[IDS];
+        keys = new String[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = UUID.randomUUID().toString();
+            keys[i] = "t1/" + ids[i];
+        }
+        dedup = new MqEventDeduplicator(MqEventDeduplicator.DEFAULT_WINDOW, MqEventDeduplicator.DEFAULT_MAXIMUM_IDS_PER_WINDOW,
+                falsePositiveRate, MqEventDeduplicator.DEFAULT_EXACT_RECENT_IDS, () -> now);
+        seen = ConcurrentHashMap.newKeySet();
+    }
+
+    @Benchmark
+    public boolean deduplicator(Cursor c) {
+        return dedup.isDuplicate("t1", ids[next(c)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean deduplicatorContended(Cursor c) {
+        return dedup.isDuplicate("t1", ids[next(c)]);
+    }
+
+    @Benchmark
+    public boolean concurrentHashSet(Cursor c) {
+        return checkSet(c);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean concurrentHashSetContended(Cursor c) {
+        return checkSet(c);
+    }
+
+    private boolean checkSet(Cursor c) {
+        int i = next(c);
+        seen.remove(keys[(i - WINDOW_IDS) & (IDS - 1)]);
+        // The key a consumer would build from (tenant_id, msg_id).
+        return !seen.add("t1/" + ids[i]);
+    }
+
+    private int next(Cursor c) {
+        int i = c.next++;
+        now++;
+        return (i % REPEAT_EVERY == 0 ? i - REPEAT_DISTANCE : i) & (IDS - 1);
+    }
+}
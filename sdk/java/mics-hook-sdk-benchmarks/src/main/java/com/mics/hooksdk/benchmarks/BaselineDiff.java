@@ -0,0 +1,308 @@
+package com.mics.hooksdk.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares two JMH `-rf json` result files (e.g. the checked-in baseline and a fresh run).
+// Usage: java -cp benchmarks.jar com.mics.hooksdk.benchmarks.BaselineDiff <baseline.json> <current.json> [thresholdPercent]
+// Exits with 2 when any score or gc.alloc.rate.norm regresses by more than the threshold (default 10%).
+public final class BaselineDiff {
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+    // Allocation deltas below this are profiler noise, not regressions.
+    private static final double ALLOC_SLACK_BYTES = 16;
+
+    private BaselineDiff() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineDiff <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(1);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, Result> baseline = load(Path.of(args[0]));
+        Map<String, Result> current = load(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf(Locale.ROOT, "%-72s %14s %14s %8s %12s %12s%n",
+                "benchmark", "baseline", "current", "delta", "B/op base", "B/op now");
+        for (Map.Entry<String, Result> e : current.entrySet()) {
+            Result now = e.getValue();
+            Result base = baseline.get(e.getKey());
+            if (base == null) {
+                System.out.printf(Locale.ROOT, "%-72s %14s %14s %8s %12s %12s%n",
+                        e.getKey(), "-", format(now.score, now.unit), "new", "-", format(now.allocNorm));
+                continue;
+            }
+            double delta = (now.score - base.score) / base.score * 100.0;
+            boolean slower = higherIsWorse(now.unit) ? delta > threshold : delta < -threshold;
+            boolean moreAlloc = !Double.isNaN(base.allocNorm) && !Double.isNaN(now.allocNorm)
+                    && now.allocNorm > base.allocNorm * (1 + threshold / 100.0) + ALLOC_SLACK_BYTES;
+            String mark = slower || moreAlloc ? "  <-- regression" : "";
+            if (!mark.isEmpty()) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-72s %14s %14s %+7.1f%% %12s %12s%s%n",
+                    e.getKey(), format(base.score, base.unit), format(now.score, now.unit), delta,
+                    format(base.allocNorm), format(now.allocNorm), mark);
+        }
+        // Filtered runs (e.g. `bench.sh compare HookSigner`) legitimately skip the rest of the baseline.
+        long notRun = baseline.keySet().stream().filter(k -> !current.containsKey(k)).count();
+        if (notRun > 0) {
+            System.out.println(notRun + " baseline benchmark(s) not in this run");
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) above " + threshold + "%");
+            System.exit(2);
+        }
+    }
+
+    private static boolean higherIsWorse(String unit) {
+        // Time per op (avgt/sample/ss) vs throughput (ops per time).
+        return !unit.startsWith("ops/");
+    }
+
+    private static String format(double score, String unit) {
+        return String.format(Locale.ROOT, "%.1f %s", score, unit);
+    }
+
+    private static String format(double bytes) {
+        return Double.isNaN(bytes) ? "-" : String.format(Locale.ROOT, "%.0f", bytes);
+    }
+
+    static Map<String, Result> load(Path file) throws IOException {
+        Object root = new JsonReader(Files.readString(file, StandardCharsets.UTF_8)).read();
+        if (!(root instanceof List)) {
+            throw new IOException(file + ": expected a JMH JSON result array");
+        }
+        Map<String, Result> out = new TreeMap<>();
+        for (Object item : (List<?>) root) {
+            Map<?, ?> run = (Map<?, ?>) item;
+            StringBuilder key = new StringBuilder(shortName((String) run.get("benchmark")));
+            Object params = run.get("params");
+            if (params instanceof Map) {
+                for (Map.Entry<?, ?> p : new TreeMap<>((Map<?, ?>) params).entrySet()) {
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+                }
+            }
+            Map<?, ?> primary = (Map<?, ?>) run.get("primaryMetric");
+            double allocNorm = Double.NaN;
+            Object secondary = run.get("secondaryMetrics");
+            if (secondary instanceof Map && ((Map<?, ?>) secondary).get(ALLOC_NORM) instanceof Map) {
+                allocNorm = toDouble(((Map<?, ?>) ((Map<?, ?>) secondary).get(ALLOC_NORM)).get("score"));
+            }
+            out.put(key.toString(), new Result(toDouble(primary.get("score")), (String) primary.get("scoreUnit"), allocNorm));
+        }
+        return out;
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        // JMH writes NaN / Infinity as quoted strings.
+        return value == null ? Double.NaN : Double.parseDouble(value.toString());
+    }
+
+    private static String shortName(String benchmark) {
+        int method = benchmark.lastIndexOf('.');
+        int cls = benchmark.lastIndexOf('.', method - 1);
+        return benchmark.substring(cls + 1);
+    }
+
+    static final class Result {
+        final double score;
+        final String unit;
+        final double allocNorm;
+
+        Result(double score, String unit, double allocNorm) {
+            this.score = score;
+            this.unit = unit;
+            this.allocNorm = allocNorm;
+        }
+    }
+
+    // Just enough JSON for JMH result files: objects, arrays, strings, numbers, true/false/null.
+    static final class JsonReader {
+        private final String s;
+        private int pos;
+
+        JsonReader(String s) {
+            this.s = s;
+        }
+
+        Object read() throws IOException {
+            Object value = value();
+            skipWhitespace();
+            if (pos != s.length()) {
+                throw error("trailing data");
+            }
+            return value;
+        }
+
+        private Object value() throws IOException {
+            skipWhitespace();
+            if (pos >= s.length()) {
+                throw error("unexpected end");
+            }
+            char c = s.charAt(pos);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() throws IOException {
+            Map<String, Object> out = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return out;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                out.put(name, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                    continue;
+                }
+                expect('}');
+                return out;
+            }
+        }
+
+        private List<Object> array() throws IOException {
+            List<Object> out = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return out;
+            }
+            while (true) {
+                out.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    pos++;
+                    continue;
+                }
+                expect(']');
+                return out;
+            }
+        }
+
+        private String string() throws IOException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= s.length()) {
+                    break;
+                }
+                char e = s.charAt(pos++);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > s.length()) {
+                            throw error("bad escape");
+                        }
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                        break;
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private Object number() throws IOException {
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String text = s.substring(start, pos);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw error("bad number '" + text + "'");
+            }
+        }
+
+        private Object literal(String word, Object value) throws IOException {
+            if (!s.startsWith(word, pos)) {
+                throw error("bad literal");
+            }
+            pos += word.length();
+            return value;
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private char peek() {
+            return pos < s.length() ? s.charAt(pos) : '\0';
+        }
+
+        private void skipWhitespace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException("json: " + message + " at offset " + pos);
+        }
+    }
+}
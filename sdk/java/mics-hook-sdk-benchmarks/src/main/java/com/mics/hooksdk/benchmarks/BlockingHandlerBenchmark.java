@@ -0,0 +1,120 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.http.MicsHookHandler;
+import com.mics.hooksdk.http.MicsHookHttpServer;
+import com.mics.hooksdk.http.MicsHookServerOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// 32 concurrent clients against a handler that blocks (think: a DB call) for handlerMillis per request.
+// "virtual" needs a Java 21+ JVM, e.g. -jvm /path/to/jdk21/bin/java.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(32)
+public class BlockingHandlerBenchmark {
+    @Param({"direct", "bounded", "virtual"})
+    public String executor;
+
+    @Param({"10"})
+    public int handlerMillis;
+
+    private MicsHookHttpServer server;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MicsHookServerOptions.Builder options = MicsHookServerOptions.builder(
+                tid -> Fixtures.TENANT_ID.equals(tid) ? Fixtures.SECRET : null);
+        switch (executor) {
+            case "direct":
+                options.direct();
+                break;
+            case "bounded":
+                options.boundedPool(MicsHookServerOptions.DEFAULT_POOL_THREADS);
+                break;
+            case "virtual":
+                options.virtualThreads();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown executor: " + executor);
+        }
+        server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), new SleepingHandler(handlerMillis), options.build());
+        server.start();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/auth"))
+                .header("Content-Type", "application/protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(Fixtures.signedAuth(HmacSha256Key.of(Fixtures.SECRET)).toByteArray()))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public int auth() throws IOException, InterruptedException {
+        HttpResponse<Void> resp = client.send(request, HttpResponse.BodyHandlers.discarding());
+        return resp.statusCode();
+    }
+
+    private static final class SleepingHandler implements MicsHookHandler {
+        private final int millis;
+
+        private SleepingHandler(int millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public AuthResponse onAuth(AuthRequest request) throws Exception {
+            Thread.sleep(millis);
+            return AuthResponse.newBuilder().setOk(true).setUserId("u1").build();
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) throws Exception {
+            Thread.sleep(millis);
+            return CheckMessageResponse.newBuilder().setAllow(true).build();
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) throws Exception {
+            Thread.sleep(millis);
+            return GetGroupMembersResponse.getDefaultInstance();
+        }
+    }
+}
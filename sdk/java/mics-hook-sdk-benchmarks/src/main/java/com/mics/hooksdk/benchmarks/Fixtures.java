@@ -0,0 +1,113 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.MessageRequest;
+import com.mics.contracts.message.v1.MessageType;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.HookSigner;
+import com.mics.hooksdk.MqEventSigner;
+
+import java.util.Random;
+
+final class Fixtures {
+    static final String TENANT_ID = "t1";
+    static final String SECRET = "bench-secret";
+
+    private Fixtures() {
+    }
+
+    static HookMeta metaNoSign(long seq) {
+        return HookMeta.newBuilder()
+                .setTenantId(TENANT_ID)
+                .setRequestId("rid-" + seq)
+                .setTimestampMs(1_700_000_000_000L + seq)
+                .setTraceId("trace-" + seq)
+                .build();
+    }
+
+    static MessageRequest message(int bodySize, MessageType type) {
+        byte[] body = new byte[bodySize];
+        new Random(bodySize).nextBytes(body);
+        MessageRequest.Builder b = MessageRequest.newBuilder()
+                .setTenantId(TENANT_ID)
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setMsgId("m-" + bodySize)
+                .setMsgType(type)
+                .setMsgBody(ByteString.copyFrom(body))
+                .setTimestampMs(1L);
+        if (type == MessageType.GROUP_CHAT) {
+            b.setGroupId("g1");
+        } else {
+            b.setToUserId("u2");
+        }
+        return b.build();
+    }
+
+    static CheckMessageRequest unsignedCheckMessage(int bodySize) {
+        return CheckMessageRequest.newBuilder()
+                .setMeta(metaNoSign(bodySize))
+                .setMessage(message(bodySize, MessageType.SINGLE_CHAT))
+                .build();
+    }
+
+    static CheckMessageRequest signedCheckMessage(HmacSha256Key key, int bodySize) {
+        CheckMessageRequest unsigned = unsignedCheckMessage(bodySize);
+        String sign = HookSigner.computeBase64(key, unsigned.getMeta(), unsigned);
+        return unsigned.toBuilder().setMeta(unsigned.getMeta().toBuilder().setSign(sign)).build();
+    }
+
+    static AuthRequest signedAuth(HmacSha256Key key) {
+        AuthRequest unsigned = AuthRequest.newBuilder()
+                .setMeta(metaNoSign(1))
+                .setToken("valid:u1")
+                .setDeviceId("d1")
+                .build();
+        String sign = HookSigner.computeBase64(key, unsigned.getMeta(), unsigned);
+        return unsigned.toBuilder().setMeta(unsigned.getMeta().toBuilder().setSign(sign)).build();
+    }
+
+    static GetGroupMembersRequest signedGetGroupMembers(HmacSha256Key key, String groupId) {
+        GetGroupMembersRequest unsigned = GetGroupMembersRequest.newBuilder()
+                .setMeta(metaNoSign(2))
+                .setGroupId(groupId)
+                .build();
+        String sign = HookSigner.computeBase64(key, unsigned.getMeta(), unsigned);
+        return unsigned.toBuilder().setMeta(unsigned.getMeta().toBuilder().setSign(sign)).build();
+    }
+
+    static GetOfflineMessagesRequest signedGetOfflineMessages(HmacSha256Key key) {
+        GetOfflineMessagesRequest unsigned = GetOfflineMessagesRequest.newBuilder()
+                .setMeta(metaNoSign(3))
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setMaxMessages(100)
+                .build();
+        String sign = HookSigner.computeBase64(key, unsigned.getMeta(), unsigned);
+        return unsigned.toBuilder().setMeta(unsigned.getMeta().toBuilder().setSign(sign)).build();
+    }
+
+    static MqEvent signedMqEvent(HmacSha256Key key, int bodySize) {
+        MessageRequest msg = message(bodySize, MessageType.GROUP_CHAT);
+        MqEvent unsigned = MqEvent.newBuilder()
+                .setTenantId(TENANT_ID)
+                .setEventType(EventType.GROUP_CHAT_MSG)
+                .setMsgId(msg.getMsgId())
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setGroupId("g1")
+                .setEventData(msg.toByteString())
+                .setTimestamp(2L)
+                .setNodeId("node-1")
+                .setTraceId("trace-1")
+                .build();
+        return unsigned.toBuilder().setSign(MqEventSigner.computeBase64(key, unsigned)).build();
+    }
+}
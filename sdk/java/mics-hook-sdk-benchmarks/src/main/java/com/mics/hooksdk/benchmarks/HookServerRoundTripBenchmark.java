@@ -0,0 +1,133 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.google.protobuf.AbstractMessageLite;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.http.MicsHookHandler;
+import com.mics.hooksdk.http.MicsHookHttpServer;
+import com.mics.hooksdk.http.MicsHookServerOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Loopback HTTP/1.1 round trip through the JDK client and MicsHookHttpServer; the handler does no work.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class HookServerRoundTripBenchmark {
+    @Param({"auth", "check-message", "get-group-members", "get-offline-messages"})
+    public String endpoint;
+
+    private MicsHookHttpServer server;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        HmacSha256Key key = HmacSha256Key.of(Fixtures.SECRET);
+        MicsHookServerOptions options = new MicsHookServerOptions(
+                tid -> Fixtures.TENANT_ID.equals(tid) ? Fixtures.SECRET : null, true);
+        server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), new NoopHandler(), options);
+        server.start();
+
+        AbstractMessageLite<?, ?> body;
+        switch (endpoint) {
+            case "auth":
+                body = Fixtures.signedAuth(key);
+                break;
+            case "check-message":
+                body = Fixtures.signedCheckMessage(key, 256);
+                break;
+            case "get-group-members":
+                body = Fixtures.signedGetGroupMembers(key, "g1");
+                break;
+            case "get-offline-messages":
+                body = Fixtures.signedGetOfflineMessages(key);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown endpoint: " + endpoint);
+        }
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/" + endpoint))
+                .header("Content-Type", "application/protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+
+        if (roundTrip().length == 0) {
+            throw new IllegalStateException("empty response from " + endpoint);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws IOException, InterruptedException {
+        HttpResponse<byte[]> resp = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (resp.statusCode() != 200) {
+            throw new IllegalStateException(endpoint + " returned " + resp.statusCode());
+        }
+        return resp.body();
+    }
+
+    private static final class NoopHandler implements MicsHookHandler {
+        private static final AuthResponse AUTH = AuthResponse.newBuilder().setOk(true).setUserId("u1").setDeviceId("d1").build();
+        private static final CheckMessageResponse CHECK = CheckMessageResponse.newBuilder().setAllow(true).build();
+        private static final GetGroupMembersResponse MEMBERS = GetGroupMembersResponse.newBuilder()
+                .addAllUserIds(List.of("u1", "u2", "u3", "u4")).build();
+        private static final GetOfflineMessagesResponse OFFLINE = GetOfflineMessagesResponse.newBuilder().setOk(true).build();
+
+        @Override
+        public AuthResponse onAuth(AuthRequest request) {
+            return AUTH;
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+            return CHECK;
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+            return MEMBERS;
+        }
+
+        @Override
+        public GetOfflineMessagesResponse onGetOfflineMessages(GetOfflineMessagesRequest request) {
+            return OFFLINE;
+        }
+    }
+}
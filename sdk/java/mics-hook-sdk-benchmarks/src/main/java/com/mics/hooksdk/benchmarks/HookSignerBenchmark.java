@@ -0,0 +1,67 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.HookSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookSignerBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private HmacSha256Key key;
+    private HookMeta signedMeta;
+    private CheckMessageRequest payloadForSign;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        key = HmacSha256Key.of(Fixtures.SECRET);
+        CheckMessageRequest signed = Fixtures.signedCheckMessage(key, bodySize);
+        signedMeta = signed.getMeta();
+        payloadForSign = Fixtures.unsignedCheckMessage(bodySize);
+        body = signed.toByteArray();
+        if (!verifyMessage() || !verifySecretString() || !verifyRequestBytes()) {
+            throw new IllegalStateException("signature setup is broken");
+        }
+    }
+
+    @Benchmark
+    public String computeBase64() {
+        return HookSigner.computeBase64(key, payloadForSign.getMeta(), payloadForSign);
+    }
+
+    @Benchmark
+    public boolean verifyMessage() {
+        return HookSigner.verify(key, signedMeta, payloadForSign, true);
+    }
+
+    @Benchmark
+    public boolean verifySecretString() {
+        return HookSigner.verify(Fixtures.SECRET, signedMeta, payloadForSign, true);
+    }
+
+    @Benchmark
+    public boolean verifyRequestBytes() {
+        return HookSigner.verify(key, body, true);
+    }
+}
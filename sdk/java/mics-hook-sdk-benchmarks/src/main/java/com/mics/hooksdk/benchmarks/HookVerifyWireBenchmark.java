@@ -0,0 +1,82 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.contracts.message.v1.MessageRequest;
+import com.mics.contracts.message.v1.MessageType;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.HookSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookVerifyWireBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private HmacSha256Key key;
+    private CheckMessageRequest parsed;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws Exception {
+        key = HmacSha256Key.of("secret");
+
+        HookMeta metaNoSign = HookMeta.newBuilder()
+                .setTenantId("t1")
+                .setRequestId("rid-0001")
+                .setTimestampMs(1_700_000_000_000L)
+                .setTraceId("trace-0001")
+                .build();
+        MessageRequest msg = MessageRequest.newBuilder()
+                .setTenantId("t1")
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setMsgId("m1")
+                .setMsgType(MessageType.SINGLE_CHAT)
+                .setToUserId("u2")
+                .setMsgBody(ByteString.copyFrom(new byte[bodySize]))
+                .setTimestampMs(1L)
+                .build();
+        CheckMessageRequest unsigned = CheckMessageRequest.newBuilder()
+                .setMeta(metaNoSign)
+                .setMessage(msg)
+                .build();
+
+        String sign = HookSigner.computeBase64(key, metaNoSign, unsigned);
+        body = unsigned.toBuilder().setMeta(metaNoSign.toBuilder().setSign(sign)).build().toByteArray();
+        parsed = CheckMessageRequest.parseFrom(body);
+        if (!legacyClearMetaSign() || !wireBytes()) {
+            throw new IllegalStateException("signature setup is broken");
+        }
+    }
+
+    @Benchmark
+    public boolean legacyClearMetaSign() {
+        HookMeta cleared = parsed.getMeta().toBuilder().clearSign().build();
+        CheckMessageRequest payloadForSign = parsed.toBuilder().setMeta(cleared).build();
+        return HookSigner.verify(key, parsed.getMeta(), payloadForSign, true);
+    }
+
+    @Benchmark
+    public boolean wireBytes() {
+        return HookSigner.verify(key, body, true);
+    }
+}
@@ -0,0 +1,104 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.MessageRequest;
+import com.mics.contracts.message.v1.MessageType;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.MqEventRouter;
+import com.mics.hooksdk.MqEventSigner;
+import com.mics.hooksdk.TenantKeys;
+import com.mics.mqconsumer.MicsMqConsumer;
+import com.mics.mqconsumer.MqRingSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Signed single chat events from 64 users pushed through MicsMqConsumer from an in-memory MqRingSource: poll,
+// dispatch to workers, HMAC verification, parse and MqEventRouter dispatch, commit. No broker involved, so the
+// number is the consumer's own cost per event.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(MqConsumerPipelineBenchmark.BATCH)
+public class MqConsumerPipelineBenchmark {
+    static final int BATCH = 10_000;
+    private static final int USERS = 64;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private final LongAdder routed = new LongAdder();
+    private byte[][] records;
+    private MqRingSource source;
+    private MicsMqConsumer consumer;
+
+    @Setup
+    public void setup() {
+        records = new byte[USERS][];
+        for (int i = 0; i < USERS; i++) {
+            MessageRequest msg = Fixtures.message(256, MessageType.SINGLE_CHAT).toBuilder().setUserId("u" + i).build();
+            MqEvent evt = MqEvent.newBuilder()
+                    .setTenantId(Fixtures.TENANT_ID)
+                    .setEventType(EventType.SINGLE_CHAT_MSG)
+                    .setUserId(msg.getUserId())
+                    .setMsgId(msg.getMsgId())
+                    .setEventData(msg.toByteString())
+                    .build();
+            records[i] = evt.toBuilder().setSign(MqEventSigner.computeBase64(Fixtures.SECRET, evt)).build().toByteArray();
+        }
+        MqEventRouter router = MqEventRouter.builder()
+                .onMessage((evt, msg) -> routed.increment())
+                .build();
+        TenantKeys keys = TenantKeys.of(HmacSha256Key.of(Fixtures.SECRET));
+        source = new MqRingSource("im-mics-" + Fixtures.TENANT_ID + "-event", 4, 1 << 14);
+        consumer = MicsMqConsumer.builder(source, (evt, record) -> router.route(evt))
+                .secretResolver(tenantId -> keys)
+                .workers(workers)
+                .maxPendingPerPartition(1 << 14)
+                .commitInterval(Duration.ofMillis(10))
+                .pollTimeout(Duration.ofMillis(10))
+                .build();
+        consumer.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        consumer.close();
+        if (consumer.getInvalidCount() != 0 || routed.sum() != consumer.getHandledCount()) {
+            throw new IllegalStateException("events were rejected or not routed");
+        }
+    }
+
+    @Benchmark
+    public long pipeline() {
+        long target = consumer.getHandledCount() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            byte[] record = records[i % USERS];
+            while (!source.offer(record)) {
+                Thread.yield();
+            }
+        }
+        while (consumer.getHandledCount() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,88 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.MqEventBatch;
+import com.mics.hooksdk.MqEventDecoder;
+import com.mics.hooksdk.TenantKeys;
+import com.mics.hooksdk.TenantSecretResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// One poll batch of signed 256B group messages from a single tenant's topic, per-record API vs batch API.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqEventBatchDecoderBenchmark {
+    @Param({"100", "500"})
+    public int batchSize;
+
+    private HmacSha256Key key;
+    private TenantSecretResolver resolver;
+    private List<byte[]> records;
+
+    @Setup
+    public void setup() {
+        key = HmacSha256Key.of(Fixtures.SECRET);
+        TenantKeys keys = TenantKeys.of(key);
+        resolver = tenantId -> keys;
+        records = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            records.add(Fixtures.signedMqEvent(key, 256).toByteArray());
+        }
+        if (perRecordSecret() != batchSize || perRecordKey() != batchSize || batch().getFailureCount() != 0
+                || batchForkJoin().getFailureCount() != 0) {
+            throw new IllegalStateException("signature setup is broken");
+        }
+    }
+
+    // What a poll loop does today: tenant secret string, one Optional per record.
+    @Benchmark
+    public int perRecordSecret() {
+        int ok = 0;
+        for (byte[] r : records) {
+            if (MqEventDecoder.tryVerifyAndDecodeMessage(Fixtures.SECRET, r, true).isPresent()) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    @Benchmark
+    public int perRecordKey() {
+        int ok = 0;
+        for (byte[] r : records) {
+            if (MqEventDecoder.tryVerifyAndDecodeMessage(key, r, true).isPresent()) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    @Benchmark
+    public MqEventBatch batch() {
+        return MqEventDecoder.verifyAndDecodeBatch(resolver, records, true);
+    }
+
+    // Only faster than batch() with more than one core to split over.
+    @Benchmark
+    public MqEventBatch batchForkJoin() {
+        return MqEventDecoder.verifyAndDecodeBatch(resolver, records, true, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,59 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.MessageRequest;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.MqEventDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqEventDecoderBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private HmacSha256Key key;
+    private byte[] record;
+
+    @Setup
+    public void setup() {
+        key = HmacSha256Key.of(Fixtures.SECRET);
+        record = Fixtures.signedMqEvent(key, bodySize).toByteArray();
+        if (parseThenVerifyAndDecode().isEmpty() || verifyAndDecodeRecordBytes().isEmpty()) {
+            throw new IllegalStateException("signature setup is broken");
+        }
+    }
+
+    @Benchmark
+    public Optional<MessageRequest> parseThenVerifyAndDecode() {
+        MqEvent evt;
+        try {
+            evt = MqEvent.parseFrom(record);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+        return MqEventDecoder.tryVerifyAndDecodeMessage(Fixtures.SECRET, evt, true);
+    }
+
+    @Benchmark
+    public Optional<MessageRequest> verifyAndDecodeRecordBytes() {
+        return MqEventDecoder.tryVerifyAndDecodeMessage(key, record, true);
+    }
+}
@@ -0,0 +1,88 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageType;
+import com.mics.hooksdk.MqEventDecoder;
+import com.mics.hooksdk.MqEventRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Dispatch of 100 parsed events (a quarter each online, offline, single chat, group chat) to a handler per payload
+// type: the tryDecodeConnectAck / tryDecodeMessage chain of samples/kafka-consumer vs MqEventRouter. Results are per
+// event.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(MqEventRouterBenchmark.BATCH)
+public class MqEventRouterBenchmark {
+    static final int BATCH = 100;
+
+    private MqEvent[] events;
+    private MqEventRouter router;
+    private Blackhole sink;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        sink = bh;
+        ConnectAck ack = ConnectAck.newBuilder().setTenantId(Fixtures.TENANT_ID).setUserId("u1").setDeviceId("d1").build();
+        events = new MqEvent[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            MqEvent.Builder b = MqEvent.newBuilder().setTenantId(Fixtures.TENANT_ID).setUserId("u1").setTraceId("trace-" + i);
+            switch (i % 4) {
+                case 0:
+                    b.setEventType(EventType.CONNECT_ONLINE).setEventData(ack.toByteString());
+                    break;
+                case 1:
+                    b.setEventType(EventType.CONNECT_OFFLINE).setEventData(ack.toByteString());
+                    break;
+                case 2:
+                    b.setEventType(EventType.SINGLE_CHAT_MSG).setEventData(Fixtures.message(64, MessageType.SINGLE_CHAT).toByteString());
+                    break;
+                default:
+                    b.setEventType(EventType.GROUP_CHAT_MSG).setEventData(Fixtures.message(64, MessageType.GROUP_CHAT).toByteString());
+                    break;
+            }
+            events[i] = b.build();
+        }
+        router = MqEventRouter.builder()
+                .onConnectAck((evt, a) -> sink.consume(a.getDeviceId()))
+                .onMessage((evt, msg) -> sink.consume(msg.getMsgId()))
+                .fallback((evt, reason) -> sink.consume(reason))
+                .build();
+    }
+
+    @Benchmark
+    public void decoderChain() {
+        for (MqEvent evt : events) {
+            MqEventDecoder.tryDecodeConnectAck(evt).ifPresentOrElse(
+                    a -> sink.consume(a.getDeviceId()),
+                    () -> MqEventDecoder.tryDecodeMessage(evt).ifPresentOrElse(
+                            msg -> sink.consume(msg.getMsgId()),
+                            () -> sink.consume(evt)));
+        }
+    }
+
+    @Benchmark
+    public void router() {
+        for (MqEvent evt : events) {
+            router.route(evt);
+        }
+    }
+}
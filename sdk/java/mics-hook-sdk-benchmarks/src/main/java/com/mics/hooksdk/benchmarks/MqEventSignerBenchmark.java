@@ -0,0 +1,58 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.MqEventSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqEventSignerBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private HmacSha256Key key;
+    private MqEvent evt;
+    private byte[] record;
+
+    @Setup
+    public void setup() {
+        key = HmacSha256Key.of(Fixtures.SECRET);
+        evt = Fixtures.signedMqEvent(key, bodySize);
+        record = evt.toByteArray();
+        if (!verifyEvent() || !verifySecretString() || !verifyRecordBytes()) {
+            throw new IllegalStateException("signature setup is broken");
+        }
+    }
+
+    @Benchmark
+    public boolean verifyEvent() {
+        return MqEventSigner.verify(key, evt, true);
+    }
+
+    @Benchmark
+    public boolean verifySecretString() {
+        return MqEventSigner.verify(Fixtures.SECRET, evt, true);
+    }
+
+    @Benchmark
+    public boolean verifyRecordBytes() {
+        return MqEventSigner.verify(key, record, true);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.MqEventView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Picks the GROUP_CHAT_MSG events of one group out of a batch of 100 mixed events; results are per event.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(MqEventViewBenchmark.BATCH)
+public class MqEventViewBenchmark {
+    static final int BATCH = 100;
+
+    @Param({"64", "1024"})
+    public int bodySize;
+
+    private final MqEventView view = new MqEventView();
+    private byte[][] records;
+
+    @Setup
+    public void setup() {
+        HmacSha256Key key = HmacSha256Key.of(Fixtures.SECRET);
+        MqEvent template = Fixtures.signedMqEvent(key, bodySize);
+        records = new byte[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            records[i] = template.toBuilder()
+                    .setEventType(i % 2 == 0 ? EventType.GROUP_CHAT_MSG : EventType.SINGLE_CHAT_MSG)
+                    .setGroupId("g" + (i % 4))
+                    .build()
+                    .toByteArray();
+        }
+        if (parseAndFilter() != BATCH / 4 || viewAndFilter() != BATCH / 4) {
+            throw new IllegalStateException("filter setup is broken");
+        }
+    }
+
+    @Benchmark
+    public int parseAndFilter() {
+        int matched = 0;
+        for (byte[] r : records) {
+            MqEvent evt;
+            try {
+                evt = MqEvent.parseFrom(r);
+            } catch (InvalidProtocolBufferException e) {
+                continue;
+            }
+            if (evt.getEventType() == EventType.GROUP_CHAT_MSG && evt.getGroupId().equals("g2")) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int viewAndFilter() {
+        int matched = 0;
+        for (byte[] r : records) {
+            if (view.wrap(r).isValid() && view.eventType() == EventType.GROUP_CHAT_MSG_VALUE && view.groupIdEquals("g2")) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
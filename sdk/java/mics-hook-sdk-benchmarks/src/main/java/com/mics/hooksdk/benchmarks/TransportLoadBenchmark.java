@@ -0,0 +1,195 @@
+package com.mics.hooksdk.benchmarks;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.http.MicsHookHandler;
+import com.mics.hooksdk.http.MicsHookHttpServer;
+import com.mics.hooksdk.http.MicsHookServerOptions;
+import com.mics.hooksdk.http.MicsHookTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// 16 concurrent clients hammering /check-message with a no-op handler: transport overhead only.
+// keepAlive/pipelined use a raw keep-alive socket per client thread so the client costs little;
+// httpClient uses the JDK client (HTTP/2 over h2c upgrade where the server supports it, HTTP/1.1 otherwise).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(16)
+public class TransportLoadBenchmark {
+    private static final int PIPELINE_DEPTH = 8;
+
+    @Param({"jdk", "nio"})
+    public String transport;
+
+    // Size of the message body inside the /check-message request.
+    @Param({"256"})
+    public int messageBytes;
+
+    private MicsHookHttpServer server;
+    private int port;
+    private byte[] rawRequest;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(
+                        tid -> Fixtures.TENANT_ID.equals(tid) ? Fixtures.SECRET : null)
+                .transport("nio".equals(transport) ? MicsHookTransport.NIO : MicsHookTransport.JDK_HTTP_SERVER)
+                .direct()
+                .build();
+        server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), new NoopHandler(), options);
+        server.start();
+        port = server.getAddress().getPort();
+
+        byte[] body = Fixtures.signedCheckMessage(HmacSha256Key.of(Fixtures.SECRET), messageBytes).toByteArray();
+        byte[] head = ("POST /check-message HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Type: application/protobuf\r\nContent-Length: "
+                + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        rawRequest = new byte[head.length + body.length];
+        System.arraycopy(head, 0, rawRequest, 0, head.length);
+        System.arraycopy(body, 0, rawRequest, head.length, body.length);
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://127.0.0.1:" + port + "/check-message"))
+                .header("Content-Type", "application/protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        Socket socket;
+        OutputStream out;
+        InputStream in;
+        byte[] batch;
+
+        @Setup(Level.Trial)
+        public void open(TransportLoadBenchmark bench) throws IOException {
+            socket = new Socket("127.0.0.1", bench.port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            batch = new byte[bench.rawRequest.length * PIPELINE_DEPTH];
+            for (int i = 0; i < PIPELINE_DEPTH; i++) {
+                System.arraycopy(bench.rawRequest, 0, batch, i * bench.rawRequest.length, bench.rawRequest.length);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public int keepAlive(Connection c) throws IOException {
+        c.out.write(rawRequest);
+        return readResponse(c.in);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int pipelined(Connection c) throws IOException {
+        c.out.write(c.batch);
+        int n = 0;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            n += readResponse(c.in);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int httpClient() throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // Reads one response head, then skips Content-Length bytes of body; returns the body length.
+    private static int readResponse(InputStream in) throws IOException {
+        int contentLength = -1;
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            if (b != '\n') {
+                line.append((char) b);
+                continue;
+            }
+            int len = line.length();
+            if (len <= 1) {
+                break;
+            }
+            String header = line.toString();
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15, len - 1).trim());
+            }
+            line.setLength(0);
+        }
+        if (contentLength < 0) {
+            throw new IOException("response without Content-Length");
+        }
+        in.skipNBytes(contentLength);
+        return contentLength;
+    }
+
+    private static final class NoopHandler implements MicsHookHandler {
+        private static final CheckMessageResponse CHECK = CheckMessageResponse.newBuilder().setAllow(true).build();
+
+        @Override
+        public AuthResponse onAuth(AuthRequest request) {
+            return AuthResponse.newBuilder().setOk(true).build();
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+            return CHECK;
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+            return GetGroupMembersResponse.getDefaultInstance();
+        }
+    }
+}
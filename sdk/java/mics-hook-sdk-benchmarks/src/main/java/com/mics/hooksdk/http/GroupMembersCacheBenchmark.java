@@ -0,0 +1,56 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Response body for /get-group-members: attach meta and serialize the handler's response (what every miss does)
+// vs a cache hit (lookup + meta bytes + cached user_ids bytes). The handler's own cost is not included.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupMembersCacheBenchmark {
+    @Param({"10", "1000"})
+    public int members;
+
+    private GetGroupMembersResponse response;
+    private HookMeta meta;
+    private MicsGroupMembersCache cache;
+
+    @Setup
+    public void setup() {
+        GetGroupMembersResponse.Builder b = GetGroupMembersResponse.newBuilder();
+        for (int i = 0; i < members; i++) {
+            b.addUserIds("user-" + (100_000 + i));
+        }
+        response = b.build();
+        meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid-1").setTimestampMs(1L).setTraceId("tr").build();
+        cache = MicsGroupMembersCache.builder().build();
+        cache.put("t1", "g1", cache.beginLoad(), response);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() {
+        return response.toBuilder().setMeta(meta).build().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cachedHit() {
+        return MicsGroupMembersCache.withMeta(meta, cache.get("t1", "g1"));
+    }
+}
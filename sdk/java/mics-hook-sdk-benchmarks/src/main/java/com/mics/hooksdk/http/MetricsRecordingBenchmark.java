@@ -0,0 +1,65 @@
+package com.mics.hooksdk.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Everything HookDispatcher records for one successful request: series lookup, in-flight inc/dec,
+// parse/verify/handler timings, request/response sizes and the outcome counter (excluding nanoTime calls).
+// MicsHookMetrics.Series is package-private, so this suite lives in the SDK package.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsRecordingBenchmark {
+    private MicsHookMetrics metrics;
+
+    @Setup
+    public void setup() {
+        metrics = new MicsHookMetrics(true);
+        for (int i = 0; i < 100; i++) {
+            metrics.series(MicsHookEndpoint.CHECK_MESSAGE, "t" + i);
+        }
+    }
+
+    @Benchmark
+    public MicsHookMetrics.Series recordRequest() {
+        return record();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MicsHookMetrics.Series recordRequestContended() {
+        return record();
+    }
+
+    @Benchmark
+    public String scrape100Tenants() {
+        return metrics.scrape();
+    }
+
+    private MicsHookMetrics.Series record() {
+        MicsHookMetrics.Series s = metrics.series(MicsHookEndpoint.CHECK_MESSAGE, "t7");
+        s.parseNanos.record(2_300);
+        s.verifyNanos.record(1_100);
+        s.requestBytes.record(1_024);
+        s.inFlight.increment();
+        s.handlerNanos.record(45_000);
+        s.count(MicsHookMetrics.Outcome.OK);
+        s.inFlight.decrement();
+        s.responseBytes.record(48);
+        return s;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mics.hooksdk.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// MicsReplayGuard.check for unique UUID request ids on a simulated clock that advances 1 ms every 50 checks per
+// thread (50k requests/s per thread), so buckets fill and rotate as they would in production regardless of how fast
+// the benchmark runs. The sizing matches the defaults (30s skew, 4M entries).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayGuardBenchmark {
+    private static final int IDS = 1 << 19;
+    private static final int CHECKS_PER_MILLI = 50;
+
+    private String[] ids;
+    private MicsReplayGuard guard;
+    private volatile long now = 1_700_000_000_000L;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        ids = new String[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+        guard = new MicsReplayGuard(MicsReplayGuard.DEFAULT_MAX_SKEW, MicsReplayGuard.DEFAULT_MAXIMUM_ENTRIES,
+                MicsReplayGuard.DEFAULT_SHARDS, () -> now);
+    }
+
+    @Benchmark
+    public Object check(Cursor c) {
+        return checkNext(c);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object checkContended(Cursor c) {
+        return checkNext(c);
+    }
+
+    private MicsReplayGuard.Result checkNext(Cursor c) {
+        int i = c.next++;
+        long t = now;
+        if (i % CHECKS_PER_MILLI == 0) {
+            now = ++t;
+        }
+        return guard.check("t1", ids[i & (IDS - 1)], t);
+    }
+}
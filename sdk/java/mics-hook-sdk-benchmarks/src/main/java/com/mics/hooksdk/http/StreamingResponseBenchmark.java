@@ -0,0 +1,100 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.Message;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// /get-group-members response encoding into a discarding transport stream: build the response message and serialize
+// it (onGetGroupMembers) vs stream user_ids through the sink (streamGroupMembers). Watch gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingResponseBenchmark {
+    @Param({"1000", "50000"})
+    public int members;
+
+    private String[] userIds;
+    private HookMeta meta;
+    private final DiscardResponder responder = new DiscardResponder();
+
+    @Setup
+    public void setup() {
+        userIds = new String[members];
+        for (int i = 0; i < members; i++) {
+            userIds[i] = "user-" + (100_000 + i);
+        }
+        meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid-1").setTimestampMs(1L).setTraceId("tr").build();
+    }
+
+    @Benchmark
+    public long buffered() {
+        GetGroupMembersResponse.Builder b = GetGroupMembersResponse.newBuilder().setMeta(meta);
+        for (String id : userIds) {
+            b.addUserIds(id);
+        }
+        responder.protobuf(b.build().toByteArray());
+        return responder.bytes;
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        StreamingResponseWriter writer = new StreamingResponseWriter(responder, meta);
+        MicsHookResponseSink<String> sink = writer.userIds();
+        for (String id : userIds) {
+            sink.add(id);
+        }
+        writer.finish();
+        return responder.bytes;
+    }
+
+    private static final class DiscardResponder extends OutputStream implements HookDispatcher.Responder {
+        long bytes;
+
+        @Override
+        public void protobuf(Message response) {
+            bytes += response.getSerializedSize();
+        }
+
+        @Override
+        public void protobuf(byte[] serialized) {
+            bytes += serialized.length;
+        }
+
+        @Override
+        public void text(int statusCode, String text) {
+        }
+
+        @Override
+        public OutputStream stream() {
+            return this;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.mics.hooksdk;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Keeps TenantKeys (pre-keyed HMAC state, no per-request secret encoding) for tenants served by a TenantSecretLoader
+// so the request path never waits on the secret store once a tenant is warm:
+// - refresh-ahead: an entry older than refreshAfter is still served while one reload runs on the refresh executor;
+// - only entries older than expireAfter (or misses) load synchronously, one loader call per tenant at a time;
+// - a failed load keeps serving the previous keys and leaves them due for another background refresh;
+// - unknown tenants are remembered for negativeExpireAfter;
+// - preload() fills the cache from TenantSecretLoader.loadAll() before traffic arrives.
+// A loader returning two secrets puts the tenant in rotation: both are accepted, the first one is tried first.
+public final class CachingTenantSecretResolver implements TenantSecretResolver {
+    public static final Duration DEFAULT_REFRESH_AFTER = Duration.ofMinutes(1);
+    public static final Duration DEFAULT_EXPIRE_AFTER = Duration.ofMinutes(10);
+    public static final Duration DEFAULT_NEGATIVE_EXPIRE_AFTER = Duration.ofSeconds(10);
+    public static final int DEFAULT_MAX_TENANTS = TenantHmacCache.DEFAULT_MAX_TENANTS;
+
+    private final TenantSecretLoader loader;
+    private final long refreshAfterNanos;
+    private final long expireAfterNanos;
+    private final long negativeExpireAfterNanos;
+    private final int maxTenants;
+    private final Executor refreshExecutor;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    // Bumped by invalidate*; a preload() that started before is not installed. Loads are fenced per tenant instead
+    // (see install), so invalidating one tenant never drops another tenant's refresh.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private CachingTenantSecretResolver(Builder b) {
+        this(b.loader, b.refreshAfter, b.expireAfter, b.negativeExpireAfter, b.maxTenants,
+                b.refreshExecutor != null ? b.refreshExecutor : defaultRefreshExecutor(), System::nanoTime);
+    }
+
+    CachingTenantSecretResolver(TenantSecretLoader loader, Duration refreshAfter, Duration expireAfter, Duration negativeExpireAfter,
+                                int maxTenants, Executor refreshExecutor, LongSupplier nanoClock) {
+        this.loader = loader;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.expireAfterNanos = expireAfter.toNanos();
+        this.negativeExpireAfterNanos = negativeExpireAfter.toNanos();
+        this.maxTenants = maxTenants;
+        this.refreshExecutor = refreshExecutor;
+        this.nanoClock = nanoClock;
+    }
+
+    public static Builder builder(TenantSecretLoader loader) {
+        return new Builder(loader);
+    }
+
+    @Override
+    public TenantKeys resolve(String tenantId) {
+        Objects.requireNonNull(tenantId, "tenantId");
+        Entry e = entries.get(tenantId);
+        if (e != null) {
+            long age = nanoClock.getAsLong() - e.loadedAt;
+            if (e.keys == null) {
+                if (age < negativeExpireAfterNanos) {
+                    return null;
+                }
+            } else if (age < expireAfterNanos) {
+                if (!e.referenced) {
+                    e.referenced = true;
+                }
+                if (age >= refreshAfterNanos && e.refreshing.compareAndSet(false, true)) {
+                    refreshAsync(tenantId, e);
+                }
+                return e.keys;
+            }
+        }
+        return loadSync(tenantId, e).keys;
+    }
+
+    // Loads every tenant returned by TenantSecretLoader.loadAll(); returns how many were installed.
+    public int preload() throws Exception {
+        long gen = generation.get();
+        Map<String, List<String>> all = loader.loadAll();
+        int n = 0;
+        for (Map.Entry<String, List<String>> e : all.entrySet()) {
+            if (installPreloaded(e.getKey(), new Entry(TenantKeys.ofSecrets(e.getValue()), nanoClock.getAsLong()), gen)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public void invalidate(String tenantId) {
+        generation.incrementAndGet();
+        // Dropping the future first fences the in-flight miss; waiters still get its answer.
+        loading.remove(tenantId);
+        entries.remove(tenantId);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        loading.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Loader calls that were waited for on the request path (misses and expired entries).
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    // Background reloads started by refresh-ahead.
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    private Entry loadSync(String tenantId, Entry stale) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> inFlight = loading.putIfAbsent(tenantId, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("failed to load secrets for tenant " + tenantId, cause);
+            }
+        }
+        try {
+            loads.increment();
+            Entry fresh = load(tenantId, stale, mine);
+            mine.complete(fresh);
+            return fresh;
+        } catch (Throwable ex) {
+            // Errors too, or callers joined on this load would wait forever.
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(tenantId, mine);
+        }
+    }
+
+    private void refreshAsync(String tenantId, Entry current) {
+        refreshes.increment();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(tenantId, current, null);
+                } catch (RuntimeException ignored) {
+                    // Counted in load(); without a previous value there is nothing to refresh.
+                } finally {
+                    // Installed or not, the next stale read may try again; a replaced entry is no longer served anyway.
+                    current.refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException rejected) {
+            current.refreshing.set(false);
+        }
+    }
+
+    private Entry load(String tenantId, Entry previous, CompletableFuture<Entry> fence) {
+        Entry fresh;
+        try {
+            fresh = new Entry(TenantKeys.ofSecrets(loader.load(tenantId)), nanoClock.getAsLong());
+        } catch (Exception ex) {
+            failures.increment();
+            if (previous == null || previous.keys == null) {
+                throw new IllegalStateException("failed to load secrets for tenant " + tenantId, ex);
+            }
+            // Serve what we had; the backdated copy is due for refresh immediately but expires only after
+            // another expireAfter - refreshAfter.
+            Entry retained = new Entry(previous.keys, nanoClock.getAsLong() - refreshAfterNanos);
+            install(tenantId, previous, retained, fence);
+            return retained;
+        }
+        install(tenantId, previous, fresh, fence);
+        return fresh;
+    }
+
+    // The entry a load started from is its fence: invalidate() removes it, so the replace fails. A miss has no entry,
+    // so it is fenced by its loading future instead, which invalidate() removes under the same bin lock.
+    private boolean install(String tenantId, Entry previous, Entry fresh, CompletableFuture<Entry> fence) {
+        boolean installed;
+        if (previous != null) {
+            installed = entries.replace(tenantId, previous, fresh);
+        } else {
+            boolean[] put = new boolean[1];
+            loading.computeIfPresent(tenantId, (k, f) -> {
+                if (f == fence) {
+                    entries.put(k, fresh);
+                    put[0] = true;
+                }
+                return f;
+            });
+            installed = put[0];
+        }
+        if (installed && entries.size() > maxTenants) {
+            evictOne();
+        }
+        return installed;
+    }
+
+    private boolean installPreloaded(String tenantId, Entry fresh, long gen) {
+        if (generation.get() != gen) {
+            return false;
+        }
+        entries.put(tenantId, fresh);
+        if (entries.size() > maxTenants) {
+            evictOne();
+        }
+        return true;
+    }
+
+    private void evictOne() {
+        // CLOCK-style second chance, as in TenantHmacCache; negative entries are never marked and go first.
+        int budget = entries.size() * 2;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (budget-- > 0) {
+            if (!it.hasNext()) {
+                it = entries.entrySet().iterator();
+                if (!it.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<String, Entry> candidate = it.next();
+            Entry e = candidate.getValue();
+            if (e.referenced) {
+                e.referenced = false;
+                continue;
+            }
+            if (entries.remove(candidate.getKey(), e)) {
+                return;
+            }
+        }
+    }
+
+    private static Executor defaultRefreshExecutor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "mics-secret-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static final class Entry {
+        private final TenantKeys keys;
+        private final long loadedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile boolean referenced;
+
+        private Entry(TenantKeys keys, long loadedAt) {
+            this.keys = keys;
+            this.loadedAt = loadedAt;
+            this.referenced = keys != null;
+        }
+    }
+
+    public static final class Builder {
+        private final TenantSecretLoader loader;
+        private Duration refreshAfter = DEFAULT_REFRESH_AFTER;
+        private Duration expireAfter = DEFAULT_EXPIRE_AFTER;
+        private Duration negativeExpireAfter = DEFAULT_NEGATIVE_EXPIRE_AFTER;
+        private int maxTenants = DEFAULT_MAX_TENANTS;
+        private Executor refreshExecutor;
+
+        private Builder(TenantSecretLoader loader) {
+            this.loader = Objects.requireNonNull(loader, "loader");
+        }
+
+        public Builder refreshAfter(Duration refreshAfter) {
+            this.refreshAfter = positive(refreshAfter, "refreshAfter");
+            return this;
+        }
+
+        public Builder expireAfter(Duration expireAfter) {
+            this.expireAfter = positive(expireAfter, "expireAfter");
+            return this;
+        }
+
+        public Builder negativeExpireAfter(Duration negativeExpireAfter) {
+            Objects.requireNonNull(negativeExpireAfter, "negativeExpireAfter");
+            if (negativeExpireAfter.isNegative()) {
+                throw new IllegalArgumentException("negativeExpireAfter must be >= 0");
+            }
+            this.negativeExpireAfter = negativeExpireAfter;
+            return this;
+        }
+
+        public Builder maxTenants(int maxTenants) {
+            if (maxTenants <= 0) {
+                throw new IllegalArgumentException("maxTenants must be > 0");
+            }
+            this.maxTenants = maxTenants;
+            return this;
+        }
+
+        // Runs refresh-ahead reloads; defaults to one daemon thread that exits when idle.
+        public Builder refreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = Objects.requireNonNull(refreshExecutor, "refreshExecutor");
+            return this;
+        }
+
+        public CachingTenantSecretResolver build() {
+            if (refreshAfter.compareTo(expireAfter) > 0) {
+                throw new IllegalArgumentException("refreshAfter must be <= expireAfter");
+            }
+            return new CachingTenantSecretResolver(this);
+        }
+
+        private static Duration positive(Duration d, String name) {
+            Objects.requireNonNull(d, name);
+            if (d.isZero() || d.isNegative()) {
+                throw new IllegalArgumentException(name + " must be > 0");
+            }
+            return d;
+        }
+    }
+}
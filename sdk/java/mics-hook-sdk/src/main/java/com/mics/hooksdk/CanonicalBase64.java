@@ -1,22 +1,85 @@
 package com.mics.hooksdk;
 
-import java.util.Base64;
-
 final class CanonicalBase64 {
     private CanonicalBase64() {
     }
 
-    static byte[] decodeCanonical(String base64) {
-        if (base64 == null || base64.isBlank()) {
-            throw new IllegalArgumentException("base64 is blank");
+    static int encodedLength(int decodedLength) {
+        return ((decodedLength + 2) / 3) * 4;
+    }
+
+    static boolean matches(byte[] expected, String base64) {
+        if (base64 == null || base64.length() != encodedLength(expected.length)) {
+            return false;
         }
+        return matches(expected, null, 0, base64);
+    }
 
-        byte[] decoded = Base64.getDecoder().decode(base64);
-        String encoded = Base64.getEncoder().encodeToString(decoded);
-        if (!encoded.equals(base64)) {
-            throw new IllegalArgumentException("base64 is not canonical");
+    static boolean matches(byte[] expected, byte[] buf, int start, int end) {
+        if (end - start != encodedLength(expected.length)) {
+            return false;
         }
-        return decoded;
+        return matches(expected, buf, start, null);
     }
-}
 
+    // Decodes the standard, padded alphabet in constant time and compares against expected without allocating.
+    // Non-canonical encodings (missing/extra padding, non-zero trailing bits) never match.
+    private static boolean matches(byte[] expected, byte[] buf, int start, String str) {
+        int n = expected.length;
+        int diff = 0;
+        int in = 0;
+        int out = 0;
+        while (n - out >= 3) {
+            int c0 = decode6(charAt(buf, start, str, in));
+            int c1 = decode6(charAt(buf, start, str, in + 1));
+            int c2 = decode6(charAt(buf, start, str, in + 2));
+            int c3 = decode6(charAt(buf, start, str, in + 3));
+            diff |= (c0 | c1 | c2 | c3) & 0x100;
+            diff |= ((c0 << 2 | c1 >>> 4) ^ expected[out]) & 0xFF;
+            diff |= ((c1 << 4 | c2 >>> 2) ^ expected[out + 1]) & 0xFF;
+            diff |= ((c2 << 6 | c3) ^ expected[out + 2]) & 0xFF;
+            in += 4;
+            out += 3;
+        }
+
+        int rem = n - out;
+        if (rem == 1) {
+            int c0 = decode6(charAt(buf, start, str, in));
+            int c1 = decode6(charAt(buf, start, str, in + 1));
+            diff |= (c0 | c1) & 0x100;
+            diff |= ((c0 << 2 | c1 >>> 4) ^ expected[out]) & 0xFF;
+            diff |= c1 & 0x0F;
+            diff |= charAt(buf, start, str, in + 2) ^ '=';
+            diff |= charAt(buf, start, str, in + 3) ^ '=';
+        } else if (rem == 2) {
+            int c0 = decode6(charAt(buf, start, str, in));
+            int c1 = decode6(charAt(buf, start, str, in + 1));
+            int c2 = decode6(charAt(buf, start, str, in + 2));
+            diff |= (c0 | c1 | c2) & 0x100;
+            diff |= ((c0 << 2 | c1 >>> 4) ^ expected[out]) & 0xFF;
+            diff |= ((c1 << 4 | c2 >>> 2) ^ expected[out + 1]) & 0xFF;
+            diff |= c2 & 0x03;
+            diff |= charAt(buf, start, str, in + 3) ^ '=';
+        }
+        return diff == 0;
+    }
+
+    private static int charAt(byte[] buf, int start, String str, int i) {
+        if (str == null) {
+            return buf[start + i] & 0xFF;
+        }
+        char c = str.charAt(i);
+        return c > 0xFF ? 0 : c;
+    }
+
+    // Branch-free lookup: returns 0..63 for alphabet characters, and a value with bit 8 set otherwise.
+    private static int decode6(int c) {
+        int ret = -1;
+        ret += (((0x40 - c) & (c - 0x5b)) >> 8) & (c - 64);
+        ret += (((0x60 - c) & (c - 0x7b)) >> 8) & (c - 70);
+        ret += (((0x2f - c) & (c - 0x3a)) >> 8) & (c + 5);
+        ret += (((0x2a - c) & (c - 0x2c)) >> 8) & 63;
+        ret += (((0x2e - c) & (c - 0x30)) >> 8) & 64;
+        return ret & 0x1FF;
+    }
+}
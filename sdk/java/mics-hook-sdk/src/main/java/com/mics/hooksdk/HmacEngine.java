@@ -0,0 +1,89 @@
+package com.mics.hooksdk;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// RFC 2104 HMAC-SHA256 over two reusable digests; doFinal() writes into an owned buffer so steady-state use allocates nothing.
+// Not javax.crypto.Mac: SunJCE's HmacCore digests into a fresh array on every doFinal, even doFinal(byte[], int).
+// TenantHmacCacheTest checks the output against Mac across key and message block boundaries.
+final class HmacEngine {
+    static final int BLOCK_SIZE = 64;
+    static final int MAC_SIZE = 32;
+
+    private final byte[] innerPad;
+    private final byte[] outerPad;
+    private final MessageDigest inner;
+    private final MessageDigest outer;
+    private final byte[] innerHash = new byte[MAC_SIZE];
+    private final byte[] result = new byte[MAC_SIZE];
+    private boolean started;
+
+    HmacEngine(byte[] innerPad, byte[] outerPad) {
+        this.innerPad = innerPad;
+        this.outerPad = outerPad;
+        this.inner = sha256();
+        this.outer = sha256();
+    }
+
+    void update(byte b) {
+        start();
+        inner.update(b);
+    }
+
+    void update(byte[] buf, int offset, int length) {
+        start();
+        if (length > 0) {
+            inner.update(buf, offset, length);
+        }
+    }
+
+    // The returned array is owned by the engine and only valid until the next use.
+    byte[] doFinal() {
+        start();
+        try {
+            inner.digest(innerHash, 0, MAC_SIZE);
+            outer.update(outerPad);
+            outer.update(innerHash);
+            outer.digest(result, 0, MAC_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest failed", e);
+        } finally {
+            started = false;
+        }
+        return result;
+    }
+
+    void reset() {
+        inner.reset();
+        outer.reset();
+        started = false;
+    }
+
+    private void start() {
+        if (!started) {
+            inner.update(innerPad);
+            started = true;
+        }
+    }
+
+    static byte[][] pads(byte[] key) {
+        byte[] k = key.length > BLOCK_SIZE ? sha256().digest(key) : key;
+        byte[] ipad = new byte[BLOCK_SIZE];
+        byte[] opad = new byte[BLOCK_SIZE];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte b = i < k.length ? k[i] : 0;
+            ipad[i] = (byte) (b ^ 0x36);
+            opad[i] = (byte) (b ^ 0x5c);
+        }
+        return new byte[][]{ipad, opad};
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mics.hooksdk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class HmacSha256Key {
+    private static final int IDLE_SLOTS = idleSlots();
+
+    private final byte[] innerPad;
+    private final byte[] outerPad;
+    private final AtomicReferenceArray<HmacEngine> idle = new AtomicReferenceArray<>(IDLE_SLOTS);
+
+    private HmacSha256Key(byte[] key) {
+        byte[][] pads = HmacEngine.pads(key);
+        this.innerPad = pads[0];
+        this.outerPad = pads[1];
+    }
+
+    public static HmacSha256Key of(byte[] secret) {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("key is empty");
+        }
+        return new HmacSha256Key(secret);
+    }
+
+    public static HmacSha256Key of(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("key is empty");
+        }
+        return new HmacSha256Key(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] sign(byte[]... parts) {
+        HmacEngine engine = lease();
+        try {
+            for (byte[] part : parts) {
+                if (part != null && part.length > 0) {
+                    engine.update(part, 0, part.length);
+                }
+            }
+            return Arrays.copyOf(engine.doFinal(), HmacEngine.MAC_SIZE);
+        } finally {
+            release(engine);
+        }
+    }
+
+    HmacEngine lease() {
+        int start = slot();
+        for (int i = 0; i < IDLE_SLOTS; i++) {
+            HmacEngine engine = idle.getAndSet((start + i) & (IDLE_SLOTS - 1), null);
+            if (engine != null) {
+                return engine;
+            }
+        }
+        return new HmacEngine(innerPad, outerPad);
+    }
+
+    void release(HmacEngine engine) {
+        engine.reset();
+        int start = slot();
+        for (int i = 0; i < IDLE_SLOTS; i++) {
+            if (idle.compareAndSet((start + i) & (IDLE_SLOTS - 1), null, engine)) {
+                return;
+            }
+        }
+    }
+
+    private static int slot() {
+        return (int) Thread.currentThread().getId() & (IDLE_SLOTS - 1);
+    }
+
+    private static int idleSlots() {
+        int n = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+    }
+}
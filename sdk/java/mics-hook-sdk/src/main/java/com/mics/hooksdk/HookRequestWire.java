@@ -0,0 +1,281 @@
+package com.mics.hooksdk;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_LENGTH_DELIMITED;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_VARINT;
+import static com.mics.hooksdk.ProtoWire.fieldNumber;
+import static com.mics.hooksdk.ProtoWire.skipField;
+import static com.mics.hooksdk.ProtoWire.varintEnd;
+import static com.mics.hooksdk.ProtoWire.varintValue;
+import static com.mics.hooksdk.ProtoWire.wireType;
+
+// Every hook request message carries HookMeta as field 1; the signature covers the request with meta.sign removed.
+final class HookRequestWire {
+    static final int REQUEST_META = 1;
+    static final int META_TENANT_ID = 1;
+    static final int META_REQUEST_ID = 2;
+    static final int META_TIMESTAMP_MS = 3;
+    static final int META_SIGN = 4;
+
+    private HookRequestWire() {
+    }
+
+    // Returns "" when meta or tenant_id is absent, null when the body is malformed.
+    static String readTenantId(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        int metaStart = -1;
+        int metaEnd = -1;
+        while (pos < end) {
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return null;
+            }
+            long tag = varintValue(buf, pos);
+            pos = tagEnd;
+            if (fieldNumber(tag) == REQUEST_META && wireType(tag) == WIRETYPE_LENGTH_DELIMITED) {
+                metaStart = varintEnd(buf, pos, end);
+                metaEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                if (metaEnd < 0) {
+                    return null;
+                }
+                pos = metaEnd;
+                continue;
+            }
+            pos = skipField(buf, pos, end, tag);
+            if (pos < 0) {
+                return null;
+            }
+        }
+        if (metaStart < 0) {
+            return "";
+        }
+
+        String tenantId = "";
+        pos = metaStart;
+        while (pos < metaEnd) {
+            int tagEnd = varintEnd(buf, pos, metaEnd);
+            if (tagEnd < 0) {
+                return null;
+            }
+            long tag = varintValue(buf, pos);
+            pos = tagEnd;
+            if (fieldNumber(tag) == META_TENANT_ID && wireType(tag) == WIRETYPE_LENGTH_DELIMITED) {
+                int valueStart = varintEnd(buf, pos, metaEnd);
+                int valueEnd = ProtoWire.lengthDelimitedEnd(buf, pos, metaEnd);
+                if (valueEnd < 0) {
+                    return null;
+                }
+                tenantId = new String(buf, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+                pos = valueEnd;
+                continue;
+            }
+            pos = skipField(buf, pos, metaEnd, tag);
+            if (pos < 0) {
+                return null;
+            }
+        }
+        return tenantId;
+    }
+
+    // Returns 1 when meta.sign is present, 0 when absent or blank, -1 when the body is malformed.
+    static int signState(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        int pos = offset;
+        int state = 0;
+        while (pos < end) {
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return -1;
+            }
+            long tag = varintValue(buf, pos);
+            pos = tagEnd;
+            if (fieldNumber(tag) == REQUEST_META && wireType(tag) == WIRETYPE_LENGTH_DELIMITED) {
+                int metaStart = varintEnd(buf, pos, end);
+                int metaEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                if (metaEnd < 0) {
+                    return -1;
+                }
+                state = metaSignState(buf, metaStart, metaEnd);
+                if (state < 0) {
+                    return -1;
+                }
+                pos = metaEnd;
+                continue;
+            }
+            pos = skipField(buf, pos, end, tag);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        return state;
+    }
+
+    private static int metaSignState(byte[] buf, int pos, int end) {
+        int state = 0;
+        while (pos < end) {
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return -1;
+            }
+            long tag = varintValue(buf, pos);
+            pos = tagEnd;
+            if (fieldNumber(tag) == META_SIGN && wireType(tag) == WIRETYPE_LENGTH_DELIMITED) {
+                int valueStart = varintEnd(buf, pos, end);
+                int valueEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                if (valueEnd < 0) {
+                    return -1;
+                }
+                state = isBlank(buf, valueStart, valueEnd) ? 0 : 1;
+                pos = valueEnd;
+                continue;
+            }
+            pos = skipField(buf, pos, end, tag);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        return state;
+    }
+
+    static boolean verify(HmacSha256Key key, byte[] buf, int offset, int length, boolean requireSign) {
+        int end = offset + length;
+        int pos = offset;
+
+        int metaLenStart = -1;
+        int metaStart = -1;
+        int metaEnd = -1;
+        while (pos < end) {
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return false;
+            }
+            long tag = varintValue(buf, pos);
+            if (fieldNumber(tag) == 0) {
+                return false;
+            }
+            pos = tagEnd;
+            if (fieldNumber(tag) != REQUEST_META) {
+                pos = skipField(buf, pos, end, tag);
+                if (pos < 0) {
+                    return false;
+                }
+                continue;
+            }
+            // A second meta would be merged by the parser but re-serialized once by the gateway: never valid.
+            if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED || metaStart >= 0) {
+                return false;
+            }
+            metaLenStart = pos;
+            metaStart = varintEnd(buf, pos, end);
+            metaEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+            if (metaEnd < 0) {
+                return false;
+            }
+            pos = metaEnd;
+        }
+        if (metaStart < 0) {
+            return !requireSign;
+        }
+
+        int requestIdStart = metaStart;
+        int requestIdEnd = metaStart;
+        long timestampMs = 0;
+        int signFieldStart = -1;
+        int signFieldEnd = -1;
+        int signStart = -1;
+        pos = metaStart;
+        while (pos < metaEnd) {
+            int fieldStart = pos;
+            int tagEnd = varintEnd(buf, pos, metaEnd);
+            if (tagEnd < 0) {
+                return false;
+            }
+            long tag = varintValue(buf, pos);
+            if (fieldNumber(tag) == 0) {
+                return false;
+            }
+            pos = tagEnd;
+            switch (fieldNumber(tag)) {
+                case META_REQUEST_ID:
+                    if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED) {
+                        return false;
+                    }
+                    requestIdStart = varintEnd(buf, pos, metaEnd);
+                    requestIdEnd = ProtoWire.lengthDelimitedEnd(buf, pos, metaEnd);
+                    if (requestIdEnd < 0) {
+                        return false;
+                    }
+                    pos = requestIdEnd;
+                    break;
+                case META_TIMESTAMP_MS:
+                    if (wireType(tag) != WIRETYPE_VARINT) {
+                        return false;
+                    }
+                    int tsEnd = varintEnd(buf, pos, metaEnd);
+                    if (tsEnd < 0) {
+                        return false;
+                    }
+                    timestampMs = varintValue(buf, pos);
+                    pos = tsEnd;
+                    break;
+                case META_SIGN:
+                    if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED || signFieldStart >= 0) {
+                        return false;
+                    }
+                    signFieldStart = fieldStart;
+                    signStart = varintEnd(buf, pos, metaEnd);
+                    signFieldEnd = ProtoWire.lengthDelimitedEnd(buf, pos, metaEnd);
+                    if (signFieldEnd < 0) {
+                        return false;
+                    }
+                    pos = signFieldEnd;
+                    break;
+                default:
+                    pos = skipField(buf, pos, metaEnd, tag);
+                    if (pos < 0) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+
+        if (signStart < 0 || isBlank(buf, signStart, signFieldEnd)) {
+            return !requireSign;
+        }
+
+        HmacEngine mac = key.lease();
+        try {
+            // Serialize(payload with meta.sign cleared) == original bytes minus the sign field, with meta's length shrunk.
+            mac.update(buf, offset, metaLenStart - offset);
+            updateVarint(mac, (metaEnd - metaStart) - (signFieldEnd - signFieldStart));
+            mac.update(buf, metaStart, signFieldStart - metaStart);
+            mac.update(buf, signFieldEnd, end - signFieldEnd);
+            mac.update(buf, requestIdStart, requestIdEnd - requestIdStart);
+            for (int i = 0; i < Long.BYTES; i++) {
+                mac.update((byte) (timestampMs >>> (8 * i)));
+            }
+            return CanonicalBase64.matches(mac.doFinal(), buf, signStart, signFieldEnd);
+        } finally {
+            key.release(mac);
+        }
+    }
+
+    private static void updateVarint(HmacEngine mac, long value) {
+        while ((value & ~0x7FL) != 0) {
+            mac.update((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mac.update((byte) value);
+    }
+
+    private static boolean isBlank(byte[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(buf[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
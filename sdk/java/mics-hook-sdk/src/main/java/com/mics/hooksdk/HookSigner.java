@@ -3,10 +3,7 @@ package com.mics.hooksdk;
 import com.google.protobuf.Message;
 import com.mics.contracts.hook.v1.HookMeta;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.util.Base64;
 
 public final class HookSigner {
@@ -17,10 +14,20 @@ public final class HookSigner {
         if (tenantSecret == null || tenantSecret.isBlank()) {
             throw new IllegalArgumentException("tenantSecret is blank");
         }
-        return computeBase64(tenantSecret.getBytes(StandardCharsets.UTF_8), meta, payloadWithMetaSignCleared);
+        if (meta == null) {
+            throw new IllegalArgumentException("meta is null");
+        }
+        return computeBase64(TenantHmacCache.shared().get(meta.getTenantId(), tenantSecret), meta, payloadWithMetaSignCleared);
     }
 
     public static String computeBase64(byte[] tenantSecret, HookMeta meta, Message payloadWithMetaSignCleared) {
+        return computeBase64(HmacSha256Key.of(tenantSecret), meta, payloadWithMetaSignCleared);
+    }
+
+    public static String computeBase64(HmacSha256Key key, HookMeta meta, Message payloadWithMetaSignCleared) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
         if (meta == null) {
             throw new IllegalArgumentException("meta is null");
         }
@@ -28,21 +35,36 @@ public final class HookSigner {
             throw new IllegalArgumentException("payloadWithMetaSignCleared is null");
         }
 
-        byte[] payloadBytes = payloadWithMetaSignCleared.toByteArray();
-        byte[] requestIdBytes = meta.getRequestId().getBytes(StandardCharsets.UTF_8);
-        byte[] timestampLe64 = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(meta.getTimestampMs()).array();
-        byte[] sig = HmacSign.hmacSha256(tenantSecret, payloadBytes, requestIdBytes, timestampLe64);
-        return Base64.getEncoder().encodeToString(sig);
+        HmacEngine mac = key.lease();
+        try {
+            update(mac, meta, payloadWithMetaSignCleared);
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } finally {
+            key.release(mac);
+        }
     }
 
     public static boolean verify(String tenantSecret, HookMeta meta, Message payloadWithMetaSignCleared, boolean requireSign) {
         if (tenantSecret == null || tenantSecret.isBlank()) {
             return false;
         }
-        return verify(tenantSecret.getBytes(StandardCharsets.UTF_8), meta, payloadWithMetaSignCleared, requireSign);
+        if (meta == null) {
+            return false;
+        }
+        return verify(TenantHmacCache.shared().get(meta.getTenantId(), tenantSecret), meta, payloadWithMetaSignCleared, requireSign);
     }
 
     public static boolean verify(byte[] tenantSecret, HookMeta meta, Message payloadWithMetaSignCleared, boolean requireSign) {
+        if (meta == null) {
+            return false;
+        }
+        if (!hasSign(meta)) {
+            return !requireSign;
+        }
+        return verify(HmacSha256Key.of(tenantSecret), meta, payloadWithMetaSignCleared, requireSign);
+    }
+
+    public static boolean verify(HmacSha256Key key, HookMeta meta, Message payloadWithMetaSignCleared, boolean requireSign) {
         if (meta == null) {
             return false;
         }
@@ -54,14 +76,90 @@ public final class HookSigner {
             return true;
         }
 
-        byte[] expected = Base64.getDecoder().decode(computeBase64(tenantSecret, meta, payloadWithMetaSignCleared));
-        byte[] provided;
+        if (key == null || payloadWithMetaSignCleared == null) {
+            return false;
+        }
+
+        HmacEngine mac = key.lease();
         try {
-            provided = CanonicalBase64.decodeCanonical(sign);
-        } catch (IllegalArgumentException e) {
+            update(mac, meta, payloadWithMetaSignCleared);
+            return CanonicalBase64.matches(mac.doFinal(), sign);
+        } finally {
+            key.release(mac);
+        }
+    }
+
+    public static boolean verify(String tenantSecret, byte[] requestBody, boolean requireSign) {
+        if (tenantSecret == null || tenantSecret.isBlank() || requestBody == null) {
+            return false;
+        }
+        String tenantId = HookRequestWire.readTenantId(requestBody, 0, requestBody.length);
+        if (tenantId == null) {
             return false;
         }
-        return MessageDigest.isEqual(expected, provided);
+        return verify(TenantHmacCache.shared().get(tenantId, tenantSecret), requestBody, 0, requestBody.length, requireSign);
     }
-}
 
+    public static boolean verify(byte[] tenantSecret, byte[] requestBody, boolean requireSign) {
+        if (requestBody == null) {
+            return false;
+        }
+        int signState = HookRequestWire.signState(requestBody, 0, requestBody.length);
+        if (signState <= 0) {
+            return signState == 0 && !requireSign;
+        }
+        return verify(HmacSha256Key.of(tenantSecret), requestBody, 0, requestBody.length, requireSign);
+    }
+
+    public static boolean verify(HmacSha256Key key, byte[] requestBody, boolean requireSign) {
+        if (requestBody == null) {
+            return false;
+        }
+        return verify(key, requestBody, 0, requestBody.length, requireSign);
+    }
+
+    // meta.tenant_id read straight from the wire, unverified: "" when absent, null when the body is malformed.
+    public static String readTenantId(byte[] requestBody, int offset, int length) {
+        if (offset < 0 || length < 0 || length > requestBody.length - offset) {
+            throw new IndexOutOfBoundsException("offset/length out of range");
+        }
+        return HookRequestWire.readTenantId(requestBody, offset, length);
+    }
+
+    // Accepts either key of a tenant in rotation, primary first.
+    public static boolean verify(TenantKeys keys, byte[] requestBody, int offset, int length, boolean requireSign) {
+        if (keys == null) {
+            return false;
+        }
+        if (verify(keys.primary(), requestBody, offset, length, requireSign)) {
+            return true;
+        }
+        return keys.secondary() != null && verify(keys.secondary(), requestBody, offset, length, requireSign);
+    }
+
+    public static boolean verify(HmacSha256Key key, byte[] requestBody, int offset, int length, boolean requireSign) {
+        if (key == null || requestBody == null) {
+            return false;
+        }
+        if (offset < 0 || length < 0 || length > requestBody.length - offset) {
+            throw new IndexOutOfBoundsException("offset/length out of range");
+        }
+        return HookRequestWire.verify(key, requestBody, offset, length, requireSign);
+    }
+
+    private static void update(HmacEngine mac, HookMeta meta, Message payloadWithMetaSignCleared) {
+        byte[] payloadBytes = payloadWithMetaSignCleared.toByteArray();
+        mac.update(payloadBytes, 0, payloadBytes.length);
+        byte[] requestIdBytes = meta.getRequestId().getBytes(StandardCharsets.UTF_8);
+        mac.update(requestIdBytes, 0, requestIdBytes.length);
+        long timestampMs = meta.getTimestampMs();
+        for (int i = 0; i < Long.BYTES; i++) {
+            mac.update((byte) (timestampMs >>> (8 * i)));
+        }
+    }
+
+    private static boolean hasSign(HookMeta meta) {
+        String sign = meta.getSign();
+        return sign != null && !sign.isBlank();
+    }
+}
@@ -0,0 +1,257 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Result of MqEventDecoder.verifyAndDecodeBatch: the payload of every record by its index in the batch, and a bitmap
+// of the records that have none. A record fails when it does not parse, its tenant is unknown, its signature does
+// not check out, or its event_data is empty or does not decode for its event_type.
+public final class MqEventBatch {
+    // Records per fork-join leaf; a multiple of 64 so that no two leaves write the same bitmap word.
+    static final int CHUNK = 256;
+
+    private final int size;
+    private final int[] eventTypes;
+    private final String[] tenantIds;
+    private final Object[] payloads;
+    private final long[] failures;
+    private int failureCount;
+
+    private MqEventBatch(int size) {
+        this.size = size;
+        this.eventTypes = new int[size];
+        this.tenantIds = new String[size];
+        this.payloads = new Object[size];
+        this.failures = new long[(size + 63) >>> 6];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFailed(int index) {
+        checkIndex(index);
+        return (failures[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    // Index of the first failed record at or after fromIndex, -1 when there is none.
+    public int nextFailure(int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        }
+        int w = fromIndex >>> 6;
+        if (w >= failures.length) {
+            return -1;
+        }
+        long word = failures[w] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == failures.length) {
+                return -1;
+            }
+            word = failures[w];
+        }
+    }
+
+    // null for a failed record.
+    public EventType getEventType(int index) {
+        checkIndex(index);
+        return payloads[index] == null ? null : EventType.forNumber(eventTypes[index]);
+    }
+
+    // Records of the same tenant share one String instance. null for a failed record.
+    public String getTenantId(int index) {
+        checkIndex(index);
+        return payloads[index] == null ? null : tenantIds[index];
+    }
+
+    // SINGLE_CHAT_MSG, GROUP_CHAT_MSG and OFFLINE_MESSAGE; null for other types and failed records.
+    public MessageRequest getMessage(int index) {
+        checkIndex(index);
+        Object p = payloads[index];
+        return p instanceof MessageRequest ? (MessageRequest) p : null;
+    }
+
+    // CONNECT_ONLINE and CONNECT_OFFLINE; null for other types and failed records.
+    public ConnectAck getConnectAck(int index) {
+        checkIndex(index);
+        Object p = payloads[index];
+        return p instanceof ConnectAck ? (ConnectAck) p : null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of range for batch of " + size);
+        }
+    }
+
+    static MqEventBatch decode(byte[][] records, TenantSecretResolver resolver, boolean requireSign, ForkJoinPool pool) {
+        MqEventBatch batch = new MqEventBatch(records.length);
+        if (pool == null || records.length <= CHUNK) {
+            batch.decodeRange(records, 0, records.length, resolver, requireSign);
+        } else {
+            pool.invoke(new Split(batch, records, 0, records.length, resolver, requireSign));
+        }
+        int failed = 0;
+        for (long word : batch.failures) {
+            failed += Long.bitCount(word);
+        }
+        batch.failureCount = failed;
+        return batch;
+    }
+
+    static MqEventBatch decode(List<byte[]> records, TenantSecretResolver resolver, boolean requireSign, ForkJoinPool pool) {
+        return decode(records.toArray(new byte[0][]), resolver, requireSign, pool);
+    }
+
+    // Consecutive records of the same tenant (the usual case: one topic per tenant) reuse its keys and one leased
+    // engine without even building the tenant id string; other tenants are resolved once per range.
+    private void decodeRange(byte[][] records, int from, int to, TenantSecretResolver resolver, boolean requireSign) {
+        MqEventWire.Layout layout = new MqEventWire.Layout();
+        byte[] lastBuf = null;
+        int lastStart = 0;
+        int lastEnd = 0;
+        String tenantId = null;
+        TenantKeys keys = null;
+        Map<String, TenantKeys> resolved = null;
+        HmacSha256Key leasedKey = null;
+        HmacEngine mac = null;
+        try {
+            for (int i = from; i < to; i++) {
+                byte[] rec = records[i];
+                if (rec == null || !MqEventWire.scan(rec, 0, rec.length, layout)) {
+                    fail(i);
+                    continue;
+                }
+
+                if (lastBuf == null || !Arrays.equals(rec, layout.tenantIdStart, layout.tenantIdEnd, lastBuf, lastStart, lastEnd)) {
+                    String id = layout.tenantId(rec);
+                    if (tenantId != null) {
+                        if (resolved == null) {
+                            resolved = new HashMap<>();
+                        }
+                        resolved.put(tenantId, keys);
+                    }
+                    if (resolved != null && resolved.containsKey(id)) {
+                        keys = resolved.get(id);
+                    } else {
+                        keys = id.isBlank() ? null : resolver.resolve(id);
+                    }
+                    tenantId = id;
+                }
+                lastBuf = rec;
+                lastStart = layout.tenantIdStart;
+                lastEnd = layout.tenantIdEnd;
+                if (keys == null) {
+                    fail(i);
+                    continue;
+                }
+
+                if (layout.hasSign(rec)) {
+                    if (leasedKey != keys.primary()) {
+                        if (mac != null) {
+                            leasedKey.release(mac);
+                        }
+                        leasedKey = keys.primary();
+                        mac = leasedKey.lease();
+                    }
+                    boolean ok = MqEventWire.verifySigned(mac, rec, 0, rec.length, layout)
+                            || keys.secondary() != null && MqEventWire.verify(keys.secondary(), rec, 0, rec.length, layout, requireSign);
+                    if (!ok) {
+                        fail(i);
+                        continue;
+                    }
+                } else if (requireSign) {
+                    fail(i);
+                    continue;
+                }
+
+                Object payload = payload(rec, layout);
+                if (payload == null) {
+                    fail(i);
+                    continue;
+                }
+                eventTypes[i] = layout.eventType;
+                tenantIds[i] = tenantId;
+                payloads[i] = payload;
+            }
+        } finally {
+            if (mac != null) {
+                leasedKey.release(mac);
+            }
+        }
+    }
+
+    private static Object payload(byte[] rec, MqEventWire.Layout layout) {
+        int length = layout.eventDataEnd - layout.eventDataStart;
+        if (length == 0) {
+            return null;
+        }
+        try {
+            switch (layout.eventType) {
+                case EventType.CONNECT_ONLINE_VALUE:
+                case EventType.CONNECT_OFFLINE_VALUE:
+                    return ConnectAck.parser().parseFrom(rec, layout.eventDataStart, length);
+                case EventType.SINGLE_CHAT_MSG_VALUE:
+                case EventType.GROUP_CHAT_MSG_VALUE:
+                case EventType.OFFLINE_MESSAGE_VALUE:
+                    return MessageRequest.parser().parseFrom(rec, layout.eventDataStart, length);
+                default:
+                    return null;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            return null;
+        }
+    }
+
+    private void fail(int index) {
+        failures[index >>> 6] |= 1L << index;
+    }
+
+    private static final class Split extends RecursiveAction {
+        private final MqEventBatch batch;
+        private final byte[][] records;
+        private final int from;
+        private final int to;
+        private final TenantSecretResolver resolver;
+        private final boolean requireSign;
+
+        private Split(MqEventBatch batch, byte[][] records, int from, int to, TenantSecretResolver resolver, boolean requireSign) {
+            this.batch = batch;
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.resolver = resolver;
+            this.requireSign = requireSign;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                batch.decodeRange(records, from, to, resolver, requireSign);
+                return;
+            }
+            int mid = from + ((to - from) / 2 / CHUNK) * CHUNK;
+            if (mid == from) {
+                mid = from + CHUNK;
+            }
+            invokeAll(new Split(batch, records, from, mid, resolver, requireSign),
+                    new Split(batch, records, mid, to, resolver, requireSign));
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.mics.hooksdk;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
 import com.mics.contracts.hook.v1.EventType;
 import com.mics.contracts.hook.v1.MqEvent;
 import com.mics.contracts.message.v1.ConnectAck;
 import com.mics.contracts.message.v1.MessageRequest;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 public final class MqEventDecoder {
     private MqEventDecoder() {
@@ -53,5 +57,82 @@ public final class MqEventDecoder {
         }
         return tryDecodeMessage(evt);
     }
-}
 
+    public static Optional<ConnectAck> tryVerifyAndDecodeConnectAck(String tenantSecret, byte[] serializedEvent, boolean requireSign) {
+        if (tenantSecret == null || tenantSecret.isBlank()) {
+            return Optional.empty();
+        }
+        return verifyAndDecode(tenantSecret, null, serializedEvent, requireSign, EventType.CONNECT_ONLINE_VALUE, EventType.CONNECT_OFFLINE_VALUE, ConnectAck.parser());
+    }
+
+    public static Optional<ConnectAck> tryVerifyAndDecodeConnectAck(HmacSha256Key key, byte[] serializedEvent, boolean requireSign) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        return verifyAndDecode(null, key, serializedEvent, requireSign, EventType.CONNECT_ONLINE_VALUE, EventType.CONNECT_OFFLINE_VALUE, ConnectAck.parser());
+    }
+
+    public static Optional<MessageRequest> tryVerifyAndDecodeMessage(String tenantSecret, byte[] serializedEvent, boolean requireSign) {
+        if (tenantSecret == null || tenantSecret.isBlank()) {
+            return Optional.empty();
+        }
+        return verifyAndDecode(tenantSecret, null, serializedEvent, requireSign, EventType.SINGLE_CHAT_MSG_VALUE, EventType.GROUP_CHAT_MSG_VALUE, MessageRequest.parser());
+    }
+
+    public static Optional<MessageRequest> tryVerifyAndDecodeMessage(HmacSha256Key key, byte[] serializedEvent, boolean requireSign) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        return verifyAndDecode(null, key, serializedEvent, requireSign, EventType.SINGLE_CHAT_MSG_VALUE, EventType.GROUP_CHAT_MSG_VALUE, MessageRequest.parser());
+    }
+
+    // Verifies and decodes a whole poll batch, e.g. the values of one ConsumerRecords, without an Optional per record.
+    // Each tenant's keys are resolved once per batch; null entries count as failed.
+    public static MqEventBatch verifyAndDecodeBatch(TenantSecretResolver resolver, List<byte[]> serializedEvents, boolean requireSign) {
+        return verifyAndDecodeBatch(resolver, serializedEvents, requireSign, null);
+    }
+
+    // With a pool, batches larger than a few hundred records are split into chunks that run on it.
+    public static MqEventBatch verifyAndDecodeBatch(TenantSecretResolver resolver, List<byte[]> serializedEvents, boolean requireSign,
+                                                    ForkJoinPool pool) {
+        Objects.requireNonNull(resolver, "resolver");
+        Objects.requireNonNull(serializedEvents, "serializedEvents");
+        return MqEventBatch.decode(serializedEvents, resolver, requireSign, pool);
+    }
+
+    public static MqEventBatch verifyAndDecodeBatch(TenantSecretResolver resolver, byte[][] serializedEvents, boolean requireSign,
+                                                    ForkJoinPool pool) {
+        Objects.requireNonNull(resolver, "resolver");
+        Objects.requireNonNull(serializedEvents, "serializedEvents");
+        return MqEventBatch.decode(serializedEvents, resolver, requireSign, pool);
+    }
+
+    private static <T> Optional<T> verifyAndDecode(String tenantSecret, HmacSha256Key key, byte[] serializedEvent, boolean requireSign,
+                                                   int typeA, int typeB, Parser<T> parser) {
+        if (serializedEvent == null) {
+            return Optional.empty();
+        }
+        MqEventWire.Layout layout = new MqEventWire.Layout();
+        if (!MqEventWire.scan(serializedEvent, 0, serializedEvent.length, layout)) {
+            return Optional.empty();
+        }
+        if (layout.hasSign(serializedEvent)) {
+            HmacSha256Key k = key != null ? key : TenantHmacCache.shared().get(layout.tenantId(serializedEvent), tenantSecret);
+            if (!MqEventWire.verify(k, serializedEvent, 0, serializedEvent.length, layout, requireSign)) {
+                return Optional.empty();
+            }
+        } else if (requireSign) {
+            return Optional.empty();
+        }
+
+        int dataLength = layout.eventDataEnd - layout.eventDataStart;
+        if (dataLength == 0 || (layout.eventType != typeA && layout.eventType != typeB)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(parser.parseFrom(serializedEvent, layout.eventDataStart, dataLength));
+        } catch (InvalidProtocolBufferException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.mics.hooksdk;
+
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.MessageRequest;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Remembers the (tenant_id, msg_id) of events seen during the last window, in fixed memory, so that consumers can
+// drop the duplicates at-least-once delivery produces (Kafka redelivery after a rebalance, gateway produce retries).
+//
+// Two tiers, both holding a 64-bit hash of the id:
+// - exact: a 4-way set-associative table of the most recent ids. A hit is a duplicate, bar a 64-bit collision.
+//   Older ids are overwritten, not looked for elsewhere.
+// - approximate: one blocked Bloom filter per generation (window / 3 of local time), the current one plus the three
+//   before it, so an id is remembered for between window and 4/3 window. Each lookup touches one 64-byte block per
+//   generation. A hit here that the exact tier missed is PROBABLE_DUPLICATE, wrong with probability falsePositiveRate
+//   as long as no generation takes in more than a third of maximumIdsPerWindow.
+//
+// Inserts are CAS on atomic arrays, no locks. Two workers checking the same new id at the same moment are told
+// NEW exactly once.
+public final class MqEventDeduplicator {
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(10);
+    public static final int DEFAULT_MAXIMUM_IDS_PER_WINDOW = 1_000_000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 1e-6;
+    public static final int DEFAULT_EXACT_RECENT_IDS = 64 * 1024;
+
+    // Generations alive at once; GENERATIONS - 1 of them span the window.
+    static final int GENERATIONS = 4;
+    private static final int WAYS = 4;
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int MAX_PROBES = 24;
+    // Extra bits a 512-bit blocked filter needs to match an unblocked one at the same probe count; measured to keep
+    // full generations under falsePositiveRate from 1e-2 down to 1e-6.
+    private static final double BLOCKING_OVERHEAD = 1.4;
+
+    public enum Result {
+        NEW,
+        // In the exact tier.
+        DUPLICATE,
+        // Only the Bloom filters have it: an older duplicate, or a false positive.
+        PROBABLE_DUPLICATE
+    }
+
+    private final long generationMillis;
+    private final int blocks;
+    private final int probes;
+    private final LongSupplier millisClock;
+    private final AtomicReferenceArray<Generation> ring = new AtomicReferenceArray<>(GENERATIONS);
+    private final AtomicLongArray exact;
+    private final int exactSetMask;
+
+    private final LongAdder fresh = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder probable = new LongAdder();
+
+    private MqEventDeduplicator(Builder b) {
+        this(b.window, b.maximumIdsPerWindow, b.falsePositiveRate, b.exactRecentIds, System::currentTimeMillis);
+    }
+
+    MqEventDeduplicator(Duration window, int maximumIdsPerWindow, double falsePositiveRate, int exactRecentIds, LongSupplier millisClock) {
+        this.generationMillis = Math.max(1, window.toMillis() / (GENERATIONS - 1));
+        long perGeneration = Math.max(1, ((long) maximumIdsPerWindow + GENERATIONS - 2) / (GENERATIONS - 1));
+        // A lookup asks every live generation, so each gets a share of the false positive budget.
+        double p = falsePositiveRate / GENERATIONS;
+        this.probes = (int) Math.max(1, Math.min(MAX_PROBES, Math.round(-Math.log(p) / Math.log(2))));
+        // Bits that bring (1 - e^(-probes * n / bits))^probes down to p; n * probes / ln 2 unless probes hit the cap.
+        double bits = -perGeneration * probes / Math.log1p(-Math.pow(p, 1.0 / probes)) * BLOCKING_OVERHEAD;
+        this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS, Math.max(1, (long) Math.ceil(bits / BLOCK_BITS)));
+        int sets = Integer.highestOneBit(Math.max(1, exactRecentIds / WAYS) * 2 - 1);
+        this.exact = new AtomicLongArray(sets * WAYS);
+        this.exactSetMask = sets - 1;
+        this.millisClock = millisClock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Records the id and tells whether it was seen before. Empty msg_ids (connect events) are never duplicates and
+    // are not recorded.
+    public Result check(String tenantId, String msgId) {
+        if (msgId.isEmpty()) {
+            return Result.NEW;
+        }
+        return check(hash(tenantId, msgId));
+    }
+
+    public boolean isDuplicate(String tenantId, String msgId) {
+        return check(tenantId, msgId) != Result.NEW;
+    }
+
+    public boolean isDuplicate(MqEvent evt) {
+        return isDuplicate(evt.getTenantId(), evt.getMsgId());
+    }
+
+    public boolean isDuplicate(MessageRequest msg) {
+        return isDuplicate(msg.getTenantId(), msg.getMsgId());
+    }
+
+    // Hashes the ids in place: nothing is allocated.
+    public boolean isDuplicate(MqEventView view) {
+        if (view.msgIdLength() == 0) {
+            return false;
+        }
+        return check(view.dedupHash()) != Result.NEW;
+    }
+
+    public long getNewCount() {
+        return fresh.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getProbableDuplicateCount() {
+        return probable.sum();
+    }
+
+    // Heap used once every generation has been allocated.
+    public long getMemoryBytes() {
+        return (long) GENERATIONS * blocks * BLOCK_LONGS * 8 + (long) exact.length() * 8;
+    }
+
+    int getProbes() {
+        return probes;
+    }
+
+    Result check(long h) {
+        int set = ((int) (h >>> 32) & exactSetMask) * WAYS;
+        if (inExact(set, h)) {
+            duplicates.increment();
+            return Result.DUPLICATE;
+        }
+
+        long epoch = Math.floorDiv(millisClock.getAsLong(), generationMillis);
+        Generation current = generation(epoch);
+        long h2 = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+        int block = (int) (((h2 >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+        for (int i = 1; i < GENERATIONS; i++) {
+            Generation g = ring.get((int) Math.floorMod(epoch - i, (long) GENERATIONS));
+            if (g != null && g.epoch == epoch - i && g.mightContain(block, h)) {
+                current.add(block, h);
+                probable.increment();
+                return Result.PROBABLE_DUPLICATE;
+            }
+        }
+        if (current.mightContain(block, h)) {
+            probable.increment();
+            return Result.PROBABLE_DUPLICATE;
+        }
+        if (!insertExact(set, h)) {
+            duplicates.increment();
+            return Result.DUPLICATE;
+        }
+        current.add(block, h);
+        fresh.increment();
+        return Result.NEW;
+    }
+
+    private boolean inExact(int set, long h) {
+        for (int w = 0; w < WAYS; w++) {
+            if (exact.get(set + w) == h) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // false when another thread got the same id in first. The slot to take is chosen deterministically (first empty
+    // way, else one picked by the hash) so that racing inserts of one id contend for the same slot.
+    private boolean insertExact(int set, long h) {
+        while (true) {
+            int slot = set + (int) (h >>> 62);
+            long seen = exact.get(slot);
+            for (int w = 0; w < WAYS; w++) {
+                long v = exact.get(set + w);
+                if (v == h) {
+                    return false;
+                }
+                if (v == 0) {
+                    slot = set + w;
+                    seen = 0;
+                    break;
+                }
+            }
+            if (exact.compareAndSet(slot, seen, h)) {
+                return true;
+            }
+        }
+    }
+
+    private Generation generation(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) GENERATIONS);
+        while (true) {
+            Generation g = ring.get(slot);
+            if (g != null && g.epoch >= epoch) {
+                // A newer one only after a clock step back; adding to it keeps the id for longer, never shorter.
+                return g;
+            }
+            Generation created = new Generation(epoch, blocks, probes);
+            if (ring.compareAndSet(slot, g, created)) {
+                return created;
+            }
+        }
+    }
+
+    static long hash(String tenantId, String msgId) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0, n = tenantId.length(); i < n; i++) {
+            h = step(h, tenantId.charAt(i));
+        }
+        h = step(h, 0xFFFF);
+        for (int i = 0, n = msgId.length(); i < n; i++) {
+            h = step(h, msgId.charAt(i));
+        }
+        return finish(h);
+    }
+
+    // FNV-1a over UTF-16 units, shared with MqEventView.dedupHash() so both produce the same hash for one id.
+    static long step(long h, int c) {
+        return (h ^ c) * 0x100000001B3L;
+    }
+
+    // Murmur3 finalizer; never 0, which marks an empty exact slot.
+    static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static final class Generation {
+        private final long epoch;
+        private final AtomicLongArray bits;
+        private final int probes;
+
+        private Generation(long epoch, int blocks, int probes) {
+            this.epoch = epoch;
+            this.bits = new AtomicLongArray(blocks * BLOCK_LONGS);
+            this.probes = probes;
+        }
+
+        // Probe i is the top 9 bits of h * C^(i+1). Not double hashing (a + i * step): within 512 bits that has only
+        // 2^17 probe patterns, and ids sharing a block and a pattern put a floor of about 1e-4 under the false
+        // positive rate.
+        private boolean mightContain(int block, long h) {
+            long x = h;
+            for (int i = 0; i < probes; i++) {
+                x *= 0x9E3779B97F4A7C15L;
+                int bit = (int) (x >>> 55);
+                if ((bits.get(block + (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(int block, long h) {
+            long x = h;
+            for (int i = 0; i < probes; i++) {
+                x *= 0x9E3779B97F4A7C15L;
+                int bit = (int) (x >>> 55);
+                int word = block + (bit >>> 6);
+                long mask = 1L << bit;
+                long v = bits.get(word);
+                while ((v & mask) == 0 && !bits.compareAndSet(word, v, v | mask)) {
+                    v = bits.get(word);
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Duration window = DEFAULT_WINDOW;
+        private int maximumIdsPerWindow = DEFAULT_MAXIMUM_IDS_PER_WINDOW;
+        private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+        private int exactRecentIds = DEFAULT_EXACT_RECENT_IDS;
+
+        private Builder() {
+        }
+
+        // How long an id is remembered at least; longer than the worst redelivery delay (rebalance, consumer restart).
+        public Builder window(Duration window) {
+            Objects.requireNonNull(window, "window");
+            if (window.toMillis() < GENERATIONS - 1) {
+                throw new IllegalArgumentException("window must be >= " + (GENERATIONS - 1) + "ms");
+            }
+            this.window = window;
+            return this;
+        }
+
+        // Ids per window the false positive rate holds for; memory grows linearly with it. Beyond it lookups keep
+        // working but the Bloom filters saturate and PROBABLE_DUPLICATE gets more likely.
+        public Builder maximumIdsPerWindow(int maximumIdsPerWindow) {
+            if (maximumIdsPerWindow <= 0) {
+                throw new IllegalArgumentException("maximumIdsPerWindow must be > 0");
+            }
+            this.maximumIdsPerWindow = maximumIdsPerWindow;
+            return this;
+        }
+
+        // Chance that a new id is reported as PROBABLE_DUPLICATE.
+        public Builder falsePositiveRate(double falsePositiveRate) {
+            if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+                throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+            }
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        // Size of the exact tier (8 bytes each).
+        public Builder exactRecentIds(int exactRecentIds) {
+            if (exactRecentIds < WAYS) {
+                throw new IllegalArgumentException("exactRecentIds must be >= " + WAYS);
+            }
+            this.exactRecentIds = exactRecentIds;
+            return this;
+        }
+
+        public MqEventDeduplicator build() {
+            return new MqEventDeduplicator(this);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Dispatches MqEvents to the listeners registered for their event_type, in place of chaining
+// MqEventDecoder.tryDecodeConnectAck / tryDecodeMessage per record. The route is a lookup by the enum's ordinal and
+// event_data is decoded once, whatever the number of listeners: ConnectAck for CONNECT_ONLINE / CONNECT_OFFLINE,
+// MessageRequest for SINGLE_CHAT_MSG / GROUP_CHAT_MSG / OFFLINE_MESSAGE.
+//
+// Immutable once built, so one router can be shared by all consumer threads. Listeners run on the calling thread, in
+// registration order; what they throw propagates to the caller of route().
+public final class MqEventRouter {
+    public interface Listener<T> {
+        void onEvent(MqEvent evt, T payload);
+    }
+
+    public interface Fallback {
+        void onUnrouted(MqEvent evt, Reason reason);
+    }
+
+    public enum Reason {
+        // event_type is a number this SDK does not know (a newer gateway).
+        UNKNOWN_TYPE,
+        NO_LISTENER,
+        EMPTY_EVENT_DATA,
+        MALFORMED_EVENT_DATA
+    }
+
+    private static final Fallback IGNORE = (evt, reason) -> {
+    };
+
+    private final Route[] routes;
+    private final Fallback fallback;
+
+    private MqEventRouter(Builder b) {
+        this.routes = new Route[EventType.values().length];
+        for (Map.Entry<EventType, List<Listener<Object>>> e : b.listeners.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Listener<Object>[] listeners = e.getValue().toArray(new Listener[0]);
+            routes[e.getKey().ordinal()] = new Route(parser(e.getKey()), listeners);
+        }
+        this.fallback = b.fallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // true when the listeners of the event's type ran; otherwise the fallback was called with the reason.
+    public boolean route(MqEvent evt) {
+        Objects.requireNonNull(evt, "evt");
+        EventType type = evt.getEventType();
+        Route route = routes[type.ordinal()];
+        if (route == null) {
+            fallback.onUnrouted(evt, type == EventType.UNRECOGNIZED ? Reason.UNKNOWN_TYPE : Reason.NO_LISTENER);
+            return false;
+        }
+        ByteString data = evt.getEventData();
+        if (data.isEmpty()) {
+            fallback.onUnrouted(evt, Reason.EMPTY_EVENT_DATA);
+            return false;
+        }
+        Object payload;
+        try {
+            payload = route.parser.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            fallback.onUnrouted(evt, Reason.MALFORMED_EVENT_DATA);
+            return false;
+        }
+        for (Listener<Object> listener : route.listeners) {
+            listener.onEvent(evt, payload);
+        }
+        return true;
+    }
+
+    private static Parser<?> parser(EventType type) {
+        switch (type) {
+            case CONNECT_ONLINE:
+            case CONNECT_OFFLINE:
+                return ConnectAck.parser();
+            case SINGLE_CHAT_MSG:
+            case GROUP_CHAT_MSG:
+            case OFFLINE_MESSAGE:
+                return MessageRequest.parser();
+            default:
+                return null;
+        }
+    }
+
+    private static final class Route {
+        private final Parser<?> parser;
+        private final Listener<Object>[] listeners;
+
+        private Route(Parser<?> parser, Listener<Object>[] listeners) {
+            this.parser = parser;
+            this.listeners = listeners;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<EventType, List<Listener<Object>>> listeners = new EnumMap<>(EventType.class);
+        private Fallback fallback = IGNORE;
+
+        private Builder() {
+        }
+
+        // CONNECT_ONLINE or CONNECT_OFFLINE.
+        public Builder onConnectAck(EventType type, Listener<? super ConnectAck> listener) {
+            return add(type, ConnectAck.parser(), listener);
+        }
+
+        // Both CONNECT_ONLINE and CONNECT_OFFLINE.
+        public Builder onConnectAck(Listener<? super ConnectAck> listener) {
+            return onConnectAck(EventType.CONNECT_ONLINE, listener).onConnectAck(EventType.CONNECT_OFFLINE, listener);
+        }
+
+        // SINGLE_CHAT_MSG, GROUP_CHAT_MSG or OFFLINE_MESSAGE.
+        public Builder onMessage(EventType type, Listener<? super MessageRequest> listener) {
+            return add(type, MessageRequest.parser(), listener);
+        }
+
+        // All of SINGLE_CHAT_MSG, GROUP_CHAT_MSG and OFFLINE_MESSAGE.
+        public Builder onMessage(Listener<? super MessageRequest> listener) {
+            return onMessage(EventType.SINGLE_CHAT_MSG, listener)
+                    .onMessage(EventType.GROUP_CHAT_MSG, listener)
+                    .onMessage(EventType.OFFLINE_MESSAGE, listener);
+        }
+
+        // Called for events no listener took; ignored by default.
+        public Builder fallback(Fallback fallback) {
+            this.fallback = Objects.requireNonNull(fallback, "fallback");
+            return this;
+        }
+
+        public MqEventRouter build() {
+            return new MqEventRouter(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Builder add(EventType type, Parser<?> payloadParser, Listener<?> listener) {
+            Objects.requireNonNull(type, "type");
+            Objects.requireNonNull(listener, "listener");
+            if (parser(type) != payloadParser) {
+                throw new IllegalArgumentException(type + " events do not carry a " + payloadName(payloadParser));
+            }
+            listeners.computeIfAbsent(type, k -> new ArrayList<>()).add((Listener<Object>) listener);
+            return this;
+        }
+
+        private static String payloadName(Parser<?> payloadParser) {
+            return payloadParser == ConnectAck.parser() ? "ConnectAck" : "MessageRequest";
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.mics.hooksdk;
 
 import com.mics.contracts.hook.v1.MqEvent;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.util.Base64;
 
 public final class MqEventSigner {
@@ -14,26 +12,54 @@ public final class MqEventSigner {
         if (tenantSecret == null || tenantSecret.isBlank()) {
             throw new IllegalArgumentException("tenantSecret is blank");
         }
-        return computeBase64(tenantSecret.getBytes(StandardCharsets.UTF_8), evtWithSignCleared);
+        if (evtWithSignCleared == null) {
+            throw new IllegalArgumentException("evtWithSignCleared is null");
+        }
+        return computeBase64(TenantHmacCache.shared().get(evtWithSignCleared.getTenantId(), tenantSecret), evtWithSignCleared);
     }
 
     public static String computeBase64(byte[] tenantSecret, MqEvent evtWithSignCleared) {
+        return computeBase64(HmacSha256Key.of(tenantSecret), evtWithSignCleared);
+    }
+
+    public static String computeBase64(HmacSha256Key key, MqEvent evtWithSignCleared) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
         if (evtWithSignCleared == null) {
             throw new IllegalArgumentException("evtWithSignCleared is null");
         }
         byte[] payload = evtWithSignCleared.toByteArray();
-        byte[] sig = HmacSign.hmacSha256(tenantSecret, payload);
-        return Base64.getEncoder().encodeToString(sig);
+        HmacEngine mac = key.lease();
+        try {
+            mac.update(payload, 0, payload.length);
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } finally {
+            key.release(mac);
+        }
     }
 
     public static boolean verify(String tenantSecret, MqEvent evt, boolean requireSign) {
         if (tenantSecret == null || tenantSecret.isBlank()) {
             return false;
         }
-        return verify(tenantSecret.getBytes(StandardCharsets.UTF_8), evt, requireSign);
+        if (evt == null) {
+            return false;
+        }
+        return verify(TenantHmacCache.shared().get(evt.getTenantId(), tenantSecret), evt, requireSign);
     }
 
     public static boolean verify(byte[] tenantSecret, MqEvent evt, boolean requireSign) {
+        if (evt == null) {
+            return false;
+        }
+        if (!hasSign(evt)) {
+            return !requireSign;
+        }
+        return verify(HmacSha256Key.of(tenantSecret), evt, requireSign);
+    }
+
+    public static boolean verify(HmacSha256Key key, MqEvent evt, boolean requireSign) {
         if (evt == null) {
             return false;
         }
@@ -45,16 +71,79 @@ public final class MqEventSigner {
             return true;
         }
 
-        byte[] provided;
+        if (key == null) {
+            return false;
+        }
+
+        byte[] payload = evt.toBuilder().clearSign().build().toByteArray();
+        HmacEngine mac = key.lease();
         try {
-            provided = CanonicalBase64.decodeCanonical(sign);
-        } catch (IllegalArgumentException e) {
+            mac.update(payload, 0, payload.length);
+            return CanonicalBase64.matches(mac.doFinal(), sign);
+        } finally {
+            key.release(mac);
+        }
+    }
+
+    public static boolean verify(String tenantSecret, byte[] serializedEvent, boolean requireSign) {
+        if (tenantSecret == null || tenantSecret.isBlank() || serializedEvent == null) {
             return false;
         }
+        MqEventWire.Layout layout = new MqEventWire.Layout();
+        if (!MqEventWire.scan(serializedEvent, 0, serializedEvent.length, layout)) {
+            return false;
+        }
+        if (!layout.hasSign(serializedEvent)) {
+            return !requireSign;
+        }
+        HmacSha256Key key = TenantHmacCache.shared().get(layout.tenantId(serializedEvent), tenantSecret);
+        return MqEventWire.verify(key, serializedEvent, 0, serializedEvent.length, layout, requireSign);
+    }
 
-        MqEvent payload = evt.toBuilder().clearSign().build();
-        byte[] expected = Base64.getDecoder().decode(computeBase64(tenantSecret, payload));
-        return MessageDigest.isEqual(expected, provided);
+    public static boolean verify(byte[] tenantSecret, byte[] serializedEvent, boolean requireSign) {
+        if (serializedEvent == null) {
+            return false;
+        }
+        MqEventWire.Layout layout = new MqEventWire.Layout();
+        if (!MqEventWire.scan(serializedEvent, 0, serializedEvent.length, layout)) {
+            return false;
+        }
+        if (!layout.hasSign(serializedEvent)) {
+            return !requireSign;
+        }
+        return MqEventWire.verify(HmacSha256Key.of(tenantSecret), serializedEvent, 0, serializedEvent.length, layout, requireSign);
     }
-}
 
+    public static boolean verify(HmacSha256Key key, byte[] serializedEvent, boolean requireSign) {
+        if (serializedEvent == null) {
+            return false;
+        }
+        return verify(key, serializedEvent, 0, serializedEvent.length, requireSign);
+    }
+
+    // Accepts either key of a tenant in rotation, primary first.
+    public static boolean verify(TenantKeys keys, byte[] serializedEvent, int offset, int length, boolean requireSign) {
+        if (keys == null) {
+            return false;
+        }
+        if (verify(keys.primary(), serializedEvent, offset, length, requireSign)) {
+            return true;
+        }
+        return keys.secondary() != null && verify(keys.secondary(), serializedEvent, offset, length, requireSign);
+    }
+
+    public static boolean verify(HmacSha256Key key, byte[] serializedEvent, int offset, int length, boolean requireSign) {
+        if (key == null || serializedEvent == null) {
+            return false;
+        }
+        if (offset < 0 || length < 0 || length > serializedEvent.length - offset) {
+            throw new IndexOutOfBoundsException("offset/length out of range");
+        }
+        return MqEventWire.verify(key, serializedEvent, offset, length, requireSign);
+    }
+
+    private static boolean hasSign(MqEvent evt) {
+        String sign = evt.getSign();
+        return sign != null && !sign.isBlank();
+    }
+}
@@ -0,0 +1,496 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_END_GROUP;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_FIXED32;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_FIXED64;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_LENGTH_DELIMITED;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_START_GROUP;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_VARINT;
+
+// Reads the header fields of a serialized MqEvent in place, for consumers that route or drop most events before
+// they need the payload. wrap() is free; the first accessor makes one pass over the top-level fields and records
+// where each one is, without copying anything. event_data, the payload and the full MqEvent are only built when
+// asked for.
+//
+// Filtering through eventType(), timestamp() and the *Equals methods allocates nothing, so one view can be reused
+// for a whole poll batch. Not thread-safe; the wrapped bytes must not change while the view is in use.
+public final class MqEventView {
+    private static final int MAX_FIELD = 12;
+    private static final int TENANT_ID = 1;
+    private static final int EVENT_TYPE = 2;
+    private static final int MSG_ID = 3;
+    private static final int USER_ID = 4;
+    private static final int DEVICE_ID = 5;
+    private static final int TO_USER_ID = 6;
+    private static final int GROUP_ID = 7;
+    private static final int EVENT_DATA = 8;
+    private static final int TIMESTAMP = 9;
+    private static final int NODE_ID = 10;
+    private static final int TRACE_ID = 12;
+
+    private byte[] array;
+    private ByteBuffer buffer;
+    private int offset;
+    private int end;
+
+    private boolean scanned;
+    private boolean valid;
+    private int eventType;
+    private long timestamp;
+    // By field number: where the value of each length-delimited field starts and ends; equal when absent.
+    private final int[] starts = new int[MAX_FIELD + 1];
+    private final int[] ends = new int[MAX_FIELD + 1];
+
+    public MqEventView wrap(byte[] record) {
+        Objects.requireNonNull(record, "record");
+        return wrap(record, 0, record.length);
+    }
+
+    public MqEventView wrap(byte[] record, int offset, int length) {
+        Objects.requireNonNull(record, "record");
+        if (offset < 0 || length < 0 || length > record.length - offset) {
+            throw new IndexOutOfBoundsException("offset/length out of range");
+        }
+        this.array = record;
+        this.buffer = null;
+        this.offset = offset;
+        this.end = offset + length;
+        this.scanned = false;
+        return this;
+    }
+
+    // The bytes between position and limit; the buffer's position is not moved.
+    public MqEventView wrap(ByteBuffer record) {
+        Objects.requireNonNull(record, "record");
+        if (record.hasArray()) {
+            return wrap(record.array(), record.arrayOffset() + record.position(), record.remaining());
+        }
+        this.array = null;
+        this.buffer = record;
+        this.offset = record.position();
+        this.end = record.limit();
+        this.scanned = false;
+        return this;
+    }
+
+    // false when the wrapped bytes are not a well-formed MqEvent; every other accessor throws then.
+    public boolean isValid() {
+        if (!scanned) {
+            scan();
+        }
+        return valid;
+    }
+
+    public int eventType() {
+        check();
+        return eventType;
+    }
+
+    // null for numbers this SDK does not know.
+    public EventType getEventType() {
+        check();
+        return EventType.forNumber(eventType);
+    }
+
+    public long timestamp() {
+        check();
+        return timestamp;
+    }
+
+    public boolean tenantIdEquals(CharSequence value) {
+        return fieldEquals(TENANT_ID, value);
+    }
+
+    public boolean msgIdEquals(CharSequence value) {
+        return fieldEquals(MSG_ID, value);
+    }
+
+    public boolean userIdEquals(CharSequence value) {
+        return fieldEquals(USER_ID, value);
+    }
+
+    public boolean toUserIdEquals(CharSequence value) {
+        return fieldEquals(TO_USER_ID, value);
+    }
+
+    public boolean groupIdEquals(CharSequence value) {
+        return fieldEquals(GROUP_ID, value);
+    }
+
+    public boolean nodeIdEquals(CharSequence value) {
+        return fieldEquals(NODE_ID, value);
+    }
+
+    public String getTenantId() {
+        return string(TENANT_ID);
+    }
+
+    public String getMsgId() {
+        return string(MSG_ID);
+    }
+
+    public String getUserId() {
+        return string(USER_ID);
+    }
+
+    public String getDeviceId() {
+        return string(DEVICE_ID);
+    }
+
+    public String getToUserId() {
+        return string(TO_USER_ID);
+    }
+
+    public String getGroupId() {
+        return string(GROUP_ID);
+    }
+
+    public String getNodeId() {
+        return string(NODE_ID);
+    }
+
+    public String getTraceId() {
+        return string(TRACE_ID);
+    }
+
+    public int getEventDataLength() {
+        check();
+        return ends[EVENT_DATA] - starts[EVENT_DATA];
+    }
+
+    // A copy of event_data.
+    public ByteString getEventData() {
+        check();
+        if (array != null) {
+            return ByteString.copyFrom(array, starts[EVENT_DATA], ends[EVENT_DATA] - starts[EVENT_DATA]);
+        }
+        return ByteString.copyFrom(slice(starts[EVENT_DATA], ends[EVENT_DATA]));
+    }
+
+    // event_data parsed straight from the wrapped bytes; null unless the event type carries a MessageRequest
+    // (SINGLE_CHAT_MSG, GROUP_CHAT_MSG, OFFLINE_MESSAGE) and it decodes.
+    public MessageRequest decodeMessage() {
+        check();
+        if (eventType != EventType.SINGLE_CHAT_MSG_VALUE && eventType != EventType.GROUP_CHAT_MSG_VALUE
+                && eventType != EventType.OFFLINE_MESSAGE_VALUE) {
+            return null;
+        }
+        return decodeEventData(MessageRequest.parser());
+    }
+
+    // null unless the event type is CONNECT_ONLINE or CONNECT_OFFLINE and event_data decodes.
+    public ConnectAck decodeConnectAck() {
+        check();
+        if (eventType != EventType.CONNECT_ONLINE_VALUE && eventType != EventType.CONNECT_OFFLINE_VALUE) {
+            return null;
+        }
+        return decodeEventData(ConnectAck.parser());
+    }
+
+    public MqEvent toMqEvent() {
+        check();
+        try {
+            if (array != null) {
+                return MqEvent.parser().parseFrom(array, offset, end - offset);
+            }
+            return MqEvent.parseFrom(slice(offset, end));
+        } catch (InvalidProtocolBufferException e) {
+            // The scan accepted it; protobuf is stricter only about UTF-8 in string fields.
+            throw new IllegalStateException("MqEvent does not parse", e);
+        }
+    }
+
+    private <T> T decodeEventData(Parser<T> parser) {
+        int start = starts[EVENT_DATA];
+        int length = ends[EVENT_DATA] - start;
+        if (length == 0) {
+            return null;
+        }
+        try {
+            return array != null ? parser.parseFrom(array, start, length) : parser.parseFrom(slice(start, ends[EVENT_DATA]));
+        } catch (InvalidProtocolBufferException e) {
+            return null;
+        }
+    }
+
+    private String string(int field) {
+        check();
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length == 0) {
+            return "";
+        }
+        if (array != null) {
+            return new String(array, start, length, StandardCharsets.UTF_8);
+        }
+        byte[] copy = new byte[length];
+        buffer.get(start, copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer slice(int start, int stop) {
+        return buffer.duplicate().limit(stop).position(start);
+    }
+
+    int msgIdLength() {
+        check();
+        return ends[MSG_ID] - starts[MSG_ID];
+    }
+
+    // MqEventDeduplicator.hash(tenant_id, msg_id) without building either string.
+    long dedupHash() {
+        check();
+        long h = feed(TENANT_ID, 0x9E3779B97F4A7C15L);
+        h = MqEventDeduplicator.step(h, 0xFFFF);
+        return MqEventDeduplicator.finish(feed(MSG_ID, h));
+    }
+
+    // Steps h over the UTF-16 units of a string field; bytes that are not UTF-8 count as U+FFFD, as in new String().
+    private long feed(int field, long h) {
+        int pos = starts[field];
+        int stop = ends[field];
+        while (pos < stop) {
+            int b = at(pos) & 0xFF;
+            if (b < 0x80) {
+                h = MqEventDeduplicator.step(h, b);
+                pos++;
+                continue;
+            }
+            int cp = codePoint(pos, stop, b);
+            if (cp < 0) {
+                h = MqEventDeduplicator.step(h, 0xFFFD);
+                pos++;
+            } else if (cp < 0x10000) {
+                h = MqEventDeduplicator.step(h, cp);
+                pos += utf8Length(b);
+            } else {
+                h = MqEventDeduplicator.step(h, Character.highSurrogate(cp));
+                h = MqEventDeduplicator.step(h, Character.lowSurrogate(cp));
+                pos += 4;
+            }
+        }
+        return h;
+    }
+
+    // Compares the UTF-8 bytes in place against the UTF-16 value, decoding as it goes.
+    private boolean fieldEquals(int field, CharSequence value) {
+        check();
+        int pos = starts[field];
+        int stop = ends[field];
+        int n = value.length();
+        int i = 0;
+        while (pos < stop) {
+            int b = at(pos) & 0xFF;
+            if (b < 0x80) {
+                if (i == n || value.charAt(i) != b) {
+                    return false;
+                }
+                pos++;
+                i++;
+                continue;
+            }
+            int cp = codePoint(pos, stop, b);
+            if (cp < 0) {
+                return false;
+            }
+            pos += utf8Length(b);
+            if (cp < 0x10000) {
+                if (i == n || value.charAt(i) != cp) {
+                    return false;
+                }
+                i++;
+            } else {
+                if (n - i < 2 || value.charAt(i) != Character.highSurrogate(cp) || value.charAt(i + 1) != Character.lowSurrogate(cp)) {
+                    return false;
+                }
+                i += 2;
+            }
+        }
+        return i == n;
+    }
+
+    // The code point of the multi-byte sequence starting with lead byte b at pos, or -1 when it is not valid UTF-8.
+    private int codePoint(int pos, int stop, int b) {
+        int len = utf8Length(b);
+        if (len == 0 || stop - pos < len) {
+            return -1;
+        }
+        int cp = b & (0xFF >>> (len + 1));
+        for (int k = 1; k < len; k++) {
+            int c = at(pos + k) & 0xFF;
+            if ((c & 0xC0) != 0x80) {
+                return -1;
+            }
+            cp = (cp << 6) | (c & 0x3F);
+        }
+        return cp;
+    }
+
+    private static int utf8Length(int b) {
+        if (b >= 0xC2 && b < 0xE0) {
+            return 2;
+        }
+        if (b >= 0xE0 && b < 0xF0) {
+            return 3;
+        }
+        if (b >= 0xF0 && b < 0xF5) {
+            return 4;
+        }
+        return 0;
+    }
+
+    private void check() {
+        if (!isValid()) {
+            throw new IllegalStateException("not a well-formed MqEvent");
+        }
+    }
+
+    private byte at(int i) {
+        return array != null ? array[i] : buffer.get(i);
+    }
+
+    private void scan() {
+        scanned = true;
+        valid = false;
+        eventType = 0;
+        timestamp = 0;
+        for (int f = 1; f <= MAX_FIELD; f++) {
+            starts[f] = offset;
+            ends[f] = offset;
+        }
+
+        int pos = offset;
+        while (pos < end) {
+            long tag = varint(pos);
+            if (tag < 0) {
+                return;
+            }
+            pos = varintEnd(pos);
+            long field = tag >>> 3;
+            int wireType = (int) (tag & 7);
+            if (field == 0) {
+                return;
+            }
+            if (field == EVENT_TYPE || field == TIMESTAMP) {
+                if (wireType != WIRETYPE_VARINT) {
+                    return;
+                }
+                long v = varint(pos);
+                if (v == -1 && !isVarint(pos)) {
+                    return;
+                }
+                if (field == EVENT_TYPE) {
+                    eventType = (int) v;
+                } else {
+                    timestamp = v;
+                }
+                pos = varintEnd(pos);
+            } else if (field <= MAX_FIELD) {
+                if (wireType != WIRETYPE_LENGTH_DELIMITED) {
+                    return;
+                }
+                int valueStart = lengthDelimitedStart(pos);
+                if (valueStart < 0) {
+                    return;
+                }
+                int valueEnd = valueStart + (int) varint(pos);
+                starts[(int) field] = valueStart;
+                ends[(int) field] = valueEnd;
+                pos = valueEnd;
+            } else {
+                pos = skip(pos, tag);
+                if (pos < 0) {
+                    return;
+                }
+            }
+        }
+        valid = true;
+    }
+
+    // The varint at pos as an unsigned 64-bit value, or -1 when it is truncated or too long. Values that really
+    // are -1 (all ones) are told apart with isVarint().
+    private long varint(int pos) {
+        long result = 0;
+        int max = Math.min(end, pos + 10);
+        for (int shift = 0; pos < max; shift += 7) {
+            byte b = at(pos++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isVarint(int pos) {
+        int max = Math.min(end, pos + 10);
+        for (int i = pos; i < max; i++) {
+            if (at(i) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Only after varint() or isVarint() accepted pos.
+    private int varintEnd(int pos) {
+        while (at(pos) < 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private int lengthDelimitedStart(int pos) {
+        long len = varint(pos);
+        if (len < 0) {
+            return -1;
+        }
+        int start = varintEnd(pos);
+        return len > end - start ? -1 : start;
+    }
+
+    private int skip(int pos, long tag) {
+        switch ((int) (tag & 7)) {
+            case WIRETYPE_VARINT:
+                return isVarint(pos) ? varintEnd(pos) : -1;
+            case WIRETYPE_FIXED64:
+                return end - pos >= 8 ? pos + 8 : -1;
+            case WIRETYPE_LENGTH_DELIMITED: {
+                int start = lengthDelimitedStart(pos);
+                return start < 0 ? -1 : start + (int) varint(pos);
+            }
+            case WIRETYPE_FIXED32:
+                return end - pos >= 4 ? pos + 4 : -1;
+            case WIRETYPE_START_GROUP:
+                while (pos < end) {
+                    long inner = varint(pos);
+                    if (inner < 0) {
+                        return -1;
+                    }
+                    pos = varintEnd(pos);
+                    if ((inner & 7) == WIRETYPE_END_GROUP) {
+                        return (inner >>> 3) == (tag >>> 3) ? pos : -1;
+                    }
+                    pos = skip(pos, inner);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.mics.hooksdk;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_LENGTH_DELIMITED;
+import static com.mics.hooksdk.ProtoWire.WIRETYPE_VARINT;
+import static com.mics.hooksdk.ProtoWire.fieldNumber;
+import static com.mics.hooksdk.ProtoWire.skipField;
+import static com.mics.hooksdk.ProtoWire.varintEnd;
+import static com.mics.hooksdk.ProtoWire.varintValue;
+import static com.mics.hooksdk.ProtoWire.wireType;
+
+// MqEvent is signed over its own serialization with field 11 (sign) removed; no length prefixes need patching.
+final class MqEventWire {
+    static final int TENANT_ID = 1;
+    static final int EVENT_TYPE = 2;
+    static final int EVENT_DATA = 8;
+    static final int SIGN = 11;
+
+    private MqEventWire() {
+    }
+
+    static final class Layout {
+        int tenantIdStart;
+        int tenantIdEnd;
+        int eventType;
+        int eventDataStart;
+        int eventDataEnd;
+        int signFieldStart;
+        int signStart;
+        int signFieldEnd;
+
+        String tenantId(byte[] buf) {
+            return new String(buf, tenantIdStart, tenantIdEnd - tenantIdStart, StandardCharsets.UTF_8);
+        }
+
+        boolean hasSign(byte[] buf) {
+            return signStart >= 0 && !isBlank(buf, signStart, signFieldEnd);
+        }
+    }
+
+    // Single pass over the top-level fields; returns false when the record is not a well-formed MqEvent.
+    static boolean scan(byte[] buf, int offset, int length, Layout out) {
+        out.tenantIdStart = offset;
+        out.tenantIdEnd = offset;
+        out.eventType = 0;
+        out.eventDataStart = offset;
+        out.eventDataEnd = offset;
+        out.signFieldStart = -1;
+        out.signStart = -1;
+        out.signFieldEnd = -1;
+
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            int fieldStart = pos;
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return false;
+            }
+            long tag = varintValue(buf, pos);
+            if (fieldNumber(tag) == 0) {
+                return false;
+            }
+            pos = tagEnd;
+            switch (fieldNumber(tag)) {
+                case TENANT_ID:
+                    if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED) {
+                        return false;
+                    }
+                    out.tenantIdStart = varintEnd(buf, pos, end);
+                    out.tenantIdEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                    if (out.tenantIdEnd < 0) {
+                        return false;
+                    }
+                    pos = out.tenantIdEnd;
+                    break;
+                case EVENT_TYPE:
+                    if (wireType(tag) != WIRETYPE_VARINT) {
+                        return false;
+                    }
+                    int typeEnd = varintEnd(buf, pos, end);
+                    if (typeEnd < 0) {
+                        return false;
+                    }
+                    out.eventType = (int) varintValue(buf, pos);
+                    pos = typeEnd;
+                    break;
+                case EVENT_DATA:
+                    if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED) {
+                        return false;
+                    }
+                    out.eventDataStart = varintEnd(buf, pos, end);
+                    out.eventDataEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                    if (out.eventDataEnd < 0) {
+                        return false;
+                    }
+                    pos = out.eventDataEnd;
+                    break;
+                case SIGN:
+                    if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED || out.signFieldStart >= 0) {
+                        return false;
+                    }
+                    out.signFieldStart = fieldStart;
+                    out.signStart = varintEnd(buf, pos, end);
+                    out.signFieldEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                    if (out.signFieldEnd < 0) {
+                        return false;
+                    }
+                    pos = out.signFieldEnd;
+                    break;
+                default:
+                    pos = skipField(buf, pos, end, tag);
+                    if (pos < 0) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    static boolean verify(HmacSha256Key key, byte[] buf, int offset, int length, boolean requireSign) {
+        int end = offset + length;
+        int pos = offset;
+        int signFieldStart = -1;
+        int signStart = -1;
+        int signFieldEnd = -1;
+        while (pos < end) {
+            int fieldStart = pos;
+            int tagEnd = varintEnd(buf, pos, end);
+            if (tagEnd < 0) {
+                return false;
+            }
+            long tag = varintValue(buf, pos);
+            if (fieldNumber(tag) == 0) {
+                return false;
+            }
+            pos = tagEnd;
+            if (fieldNumber(tag) == SIGN) {
+                if (wireType(tag) != WIRETYPE_LENGTH_DELIMITED || signFieldStart >= 0) {
+                    return false;
+                }
+                signFieldStart = fieldStart;
+                signStart = varintEnd(buf, pos, end);
+                signFieldEnd = ProtoWire.lengthDelimitedEnd(buf, pos, end);
+                if (signFieldEnd < 0) {
+                    return false;
+                }
+                pos = signFieldEnd;
+                continue;
+            }
+            pos = skipField(buf, pos, end, tag);
+            if (pos < 0) {
+                return false;
+            }
+        }
+        return verifyScanned(key, buf, offset, end, signFieldStart, signStart, signFieldEnd, requireSign);
+    }
+
+    static boolean verify(HmacSha256Key key, byte[] buf, int offset, int length, Layout layout, boolean requireSign) {
+        return verifyScanned(key, buf, offset, offset + length, layout.signFieldStart, layout.signStart, layout.signFieldEnd, requireSign);
+    }
+
+    // For a record whose layout hasSign(); mac is left reset by doFinal() and can go straight on to the next record.
+    static boolean verifySigned(HmacEngine mac, byte[] buf, int offset, int length, Layout layout) {
+        mac.update(buf, offset, layout.signFieldStart - offset);
+        mac.update(buf, layout.signFieldEnd, offset + length - layout.signFieldEnd);
+        return CanonicalBase64.matches(mac.doFinal(), buf, layout.signStart, layout.signFieldEnd);
+    }
+
+    private static boolean verifyScanned(HmacSha256Key key, byte[] buf, int offset, int end,
+                                         int signFieldStart, int signStart, int signFieldEnd, boolean requireSign) {
+        if (signStart < 0 || isBlank(buf, signStart, signFieldEnd)) {
+            return !requireSign;
+        }
+
+        HmacEngine mac = key.lease();
+        try {
+            mac.update(buf, offset, signFieldStart - offset);
+            mac.update(buf, signFieldEnd, end - signFieldEnd);
+            return CanonicalBase64.matches(mac.doFinal(), buf, signStart, signFieldEnd);
+        } finally {
+            key.release(mac);
+        }
+    }
+
+    static boolean isBlank(byte[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(buf[i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
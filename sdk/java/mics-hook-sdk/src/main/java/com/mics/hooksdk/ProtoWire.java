@@ -0,0 +1,96 @@
+package com.mics.hooksdk;
+
+final class ProtoWire {
+    static final int WIRETYPE_VARINT = 0;
+    static final int WIRETYPE_FIXED64 = 1;
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    static final int WIRETYPE_START_GROUP = 3;
+    static final int WIRETYPE_END_GROUP = 4;
+    static final int WIRETYPE_FIXED32 = 5;
+
+    private ProtoWire() {
+    }
+
+    static int fieldNumber(long tag) {
+        return (int) (tag >>> 3);
+    }
+
+    static int wireType(long tag) {
+        return (int) (tag & 7);
+    }
+
+    // Returns the index just past the varint at pos, or -1 if it is truncated or longer than 10 bytes.
+    static int varintEnd(byte[] buf, int pos, int limit) {
+        int max = Math.min(limit, pos + 10);
+        for (int i = pos; i < max; i++) {
+            if (buf[i] >= 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Decodes a varint already bounds-checked with varintEnd.
+    static long varintValue(byte[] buf, int pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    // Returns the end of a length-delimited payload whose length varint starts at pos, or -1 if malformed.
+    static int lengthDelimitedEnd(byte[] buf, int pos, int limit) {
+        int lenEnd = varintEnd(buf, pos, limit);
+        if (lenEnd < 0) {
+            return -1;
+        }
+        long len = varintValue(buf, pos);
+        if (len < 0 || len > limit - lenEnd) {
+            return -1;
+        }
+        return lenEnd + (int) len;
+    }
+
+    // Skips the value of a field whose tag has already been consumed; returns the new position or -1.
+    static int skipField(byte[] buf, int pos, int limit, long tag) {
+        switch (wireType(tag)) {
+            case WIRETYPE_VARINT:
+                return varintEnd(buf, pos, limit);
+            case WIRETYPE_FIXED64:
+                return limit - pos >= 8 ? pos + 8 : -1;
+            case WIRETYPE_LENGTH_DELIMITED:
+                return lengthDelimitedEnd(buf, pos, limit);
+            case WIRETYPE_FIXED32:
+                return limit - pos >= 4 ? pos + 4 : -1;
+            case WIRETYPE_START_GROUP:
+                return skipGroup(buf, pos, limit, fieldNumber(tag));
+            default:
+                return -1;
+        }
+    }
+
+    private static int skipGroup(byte[] buf, int pos, int limit, int fieldNumber) {
+        while (pos < limit) {
+            int tagEnd = varintEnd(buf, pos, limit);
+            if (tagEnd < 0) {
+                return -1;
+            }
+            long tag = varintValue(buf, pos);
+            pos = tagEnd;
+            if (wireType(tag) == WIRETYPE_END_GROUP) {
+                return fieldNumber(tag) == fieldNumber ? pos : -1;
+            }
+            pos = skipField(buf, pos, limit, tag);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mics.hooksdk;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class TenantHmacCache {
+    public static final int DEFAULT_MAX_TENANTS = 4096;
+
+    private static final TenantHmacCache SHARED = new TenantHmacCache(DEFAULT_MAX_TENANTS);
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxTenants;
+
+    public TenantHmacCache(int maxTenants) {
+        if (maxTenants <= 0) {
+            throw new IllegalArgumentException("maxTenants must be > 0");
+        }
+        this.maxTenants = maxTenants;
+    }
+
+    public static TenantHmacCache shared() {
+        return SHARED;
+    }
+
+    public HmacSha256Key get(String tenantId, String tenantSecret) {
+        if (tenantSecret == null || tenantSecret.isBlank()) {
+            throw new IllegalArgumentException("tenantSecret is blank");
+        }
+        String k = tenantId == null ? "" : tenantId;
+
+        Entry e = entries.get(k);
+        if (e != null && e.secret.equals(tenantSecret)) {
+            if (!e.referenced) {
+                e.referenced = true;
+            }
+            return e.key;
+        }
+
+        // Either a miss or the provider returned a rotated secret: replace the whole entry.
+        Entry created = new Entry(tenantSecret, HmacSha256Key.of(tenantSecret));
+        entries.put(k, created);
+        if (entries.size() > maxTenants) {
+            evictOne();
+        }
+        return created.key;
+    }
+
+    public void invalidate(String tenantId) {
+        entries.remove(tenantId == null ? "" : tenantId);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxTenants() {
+        return maxTenants;
+    }
+
+    private void evictOne() {
+        // CLOCK-style second chance: recently used entries lose their mark first, idle ones are removed.
+        int budget = entries.size() * 2;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (budget-- > 0) {
+            if (!it.hasNext()) {
+                it = entries.entrySet().iterator();
+                if (!it.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<String, Entry> candidate = it.next();
+            Entry e = candidate.getValue();
+            if (e.referenced) {
+                e.referenced = false;
+                continue;
+            }
+            if (entries.remove(candidate.getKey(), e)) {
+                return;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String secret;
+        private final HmacSha256Key key;
+        private volatile boolean referenced;
+
+        private Entry(String secret, HmacSha256Key key) {
+            this.secret = secret;
+            this.key = key;
+            this.referenced = true;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mics.hooksdk;
+
+import java.util.List;
+import java.util.Objects;
+
+// Pre-keyed HMAC keys valid for one tenant: the current secret and, while a rotation is rolling out, the previous
+// (or next) one. Signatures are checked against primary first, then secondary.
+public final class TenantKeys {
+    private final HmacSha256Key primary;
+    private final HmacSha256Key secondary;
+
+    private TenantKeys(HmacSha256Key primary, HmacSha256Key secondary) {
+        this.primary = Objects.requireNonNull(primary, "primary");
+        this.secondary = secondary;
+    }
+
+    public static TenantKeys of(HmacSha256Key primary) {
+        return new TenantKeys(primary, null);
+    }
+
+    public static TenantKeys of(HmacSha256Key primary, HmacSha256Key secondary) {
+        return new TenantKeys(primary, secondary);
+    }
+
+    // One or two secrets in the order they are tried; null for an empty list (unknown tenant).
+    public static TenantKeys ofSecrets(List<String> secrets) {
+        if (secrets == null || secrets.isEmpty()) {
+            return null;
+        }
+        if (secrets.size() > 2) {
+            throw new IllegalArgumentException("at most two secrets per tenant, got " + secrets.size());
+        }
+        return new TenantKeys(HmacSha256Key.of(secrets.get(0)), secrets.size() == 2 ? HmacSha256Key.of(secrets.get(1)) : null);
+    }
+
+    public HmacSha256Key primary() {
+        return primary;
+    }
+
+    // null outside a rotation.
+    public HmacSha256Key secondary() {
+        return secondary;
+    }
+}
@@ -0,0 +1,17 @@
+package com.mics.hooksdk;
+
+import java.util.List;
+import java.util.Map;
+
+// Source of tenant secrets behind CachingTenantSecretResolver (database, KMS, config service...).
+@FunctionalInterface
+public interface TenantSecretLoader {
+    // Valid secrets of the tenant in the order they should be tried (at most two, current first during a rotation);
+    // empty for an unknown tenant.
+    List<String> load(String tenantId) throws Exception;
+
+    // Every tenant at once, for CachingTenantSecretResolver.preload(); unsupported unless overridden.
+    default Map<String, List<String>> loadAll() throws Exception {
+        throw new UnsupportedOperationException("loadAll");
+    }
+}
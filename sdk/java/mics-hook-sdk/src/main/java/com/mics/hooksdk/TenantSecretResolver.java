@@ -0,0 +1,24 @@
+package com.mics.hooksdk;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+// Looks up the signing keys of a tenant on the request path. Implementations must be thread-safe and should not
+// block on I/O for tenants they have seen before; see CachingTenantSecretResolver.
+public interface TenantSecretResolver {
+    // null when the tenant is unknown.
+    TenantKeys resolve(String tenantId);
+
+    // Adapts a plain tenant id -> secret function (called on every request; blank means unknown). Keys are taken
+    // from TenantHmacCache.shared(), so a secret is only re-derived when the function returns a different one.
+    static TenantSecretResolver of(Function<String, String> tenantSecretProvider) {
+        Objects.requireNonNull(tenantSecretProvider, "tenantSecretProvider");
+        return tenantId -> {
+            String secret = tenantSecretProvider.apply(tenantId);
+            if (secret == null || secret.isBlank()) {
+                return null;
+            }
+            return TenantKeys.of(TenantHmacCache.shared().get(tenantId, secret));
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.mics.hooksdk.http;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Shared pool of heap byte arrays for request bodies and serialized responses, in power-of-two size classes
+// (1 KiB .. 1 MiB). Each class is a small array of slots claimed with CAS, so acquire/release allocate nothing and
+// never block; a class holds at most CLASS_BUDGET bytes. Arrays above the largest class are not pooled.
+// Acquired arrays are at least the requested size and may hold stale bytes.
+final class HeapBufferPool {
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 20;
+    private static final int CLASS_BUDGET = 2 * 1024 * 1024;
+    private static final int MAX_SLOTS = 64;
+    // Most a request body's declared length may reserve before any of the body has arrived.
+    static final int MAX_INITIAL_BODY = 64 * 1024;
+
+    private final AtomicReferenceArray<byte[]>[] classes;
+
+    @SuppressWarnings("unchecked")
+    HeapBufferPool() {
+        classes = new AtomicReferenceArray[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new AtomicReferenceArray<>(Math.max(2, Math.min(MAX_SLOTS, CLASS_BUDGET >> (MIN_SHIFT + i))));
+        }
+    }
+
+    byte[] acquire(int size) {
+        int c = classOf(size);
+        if (c < 0) {
+            return new byte[size];
+        }
+        AtomicReferenceArray<byte[]> slots = classes[c];
+        int n = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int idx = (start + i) % n;
+            byte[] b = slots.get(idx);
+            if (b != null && slots.compareAndSet(idx, b, null)) {
+                return b;
+            }
+        }
+        return new byte[1 << (MIN_SHIFT + c)];
+    }
+
+    // Only arrays obtained from acquire; others (and arrays while the class is full) are left to the GC.
+    void release(byte[] b) {
+        int c = classOf(b.length);
+        if (c < 0 || b.length != 1 << (MIN_SHIFT + c)) {
+            return;
+        }
+        AtomicReferenceArray<byte[]> slots = classes[c];
+        int n = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int idx = (start + i) % n;
+            if (slots.get(idx) == null && slots.compareAndSet(idx, null, b)) {
+                return;
+            }
+        }
+    }
+
+    // Moves b[0, used) into an array of at least size bytes; b goes back to the pool.
+    byte[] grow(byte[] b, int used, int size) {
+        byte[] grown = acquire(size);
+        System.arraycopy(b, 0, grown, 0, used);
+        release(b);
+        return grown;
+    }
+
+    // Array size for a request body that must now hold needed bytes (0 for the first array), given its declared
+    // length (-1 when unknown) and the current array. The declared length is the client's unverified word: it sizes
+    // at most MAX_INITIAL_BODY up front and otherwise only caps growth, which doubles from what actually arrived.
+    static int bodyCapacity(long declared, int current, int needed) {
+        long size = Math.max(needed, current * 2L);
+        if (declared > 0) {
+            size = Math.max(size, Math.min(declared, MAX_INITIAL_BODY));
+            if (declared >= needed) {
+                size = Math.min(size, declared);
+            }
+        }
+        return (int) size;
+    }
+
+    // -1 when the size is above the largest class.
+    static int classOf(int size) {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+}
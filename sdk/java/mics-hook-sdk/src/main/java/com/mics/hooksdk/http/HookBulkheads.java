@@ -0,0 +1,272 @@
+package com.mics.hooksdk.http;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// One compartment per (tenant, endpoint): at most maxConcurrent requests past admission and maxQueued waiting for a
+// permit; anything beyond is rejected before the body is parsed. A request holds its permit from admission until its
+// handler future completes. Waiting requests do not hold a thread: their continuation is parked in the compartment
+// and started by whichever request releases the permit (on the server executor, or trampolined inline in DIRECT mode).
+// Compartment state is only touched inside ConcurrentHashMap.compute, which also removes idle compartments.
+final class HookBulkheads {
+    private static final ThreadLocal<ArrayDeque<Runnable>> TRAMPOLINE = new ThreadLocal<>();
+
+    private final int[] maxConcurrent;
+    private final int[] maxQueued;
+    private final Executor executor;
+    private final ConcurrentHashMap<Key, Compartment> compartments = new ConcurrentHashMap<>();
+    private final LongAdder[] admitted;
+    private final LongAdder[] queued;
+    private final LongAdder[] rejected;
+
+    HookBulkheads(int[] maxConcurrent, int[] maxQueued, Executor executor) {
+        this.maxConcurrent = maxConcurrent.clone();
+        this.maxQueued = maxQueued.clone();
+        this.executor = executor;
+        int n = MicsHookEndpoint.values().length;
+        this.admitted = adders(n);
+        this.queued = adders(n);
+        this.rejected = adders(n);
+    }
+
+    // null when no endpoint has a limit.
+    static HookBulkheads create(MicsHookServerOptions options, Executor executor) {
+        MicsHookEndpoint[] endpoints = MicsHookEndpoint.values();
+        int[] limits = new int[endpoints.length];
+        int[] queues = new int[endpoints.length];
+        boolean any = false;
+        for (MicsHookEndpoint e : endpoints) {
+            limits[e.ordinal()] = options.getBulkheadMaxConcurrent(e);
+            queues[e.ordinal()] = options.getBulkheadMaxQueued(e);
+            any |= limits[e.ordinal()] > 0;
+        }
+        return any ? new HookBulkheads(limits, queues, executor) : null;
+    }
+
+    // null when the compartment and its queue are full.
+    Ticket acquire(MicsHookEndpoint endpoint, String tenantId) {
+        int e = endpoint.ordinal();
+        int limit = maxConcurrent[e];
+        if (limit <= 0) {
+            return Ticket.UNLIMITED;
+        }
+        int queueLimit = maxQueued[e];
+        Ticket t = new Ticket(this, new Key(tenantId, endpoint));
+        compartments.compute(t.key, (k, c) -> {
+            if (c == null) {
+                c = new Compartment();
+            }
+            if (c.active < limit) {
+                c.active++;
+                t.granted = true;
+            } else if (c.waiting.size() < queueLimit) {
+                c.waiting.add(t);
+            } else {
+                t.rejected = true;
+            }
+            return c;
+        });
+        if (t.rejected) {
+            rejected[e].increment();
+            return null;
+        }
+        (t.granted ? admitted : queued)[e].increment();
+        return t;
+    }
+
+    void writeTo(StringBuilder sb) {
+        MicsHookEndpoint[] endpoints = MicsHookEndpoint.values();
+        int[] active = new int[endpoints.length];
+        int[] waiting = new int[endpoints.length];
+        for (Map.Entry<Key, Compartment> entry : compartments.entrySet()) {
+            int e = entry.getKey().endpoint.ordinal();
+            // Racy snapshot; good enough for a gauge.
+            Compartment c = entry.getValue();
+            active[e] += c.active;
+            waiting[e] += c.waiting.size();
+        }
+        sb.append("# HELP mics_hook_bulkhead_requests_total Per-tenant bulkhead admissions by endpoint and result.\n");
+        sb.append("# TYPE mics_hook_bulkhead_requests_total counter\n");
+        for (MicsHookEndpoint e : endpoints) {
+            if (maxConcurrent[e.ordinal()] <= 0) {
+                continue;
+            }
+            counter(sb, e, "admitted", admitted[e.ordinal()].sum());
+            counter(sb, e, "queued", queued[e.ordinal()].sum());
+            counter(sb, e, "rejected", rejected[e.ordinal()].sum());
+        }
+        sb.append("# HELP mics_hook_bulkhead_active Requests holding a bulkhead permit, all tenants.\n");
+        sb.append("# TYPE mics_hook_bulkhead_active gauge\n");
+        for (MicsHookEndpoint e : endpoints) {
+            if (maxConcurrent[e.ordinal()] > 0) {
+                sb.append("mics_hook_bulkhead_active{endpoint=\"").append(e.getPath()).append("\"} ").append(active[e.ordinal()]).append('\n');
+            }
+        }
+        sb.append("# HELP mics_hook_bulkhead_queued Requests waiting for a bulkhead permit, all tenants.\n");
+        sb.append("# TYPE mics_hook_bulkhead_queued gauge\n");
+        for (MicsHookEndpoint e : endpoints) {
+            if (maxConcurrent[e.ordinal()] > 0) {
+                sb.append("mics_hook_bulkhead_queued{endpoint=\"").append(e.getPath()).append("\"} ").append(waiting[e.ordinal()]).append('\n');
+            }
+        }
+    }
+
+    long getRejectedCount(MicsHookEndpoint endpoint) {
+        return rejected[endpoint.ordinal()].sum();
+    }
+
+    int compartmentCount() {
+        return compartments.size();
+    }
+
+    private static void counter(StringBuilder sb, MicsHookEndpoint e, String result, long value) {
+        sb.append("mics_hook_bulkhead_requests_total{endpoint=\"").append(e.getPath())
+                .append("\",result=\"").append(result).append("\"} ").append(value).append('\n');
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new LongAdder();
+        }
+        return a;
+    }
+
+    private void run(Ticket t, Runnable continuation) {
+        Runnable[] now = new Runnable[1];
+        compartments.compute(t.key, (k, c) -> {
+            if (t.granted) {
+                now[0] = continuation;
+            } else {
+                t.continuation = continuation;
+            }
+            return c;
+        });
+        if (now[0] != null) {
+            now[0].run();
+        }
+    }
+
+    // Gives the permit of a finished (or abandoned) request to the oldest waiter, or back to the compartment.
+    private void release(Ticket t) {
+        Runnable[] next = new Runnable[1];
+        compartments.compute(t.key, (k, c) -> {
+            if (c == null || t.done) {
+                return c;
+            }
+            t.done = true;
+            if (!t.granted) {
+                // Abandoned while still waiting: just leave the queue.
+                c.waiting.remove(t);
+            } else {
+                Ticket w = c.waiting.poll();
+                if (w == null) {
+                    c.active--;
+                } else {
+                    w.granted = true;
+                    next[0] = w.continuation;
+                }
+            }
+            return c.active == 0 && c.waiting.isEmpty() ? null : c;
+        });
+        if (next[0] != null) {
+            start(next[0]);
+        }
+    }
+
+    private void start(Runnable continuation) {
+        if (executor != null) {
+            try {
+                executor.execute(continuation);
+                return;
+            } catch (RejectedExecutionException ignored) {
+                // Fall through and run it here rather than strand a request that already holds a permit.
+            }
+        }
+        // Inline, but never nested: a synchronous handler releasing its permit must not recurse into the next one.
+        ArrayDeque<Runnable> pending = TRAMPOLINE.get();
+        if (pending != null) {
+            pending.add(continuation);
+            return;
+        }
+        pending = new ArrayDeque<>();
+        TRAMPOLINE.set(pending);
+        try {
+            Runnable r = continuation;
+            while (r != null) {
+                r.run();
+                r = pending.poll();
+            }
+        } finally {
+            TRAMPOLINE.remove();
+        }
+    }
+
+    // Admission of one request. Exactly one of run() (then release() once the request is done) or release() alone
+    // must follow; release() is idempotent.
+    static final class Ticket {
+        static final Ticket UNLIMITED = new Ticket(null, null);
+
+        private final HookBulkheads owner;
+        private final Key key;
+        // Guarded by the compartment's map bin (compute).
+        private boolean granted;
+        private boolean rejected;
+        private boolean done;
+        private Runnable continuation;
+
+        private Ticket(HookBulkheads owner, Key key) {
+            this.owner = owner;
+            this.key = key;
+        }
+
+        // Runs the continuation now if a permit is held, otherwise once one is handed over.
+        void run(Runnable continuation) {
+            if (owner == null) {
+                continuation.run();
+            } else {
+                owner.run(this, continuation);
+            }
+        }
+
+        void release() {
+            if (owner != null) {
+                owner.release(this);
+            }
+        }
+    }
+
+    private static final class Compartment {
+        private int active;
+        private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+    }
+
+    private static final class Key {
+        private final String tenantId;
+        private final MicsHookEndpoint endpoint;
+
+        private Key(String tenantId, MicsHookEndpoint endpoint) {
+            this.tenantId = tenantId;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return endpoint == k.endpoint && tenantId.equals(k.tenantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, endpoint);
+        }
+    }
+}
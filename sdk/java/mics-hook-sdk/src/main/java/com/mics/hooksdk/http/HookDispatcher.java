@@ -0,0 +1,563 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.Message;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.hooksdk.HookSigner;
+import com.mics.hooksdk.TenantKeys;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Transport-neutral request pipeline: method check, parse, tenant lookup, signature check, handler, response shaping.
+final class HookDispatcher {
+    static final String METRICS_PATH = "/metrics";
+
+    interface Responder {
+        // Always HTTP 200 with application/protobuf.
+        void protobuf(Message response);
+
+        // Same as protobuf(Message) for a body that is already serialized.
+        void protobuf(byte[] serialized);
+
+        void text(int statusCode, String text);
+
+        // Opens a 200 application/protobuf response whose body is written incrementally; close() ends it.
+        // At most once per request, and no other method is called afterwards.
+        OutputStream stream() throws IOException;
+    }
+
+    private final MicsHookAsyncHandler handler;
+    private final MicsHookStreamingHandler streaming;
+    private final MicsHookServerOptions options;
+    private final MicsHookMetrics metrics;
+    // null unless a bulkhead limit is configured.
+    private final HookBulkheads bulkheads;
+    private final HookSingleFlight flights = new HookSingleFlight();
+    // Request bodies and serialized responses of all transports of this server.
+    final HeapBufferPool buffers = new HeapBufferPool();
+
+    HookDispatcher(MicsHookAsyncHandler handler, MicsHookStreamingHandler streaming, MicsHookServerOptions options, MicsHookMetrics metrics,
+                   HookBulkheads bulkheads) {
+        this.handler = handler;
+        this.streaming = streaming;
+        this.options = options;
+        this.metrics = metrics;
+        this.bulkheads = bulkheads;
+    }
+
+    MicsHookServerOptions options() {
+        return options;
+    }
+
+    // Exact path match (query string already stripped); null when the path is not a hook endpoint.
+    static HookEndpoint<?, ?> find(String path) {
+        switch (path) {
+            case "/auth":
+                return HookEndpoint.AUTH;
+            case "/check-message":
+                return HookEndpoint.CHECK_MESSAGE;
+            case "/get-group-members":
+                return HookEndpoint.GET_GROUP_MEMBERS;
+            case "/get-offline-messages":
+                return HookEndpoint.GET_OFFLINE_MESSAGES;
+            default:
+                return null;
+        }
+    }
+
+    // Request body bytes one connection may hold at a time: the largest single request any path accepts.
+    int maxConnectionBufferedBytes() {
+        int max = options.getMaxRequestBytes();
+        for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+            max = Math.max(max, options.getMaxRequestBytes(e));
+        }
+        return max;
+    }
+
+    // Request body limit for a path, hook endpoint or not.
+    int maxRequestBytes(String path) {
+        HookEndpoint<?, ?> endpoint = find(path);
+        return endpoint == null ? options.getMaxRequestBytes() : options.getMaxRequestBytes(endpoint.endpoint);
+    }
+
+    boolean isMetricsPath(String path) {
+        return options.isMetricsEndpointEnabled() && METRICS_PATH.equals(path);
+    }
+
+    void serveMetrics(String method, Responder responder) {
+        if (!"GET".equalsIgnoreCase(method)) {
+            responder.text(405, "Method Not Allowed");
+            return;
+        }
+        responder.text(200, metrics.scrape());
+    }
+
+    // X-Mics-Timeout-Ms value: milliseconds, -1 when absent or malformed.
+    static long parseTimeout(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long ms = Long.parseLong(value.trim());
+            return ms < 0 ? -1 : ms;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // body[0, length) is only read before dispatch returns, so the caller may recycle it afterwards. receivedNanos is
+    // when the transport read the request head; timeoutMillis the caller's X-Mics-Timeout-Ms, -1 without one. Never
+    // throws: a failure anywhere in the pipeline still answers the request, or pipelined connections would stall.
+    <Q extends Message, R extends Message> void dispatch(HookEndpoint<Q, R> endpoint, String method, byte[] body, int length,
+                                                         long receivedNanos, long timeoutMillis, Responder responder) {
+        long start = System.nanoTime();
+        if (!"POST".equalsIgnoreCase(method)) {
+            count(endpoint, MicsHookMetrics.NO_TENANT, MicsHookMetrics.Outcome.METHOD_NOT_ALLOWED);
+            responder.text(405, "Method Not Allowed");
+            return;
+        }
+
+        OnceResponder once = new OnceResponder(responder);
+        try {
+            HookBulkheads.Ticket ticket = HookBulkheads.Ticket.UNLIMITED;
+            if (bulkheads != null) {
+                // Admission on the claimed tenant before any parsing; the signature is still checked before the handler.
+                String claimed = HookSigner.readTenantId(body, 0, length);
+                if (claimed != null && !claimed.isBlank()) {
+                    ticket = bulkheads.acquire(endpoint.endpoint, claimed);
+                    if (ticket == null) {
+                        MicsHookMetrics.Series s = metrics.series(endpoint.endpoint, MicsHookMetrics.NO_TENANT);
+                        if (s != null) {
+                            s.count(MicsHookMetrics.Outcome.OVERLOADED);
+                        }
+                        send(s, once, endpoint.reject(HookMeta.newBuilder().setTenantId(claimed).build(), "overloaded"));
+                        return;
+                    }
+                }
+            }
+            Runnable invocation = null;
+            try {
+                invocation = verify(endpoint, body, length, once, start, receivedNanos, timeoutMillis, ticket);
+            } finally {
+                if (invocation == null) {
+                    ticket.release();
+                }
+            }
+            if (invocation != null) {
+                ticket.run(invocation);
+            }
+        } catch (RuntimeException e) {
+            // Typically a TenantSecretResolver (user code) throwing before a handler was involved.
+            count(endpoint, MicsHookMetrics.NO_TENANT, MicsHookMetrics.Outcome.HANDLER_ERROR);
+            if (!once.answered) {
+                once.text(500, "Internal Server Error");
+            }
+        }
+    }
+
+    // Parse, tenant, signature, replay and cache checks on the transport's thread while the body is valid. Returns
+    // the handler invocation, or null when the request has already been answered.
+    private <Q extends Message, R extends Message> Runnable verify(HookEndpoint<Q, R> endpoint, byte[] body, int length,
+                                                                  OnceResponder responder, long start, long receivedNanos, long timeoutMillis,
+                                                                  HookBulkheads.Ticket ticket) {
+        Q req;
+        try {
+            req = endpoint.parse(body, length);
+        } catch (Exception e) {
+            count(endpoint, MicsHookMetrics.NO_TENANT, MicsHookMetrics.Outcome.BAD_REQUEST);
+            responder.text(400, "Bad Request");
+            return null;
+        }
+        long parsed = System.nanoTime();
+
+        HookMeta meta = endpoint.meta(req);
+        String tenantId = meta.getTenantId();
+        TenantKeys keys = null;
+        if (tenantId != null && !tenantId.isBlank()) {
+            keys = options.getTenantSecretResolver().resolve(tenantId);
+        }
+        if (keys == null) {
+            boolean invalid = tenantId == null || tenantId.isBlank();
+            MicsHookMetrics.Series s = metrics.series(endpoint.endpoint, MicsHookMetrics.NO_TENANT);
+            if (s != null) {
+                s.count(invalid ? MicsHookMetrics.Outcome.INVALID_TENANT : MicsHookMetrics.Outcome.UNKNOWN_TENANT);
+                s.parseNanos.record(parsed - start);
+                s.requestBytes.record(length);
+            }
+            send(s, responder, endpoint.reject(echoMeta(meta), invalid ? "invalid tenant" : "unknown tenant"));
+            return null;
+        }
+
+        boolean verified = HookSigner.verify(keys, body, 0, length, options.isRequireSign());
+        long verifiedAt = System.nanoTime();
+        MicsHookMetrics.Series s = metrics.series(endpoint.endpoint, tenantId);
+        if (s != null) {
+            s.parseNanos.record(parsed - start);
+            s.verifyNanos.record(verifiedAt - parsed);
+            s.requestBytes.record(length);
+        }
+        if (!verified) {
+            if (s != null) {
+                s.count(MicsHookMetrics.Outcome.INVALID_SIGN);
+            }
+            send(s, responder, endpoint.reject(echoMeta(meta), "invalid sign"));
+            return null;
+        }
+
+        MicsReplayGuard replayGuard = options.getReplayGuard();
+        if (replayGuard != null) {
+            MicsReplayGuard.Result replay = replayGuard.check(tenantId, meta.getRequestId(), meta.getTimestampMs());
+            if (replay != MicsReplayGuard.Result.ACCEPTED) {
+                if (s != null) {
+                    s.count(MicsHookMetrics.Outcome.REPLAY_REJECTED);
+                }
+                String reason = replay == MicsReplayGuard.Result.STALE ? "stale timestamp"
+                        : replay == MicsReplayGuard.Result.REPLAYED ? "replayed request" : "replay window full";
+                send(s, responder, endpoint.reject(echoMeta(meta), reason));
+                return null;
+            }
+        }
+
+        MicsAuthCache authCache = endpoint == HookEndpoint.AUTH ? options.getAuthCache() : null;
+        MicsAuthCache.Load authLoad = null;
+        if (authCache != null) {
+            AuthRequest auth = (AuthRequest) req;
+            MicsAuthCache.Key authKey = MicsAuthCache.key(tenantId, auth.getToken(), auth.getDeviceId());
+            byte[] cached = authCache.get(authKey);
+            if (cached != null) {
+                respondCached(s, responder, meta, cached);
+                return null;
+            }
+            authLoad = authCache.beginLoad(authKey, auth.getToken());
+        }
+
+        MicsGroupMembersCache cache = endpoint == HookEndpoint.GET_GROUP_MEMBERS ? options.getGroupMembersCache() : null;
+        String groupId = cache == null ? null : ((GetGroupMembersRequest) req).getGroupId();
+        long cacheToken = 0;
+        if (cache != null) {
+            byte[] cached = cache.get(tenantId, groupId);
+            if (cached != null) {
+                respondCached(s, responder, meta, cached);
+                return null;
+            }
+            cacheToken = cache.beginLoad();
+        }
+
+        MicsHookContext ctx = context(endpoint.endpoint, meta, receivedNanos, timeoutMillis);
+        MicsAuthCache.Load load = authLoad;
+        long token = cacheToken;
+        // May run later, on the thread releasing a bulkhead permit: failures are answered here, not by dispatch.
+        return () -> {
+            try {
+                handle(endpoint, req, meta, ctx, responder, s, tenantId, cache, groupId, token, authCache, load, ticket);
+            } catch (RuntimeException e) {
+                ticket.release();
+                if (s != null) {
+                    s.count(MicsHookMetrics.Outcome.HANDLER_ERROR);
+                }
+                if (!responder.answered) {
+                    responder.protobuf(endpoint.reject(echoMeta(meta), "handler error"));
+                }
+            }
+        };
+    }
+
+    // The earlier of the caller's timeout (from when the head arrived) and timestamp_ms + the configured budget.
+    private MicsHookContext context(MicsHookEndpoint endpoint, HookMeta meta, long receivedNanos, long timeoutMillis) {
+        boolean hasDeadline = false;
+        long deadline = 0;
+        if (timeoutMillis >= 0) {
+            hasDeadline = true;
+            deadline = receivedNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+        Duration budget = options.getDeadlineBudget();
+        if (!budget.isZero() && meta.getTimestampMs() > 0) {
+            long leftMillis = meta.getTimestampMs() + budget.toMillis() - System.currentTimeMillis();
+            long fromTimestamp = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leftMillis);
+            if (!hasDeadline || fromTimestamp - deadline < 0) {
+                deadline = fromTimestamp;
+            }
+            hasDeadline = true;
+        }
+        return new MicsHookContext(endpoint, meta.getTenantId(), meta.getRequestId(), hasDeadline, deadline);
+    }
+
+    private <Q extends Message, R extends Message> void handle(HookEndpoint<Q, R> endpoint, Q req, HookMeta meta, MicsHookContext ctx,
+                                                              Responder responder,
+                                                              MicsHookMetrics.Series s, String tenantId,
+                                                              MicsGroupMembersCache cache, String groupId, long cacheToken,
+                                                              MicsAuthCache authCache, MicsAuthCache.Load authLoad,
+                                                              HookBulkheads.Ticket ticket) {
+        if (ctx.isExpired()) {
+            // The caller has given up (typically while this request sat in a queue): skip the handler.
+            if (s != null) {
+                s.count(MicsHookMetrics.Outcome.DEADLINE_EXCEEDED);
+            }
+            send(s, responder, endpoint.reject(echoMeta(meta), "deadline exceeded"));
+            ticket.release();
+            return;
+        }
+        MicsAdaptiveLimiter limiter = options.getAdaptiveLimiter();
+        if (limiter != null && !limiter.tryAcquire(endpoint.endpoint)) {
+            if (s != null) {
+                s.count(MicsHookMetrics.Outcome.OVERLOADED);
+            }
+            send(s, responder, endpoint.reject(echoMeta(meta), "overloaded"));
+            ticket.release();
+            return;
+        }
+        long limiterStart = limiter == null ? 0 : limiter.nanoTime();
+        long handlerStart = System.nanoTime();
+        if (s != null) {
+            s.inFlight.increment();
+        }
+        CompletableFuture<R> future;
+        // Set once the permit and the in-flight gauge are owned by something that releases them on completion.
+        boolean handedOff = false;
+        try {
+            if (streaming != null && (endpoint == HookEndpoint.GET_GROUP_MEMBERS || endpoint == HookEndpoint.GET_OFFLINE_MESSAGES)) {
+                handedOff = true;
+                try {
+                    stream(endpoint, req, meta, ctx, responder, s, handlerStart, cache, tenantId, groupId, cacheToken);
+                } finally {
+                    ticket.release();
+                    if (limiter != null) {
+                        limiter.release(endpoint.endpoint, limiterStart, true);
+                    }
+                }
+                return;
+            }
+            Object flightKey = options.getCoalescedEndpoints().contains(endpoint.endpoint) ? endpoint.coalesceKey(tenantId, req) : null;
+            CompletableFuture<R> promise = null;
+            if (flightKey != null) {
+                promise = new CompletableFuture<>();
+                CompletableFuture<R> shared = flights.join(flightKey, promise);
+                if (shared != null) {
+                    handedOff = true;
+                    if (s != null) {
+                        s.coalesced.increment();
+                    }
+                    if (limiter != null) {
+                        // No handler call of its own: hand the permit straight back without a latency sample.
+                        limiter.release(endpoint.endpoint, limiterStart, false);
+                    }
+                    // The leader's meta (if its handler set one) belongs to the leader; this caller gets its own echo.
+                    CompletableFuture<R> joined = shared.thenApply(endpoint::clearMeta);
+                    releaseOnCompletion(ticket, joined);
+                    awaitAndRespond(endpoint, responder, s, handlerStart, meta, joined);
+                    return;
+                }
+            }
+
+            future = invoke(endpoint, req, ctx);
+            if (promise != null) {
+                flights.lead(flightKey, promise, future);
+            }
+            releaseOnCompletion(ticket, future);
+            if (limiter != null) {
+                // Sampled on the handler's own future: the latency it really took, even past the handler timeout.
+                future.whenComplete((r, e) -> limiter.release(endpoint.endpoint, limiterStart, true));
+            }
+            handedOff = true;
+        } finally {
+            if (!handedOff) {
+                // Thrown before the handler's future took over (dispatch answers the request): give back what it
+                // would have released.
+                if (limiter != null) {
+                    limiter.release(endpoint.endpoint, limiterStart, false);
+                }
+                if (s != null) {
+                    s.inFlight.decrement();
+                }
+            }
+        }
+        if (cache != null) {
+            long token = cacheToken;
+            // On the handler's own future: a result that arrives after the handler timeout still fills the cache.
+            future.thenAccept(resp -> {
+                if (resp != null) {
+                    cache.put(tenantId, groupId, token, (GetGroupMembersResponse) resp);
+                }
+            });
+        }
+        if (authLoad != null) {
+            MicsAuthCache.Load load = authLoad;
+            future.thenAccept(resp -> {
+                if (resp != null) {
+                    authCache.put(load, (AuthResponse) resp);
+                }
+            });
+        }
+        awaitAndRespond(endpoint, responder, s, handlerStart, meta, future);
+    }
+
+    // The permit is held until the handler itself finishes, even past the handler timeout: the work is still running.
+    private static void releaseOnCompletion(HookBulkheads.Ticket ticket, CompletableFuture<?> future) {
+        if (ticket != HookBulkheads.Ticket.UNLIMITED) {
+            future.whenComplete((r, e) -> ticket.release());
+        }
+    }
+
+    // Cached body without meta, answered with this caller's meta in front.
+    private static void respondCached(MicsHookMetrics.Series s, Responder responder, HookMeta meta, byte[] cached) {
+        byte[] out = MicsGroupMembersCache.withMeta(echoMeta(meta), cached);
+        if (s != null) {
+            s.count(MicsHookMetrics.Outcome.OK);
+            s.responseBytes.record(out.length);
+        }
+        responder.protobuf(out);
+    }
+
+    private void stream(HookEndpoint<?, ?> endpoint, Message req, HookMeta meta, MicsHookContext ctx, Responder responder,
+                        MicsHookMetrics.Series s, long handlerStart,
+                        MicsGroupMembersCache cache, String tenantId, String groupId, long cacheToken) {
+        Duration timeout = options.getHandlerTimeout();
+        StreamingResponseWriter writer = new StreamingResponseWriter(responder, echoMeta(meta), !timeout.isZero(),
+                handlerStart + timeout.toNanos());
+        boolean ok = true;
+        MicsHookContext previous = MicsHookContext.bind(ctx);
+        try {
+            if (endpoint == HookEndpoint.GET_GROUP_MEMBERS) {
+                streaming.streamGroupMembers((GetGroupMembersRequest) req, writer.userIds());
+                writer.finish();
+                byte[] cacheable = cache == null ? null : writer.bodyWithoutMeta();
+                if (cacheable != null) {
+                    cache.putSerialized(tenantId, groupId, cacheToken, cacheable);
+                }
+            } else {
+                streaming.streamOfflineMessages((GetOfflineMessagesRequest) req, writer.offlineMessages());
+                writer.finishOfflineMessages();
+            }
+        } catch (Exception e) {
+            ok = false;
+            if (writer.isCommitted()) {
+                writer.abort();
+            } else {
+                send(s, responder, endpoint.reject(echoMeta(meta), "handler error"));
+            }
+        } finally {
+            MicsHookContext.unbind(previous);
+        }
+        if (s != null) {
+            s.handlerNanos.record(System.nanoTime() - handlerStart);
+            s.count(ok ? MicsHookMetrics.Outcome.OK : MicsHookMetrics.Outcome.HANDLER_ERROR);
+            if (ok || writer.isCommitted()) {
+                s.responseBytes.record(writer.bytes());
+            }
+            s.inFlight.decrement();
+        }
+    }
+
+    private <Q extends Message, R extends Message> CompletableFuture<R> invoke(HookEndpoint<Q, R> endpoint, Q req, MicsHookContext ctx) {
+        CompletableFuture<R> future;
+        MicsHookContext previous = MicsHookContext.bind(ctx);
+        try {
+            future = endpoint.invoke(handler, req);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        } finally {
+            MicsHookContext.unbind(previous);
+        }
+        return future == null ? CompletableFuture.completedFuture(null) : future;
+    }
+
+    private <Q extends Message, R extends Message> void awaitAndRespond(HookEndpoint<Q, R> endpoint, Responder responder,
+                                                                       MicsHookMetrics.Series s, long handlerStart,
+                                                                       HookMeta meta, CompletableFuture<R> future) {
+        Duration timeout = options.getHandlerTimeout();
+        if (!future.isDone() && !timeout.isZero()) {
+            // Time out a copy so the handler's own (or the shared) future is left untouched.
+            future = future.copy().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        // Completes inline when the handler already finished; otherwise on the thread completing the future.
+        future.whenComplete((resp, err) -> respond(endpoint, responder, s, handlerStart, meta, resp, err));
+    }
+
+    private static <Q extends Message, R extends Message> void respond(HookEndpoint<Q, R> endpoint, Responder responder,
+                                                                      MicsHookMetrics.Series s, long handlerStart,
+                                                                      HookMeta meta, R resp, Throwable err) {
+        R out;
+        boolean ok = err == null;
+        try {
+            out = ok ? endpoint.complete(resp, echoMeta(meta)) : endpoint.reject(echoMeta(meta), "handler error");
+        } catch (RuntimeException e) {
+            ok = false;
+            out = endpoint.reject(echoMeta(meta), "handler error");
+        }
+        if (s != null) {
+            s.handlerNanos.record(System.nanoTime() - handlerStart);
+            s.count(ok ? MicsHookMetrics.Outcome.OK : MicsHookMetrics.Outcome.HANDLER_ERROR);
+            s.inFlight.decrement();
+        }
+        send(s, responder, out);
+    }
+
+    private static void send(MicsHookMetrics.Series s, Responder responder, Message out) {
+        if (s != null) {
+            // Memoized by protobuf; the transport's serialization reuses it.
+            s.responseBytes.record(out.getSerializedSize());
+        }
+        responder.protobuf(out);
+    }
+
+    private void count(HookEndpoint<?, ?> endpoint, String tenantId, MicsHookMetrics.Outcome outcome) {
+        MicsHookMetrics.Series s = metrics.series(endpoint.endpoint, tenantId);
+        if (s != null) {
+            s.count(outcome);
+        }
+    }
+
+    private static HookMeta echoMeta(HookMeta meta) {
+        HookMeta m = meta == null ? HookMeta.getDefaultInstance() : meta;
+        return HookMeta.newBuilder()
+                .setTenantId(m.getTenantId())
+                .setRequestId(m.getRequestId())
+                .setTimestampMs(m.getTimestampMs())
+                .setSign(m.getSign())
+                .setTraceId(m.getTraceId())
+                .build();
+    }
+
+    // Records whether the request has been answered, so that a failure part-way through answers it at most once.
+    private static final class OnceResponder implements Responder {
+        private final Responder delegate;
+        volatile boolean answered;
+
+        OnceResponder(Responder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void protobuf(Message response) {
+            delegate.protobuf(response);
+            answered = true;
+        }
+
+        @Override
+        public void protobuf(byte[] serialized) {
+            delegate.protobuf(serialized);
+            answered = true;
+        }
+
+        @Override
+        public void text(int statusCode, String text) {
+            delegate.text(statusCode, text);
+            answered = true;
+        }
+
+        @Override
+        public OutputStream stream() throws IOException {
+            OutputStream out = delegate.stream();
+            answered = true;
+            return out;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Per-endpoint protobuf types and response shapes; the HTTP pipeline itself is endpoint-agnostic.
+abstract class HookEndpoint<Q extends Message, R extends Message> {
+    static final HookEndpoint<AuthRequest, AuthResponse> AUTH = new HookEndpoint<>(MicsHookEndpoint.AUTH) {
+        @Override
+        AuthRequest parse(byte[] body, int length) throws InvalidProtocolBufferException {
+            return AuthRequest.parser().parseFrom(body, 0, length);
+        }
+
+        @Override
+        HookMeta meta(AuthRequest request) {
+            return request.getMeta();
+        }
+
+        @Override
+        CompletableFuture<AuthResponse> invoke(MicsHookAsyncHandler handler, AuthRequest request) {
+            return handler.onAuth(request);
+        }
+
+        @Override
+        AuthResponse reject(HookMeta meta, String reason) {
+            return AuthResponse.newBuilder()
+                    .setMeta(meta)
+                    .setOk(false)
+                    .setReason(reason)
+                    .build();
+        }
+
+        @Override
+        AuthResponse clearMeta(AuthResponse response) {
+            return response == null || !response.hasMeta() ? response : response.toBuilder().clearMeta().build();
+        }
+
+        @Override
+        AuthResponse complete(AuthResponse response, HookMeta meta) {
+            AuthResponse.Builder b = response == null ? AuthResponse.newBuilder() : response.toBuilder();
+            if (!b.hasMeta()) {
+                b.setMeta(meta);
+            }
+            return b.build();
+        }
+    };
+
+    static final HookEndpoint<CheckMessageRequest, CheckMessageResponse> CHECK_MESSAGE = new HookEndpoint<>(MicsHookEndpoint.CHECK_MESSAGE) {
+        @Override
+        CheckMessageRequest parse(byte[] body, int length) throws InvalidProtocolBufferException {
+            return CheckMessageRequest.parser().parseFrom(body, 0, length);
+        }
+
+        @Override
+        HookMeta meta(CheckMessageRequest request) {
+            return request.getMeta();
+        }
+
+        @Override
+        CompletableFuture<CheckMessageResponse> invoke(MicsHookAsyncHandler handler, CheckMessageRequest request) {
+            return handler.onCheckMessage(request);
+        }
+
+        @Override
+        CheckMessageResponse reject(HookMeta meta, String reason) {
+            return CheckMessageResponse.newBuilder()
+                    .setMeta(meta)
+                    .setAllow(false)
+                    .setReason(reason)
+                    .build();
+        }
+
+        @Override
+        CheckMessageResponse clearMeta(CheckMessageResponse response) {
+            return response == null || !response.hasMeta() ? response : response.toBuilder().clearMeta().build();
+        }
+
+        @Override
+        CheckMessageResponse complete(CheckMessageResponse response, HookMeta meta) {
+            CheckMessageResponse.Builder b = response == null ? CheckMessageResponse.newBuilder() : response.toBuilder();
+            if (!b.hasMeta()) {
+                b.setMeta(meta);
+            }
+            return b.build();
+        }
+    };
+
+    static final HookEndpoint<GetGroupMembersRequest, GetGroupMembersResponse> GET_GROUP_MEMBERS = new HookEndpoint<>(MicsHookEndpoint.GET_GROUP_MEMBERS) {
+        @Override
+        GetGroupMembersRequest parse(byte[] body, int length) throws InvalidProtocolBufferException {
+            return GetGroupMembersRequest.parser().parseFrom(body, 0, length);
+        }
+
+        @Override
+        HookMeta meta(GetGroupMembersRequest request) {
+            return request.getMeta();
+        }
+
+        @Override
+        Object coalesceKey(String tenantId, GetGroupMembersRequest request) {
+            return List.of(tenantId, request.getGroupId());
+        }
+
+        @Override
+        CompletableFuture<GetGroupMembersResponse> invoke(MicsHookAsyncHandler handler, GetGroupMembersRequest request) {
+            return handler.onGetGroupMembers(request);
+        }
+
+        // The response has no reason field: any rejection is an empty member list.
+        @Override
+        GetGroupMembersResponse reject(HookMeta meta, String reason) {
+            return GetGroupMembersResponse.newBuilder()
+                    .setMeta(meta)
+                    .build();
+        }
+
+        @Override
+        GetGroupMembersResponse clearMeta(GetGroupMembersResponse response) {
+            return response == null || !response.hasMeta() ? response : response.toBuilder().clearMeta().build();
+        }
+
+        @Override
+        GetGroupMembersResponse complete(GetGroupMembersResponse response, HookMeta meta) {
+            GetGroupMembersResponse.Builder b = response == null ? GetGroupMembersResponse.newBuilder() : response.toBuilder();
+            if (!b.hasMeta()) {
+                b.setMeta(meta);
+            }
+            return b.build();
+        }
+    };
+
+    static final HookEndpoint<GetOfflineMessagesRequest, GetOfflineMessagesResponse> GET_OFFLINE_MESSAGES = new HookEndpoint<>(MicsHookEndpoint.GET_OFFLINE_MESSAGES) {
+        @Override
+        GetOfflineMessagesRequest parse(byte[] body, int length) throws InvalidProtocolBufferException {
+            return GetOfflineMessagesRequest.parser().parseFrom(body, 0, length);
+        }
+
+        @Override
+        HookMeta meta(GetOfflineMessagesRequest request) {
+            return request.getMeta();
+        }
+
+        @Override
+        Object coalesceKey(String tenantId, GetOfflineMessagesRequest request) {
+            return List.of(tenantId, request.getUserId(), request.getDeviceId(), request.getMaxMessages(), request.getCursor());
+        }
+
+        @Override
+        CompletableFuture<GetOfflineMessagesResponse> invoke(MicsHookAsyncHandler handler, GetOfflineMessagesRequest request) {
+            return handler.onGetOfflineMessages(request);
+        }
+
+        @Override
+        GetOfflineMessagesResponse reject(HookMeta meta, String reason) {
+            return GetOfflineMessagesResponse.newBuilder()
+                    .setMeta(meta)
+                    .setOk(false)
+                    .setReason(reason)
+                    .build();
+        }
+
+        @Override
+        GetOfflineMessagesResponse clearMeta(GetOfflineMessagesResponse response) {
+            return response == null || !response.hasMeta() ? response : response.toBuilder().clearMeta().build();
+        }
+
+        @Override
+        GetOfflineMessagesResponse complete(GetOfflineMessagesResponse response, HookMeta meta) {
+            GetOfflineMessagesResponse.Builder b = response == null ? GetOfflineMessagesResponse.newBuilder().setOk(true) : response.toBuilder();
+            if (!b.hasMeta()) {
+                b.setMeta(meta);
+            }
+            return b.build();
+        }
+    };
+
+    final MicsHookEndpoint endpoint;
+
+    HookEndpoint(MicsHookEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    // body[0, length) may be a pooled array: fields are copied out, never aliased.
+    abstract Q parse(byte[] body, int length) throws InvalidProtocolBufferException;
+
+    abstract HookMeta meta(Q request);
+
+    // Requests with equal keys get the same answer and may share one handler call; null when the endpoint cannot.
+    Object coalesceKey(String tenantId, Q request) {
+        return null;
+    }
+
+    abstract CompletableFuture<R> invoke(MicsHookAsyncHandler handler, Q request);
+
+    abstract R reject(HookMeta meta, String reason);
+
+    abstract R clearMeta(R response);
+
+    // Fills defaults for a null handler result and echoes meta when the handler did not set one.
+    abstract R complete(R response, HookMeta meta);
+}
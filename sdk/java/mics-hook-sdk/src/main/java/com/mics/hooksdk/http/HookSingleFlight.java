@@ -0,0 +1,28 @@
+package com.mics.hooksdk.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-flight handler calls by coalescing key. The first request for a key becomes the leader and calls the handler;
+// requests arriving before it completes share its result. The key is removed before the result is published,
+// so a request arriving afterwards starts a fresh call instead of reading a finished one.
+final class HookSingleFlight {
+    private final ConcurrentHashMap<Object, CompletableFuture<?>> calls = new ConcurrentHashMap<>();
+
+    // The leader's shared future for key, or null when the caller is now the leader and must call lead().
+    @SuppressWarnings("unchecked")
+    <R> CompletableFuture<R> join(Object key, CompletableFuture<R> promise) {
+        return (CompletableFuture<R>) calls.putIfAbsent(key, promise);
+    }
+
+    <R> void lead(Object key, CompletableFuture<R> promise, CompletableFuture<R> call) {
+        call.whenComplete((resp, err) -> {
+            calls.remove(key, promise);
+            if (err != null) {
+                promise.completeExceptionally(err);
+            } else {
+                promise.complete(resp);
+            }
+        });
+    }
+}
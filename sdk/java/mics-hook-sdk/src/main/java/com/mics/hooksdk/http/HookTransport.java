@@ -0,0 +1,11 @@
+package com.mics.hooksdk.http;
+
+import java.net.InetSocketAddress;
+
+interface HookTransport {
+    InetSocketAddress address();
+
+    void start();
+
+    void stop();
+}
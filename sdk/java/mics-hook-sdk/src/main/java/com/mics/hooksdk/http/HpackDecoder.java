@@ -0,0 +1,237 @@
+package com.mics.hooksdk.http;
+
+import java.nio.charset.StandardCharsets;
+
+// HPACK header block decoder (RFC 7541). One instance per HTTP/2 connection; not thread-safe.
+final class HpackDecoder {
+    interface Listener {
+        void header(String name, String value);
+    }
+
+    static final String[] STATIC_NAMES = {
+            null,
+            ":authority", ":method", ":method", ":path", ":path", ":scheme", ":scheme", ":status", ":status", ":status",
+            ":status", ":status", ":status", ":status", "accept-charset", "accept-encoding", "accept-language",
+            "accept-ranges", "accept", "access-control-allow-origin", "age", "allow", "authorization", "cache-control",
+            "content-disposition", "content-encoding", "content-language", "content-length", "content-location",
+            "content-range", "content-type", "cookie", "date", "etag", "expect", "expires", "from", "host", "if-match",
+            "if-modified-since", "if-none-match", "if-range", "if-unmodified-since", "last-modified", "link", "location",
+            "max-forwards", "proxy-authenticate", "proxy-authorization", "range", "referer", "refresh", "retry-after",
+            "server", "set-cookie", "strict-transport-security", "transfer-encoding", "user-agent", "vary", "via",
+            "www-authenticate"
+    };
+
+    static final String[] STATIC_VALUES = new String[STATIC_NAMES.length];
+
+    static {
+        java.util.Arrays.fill(STATIC_VALUES, "");
+        STATIC_VALUES[2] = "GET";
+        STATIC_VALUES[3] = "POST";
+        STATIC_VALUES[4] = "/";
+        STATIC_VALUES[5] = "/index.html";
+        STATIC_VALUES[6] = "http";
+        STATIC_VALUES[7] = "https";
+        STATIC_VALUES[8] = "200";
+        STATIC_VALUES[9] = "204";
+        STATIC_VALUES[10] = "206";
+        STATIC_VALUES[11] = "304";
+        STATIC_VALUES[12] = "400";
+        STATIC_VALUES[13] = "404";
+        STATIC_VALUES[14] = "500";
+        STATIC_VALUES[16] = "gzip, deflate";
+    }
+
+    private static final int STATIC_COUNT = STATIC_NAMES.length - 1;
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private final int maxTableSizeLimit;
+    private int maxTableSize;
+    private int tableBytes;
+
+    // Dynamic table as a ring; index 0 (newest) is at head.
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int head;
+    private int count;
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+
+    HpackDecoder(int maxTableSize) {
+        this.maxTableSizeLimit = maxTableSize;
+        this.maxTableSize = maxTableSize;
+    }
+
+    // Returns false on a compression error, after which the connection must be torn down.
+    boolean decode(byte[] block, int offset, int length, Listener listener) {
+        this.buf = block;
+        this.pos = offset;
+        this.end = offset + length;
+        try {
+            while (pos < end) {
+                int b = buf[pos] & 0xFF;
+                if ((b & 0x80) != 0) {
+                    long index = readInt(7);
+                    if (index <= 0 || !emit((int) index, listener)) {
+                        return false;
+                    }
+                } else if ((b & 0x40) != 0) {
+                    String[] field = readLiteral(6);
+                    if (field == null) {
+                        return false;
+                    }
+                    add(field[0], field[1]);
+                    listener.header(field[0], field[1]);
+                } else if ((b & 0x20) != 0) {
+                    long size = readInt(5);
+                    if (size < 0 || size > maxTableSizeLimit) {
+                        return false;
+                    }
+                    // Only entries past the new size go (RFC 7541 4.3); the peer's encoder keeps the rest.
+                    maxTableSize = (int) size;
+                    evict(maxTableSize);
+                } else {
+                    // Literal without indexing (0000) or never indexed (0001): same 4-bit prefix.
+                    String[] field = readLiteral(4);
+                    if (field == null) {
+                        return false;
+                    }
+                    listener.header(field[0], field[1]);
+                }
+            }
+            return true;
+        } finally {
+            this.buf = null;
+        }
+    }
+
+    private boolean emit(int index, Listener listener) {
+        if (index <= STATIC_COUNT) {
+            listener.header(STATIC_NAMES[index], STATIC_VALUES[index]);
+            return true;
+        }
+        int d = index - STATIC_COUNT - 1;
+        if (d >= count) {
+            return false;
+        }
+        int slot = (head + d) & (names.length - 1);
+        listener.header(names[slot], values[slot]);
+        return true;
+    }
+
+    private String nameAt(long index) {
+        if (index <= 0) {
+            return null;
+        }
+        if (index <= STATIC_COUNT) {
+            return STATIC_NAMES[(int) index];
+        }
+        long d = index - STATIC_COUNT - 1;
+        if (d >= count) {
+            return null;
+        }
+        return names[(int) ((head + d) & (names.length - 1))];
+    }
+
+    private String[] readLiteral(int prefixBits) {
+        long nameIndex = readInt(prefixBits);
+        if (nameIndex < 0) {
+            return null;
+        }
+        String name = nameIndex == 0 ? readString() : nameAt(nameIndex);
+        if (name == null) {
+            return null;
+        }
+        String value = readString();
+        if (value == null) {
+            return null;
+        }
+        return new String[]{name, value};
+    }
+
+    private String readString() {
+        if (pos >= end) {
+            return null;
+        }
+        boolean huffman = (buf[pos] & 0x80) != 0;
+        long len = readInt(7);
+        if (len < 0 || len > end - pos) {
+            return null;
+        }
+        int start = pos;
+        pos += (int) len;
+        if (!huffman) {
+            return new String(buf, start, (int) len, StandardCharsets.ISO_8859_1);
+        }
+        StringBuilder sb = new StringBuilder((int) len * 8 / 5);
+        return HpackHuffman.decode(buf, start, (int) len, sb) ? sb.toString() : null;
+    }
+
+    // Returns -1 when truncated or larger than Integer.MAX_VALUE.
+    private long readInt(int prefixBits) {
+        if (pos >= end) {
+            return -1;
+        }
+        int max = (1 << prefixBits) - 1;
+        long value = buf[pos++] & max;
+        if (value < max) {
+            return value;
+        }
+        int shift = 0;
+        while (pos < end) {
+            int b = buf[pos++] & 0xFF;
+            value += (long) (b & 0x7F) << shift;
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        return -1;
+    }
+
+    private void add(String name, String value) {
+        int size = name.length() + value.length() + ENTRY_OVERHEAD;
+        if (size > maxTableSize) {
+            // An entry larger than the table empties it and is not added.
+            evict(0);
+            return;
+        }
+        evict(maxTableSize - size);
+        if (count == names.length) {
+            grow();
+        }
+        head = (head - 1) & (names.length - 1);
+        names[head] = name;
+        values[head] = value;
+        count++;
+        tableBytes += size;
+    }
+
+    // Drops the oldest entries until the table uses at most `limit` bytes.
+    private void evict(int limit) {
+        while (tableBytes > Math.min(limit, maxTableSize) && count > 0) {
+            int slot = (head + count - 1) & (names.length - 1);
+            tableBytes -= names[slot].length() + values[slot].length() + ENTRY_OVERHEAD;
+            names[slot] = null;
+            values[slot] = null;
+            count--;
+        }
+    }
+
+    private void grow() {
+        String[] n = new String[names.length * 2];
+        String[] v = new String[values.length * 2];
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) & (names.length - 1);
+            n[i] = names[slot];
+            v[i] = values[slot];
+        }
+        names = n;
+        values = v;
+        head = 0;
+    }
+}
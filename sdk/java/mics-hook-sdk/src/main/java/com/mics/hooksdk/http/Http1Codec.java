@@ -0,0 +1,616 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+
+// HTTP/1.1 server side: keep-alive, pipelining with in-order responses, and hand-over to h2c.
+final class Http1Codec implements NioCodec {
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    // Pipelined requests admitted before reading pauses; resumes at half. Reading also pauses before a body that would
+    // take the bytes of the requests in flight past transport.maxConnectionBufferedBytes.
+    private static final int MAX_IN_FLIGHT = 64;
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final byte[] CONTINUE = ascii("HTTP/1.1 100 Continue\r\n\r\n");
+    private static final byte[] SWITCHING_TO_H2C = ascii("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n");
+    private static final byte[] PROTOBUF_200 = ascii("HTTP/1.1 200 OK\r\nContent-Type: application/protobuf\r\nContent-Length: ");
+    private static final byte[] PROTOBUF_200_CHUNKED = ascii("HTTP/1.1 200 OK\r\nContent-Type: application/protobuf\r\nTransfer-Encoding: chunked\r\n\r\n");
+    private static final byte[] PROTOBUF_200_CHUNKED_CLOSE = ascii("HTTP/1.1 200 OK\r\nContent-Type: application/protobuf\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n");
+    private static final byte[] LAST_CHUNK = ascii("0\r\n\r\n");
+    private static final Runnable NO_RELEASE = () -> {
+    };
+
+    private final NioConnection conn;
+    private final NioHookTransport transport;
+    private final ArrayDeque<Slot> inFlight = new ArrayDeque<>();
+    // Body bytes of the requests in inFlight, counted until their response has been handed to the connection.
+    private long inFlightBytes;
+    private boolean first = true;
+    // Set once no further request may be read: Connection: close, a protocol error or an upgrade.
+    private boolean stopped;
+    private Request request;
+    // Set from the first byte of a request until its body is complete.
+    private boolean receiving;
+    private long receivingSince;
+
+    Http1Codec(NioConnection conn, NioHookTransport transport) {
+        this.conn = conn;
+        this.transport = transport;
+    }
+
+    @Override
+    public boolean isIdle() {
+        return inFlight.isEmpty() && request == null;
+    }
+
+    @Override
+    public boolean isReceivingLongerThan(long now, long timeoutNanos) {
+        return receiving && now - receivingSince > timeoutNanos;
+    }
+
+    @Override
+    public void onData(ByteBuffer in) {
+        while (in.hasRemaining() && !stopped && !conn.isReadPaused() && !conn.isClosed()) {
+            if (!receiving) {
+                receiving = true;
+                receivingSince = System.nanoTime();
+            }
+            if (first && transport.h2cEnabled) {
+                int match = matchPreface(in);
+                if (match == 0) {
+                    return;
+                }
+                first = false;
+                if (match > 0) {
+                    stopped = true;
+                    Http2Codec h2 = new Http2Codec(conn, transport);
+                    conn.setCodec(h2);
+                    h2.startWithPriorKnowledge();
+                    return;
+                }
+            }
+            first = false;
+
+            if (request == null) {
+                int headerEnd = findHeaderEnd(in);
+                if (headerEnd < 0) {
+                    if (in.remaining() > MAX_HEADER_BYTES) {
+                        fail(431, "Request Header Fields Too Large");
+                    }
+                    return;
+                }
+                int headerLength = headerEnd - in.position();
+                if (headerLength > MAX_HEADER_BYTES) {
+                    fail(431, "Request Header Fields Too Large");
+                    return;
+                }
+                byte[] head = new byte[headerLength];
+                in.get(head);
+                Request r = new Request();
+                int status = r.parse(head, transport.dispatcher);
+                if (status != 0) {
+                    fail(status, reason(status));
+                    return;
+                }
+                request = r;
+                if (r.expectContinue && r.length > 0 && inFlight.isEmpty()) {
+                    conn.write(CONTINUE);
+                }
+                if (!bodyFits()) {
+                    // The body waits in the socket until earlier responses have gone out.
+                    conn.pauseReading();
+                    continue;
+                }
+            }
+
+            Request r = request;
+            int n = Math.min(r.length - r.filled, in.remaining());
+            if (r.filled + n > r.body.length) {
+                r.body = transport.dispatcher.buffers.grow(r.body, r.filled, HeapBufferPool.bodyCapacity(r.length, r.body.length, r.filled + n));
+            }
+            in.get(r.body, r.filled, n);
+            r.filled += n;
+            if (r.filled < r.length) {
+                return;
+            }
+            request = null;
+            receiving = false;
+            onRequest(r);
+        }
+    }
+
+    private void onRequest(Request r) {
+        if (r.upgradeH2c && transport.h2cEnabled && inFlight.isEmpty()) {
+            byte[] settings = r.http2Settings == null ? null : decodeSettings(r.http2Settings);
+            if (settings != null) {
+                stopped = true;
+                conn.write(SWITCHING_TO_H2C);
+                Http2Codec h2 = new Http2Codec(conn, transport);
+                conn.setCodec(h2);
+                h2.startUpgraded(settings, r.method, r.path, r.body, r.length, r.receivedNanos, r.timeoutMillis);
+                return;
+            }
+        }
+
+        Slot slot = new Slot(r.keepAlive, r.http10);
+        slot.bodyBytes = r.length;
+        inFlight.addLast(slot);
+        inFlightBytes += r.length;
+        if (!r.keepAlive) {
+            stopped = true;
+        }
+        if (inFlight.size() >= MAX_IN_FLIGHT) {
+            conn.pauseReading();
+        }
+
+        HeapBufferPool buffers = transport.dispatcher.buffers;
+        HookEndpoint<?, ?> endpoint = HookDispatcher.find(r.path);
+        if (endpoint == null) {
+            buffers.release(r.body);
+            if (transport.dispatcher.isMetricsPath(r.path)) {
+                transport.dispatcher.serveMetrics(r.method, slot);
+            } else {
+                slot.complete(404, "Not Found");
+            }
+            return;
+        }
+        transport.dispatch(
+                () -> {
+                    try {
+                        transport.dispatcher.dispatch(endpoint, r.method, r.body, r.length, r.receivedNanos, r.timeoutMillis, slot);
+                    } finally {
+                        buffers.release(r.body);
+                    }
+                },
+                () -> {
+                    buffers.release(r.body);
+                    slot.complete(503, "Service Unavailable");
+                });
+    }
+
+    private void fail(int status, String text) {
+        stopped = true;
+        request = null;
+        receiving = false;
+        Slot slot = new Slot(false, false);
+        inFlight.addLast(slot);
+        slot.complete(status, text);
+    }
+
+    // Responses leave strictly in request order, however the handlers complete.
+    private void drain() {
+        while (!inFlight.isEmpty()) {
+            Slot slot = inFlight.peekFirst();
+            if (slot.response != null) {
+                if (slot.release == null) {
+                    conn.write(slot.response);
+                } else {
+                    conn.write(slot.response, slot.responseLength, slot.release);
+                }
+            } else if (slot.parts != null) {
+                byte[] part;
+                while ((part = slot.parts.pollFirst()) != null) {
+                    conn.write(part, slot.releases.pollFirst());
+                }
+                if (!slot.ended) {
+                    break;
+                }
+            } else {
+                break;
+            }
+            inFlight.pollFirst();
+            inFlightBytes -= slot.bodyBytes;
+            if (!slot.keepAlive) {
+                inFlight.clear();
+                inFlightBytes = 0;
+                conn.closeAfterFlush();
+                return;
+            }
+        }
+        if (conn.isReadPaused() && inFlight.size() <= MAX_IN_FLIGHT / 2 && bodyFits()) {
+            if (request != null) {
+                // The wait was ours, not the client's.
+                receivingSince = System.nanoTime();
+            }
+            conn.resumeReading();
+        }
+    }
+
+    // Whether the body of the request whose head has been read may be buffered now. A single request always fits.
+    private boolean bodyFits() {
+        return request == null || inFlight.isEmpty() || inFlightBytes + request.length <= transport.maxConnectionBufferedBytes;
+    }
+
+    // 1 = full HTTP/2 preface, -1 = not a preface, 0 = undecided until more bytes arrive.
+    private static int matchPreface(ByteBuffer in) {
+        byte[] preface = Http2Codec.PREFACE;
+        int n = Math.min(in.remaining(), preface.length);
+        int p = in.position();
+        for (int i = 0; i < n; i++) {
+            if (in.get(p + i) != preface[i]) {
+                return -1;
+            }
+        }
+        return n == preface.length ? 1 : 0;
+    }
+
+    // Returns the index just past CRLFCRLF, or -1.
+    private static int findHeaderEnd(ByteBuffer in) {
+        int limit = Math.min(in.limit(), in.position() + MAX_HEADER_BYTES + 4);
+        for (int i = in.position() + 3; i < limit; i++) {
+            if (in.get(i) == '\n' && in.get(i - 1) == '\r' && in.get(i - 2) == '\n' && in.get(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] decodeSettings(String value) {
+        try {
+            byte[] settings = Base64.getUrlDecoder().decode(value.trim());
+            return settings.length % 6 == 0 ? settings : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static byte[] response(int status, String contentType, byte[] body, boolean keepAlive, boolean http10) {
+        StringBuilder sb = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n")
+                .append("Content-Type: ").append(contentType).append("\r\n")
+                .append("Content-Length: ").append(body.length).append("\r\n");
+        if (!keepAlive) {
+            sb.append("Connection: close\r\n");
+        } else if (http10) {
+            sb.append("Connection: keep-alive\r\n");
+        }
+        sb.append("\r\n");
+        byte[] head = ascii(sb.toString());
+        byte[] out = new byte[head.length + body.length];
+        System.arraycopy(head, 0, out, 0, head.length);
+        System.arraycopy(body, 0, out, head.length, body.length);
+        return out;
+    }
+
+    // Hot path: 200 application/protobuf on a keep-alive HTTP/1.1 connection, serialized straight into a pooled
+    // array behind the head; out[0, returned length).
+    private static int protobufResponse(byte[] out, int headLength, Message message, int size) {
+        protobufHead(out, size);
+        CodedOutputStream cos = CodedOutputStream.newInstance(out, headLength, size);
+        try {
+            message.writeTo(cos);
+            cos.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("serializing to a byte array", e);
+        }
+        return headLength + size;
+    }
+
+    private static int protobufHeadLength(int size) {
+        return PROTOBUF_200.length + Integer.toString(size).length() + 4;
+    }
+
+    // Head of a keep-alive 200 protobuf response at the start of out.
+    private static void protobufHead(byte[] out, int size) {
+        byte[] length = ascii(Integer.toString(size));
+        int pos = 0;
+        System.arraycopy(PROTOBUF_200, 0, out, pos, PROTOBUF_200.length);
+        pos += PROTOBUF_200.length;
+        System.arraycopy(length, 0, out, pos, length.length);
+        pos += length.length;
+        out[pos++] = '\r';
+        out[pos++] = '\n';
+        out[pos++] = '\r';
+        out[pos] = '\n';
+    }
+
+    static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            case 505:
+                return "HTTP Version Not Supported";
+            default:
+                return "Unknown";
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private final class Slot implements HookDispatcher.Responder {
+        final boolean keepAlive;
+        final boolean http10;
+        int bodyBytes;
+        // Written on the event loop only. release is null unless response is a pooled array (valid up to
+        // responseLength) to be returned once written.
+        byte[] response;
+        int responseLength;
+        Runnable release;
+        // Streamed body: framed chunks not yet handed to the connection, and whether the last one has arrived.
+        ArrayDeque<byte[]> parts;
+        ArrayDeque<Runnable> releases;
+        boolean ended;
+
+        Slot(boolean keepAlive, boolean http10) {
+            this.keepAlive = keepAlive;
+            this.http10 = http10;
+        }
+
+        @Override
+        public void protobuf(Message message) {
+            if (!keepAlive || http10) {
+                complete(response(200, "application/protobuf", message.toByteArray(), keepAlive, http10));
+                return;
+            }
+            HeapBufferPool buffers = transport.dispatcher.buffers;
+            int size = message.getSerializedSize();
+            int headLength = protobufHeadLength(size);
+            byte[] out = buffers.acquire(headLength + size);
+            int length;
+            try {
+                length = protobufResponse(out, headLength, message, size);
+            } catch (RuntimeException e) {
+                buffers.release(out);
+                throw e;
+            }
+            complete(out, length, () -> buffers.release(out));
+        }
+
+        @Override
+        public void protobuf(byte[] serialized) {
+            if (!keepAlive || http10) {
+                complete(response(200, "application/protobuf", serialized, keepAlive, http10));
+                return;
+            }
+            HeapBufferPool buffers = transport.dispatcher.buffers;
+            int headLength = protobufHeadLength(serialized.length);
+            byte[] out = buffers.acquire(headLength + serialized.length);
+            protobufHead(out, serialized.length);
+            System.arraycopy(serialized, 0, out, headLength, serialized.length);
+            complete(out, headLength + serialized.length, () -> buffers.release(out));
+        }
+
+        @Override
+        public void text(int statusCode, String text) {
+            complete(statusCode, text);
+        }
+
+        @Override
+        public OutputStream stream() {
+            if (http10) {
+                // No chunked encoding in HTTP/1.0: collect the body and send it sized.
+                return new ByteArrayOutputStream(StreamingResponseWriter.HEAD_BYTES * 2) {
+                    private boolean closed;
+
+                    @Override
+                    public void close() {
+                        if (!closed) {
+                            closed = true;
+                            protobuf(toByteArray());
+                        }
+                    }
+                };
+            }
+            return new ChunkedStream(conn, this);
+        }
+
+        void complete(int statusCode, String text) {
+            byte[] body = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+            complete(response(statusCode, "text/plain; charset=utf-8", body, keepAlive, http10));
+        }
+
+        private void complete(byte[] bytes) {
+            complete(bytes, bytes.length, null);
+        }
+
+        private void complete(byte[] bytes, int length, Runnable onWritten) {
+            conn.execute(() -> {
+                response = bytes;
+                responseLength = length;
+                release = onWritten;
+                drain();
+            });
+        }
+    }
+
+    // Transfer-Encoding: chunked body of one pipelined slot; chunks wait in the slot until it reaches the head.
+    private final class ChunkedStream extends NioBodyStream {
+        private final Slot slot;
+        // Writer thread; close() publishes it to the event loop through execute().
+        private boolean headSent;
+
+        ChunkedStream(NioConnection conn, Slot slot) {
+            super(conn);
+            this.slot = slot;
+        }
+
+        @Override
+        byte[] frame(byte[] b, int off, int len) {
+            byte[] head = headSent ? EMPTY : chunkedHead();
+            headSent = true;
+            byte[] size = ascii(Integer.toHexString(len));
+            byte[] out = new byte[head.length + size.length + 2 + len + 2];
+            int p = 0;
+            System.arraycopy(head, 0, out, p, head.length);
+            p += head.length;
+            System.arraycopy(size, 0, out, p, size.length);
+            p += size.length;
+            out[p++] = '\r';
+            out[p++] = '\n';
+            System.arraycopy(b, off, out, p, len);
+            p += len;
+            out[p++] = '\r';
+            out[p] = '\n';
+            return out;
+        }
+
+        @Override
+        void onChunk(byte[] chunk, Runnable release) {
+            add(chunk, release);
+            drain();
+        }
+
+        @Override
+        void onEnd() {
+            if (!headSent) {
+                headSent = true;
+                add(chunkedHead(), NO_RELEASE);
+            }
+            add(LAST_CHUNK, NO_RELEASE);
+            slot.ended = true;
+            drain();
+        }
+
+        private byte[] chunkedHead() {
+            return slot.keepAlive ? PROTOBUF_200_CHUNKED : PROTOBUF_200_CHUNKED_CLOSE;
+        }
+
+        private void add(byte[] part, Runnable release) {
+            if (slot.parts == null) {
+                slot.parts = new ArrayDeque<>();
+                slot.releases = new ArrayDeque<>();
+            }
+            slot.parts.add(part);
+            slot.releases.add(release);
+        }
+    }
+
+    private static final class Request {
+        String method;
+        String path;
+        boolean http10;
+        boolean keepAlive;
+        boolean expectContinue;
+        boolean upgradeH2c;
+        String http2Settings;
+        long receivedNanos;
+        long timeoutMillis = -1;
+        // Pooled once the head is accepted and grown as the body arrives; body[0, filled).
+        byte[] body;
+        int length;
+        int filled;
+
+        // Returns 0 when the head is acceptable, otherwise the status to fail the connection with.
+        int parse(byte[] head, HookDispatcher dispatcher) {
+            receivedNanos = System.nanoTime();
+            String text = new String(head, StandardCharsets.ISO_8859_1);
+            int lineEnd = text.indexOf("\r\n");
+            String requestLine = text.substring(0, lineEnd);
+            int sp1 = requestLine.indexOf(' ');
+            int sp2 = requestLine.lastIndexOf(' ');
+            if (sp1 <= 0 || sp2 <= sp1) {
+                return 400;
+            }
+            method = requestLine.substring(0, sp1);
+            String target = requestLine.substring(sp1 + 1, sp2);
+            String version = requestLine.substring(sp2 + 1);
+            if (version.equals("HTTP/1.1")) {
+                http10 = false;
+            } else if (version.equals("HTTP/1.0")) {
+                http10 = true;
+            } else if (version.startsWith("HTTP/")) {
+                return 505;
+            } else {
+                return 400;
+            }
+            int q = target.indexOf('?');
+            path = q >= 0 ? target.substring(0, q) : target;
+
+            keepAlive = !http10;
+            long contentLength = -1;
+            boolean connectionUpgrade = false;
+            String upgrade = null;
+            int pos = lineEnd + 2;
+            while (pos < text.length() - 2) {
+                int end = text.indexOf("\r\n", pos);
+                int colon = text.indexOf(':', pos);
+                if (colon < 0 || colon > end || colon == pos) {
+                    return 400;
+                }
+                String name = text.substring(pos, colon);
+                String value = text.substring(colon + 1, end).trim();
+                pos = end + 2;
+
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    long parsed;
+                    try {
+                        parsed = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        return 400;
+                    }
+                    if (parsed < 0 || (contentLength >= 0 && parsed != contentLength)) {
+                        return 400;
+                    }
+                    contentLength = parsed;
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    if (!value.equalsIgnoreCase("identity")) {
+                        // Hook callers always send a sized protobuf body.
+                        return 411;
+                    }
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    for (String token : value.split(",")) {
+                        String t = token.trim();
+                        if (t.equalsIgnoreCase("close")) {
+                            keepAlive = false;
+                        } else if (t.equalsIgnoreCase("keep-alive")) {
+                            keepAlive = true;
+                        } else if (t.equalsIgnoreCase("upgrade")) {
+                            connectionUpgrade = true;
+                        }
+                    }
+                } else if (name.equalsIgnoreCase("Expect")) {
+                    expectContinue = value.equalsIgnoreCase("100-continue");
+                } else if (name.equalsIgnoreCase("Upgrade")) {
+                    upgrade = value;
+                } else if (name.equalsIgnoreCase("HTTP2-Settings")) {
+                    http2Settings = value;
+                } else if (name.equalsIgnoreCase(MicsHookServerOptions.TIMEOUT_HEADER)) {
+                    timeoutMillis = HookDispatcher.parseTimeout(value);
+                }
+            }
+            // Rejected on the declared size, before any of the body is read.
+            if (contentLength > dispatcher.maxRequestBytes(path)) {
+                return 413;
+            }
+            length = (int) Math.max(0, contentLength);
+            body = length == 0 ? EMPTY : dispatcher.buffers.acquire(HeapBufferPool.bodyCapacity(length, 0, 0));
+            upgradeH2c = connectionUpgrade && upgrade != null && !http10 && containsToken(upgrade, "h2c");
+            return 0;
+        }
+    }
+
+    private static boolean containsToken(String value, String token) {
+        for (String t : value.split(",")) {
+            if (t.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,1050 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+// Cleartext HTTP/2 (RFC 7540) server side: multiplexed streams, flow control, HPACK-decoded request headers.
+// Responses use static-table HPACK entries only, so no encoder state is kept.
+final class Http2Codec implements NioCodec, HpackDecoder.Listener {
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int FRAME_HEADER = 9;
+    private static final int MAX_FRAME_SIZE = 16384;
+    private static final int MAX_CONCURRENT_STREAMS = 256;
+    private static final int MAX_HEADER_BLOCK = 64 * 1024;
+    // Peer RST_STREAMs allowed per RESET_WINDOW before the connection is closed with ENHANCE_YOUR_CALM: a client
+    // that opens and cancels streams in a loop ("rapid reset", CVE-2023-44487) costs a header decode and a dispatch
+    // per stream while never holding one open.
+    private static final int MAX_RESETS_PER_WINDOW = 2 * MAX_CONCURRENT_STREAMS;
+    private static final long RESET_WINDOW_NANOS = 1_000_000_000L;
+    // HPACK names are lower case.
+    private static final String TIMEOUT_HEADER = MicsHookServerOptions.TIMEOUT_HEADER.toLowerCase(Locale.ROOT);
+    // Advertised stream receive window; refilled once half has arrived. The connection window is at least
+    // CONNECTION_WINDOW and at most the per-connection buffering cap, and is refilled only as request bodies leave the
+    // connection (dispatched or dropped), so it bounds the bytes buffered across all streams.
+    private static final int STREAM_WINDOW = 1 << 20;
+    private static final int CONNECTION_WINDOW = 1 << 20;
+    private static final int DEFAULT_WINDOW = 65535;
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int STREAM_CLOSED = 0x5;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int REFUSED_STREAM = 0x7;
+    private static final int COMPRESSION_ERROR = 0x9;
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    // ":status: 200" (static index 8) + "content-type: application/protobuf" (literal, name index 31).
+    private static final byte[] PROTOBUF_200 = concat(new byte[]{(byte) 0x88}, literal(31, "application/protobuf"));
+    private static final byte[] EMPTY = new byte[0];
+
+    private final NioConnection conn;
+    private final NioHookTransport transport;
+    private final HpackDecoder hpack = new HpackDecoder(4096);
+    private final HashMap<Integer, Stream> streams = new HashMap<>();
+    // Reset streams whose request is still with the dispatcher. They count against MAX_CONCURRENT_STREAMS until it
+    // answers, so resetting a stream does not free a slot for more handler work.
+    private int resetInFlight;
+    private long resetWindowStart;
+    private int resetsInWindow;
+    private final byte[] frame = new byte[MAX_FRAME_SIZE];
+    private boolean prefaceReceived;
+    private boolean goAwaySent;
+    private boolean goAwayReceived;
+    private int lastStreamId;
+    private int peerMaxFrameSize = 16384;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private long connectionSendWindow = DEFAULT_WINDOW;
+    private final int connectionWindow;
+    // Receive window still open to the peer, and bytes consumed since the last connection WINDOW_UPDATE.
+    private int connectionRecvWindow = DEFAULT_WINDOW;
+    private int connectionUnacked;
+    // Set while the buffer ends in an incomplete frame (or preface), from when that frame started arriving.
+    private boolean partialFrame;
+    private long partialFrameSince;
+
+    // Header block being assembled from HEADERS + CONTINUATION; headerStreamId != 0 while incomplete.
+    private int headerStreamId;
+    private boolean headerEndStream;
+    private byte[] headerBlock = new byte[1024];
+    private int headerBlockLength;
+    private Stream decoding;
+
+    Http2Codec(NioConnection conn, NioHookTransport transport) {
+        this.conn = conn;
+        this.transport = transport;
+        this.connectionWindow = Math.max(CONNECTION_WINDOW, transport.maxConnectionBufferedBytes);
+    }
+
+    void startWithPriorKnowledge() {
+        writeServerPreface();
+    }
+
+    // "Upgrade: h2c": HTTP2-Settings counts as the client's first SETTINGS and the request becomes stream 1.
+    // body[0, length) is pooled and owned by the stream from here on.
+    void startUpgraded(byte[] settings, String method, String path, byte[] body, int length, long receivedNanos, long timeoutMillis) {
+        writeServerPreface();
+        if (!applySettings(settings, 0, settings.length)) {
+            transport.dispatcher.buffers.release(body);
+            return;
+        }
+        Stream s = new Stream(1, peerInitialWindow);
+        s.method = method;
+        s.path = path;
+        s.headersDone = true;
+        s.receivedNanos = receivedNanos;
+        s.timeoutMillis = timeoutMillis;
+        s.body = body;
+        s.bodyLength = length;
+        // The upgrade request was complete: stream 1 starts half-closed (remote).
+        s.remoteClosed = true;
+        lastStreamId = 1;
+        streams.put(1, s);
+        onRequest(s);
+    }
+
+    @Override
+    public boolean isIdle() {
+        return streams.isEmpty() && headerStreamId == 0;
+    }
+
+    @Override
+    public boolean isReceivingLongerThan(long now, long timeoutNanos) {
+        if (partialFrame && now - partialFrameSince > timeoutNanos) {
+            return true;
+        }
+        for (Stream s : streams.values()) {
+            if (!s.remoteClosed && now - s.openedNanos > timeoutNanos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onData(ByteBuffer in) {
+        int start = in.position();
+        readFrames(in);
+        if (!in.hasRemaining()) {
+            partialFrame = false;
+        } else if (!partialFrame || in.position() != start) {
+            // Whatever is left began arriving with this read.
+            partialFrame = true;
+            partialFrameSince = System.nanoTime();
+        }
+    }
+
+    private void readFrames(ByteBuffer in) {
+        if (!prefaceReceived) {
+            int n = Math.min(in.remaining(), PREFACE.length);
+            for (int i = 0; i < n; i++) {
+                if (in.get(in.position() + i) != PREFACE[i]) {
+                    goAway(PROTOCOL_ERROR);
+                    return;
+                }
+            }
+            if (n < PREFACE.length) {
+                return;
+            }
+            in.position(in.position() + PREFACE.length);
+            prefaceReceived = true;
+        }
+        while (!goAwaySent && !conn.isClosed() && in.remaining() >= FRAME_HEADER) {
+            int p = in.position();
+            int length = (in.get(p) & 0xFF) << 16 | (in.get(p + 1) & 0xFF) << 8 | (in.get(p + 2) & 0xFF);
+            if (length > MAX_FRAME_SIZE) {
+                goAway(FRAME_SIZE_ERROR);
+                return;
+            }
+            if (in.remaining() < FRAME_HEADER + length) {
+                return;
+            }
+            int type = in.get(p + 3) & 0xFF;
+            int flags = in.get(p + 4) & 0xFF;
+            int streamId = in.getInt(p + 5) & 0x7FFFFFFF;
+            in.position(p + FRAME_HEADER);
+            in.get(frame, 0, length);
+            onFrame(type, flags, streamId, length);
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, int length) {
+        if (headerStreamId != 0 && type != CONTINUATION) {
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+        switch (type) {
+            case DATA:
+                onDataFrame(flags, streamId, length);
+                break;
+            case HEADERS:
+                onHeaders(flags, streamId, length);
+                break;
+            case PRIORITY:
+                if (streamId == 0) {
+                    goAway(PROTOCOL_ERROR);
+                } else if (length != 5) {
+                    writeRst(streamId, FRAME_SIZE_ERROR);
+                }
+                break;
+            case RST_STREAM:
+                if (streamId == 0 || streamId > lastStreamId) {
+                    goAway(PROTOCOL_ERROR);
+                } else if (length != 4) {
+                    goAway(FRAME_SIZE_ERROR);
+                } else if (!withinResetBudget()) {
+                    goAway(ENHANCE_YOUR_CALM);
+                } else {
+                    Stream s = streams.remove(streamId);
+                    if (s != null) {
+                        forget(s);
+                    }
+                    closeIfDrained();
+                }
+                break;
+            case SETTINGS:
+                onSettings(flags, streamId, length);
+                break;
+            case PUSH_PROMISE:
+                goAway(PROTOCOL_ERROR);
+                break;
+            case PING:
+                if (streamId != 0) {
+                    goAway(PROTOCOL_ERROR);
+                } else if (length != 8) {
+                    goAway(FRAME_SIZE_ERROR);
+                } else if ((flags & FLAG_ACK) == 0) {
+                    writeFrame(PING, FLAG_ACK, 0, frame, 0, 8);
+                }
+                break;
+            case GOAWAY:
+                if (streamId != 0) {
+                    goAway(PROTOCOL_ERROR);
+                    return;
+                }
+                goAwayReceived = true;
+                closeIfDrained();
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, length);
+                break;
+            case CONTINUATION:
+                if (headerStreamId == 0 || streamId != headerStreamId) {
+                    goAway(PROTOCOL_ERROR);
+                    return;
+                }
+                if (!appendHeaderBlock(0, length)) {
+                    return;
+                }
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    finishHeaders();
+                }
+                break;
+            default:
+                // Unknown frame types must be ignored.
+                break;
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, int length) {
+        if (streamId == 0 || (streamId & 1) == 0) {
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+        int start = 0;
+        int end = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1) {
+                goAway(PROTOCOL_ERROR);
+                return;
+            }
+            start = 1;
+            end -= frame[0] & 0xFF;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            start += 5;
+        }
+        if (end < start) {
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+
+        Stream s = streams.get(streamId);
+        if (s == null) {
+            if (streamId <= lastStreamId) {
+                goAway(STREAM_CLOSED);
+                return;
+            }
+            lastStreamId = streamId;
+            s = new Stream(streamId, peerInitialWindow);
+            streams.put(streamId, s);
+        } else if (s.remoteClosed || (flags & FLAG_END_STREAM) == 0) {
+            // Trailers must end the stream.
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+
+        headerStreamId = streamId;
+        headerEndStream = (flags & FLAG_END_STREAM) != 0;
+        headerBlockLength = 0;
+        if (!appendHeaderBlock(start, end - start)) {
+            return;
+        }
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            finishHeaders();
+        }
+    }
+
+    private boolean appendHeaderBlock(int offset, int length) {
+        int needed = headerBlockLength + length;
+        if (needed > MAX_HEADER_BLOCK) {
+            goAway(PROTOCOL_ERROR);
+            return false;
+        }
+        if (needed > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(needed, headerBlock.length * 2));
+        }
+        System.arraycopy(frame, offset, headerBlock, headerBlockLength, length);
+        headerBlockLength = needed;
+        return true;
+    }
+
+    private void finishHeaders() {
+        int streamId = headerStreamId;
+        headerStreamId = 0;
+        Stream s = streams.get(streamId);
+        // Trailers are decoded for HPACK state only.
+        decoding = s != null && !s.headersDone ? s : null;
+        boolean ok = hpack.decode(headerBlock, 0, headerBlockLength, this);
+        decoding = null;
+        if (!ok) {
+            goAway(COMPRESSION_ERROR);
+            return;
+        }
+        if (s == null) {
+            return;
+        }
+        if (!s.headersDone) {
+            s.headersDone = true;
+            s.receivedNanos = System.nanoTime();
+            if (streams.size() + resetInFlight > MAX_CONCURRENT_STREAMS || goAwayReceived) {
+                resetStream(s, REFUSED_STREAM);
+                return;
+            }
+            if (s.method == null || s.path == null) {
+                resetStream(s, PROTOCOL_ERROR);
+                return;
+            }
+            s.maxBody = transport.dispatcher.maxRequestBytes(s.path);
+            if (s.declaredLength > s.maxBody) {
+                // Rejected on the declared size, before any DATA is read.
+                rejectTooLarge(s);
+                return;
+            }
+        }
+        if (headerEndStream) {
+            s.remoteClosed = true;
+            onRequest(s);
+        }
+    }
+
+    @Override
+    public void header(String name, String value) {
+        Stream s = decoding;
+        if (s == null) {
+            return;
+        }
+        if (name.equals(":method")) {
+            s.method = value;
+        } else if (name.equals(":path")) {
+            int q = value.indexOf('?');
+            s.path = q >= 0 ? value.substring(0, q) : value;
+        } else if (name.equals(TIMEOUT_HEADER)) {
+            s.timeoutMillis = HookDispatcher.parseTimeout(value);
+        } else if (name.equals("content-length")) {
+            try {
+                s.declaredLength = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                s.declaredLength = -1;
+            }
+        }
+    }
+
+    private void onDataFrame(int flags, int streamId, int length) {
+        if (streamId == 0) {
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+        int start = 0;
+        int end = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1 || (frame[0] & 0xFF) >= length) {
+                goAway(PROTOCOL_ERROR);
+                return;
+            }
+            start = 1;
+            end -= frame[0] & 0xFF;
+        }
+
+        // Flow control counts the whole payload, padding included, even for streams we drop.
+        if (length > connectionRecvWindow) {
+            goAway(FLOW_CONTROL_ERROR);
+            return;
+        }
+        connectionRecvWindow -= length;
+
+        Stream s = streams.get(streamId);
+        if (s != null && s.rejected) {
+            // Rest of a body already answered with 413.
+            consumed(length);
+            if ((flags & FLAG_END_STREAM) != 0) {
+                s.remoteClosed = true;
+            }
+            return;
+        }
+        if (s == null || s.remoteClosed || !s.headersDone) {
+            consumed(length);
+            if (streamId > lastStreamId || (s != null && !s.headersDone)) {
+                goAway(PROTOCOL_ERROR);
+            } else {
+                writeRst(streamId, STREAM_CLOSED);
+            }
+            return;
+        }
+        if (length > s.recvWindow) {
+            consumed(length);
+            resetStream(s, FLOW_CONTROL_ERROR);
+            return;
+        }
+        s.recvWindow -= length;
+        int n = end - start;
+        // Padding is never buffered; the body is credited back once it leaves the stream.
+        consumed(length - n);
+        s.buffered += n;
+        if (s.bodyLength + n > s.maxBody) {
+            rejectTooLarge(s);
+            return;
+        }
+        if (s.bodyLength + n > s.body.length) {
+            int size = Math.min(s.maxBody, HeapBufferPool.bodyCapacity(s.declaredLength, s.body.length, s.bodyLength + n));
+            s.body = transport.dispatcher.buffers.grow(s.body, s.bodyLength, size);
+        }
+        System.arraycopy(frame, start, s.body, s.bodyLength, n);
+        s.bodyLength += n;
+
+        if ((flags & FLAG_END_STREAM) != 0) {
+            s.remoteClosed = true;
+            onRequest(s);
+            return;
+        }
+        s.unacked += length;
+        if (s.unacked >= STREAM_WINDOW / 2) {
+            writeWindowUpdate(streamId, s.unacked);
+            s.recvWindow += s.unacked;
+            s.unacked = 0;
+        }
+    }
+
+    // Returns connection-level credit for bytes no longer held by this connection.
+    private void consumed(int n) {
+        connectionUnacked += n;
+        if (connectionUnacked >= connectionWindow / 2) {
+            writeWindowUpdate(0, connectionUnacked);
+            connectionRecvWindow += connectionUnacked;
+            connectionUnacked = 0;
+        }
+    }
+
+    // The stream's buffered body has been dispatched or dropped.
+    private void releaseBuffered(Stream s) {
+        if (s.buffered > 0) {
+            consumed(s.buffered);
+            s.buffered = 0;
+        }
+    }
+
+    private void onSettings(int flags, int streamId, int length) {
+        if (streamId != 0) {
+            goAway(PROTOCOL_ERROR);
+            return;
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) {
+                goAway(FRAME_SIZE_ERROR);
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            goAway(FRAME_SIZE_ERROR);
+            return;
+        }
+        if (!applySettings(frame, 0, length)) {
+            return;
+        }
+        writeFrame(SETTINGS, FLAG_ACK, 0, EMPTY, 0, 0);
+        flushAllStreams();
+    }
+
+    private boolean applySettings(byte[] buf, int offset, int length) {
+        for (int p = offset; p + 6 <= offset + length; p += 6) {
+            int id = (buf[p] & 0xFF) << 8 | (buf[p + 1] & 0xFF);
+            long value = ((long) (buf[p + 2] & 0xFF) << 24) | (buf[p + 3] & 0xFF) << 16 | (buf[p + 4] & 0xFF) << 8 | (buf[p + 5] & 0xFF);
+            switch (id) {
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) {
+                        goAway(PROTOCOL_ERROR);
+                        return false;
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > Integer.MAX_VALUE) {
+                        goAway(FLOW_CONTROL_ERROR);
+                        return false;
+                    }
+                    int delta = (int) value - peerInitialWindow;
+                    peerInitialWindow = (int) value;
+                    for (Stream s : streams.values()) {
+                        s.sendWindow += delta;
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < 16384 || value > 16777215) {
+                        goAway(PROTOCOL_ERROR);
+                        return false;
+                    }
+                    peerMaxFrameSize = (int) value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void onWindowUpdate(int streamId, int length) {
+        if (length != 4) {
+            goAway(FRAME_SIZE_ERROR);
+            return;
+        }
+        int increment = ((frame[0] & 0x7F) << 24) | (frame[1] & 0xFF) << 16 | (frame[2] & 0xFF) << 8 | (frame[3] & 0xFF);
+        if (streamId == 0) {
+            if (increment == 0) {
+                goAway(PROTOCOL_ERROR);
+                return;
+            }
+            connectionSendWindow += increment;
+            if (connectionSendWindow > Integer.MAX_VALUE) {
+                goAway(FLOW_CONTROL_ERROR);
+                return;
+            }
+            flushAllStreams();
+            return;
+        }
+        Stream s = streams.get(streamId);
+        if (s == null) {
+            return;
+        }
+        if (increment == 0) {
+            resetStream(s, PROTOCOL_ERROR);
+            return;
+        }
+        s.sendWindow += increment;
+        if (s.sendWindow > Integer.MAX_VALUE) {
+            resetStream(s, FLOW_CONTROL_ERROR);
+            return;
+        }
+        flushStream(s);
+    }
+
+    private void rejectTooLarge(Stream s) {
+        s.rejected = true;
+        releaseBuffered(s);
+        transport.dispatcher.buffers.release(s.body);
+        s.body = EMPTY;
+        new StreamResponder(s).text(413, "Payload Too Large");
+    }
+
+    private void onRequest(Stream s) {
+        releaseBuffered(s);
+        byte[] body = s.body;
+        int length = s.bodyLength;
+        s.body = EMPTY;
+        HeapBufferPool buffers = transport.dispatcher.buffers;
+        StreamResponder responder = new StreamResponder(s);
+        HookEndpoint<?, ?> endpoint = HookDispatcher.find(s.path);
+        if (endpoint == null) {
+            buffers.release(body);
+            if (transport.dispatcher.isMetricsPath(s.path)) {
+                transport.dispatcher.serveMetrics(s.method, responder);
+            } else {
+                responder.text(404, "Not Found");
+            }
+            return;
+        }
+        s.dispatched = true;
+        String method = s.method;
+        long receivedNanos = s.receivedNanos;
+        long timeoutMillis = s.timeoutMillis;
+        transport.dispatch(
+                () -> {
+                    try {
+                        transport.dispatcher.dispatch(endpoint, method, body, length, receivedNanos, timeoutMillis, responder);
+                    } finally {
+                        buffers.release(body);
+                    }
+                },
+                () -> {
+                    buffers.release(body);
+                    responder.text(503, "Service Unavailable");
+                });
+    }
+
+    private void respond(Stream s, byte[] headerBlock, byte[] body) {
+        respond(s, headerBlock, body, body.length, null);
+    }
+
+    // release (may be null) runs once body[0, length) has been copied into frames or the stream is gone.
+    private void respond(Stream s, byte[] headerBlock, byte[] body, int length, Runnable release) {
+        answered(s);
+        if (s.reset || conn.isClosed()) {
+            if (release != null) {
+                release.run();
+            }
+            return;
+        }
+        writeFrame(HEADERS, FLAG_END_HEADERS | (length == 0 ? FLAG_END_STREAM : 0), s.id, headerBlock, 0, headerBlock.length);
+        if (length == 0) {
+            if (release != null) {
+                release.run();
+            }
+            closeStream(s);
+            return;
+        }
+        s.pending = body;
+        s.pendingLength = length;
+        s.pendingRelease = release;
+        s.pendingOffset = 0;
+        flushStream(s);
+    }
+
+    // Sends as much of the pending body as both windows and the peer's frame size allow.
+    private void flushStream(Stream s) {
+        while (s.pending != null) {
+            int remaining = s.pendingLength - s.pendingOffset;
+            long window = Math.min(connectionSendWindow, s.sendWindow);
+            if (window <= 0) {
+                return;
+            }
+            int n = (int) Math.min(Math.min(remaining, window), peerMaxFrameSize);
+            byte[] chunk = s.pending;
+            int offset = s.pendingOffset;
+            Runnable release = null;
+            if (n == remaining) {
+                release = s.pendingRelease;
+                s.pending = s.queued == null ? null : s.queued.pollFirst();
+                s.pendingLength = s.pending == null ? 0 : s.pending.length;
+                s.pendingRelease = s.queued == null ? null : s.queuedReleases.pollFirst();
+                s.pendingOffset = 0;
+            } else {
+                s.pendingOffset += n;
+            }
+            boolean last = s.pending == null && !s.bodyOpen;
+            writeFrame(DATA, last ? FLAG_END_STREAM : 0, s.id, chunk, offset, n, release);
+            s.sendWindow -= n;
+            connectionSendWindow -= n;
+            if (last) {
+                closeStream(s);
+                return;
+            }
+        }
+        if (s.streamed && !s.bodyOpen && streams.get(s.id) == s) {
+            // A streamed body that ended after its last chunk went out.
+            writeFrame(DATA, FLAG_END_STREAM, s.id, EMPTY, 0, 0);
+            closeStream(s);
+        }
+    }
+
+    private void enqueue(Stream s, byte[] chunk, Runnable release) {
+        if (s.pending == null) {
+            s.pending = chunk;
+            s.pendingLength = chunk.length;
+            s.pendingRelease = release;
+            s.pendingOffset = 0;
+            return;
+        }
+        if (s.queued == null) {
+            s.queued = new ArrayDeque<>();
+            s.queuedReleases = new ArrayDeque<>();
+        }
+        s.queued.add(chunk);
+        s.queuedReleases.add(release);
+    }
+
+    // Unblocks a writer streaming into a stream that will never send its body, and returns a request body that
+    // will never be dispatched to the pool.
+    private void dropBody(Stream s) {
+        releaseBuffered(s);
+        transport.dispatcher.buffers.release(s.body);
+        s.body = EMPTY;
+        if (s.pendingRelease != null) {
+            s.pendingRelease.run();
+            s.pendingRelease = null;
+        }
+        s.pending = null;
+        if (s.queued != null) {
+            Runnable r;
+            while ((r = s.queuedReleases.pollFirst()) != null) {
+                r.run();
+            }
+            s.queued.clear();
+        }
+    }
+
+    private void flushAllStreams() {
+        if (streams.isEmpty()) {
+            return;
+        }
+        for (Stream s : new ArrayList<>(streams.values())) {
+            if (s.pending != null) {
+                flushStream(s);
+            }
+        }
+    }
+
+    private void closeStream(Stream s) {
+        streams.remove(s.id);
+        closeIfDrained();
+    }
+
+    private void resetStream(Stream s, int errorCode) {
+        forget(s);
+        streams.remove(s.id);
+        writeRst(s.id, errorCode);
+        closeIfDrained();
+    }
+
+    // The stream is gone for the peer; a request still with the dispatcher keeps its slot until answered.
+    private void forget(Stream s) {
+        s.reset = true;
+        dropBody(s);
+        if (s.dispatched && !s.answered) {
+            resetInFlight++;
+        }
+    }
+
+    // The dispatcher answered the stream's request (a sized response, or the end of a streamed one).
+    private void answered(Stream s) {
+        if (!s.dispatched || s.answered) {
+            return;
+        }
+        s.answered = true;
+        if (s.reset) {
+            resetInFlight--;
+        }
+    }
+
+    private boolean withinResetBudget() {
+        long now = System.nanoTime();
+        if (now - resetWindowStart > RESET_WINDOW_NANOS) {
+            resetWindowStart = now;
+            resetsInWindow = 0;
+        }
+        return ++resetsInWindow <= MAX_RESETS_PER_WINDOW;
+    }
+
+    private void closeIfDrained() {
+        if (goAwayReceived && streams.isEmpty()) {
+            goAway(NO_ERROR);
+        }
+    }
+
+    private void goAway(int errorCode) {
+        if (goAwaySent) {
+            return;
+        }
+        goAwaySent = true;
+        byte[] payload = new byte[8];
+        putInt(payload, 0, lastStreamId);
+        putInt(payload, 4, errorCode);
+        writeFrame(GOAWAY, 0, 0, payload, 0, 8);
+        conn.closeAfterFlush();
+    }
+
+    private void writeServerPreface() {
+        byte[] settings = new byte[12];
+        putSetting(settings, 0, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+        putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW);
+        writeFrame(SETTINGS, 0, 0, settings, 0, settings.length);
+        writeWindowUpdate(0, connectionWindow - DEFAULT_WINDOW);
+        connectionRecvWindow = connectionWindow;
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+    }
+
+    private void writeRst(int streamId, int errorCode) {
+        byte[] payload = new byte[4];
+        putInt(payload, 0, errorCode);
+        writeFrame(RST_STREAM, 0, streamId, payload, 0, 4);
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) {
+        writeFrame(type, flags, streamId, payload, offset, length, null);
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length, Runnable onFlushed) {
+        byte[] out = new byte[FRAME_HEADER + length];
+        out[0] = (byte) (length >>> 16);
+        out[1] = (byte) (length >>> 8);
+        out[2] = (byte) length;
+        out[3] = (byte) type;
+        out[4] = (byte) flags;
+        putInt(out, 5, streamId);
+        System.arraycopy(payload, offset, out, FRAME_HEADER, length);
+        if (onFlushed == null) {
+            conn.write(out);
+        } else {
+            conn.write(out, onFlushed);
+        }
+    }
+
+    // contentLength < 0 leaves the header out (streamed body).
+    static byte[] responseHeaders(int status, String contentType, int contentLength) {
+        byte[] statusField;
+        switch (status) {
+            case 200:
+                statusField = new byte[]{(byte) 0x88};
+                break;
+            case 400:
+                statusField = new byte[]{(byte) 0x8C};
+                break;
+            case 404:
+                statusField = new byte[]{(byte) 0x8D};
+                break;
+            case 500:
+                statusField = new byte[]{(byte) 0x8E};
+                break;
+            default:
+                statusField = literal(8, Integer.toString(status));
+                break;
+        }
+        byte[] prefix = status == 200 && contentType.equals("application/protobuf")
+                ? PROTOBUF_200
+                : concat(statusField, literal(31, contentType));
+        if (contentLength < 0) {
+            return prefix;
+        }
+        // "content-length" is static index 28.
+        return concat(prefix, literal(28, Integer.toString(contentLength)));
+    }
+
+    // Literal header field without indexing, indexed name (RFC 7541 6.2.2), raw (non-Huffman) value.
+    private static byte[] literal(int nameIndex, String value) {
+        byte[] v = value.getBytes(StandardCharsets.ISO_8859_1);
+        // Both the 4-bit name prefix and the 7-bit length prefix need at most one continuation byte here.
+        byte[] out = new byte[2 + 1 + v.length];
+        int p = 0;
+        if (nameIndex < 15) {
+            out[p++] = (byte) nameIndex;
+        } else {
+            out[p++] = 0x0F;
+            out[p++] = (byte) (nameIndex - 15);
+        }
+        out[p++] = (byte) v.length;
+        System.arraycopy(v, 0, out, p, v.length);
+        return Arrays.copyOf(out, p + v.length);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+
+    private static void putSetting(byte[] buf, int offset, int id, int value) {
+        buf[offset] = (byte) (id >>> 8);
+        buf[offset + 1] = (byte) id;
+        putInt(buf, offset + 2, value);
+    }
+
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+
+    private static final class Stream {
+        final int id;
+        String method;
+        String path;
+        boolean headersDone;
+        boolean remoteClosed;
+        // Read by the handler thread streaming into this stream.
+        volatile boolean reset;
+        // Pooled; body[0, bodyLength).
+        byte[] body = EMPTY;
+        int bodyLength;
+        long declaredLength = -1;
+        final long openedNanos = System.nanoTime();
+        long receivedNanos;
+        long timeoutMillis = -1;
+        int maxBody;
+        // Answered 413 while the client may still be sending the body.
+        boolean rejected;
+        // Handed to the dispatcher, and whether it has answered since.
+        boolean dispatched;
+        boolean answered;
+        int unacked;
+        // What the peer may still send on this stream, and body bytes held against the connection window.
+        int recvWindow = STREAM_WINDOW;
+        int buffered;
+        long sendWindow;
+        byte[] pending;
+        int pendingLength;
+        int pendingOffset;
+        Runnable pendingRelease;
+        // Streamed body: chunks after pending, and whether more may follow.
+        ArrayDeque<byte[]> queued;
+        ArrayDeque<Runnable> queuedReleases;
+        boolean streamed;
+        boolean bodyOpen;
+
+        Stream(int id, int initialWindow) {
+            this.id = id;
+            this.sendWindow = initialWindow;
+        }
+    }
+
+    private final class StreamResponder implements HookDispatcher.Responder {
+        private final Stream stream;
+
+        StreamResponder(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void protobuf(Message response) {
+            HeapBufferPool buffers = transport.dispatcher.buffers;
+            int size = response.getSerializedSize();
+            byte[] body = buffers.acquire(size);
+            try {
+                CodedOutputStream cos = CodedOutputStream.newInstance(body, 0, size);
+                response.writeTo(cos);
+                cos.checkNoSpaceLeft();
+            } catch (IOException e) {
+                buffers.release(body);
+                throw new IllegalStateException("serializing to a byte array", e);
+            }
+            byte[] headers = responseHeaders(200, "application/protobuf", size);
+            conn.execute(() -> respond(stream, headers, body, size, () -> buffers.release(body)));
+        }
+
+        @Override
+        public void protobuf(byte[] serialized) {
+            byte[] headers = responseHeaders(200, "application/protobuf", serialized.length);
+            conn.execute(() -> respond(stream, headers, serialized));
+        }
+
+        @Override
+        public void text(int statusCode, String text) {
+            byte[] body = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+            byte[] headers = responseHeaders(statusCode, "text/plain; charset=utf-8", body.length);
+            conn.execute(() -> respond(stream, headers, body));
+        }
+
+        @Override
+        public OutputStream stream() {
+            return new DataStream(conn, stream);
+        }
+    }
+
+    // DATA frames of one stream, subject to the usual flow control; a stalled window stalls the writer.
+    private final class DataStream extends NioBodyStream {
+        private final Stream stream;
+
+        DataStream(NioConnection conn, Stream stream) {
+            super(conn);
+            this.stream = stream;
+        }
+
+        @Override
+        boolean isBroken() {
+            return super.isBroken() || stream.reset;
+        }
+
+        @Override
+        byte[] frame(byte[] b, int off, int len) {
+            return Arrays.copyOfRange(b, off, off + len);
+        }
+
+        @Override
+        void onChunk(byte[] chunk, Runnable release) {
+            if (!start()) {
+                release.run();
+                return;
+            }
+            enqueue(stream, chunk, release);
+            flushStream(stream);
+        }
+
+        @Override
+        void onEnd() {
+            answered(stream);
+            if (start()) {
+                stream.bodyOpen = false;
+                flushStream(stream);
+            }
+        }
+
+        // Sends HEADERS (no content-length) before the first chunk; false when the stream is gone.
+        private boolean start() {
+            if (stream.reset || conn.isClosed()) {
+                return false;
+            }
+            if (!stream.streamed) {
+                stream.streamed = true;
+                stream.bodyOpen = true;
+                byte[] headers = responseHeaders(200, "application/protobuf", -1);
+                writeFrame(HEADERS, FLAG_END_HEADERS, stream.id, headers, 0, headers.length);
+            }
+            return true;
+        }
+    }
+}
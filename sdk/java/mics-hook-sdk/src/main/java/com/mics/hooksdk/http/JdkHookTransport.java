@@ -0,0 +1,129 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.Message;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+// com.sun.net.httpserver based transport (HTTP/1.1 only).
+final class JdkHookTransport implements HookTransport {
+    private final HttpServer server;
+
+    JdkHookTransport(InetSocketAddress address, HookDispatcher dispatcher, Executor executor) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        // null keeps the JDK default: handlers run on the dispatcher thread.
+        this.server.setExecutor(executor);
+        for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+            server.createContext(e.getPath(), handler(HookDispatcher.find(e.getPath()), dispatcher));
+        }
+        if (dispatcher.isMetricsPath(HookDispatcher.METRICS_PATH)) {
+            server.createContext(HookDispatcher.METRICS_PATH,
+                    exchange -> dispatcher.serveMetrics(exchange.getRequestMethod(), new ExchangeResponder(exchange, dispatcher.buffers)));
+        }
+    }
+
+    private static <Q extends Message, R extends Message> HttpHandler handler(HookEndpoint<Q, R> endpoint, HookDispatcher dispatcher) {
+        return new EndpointHandler<>(endpoint, dispatcher);
+    }
+
+    @Override
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static final class EndpointHandler<Q extends Message, R extends Message> implements HttpHandler {
+        private final HookEndpoint<Q, R> endpoint;
+        private final HookDispatcher dispatcher;
+
+        private EndpointHandler(HookEndpoint<Q, R> endpoint, HookDispatcher dispatcher) {
+            this.endpoint = endpoint;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // The JDK server exposes no arrival time; executor queueing is only covered by deadlineBudget.
+            long receivedNanos = System.nanoTime();
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                ProtobufHttp.writeText(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            ProtobufHttp.PooledBody body;
+            try {
+                body = ProtobufHttp.readBody(exchange, dispatcher.buffers, dispatcher.options().getMaxRequestBytes(endpoint.endpoint));
+            } catch (IOException e) {
+                ProtobufHttp.writeText(exchange, 400, "Bad Request");
+                return;
+            }
+            if (body == null) {
+                ProtobufHttp.writeText(exchange, 413, "Payload Too Large");
+                return;
+            }
+            try {
+                dispatcher.dispatch(endpoint, exchange.getRequestMethod(), body.array, body.length, receivedNanos,
+                        HookDispatcher.parseTimeout(exchange.getRequestHeaders().getFirst(MicsHookServerOptions.TIMEOUT_HEADER)),
+                        new ExchangeResponder(exchange, dispatcher.buffers));
+            } finally {
+                dispatcher.buffers.release(body.array);
+            }
+        }
+    }
+
+    private static final class ExchangeResponder implements HookDispatcher.Responder {
+        private final HttpExchange exchange;
+        private final HeapBufferPool buffers;
+
+        private ExchangeResponder(HttpExchange exchange, HeapBufferPool buffers) {
+            this.exchange = exchange;
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void protobuf(Message response) {
+            try {
+                ProtobufHttp.writeProtobuf(exchange, 200, response, buffers);
+            } catch (IOException | RuntimeException e) {
+                exchange.close();
+            }
+        }
+
+        @Override
+        public void protobuf(byte[] serialized) {
+            try {
+                ProtobufHttp.writeProtobuf(exchange, 200, serialized);
+            } catch (IOException | RuntimeException e) {
+                exchange.close();
+            }
+        }
+
+        @Override
+        public void text(int statusCode, String text) {
+            try {
+                ProtobufHttp.writeText(exchange, statusCode, text);
+            } catch (IOException | RuntimeException e) {
+                exchange.close();
+            }
+        }
+
+        @Override
+        public OutputStream stream() throws IOException {
+            return ProtobufHttp.openProtobufStream(exchange);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mics.hooksdk.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Power-of-two buckets over non-negative longs. Bucket i holds values in (2^(minShift+i-1), 2^(minShift+i)];
+// bucket 0 also takes everything below, the last slot before the sum is the overflow (+Inf) bucket.
+// Starts with one row of cells and adds rows (up to one per CPU) only when concurrent recorders collide,
+// so quiet series stay small and hot ones do not bounce a single cache line between cores.
+final class LogHistogram {
+    private static final int MAX_STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+    private final int minShift;
+    private final int buckets;
+    // buckets + overflow + sum
+    private final int width;
+    private final AtomicReference<AtomicLongArray[]> rows;
+
+    LogHistogram(int minShift, int buckets) {
+        this.minShift = minShift;
+        this.buckets = buckets;
+        this.width = buckets + 2;
+        this.rows = new AtomicReference<>(new AtomicLongArray[]{new AtomicLongArray(width)});
+    }
+
+    int buckets() {
+        return buckets;
+    }
+
+    // Upper bound of bucket i in recorded units.
+    long upperBound(int i) {
+        return 1L << (minShift + i);
+    }
+
+    int bucketOf(long value) {
+        if (value <= (1L << minShift)) {
+            return 0;
+        }
+        int ceilLog2 = 64 - Long.numberOfLeadingZeros(value - 1);
+        return Math.min(ceilLog2 - minShift, buckets);
+    }
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int i = bucketOf(value);
+        AtomicLongArray[] rs = rows.get();
+        AtomicLongArray row = rs[probe() & (rs.length - 1)];
+        long c = row.get(i);
+        if (!row.compareAndSet(i, c, c + 1)) {
+            row.getAndIncrement(i);
+            if (rs.length < MAX_STRIPES) {
+                grow(rs);
+            }
+        }
+        row.getAndAdd(width - 1, value);
+    }
+
+    // Copies the summed counts into counts[0..buckets] (last = overflow) and returns the sum of recorded values.
+    long snapshot(long[] counts) {
+        long sum = 0;
+        for (int i = 0; i <= buckets; i++) {
+            counts[i] = 0;
+        }
+        for (AtomicLongArray row : rows.get()) {
+            for (int i = 0; i <= buckets; i++) {
+                counts[i] += row.get(i);
+            }
+            sum += row.get(width - 1);
+        }
+        return sum;
+    }
+
+    private void grow(AtomicLongArray[] seen) {
+        AtomicLongArray[] bigger = new AtomicLongArray[seen.length * 2];
+        System.arraycopy(seen, 0, bigger, 0, seen.length);
+        for (int i = seen.length; i < bigger.length; i++) {
+            bigger[i] = new AtomicLongArray(width);
+        }
+        // Losing the race is fine: someone else already grew it.
+        rows.compareAndSet(seen, bigger);
+    }
+
+    private static int probe() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
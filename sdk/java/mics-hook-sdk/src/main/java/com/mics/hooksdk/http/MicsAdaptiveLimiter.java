@@ -0,0 +1,315 @@
+package com.mics.hooksdk.http;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Server-wide concurrency limit per endpoint that follows handler latency instead of a fixed number. Requests over the
+// limit are answered "overloaded" right before their handler would run (cache hits and coalesced followers never count).
+//
+// Every windowSamples completed handler calls, the window's average latency is compared with the baseline (the
+// lowest window average seen): within tolerance * baseline a limit that is actually used grows by sqrt(limit); above
+// it the limit is multiplied by tolerance * baseline / average (at least 0.5). Independently, a single call slower
+// than latencyTarget cuts the limit at once by latencyTarget / latency (at least 0.5), so admitted requests stay under
+// the gateway's hook timeout. Calls that started before the last cut are ignored: they ran under the old limit.
+//
+// Latency that does not drop after a cut is not caused by our own concurrency (e.g. the database got slower): the
+// baseline is then raised to it, so the limit settles at what the slower backend can serve instead of collapsing.
+// A raised baseline is dropped back to the lowest one seen every 10s, which finds out when the backend recovers.
+public final class MicsAdaptiveLimiter {
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final double DEFAULT_TOLERANCE = 2.0;
+    // Below the gateway's default HOOK_TIMEOUT (150ms), leaving room for the network and the gateway itself.
+    public static final Duration DEFAULT_LATENCY_TARGET = Duration.ofMillis(100);
+    public static final int DEFAULT_WINDOW_SAMPLES = 20;
+
+    private static final double MIN_GRADIENT = 0.5;
+    // Smaller cuts change latency too little to tell queueing from a slower backend.
+    private static final double SHIFT_MAX_GRADIENT = 0.75;
+    // A target cut aims this far below the target rather than right at it.
+    private static final double TARGET_HEADROOM = 0.9;
+    // How long a raised baseline is trusted before the lowest one is tried again.
+    private static final long PROBE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long targetNanos;
+    private final int windowSamples;
+    private final LongSupplier nanoClock;
+    private final Limit[] limits;
+
+    private MicsAdaptiveLimiter(Builder b) {
+        this(b.initialLimit, b.minLimit, b.maxLimit, b.tolerance, b.latencyTarget, b.windowSamples, System::nanoTime);
+    }
+
+    MicsAdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, Duration latencyTarget, int windowSamples,
+                        LongSupplier nanoClock) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.targetNanos = latencyTarget.toNanos();
+        this.windowSamples = windowSamples;
+        this.nanoClock = nanoClock;
+        this.limits = new Limit[MicsHookEndpoint.values().length];
+        int initial = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        long created = nanoClock.getAsLong();
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = new Limit(initial, created);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getLimit(MicsHookEndpoint endpoint) {
+        return limits[endpoint.ordinal()].limit;
+    }
+
+    public int getInFlight(MicsHookEndpoint endpoint) {
+        return limits[endpoint.ordinal()].inFlight.get();
+    }
+
+    public long getRejectedCount(MicsHookEndpoint endpoint) {
+        return limits[endpoint.ordinal()].rejected.sum();
+    }
+
+    // Lowest window average latency; 0 until the first window completes.
+    public Duration getBaseline(MicsHookEndpoint endpoint) {
+        Limit l = limits[endpoint.ordinal()];
+        synchronized (l) {
+            return Duration.ofNanos(l.baselineNanos);
+        }
+    }
+
+    long nanoTime() {
+        return nanoClock.getAsLong();
+    }
+
+    // false when the endpoint is at its limit. Every true must be followed by exactly one release().
+    boolean tryAcquire(MicsHookEndpoint endpoint) {
+        Limit l = limits[endpoint.ordinal()];
+        while (true) {
+            int n = l.inFlight.get();
+            if (n >= l.limit) {
+                l.rejected.increment();
+                return false;
+            }
+            if (l.inFlight.compareAndSet(n, n + 1)) {
+                l.admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    // startNanos from nanoTime() when the handler was called; sample false for a permit that ran no handler.
+    void release(MicsHookEndpoint endpoint, long startNanos, boolean sample) {
+        Limit l = limits[endpoint.ordinal()];
+        int inFlight = l.inFlight.getAndDecrement();
+        if (sample) {
+            l.sample(startNanos, nanoClock.getAsLong(), inFlight);
+        }
+    }
+
+    void writeTo(StringBuilder sb) {
+        MicsHookEndpoint[] endpoints = MicsHookEndpoint.values();
+        sb.append("# HELP mics_hook_adaptive_requests_total Adaptive limiter decisions by endpoint and result.\n");
+        sb.append("# TYPE mics_hook_adaptive_requests_total counter\n");
+        for (MicsHookEndpoint e : endpoints) {
+            Limit l = limits[e.ordinal()];
+            sb.append("mics_hook_adaptive_requests_total{endpoint=\"").append(e.getPath()).append("\",result=\"admitted\"} ")
+                    .append(l.admitted.sum()).append('\n');
+            sb.append("mics_hook_adaptive_requests_total{endpoint=\"").append(e.getPath()).append("\",result=\"rejected\"} ")
+                    .append(l.rejected.sum()).append('\n');
+        }
+        sb.append("# HELP mics_hook_adaptive_limit Current adaptive concurrency limit.\n");
+        sb.append("# TYPE mics_hook_adaptive_limit gauge\n");
+        for (MicsHookEndpoint e : endpoints) {
+            sb.append("mics_hook_adaptive_limit{endpoint=\"").append(e.getPath()).append("\"} ").append(limits[e.ordinal()].limit).append('\n');
+        }
+        sb.append("# HELP mics_hook_adaptive_in_flight Handler calls holding an adaptive limiter permit.\n");
+        sb.append("# TYPE mics_hook_adaptive_in_flight gauge\n");
+        for (MicsHookEndpoint e : endpoints) {
+            sb.append("mics_hook_adaptive_in_flight{endpoint=\"").append(e.getPath()).append("\"} ").append(limits[e.ordinal()].inFlight.get()).append('\n');
+        }
+        sb.append("# HELP mics_hook_adaptive_baseline_seconds Handler latency the adaptive limiter considers uncongested.\n");
+        sb.append("# TYPE mics_hook_adaptive_baseline_seconds gauge\n");
+        for (MicsHookEndpoint e : endpoints) {
+            sb.append("mics_hook_adaptive_baseline_seconds{endpoint=\"").append(e.getPath()).append("\"} ")
+                    .append(getBaseline(e).toNanos() / 1e9).append('\n');
+        }
+    }
+
+    private final class Limit {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private volatile int limit;
+
+        // Guarded by this.
+        private double estimate;
+        private long baselineNanos;
+        // Lowest window average ever; baselineNanos is above it after a shift.
+        private long floorNanos;
+        private long raisedAt;
+        private long cutAt;
+        // Window average and factor of the last gradient cut; 0 when the last window did not make a large one.
+        private long beforeCutNanos;
+        private double cutGradient;
+        private int samples;
+        private long sumNanos;
+        private int peakInFlight;
+
+        private Limit(int initial, long created) {
+            this.limit = initial;
+            this.estimate = initial;
+            this.cutAt = created;
+        }
+
+        private synchronized void sample(long startNanos, long now, int inFlightAtEnd) {
+            if (startNanos - cutAt < 0) {
+                return;
+            }
+            long latency = now - startNanos;
+            if (latency > targetNanos) {
+                beforeCutNanos = 0;
+                cut(now, TARGET_HEADROOM * targetNanos / latency);
+                return;
+            }
+            samples++;
+            sumNanos += latency;
+            peakInFlight = Math.max(peakInFlight, inFlightAtEnd);
+            if (samples < windowSamples) {
+                return;
+            }
+            long avg = Math.max(1, sumNanos / samples);
+            int peak = peakInFlight;
+            resetWindow();
+
+            // Queueing latency falls about in proportion to the cut; less than half of that drop means the
+            // backend itself got slower.
+            boolean shifted = beforeCutNanos != 0 && avg >= beforeCutNanos * (1 + cutGradient) / 2;
+            beforeCutNanos = 0;
+            if (baselineNanos == 0 || avg < baselineNanos) {
+                baselineNanos = avg;
+            } else if (shifted) {
+                baselineNanos = avg;
+                raisedAt = now;
+            } else if (baselineNanos > floorNanos && now - raisedAt >= PROBE_NANOS) {
+                // Only a window at low concurrency shows that the backend is fast again; go back and look.
+                baselineNanos = floorNanos;
+                raisedAt = now;
+            }
+            if (floorNanos == 0 || avg < floorNanos) {
+                floorNanos = avg;
+            }
+            double gradient = tolerance * baselineNanos / avg;
+            if (gradient >= 1) {
+                // Only grow a limit that is being used; an idle endpoint says nothing about its capacity.
+                if (peak * 2 >= limit) {
+                    set(estimate + Math.sqrt(estimate));
+                }
+            } else {
+                double g = Math.max(MIN_GRADIENT, gradient);
+                if (g <= SHIFT_MAX_GRADIENT) {
+                    beforeCutNanos = avg;
+                    cutGradient = g;
+                }
+                cut(now, g);
+            }
+        }
+
+        private void cut(long now, double gradient) {
+            set(estimate * Math.max(MIN_GRADIENT, gradient));
+            cutAt = now;
+            resetWindow();
+        }
+
+        private void set(double value) {
+            estimate = Math.max(minLimit, Math.min(maxLimit, value));
+            limit = (int) estimate;
+        }
+
+        private void resetWindow() {
+            samples = 0;
+            sumNanos = 0;
+            peakInFlight = 0;
+        }
+    }
+
+    public static final class Builder {
+        private int initialLimit = DEFAULT_INITIAL_LIMIT;
+        private int minLimit = DEFAULT_MIN_LIMIT;
+        private int maxLimit = DEFAULT_MAX_LIMIT;
+        private double tolerance = DEFAULT_TOLERANCE;
+        private Duration latencyTarget = DEFAULT_LATENCY_TARGET;
+        private int windowSamples = DEFAULT_WINDOW_SAMPLES;
+
+        private Builder() {
+        }
+
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit <= 0) {
+                throw new IllegalArgumentException("initialLimit must be > 0");
+            }
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            if (minLimit <= 0) {
+                throw new IllegalArgumentException("minLimit must be > 0");
+            }
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit <= 0) {
+                throw new IllegalArgumentException("maxLimit must be > 0");
+            }
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        // How much slower than the baseline a window may be before the limit shrinks.
+        public Builder tolerance(double tolerance) {
+            if (!(tolerance >= 1)) {
+                throw new IllegalArgumentException("tolerance must be >= 1");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        // Keep this below the gateway's HOOK_TIMEOUT.
+        public Builder latencyTarget(Duration latencyTarget) {
+            Objects.requireNonNull(latencyTarget, "latencyTarget");
+            if (latencyTarget.isNegative() || latencyTarget.isZero()) {
+                throw new IllegalArgumentException("latencyTarget must be > 0");
+            }
+            this.latencyTarget = latencyTarget;
+            return this;
+        }
+
+        public Builder windowSamples(int windowSamples) {
+            if (windowSamples <= 0) {
+                throw new IllegalArgumentException("windowSamples must be > 0");
+            }
+            this.windowSamples = windowSamples;
+            return this;
+        }
+
+        public MicsAdaptiveLimiter build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalArgumentException("minLimit must be <= maxLimit");
+            }
+            return new MicsAdaptiveLimiter(this);
+        }
+    }
+}
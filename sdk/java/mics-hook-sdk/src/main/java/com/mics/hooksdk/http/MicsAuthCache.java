@@ -0,0 +1,485 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Caches /auth decisions per (tenant_id, SHA-256 of token, device_id) so a reconnect storm reaches onAuth once per
+// client. Bodies are stored serialized without meta and answered like group member cache hits (meta + bytes).
+// Accepted tokens live for min(ttl, token expiry) when a tokenExpiry function is configured, rejected ones
+// (ok=false) for the shorter negativeTtl. Raw tokens are never kept. Entries are evicted oldest-first beyond
+// maximumEntries / maximumBytes.
+//
+// Revocation: invalidateUser / invalidateToken / invalidateTenant / invalidateAll drop matching entries and leave a
+// fence that hits and puts check, so an onAuth answer computed before a revocation is never served after it.
+// Entries are indexed by tenant, user and token, so a revocation only visits the entries it drops. Fences are kept
+// for 2 * ttl (an entry lives at most ttl after a load of at most ttl); loads that take longer than ttl are not
+// cached at all. Beyond MAX_FENCES the oldest fences are folded into the global floor, which only makes older
+// entries and loads miss.
+public final class MicsAuthCache {
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(5);
+    public static final int DEFAULT_MAXIMUM_ENTRIES = 100_000;
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    // Rough per-entry overhead (key with token hash, entry, map node, queue node) counted against maximumBytes.
+    private static final int ENTRY_OVERHEAD = 192;
+    private static final int MAX_FENCES = 4096;
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Function<String, Instant> tokenExpiry;
+    private final LongSupplier nanoClock;
+    private final LongSupplier millisClock;
+
+    private final WriteOrderedCache<Key, Entry> cache;
+    // Revocation scope (tenant id, List.of(tenant, user id) or a Key without device) -> cached entries in it.
+    // Each map is only touched inside index.compute for its scope, or after it was removed from the index.
+    private final ConcurrentHashMap<Object, Map<Key, Entry>> index = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong floor = new AtomicLong();
+    // Keyed by revocation scope; loads started below the fence are dropped.
+    private final ConcurrentHashMap<Object, Fence> fences = new ConcurrentHashMap<>();
+    // Fences in the order they were set, for expiry and the MAX_FENCES bound.
+    private final ConcurrentLinkedQueue<Fence> fenceOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger fenceCount = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private final LongAdder revocations = new LongAdder();
+
+    private MicsAuthCache(Builder b) {
+        this(b.ttl, b.negativeTtl, b.maximumEntries, b.maximumBytes, b.tokenExpiry, System::nanoTime, System::currentTimeMillis);
+    }
+
+    MicsAuthCache(Duration ttl, Duration negativeTtl, int maximumEntries, long maximumBytes,
+                  Function<String, Instant> tokenExpiry, LongSupplier nanoClock, LongSupplier millisClock) {
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.tokenExpiry = tokenExpiry;
+        this.nanoClock = nanoClock;
+        this.millisClock = millisClock;
+        this.cache = new WriteOrderedCache<>(maximumEntries, maximumBytes, e -> ENTRY_OVERHEAD + e.body.length, e -> e.expiresAt,
+                nanoClock, new WriteOrderedCache.Listener<>() {
+                    @Override
+                    public void stored(Key key, Entry previous, Entry e) {
+                        if (previous != null) {
+                            unindex(key, previous);
+                        }
+                        for (Object scope : scopes(key, e)) {
+                            index.compute(scope, (s, m) -> {
+                                Map<Key, Entry> keys = m != null ? m : new HashMap<>();
+                                keys.put(key, e);
+                                return keys;
+                            });
+                        }
+                    }
+
+                    @Override
+                    public void removed(Key key, Entry e) {
+                        unindex(key, e);
+                    }
+                });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Every device signed in with this user id (positive entries only).
+    public void invalidateUser(String tenantId, String userId) {
+        Objects.requireNonNull(tenantId, "tenantId");
+        Objects.requireNonNull(userId, "userId");
+        List<String> scope = List.of(tenantId, userId);
+        fence(scope);
+        removeScope(scope);
+    }
+
+    // The token on every device, accepted or rejected.
+    public void invalidateToken(String tenantId, String token) {
+        Key tokenKey = new Key(Objects.requireNonNull(tenantId, "tenantId"), Objects.requireNonNull(token, "token"), null);
+        fence(tokenKey);
+        removeScope(tokenKey);
+    }
+
+    public void invalidateTenant(String tenantId) {
+        Objects.requireNonNull(tenantId, "tenantId");
+        fence(tenantId);
+        removeScope(tenantId);
+    }
+
+    public void invalidateAll() {
+        floor.accumulateAndGet(generation.incrementAndGet(), Math::max);
+        revocations.increment();
+        cache.removeIf((k, e) -> true);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // Loads that completed after a matching revocation (or took longer than ttl) and were therefore not cached.
+    public long getStaleLoadCount() {
+        return staleLoads.sum();
+    }
+
+    public long getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    public int getEntryCount() {
+        return cache.size();
+    }
+
+    public long getWeightedBytes() {
+        return cache.weightedBytes();
+    }
+
+    int getFenceCount() {
+        return fenceCount.get();
+    }
+
+    static Key key(String tenantId, String token, String deviceId) {
+        return new Key(tenantId, token, deviceId);
+    }
+
+    // Cached body without meta, or null on a miss.
+    byte[] get(Key key) {
+        Entry e = cache.get(key);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (cache.isExpired(e) || isFenced(e.generation, key, e.userId)) {
+            cache.remove(key, e);
+            misses.increment();
+            return null;
+        }
+        (e.userId == null ? negativeHits : hits).increment();
+        return e.body;
+    }
+
+    // Read before the handler is invoked; hand back to put().
+    Load beginLoad(Key key, String token) {
+        return new Load(key, token, generation.get(), nanoClock.getAsLong());
+    }
+
+    void put(Load load, AuthResponse response) {
+        long now = nanoClock.getAsLong();
+        String userId = response.getOk() ? response.getUserId() : null;
+        if (now - load.startedAt > ttlNanos || isFenced(load.generation, load.key, userId)) {
+            staleLoads.increment();
+            return;
+        }
+        long ttl = response.getOk() ? positiveTtl(load.token) : negativeTtlNanos;
+        if (ttl <= 0) {
+            return;
+        }
+        byte[] body = (response.hasMeta() ? response.toBuilder().clearMeta().build() : response).toByteArray();
+        Entry fresh = new Entry(body, userId, now + ttl, load.generation);
+        if (!cache.put(load.key, fresh, cur -> cur != null && cur.generation > load.generation)) {
+            staleLoads.increment();
+        }
+    }
+
+    void writeTo(StringBuilder sb) {
+        sb.append("# HELP mics_hook_auth_cache_requests_total Auth decision cache lookups by result.\n");
+        sb.append("# TYPE mics_hook_auth_cache_requests_total counter\n");
+        sb.append("mics_hook_auth_cache_requests_total{result=\"hit\"} ").append(hits.sum()).append('\n');
+        sb.append("mics_hook_auth_cache_requests_total{result=\"negative_hit\"} ").append(negativeHits.sum()).append('\n');
+        sb.append("mics_hook_auth_cache_requests_total{result=\"miss\"} ").append(misses.sum()).append('\n');
+        sb.append("# HELP mics_hook_auth_cache_stale_loads_total Decisions not cached because of a revocation during the load.\n");
+        sb.append("# TYPE mics_hook_auth_cache_stale_loads_total counter\n");
+        sb.append("mics_hook_auth_cache_stale_loads_total ").append(staleLoads.sum()).append('\n');
+        sb.append("# HELP mics_hook_auth_cache_evictions_total Entries evicted by the size bounds.\n");
+        sb.append("# TYPE mics_hook_auth_cache_evictions_total counter\n");
+        sb.append("mics_hook_auth_cache_evictions_total ").append(cache.evictionCount()).append('\n');
+        sb.append("# HELP mics_hook_auth_cache_revocations_total invalidateUser/invalidateToken/invalidateTenant/invalidateAll calls.\n");
+        sb.append("# TYPE mics_hook_auth_cache_revocations_total counter\n");
+        sb.append("mics_hook_auth_cache_revocations_total ").append(revocations.sum()).append('\n');
+        sb.append("# HELP mics_hook_auth_cache_entries Cached auth decisions.\n");
+        sb.append("# TYPE mics_hook_auth_cache_entries gauge\n");
+        sb.append("mics_hook_auth_cache_entries ").append(cache.size()).append('\n');
+    }
+
+    private long positiveTtl(String token) {
+        if (tokenExpiry == null) {
+            return ttlNanos;
+        }
+        Instant expiry;
+        try {
+            expiry = tokenExpiry.apply(token);
+        } catch (RuntimeException e) {
+            // Unreadable expiry: do not cache rather than guess.
+            return 0;
+        }
+        if (expiry == null) {
+            return ttlNanos;
+        }
+        long remainingMillis = expiry.toEpochMilli() - millisClock.getAsLong();
+        return Math.min(ttlNanos, Duration.ofMillis(Math.max(0, remainingMillis)).toNanos());
+    }
+
+    private void fence(Object scope) {
+        long now = nanoClock.getAsLong();
+        Fence f = new Fence(scope, generation.incrementAndGet(), now + 2 * ttlNanos);
+        fences.put(scope, f);
+        fenceOrder.add(f);
+        fenceCount.incrementAndGet();
+        revocations.increment();
+        // Fences are queued in expiry order; nodes of fences since replaced for their scope just go.
+        for (Fence head; (head = fenceOrder.peek()) != null; ) {
+            boolean expired = head.until - now <= 0;
+            if (!expired && fenceCount.get() <= MAX_FENCES) {
+                return;
+            }
+            if (!fenceOrder.remove(head)) {
+                continue;
+            }
+            fenceCount.decrementAndGet();
+            if (fences.remove(head.scope, head) && !expired) {
+                // Still needed: keep it in force by raising the floor to it.
+                floor.accumulateAndGet(head.generation, Math::max);
+            }
+        }
+    }
+
+    private void removeScope(Object scope) {
+        Map<Key, Entry> keys = index.remove(scope);
+        if (keys != null) {
+            keys.forEach(cache::remove);
+        }
+    }
+
+    private void unindex(Key key, Entry e) {
+        for (Object scope : scopes(key, e)) {
+            index.computeIfPresent(scope, (s, m) -> {
+                m.remove(key, e);
+                return m.isEmpty() ? null : m;
+            });
+        }
+    }
+
+    private static List<Object> scopes(Key key, Entry e) {
+        return e.userId == null
+                ? List.of(key.tenantId, key.withoutDevice())
+                : List.of(key.tenantId, key.withoutDevice(), List.of(key.tenantId, e.userId));
+    }
+
+    // Whether a decision loaded at generation g was revoked since; userId is null for negative decisions.
+    private boolean isFenced(long g, Key key, String userId) {
+        if (g < floor.get()) {
+            return true;
+        }
+        if (fences.isEmpty()) {
+            return false;
+        }
+        return below(key.tenantId, g) || below(key.withoutDevice(), g)
+                || (userId != null && below(List.of(key.tenantId, userId), g));
+    }
+
+    private boolean below(Object scope, long g) {
+        Fence f = fences.get(scope);
+        return f != null && g < f.generation;
+    }
+
+    public static final class Builder {
+        private Duration ttl = DEFAULT_TTL;
+        private Duration negativeTtl = DEFAULT_NEGATIVE_TTL;
+        private int maximumEntries = DEFAULT_MAXIMUM_ENTRIES;
+        private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+        private Function<String, Instant> tokenExpiry;
+
+        private Builder() {
+        }
+
+        // Upper bound for accepted tokens.
+        public Builder ttl(Duration ttl) {
+            this.ttl = positive(ttl, "ttl");
+            return this;
+        }
+
+        // For ok=false decisions (invalid / expired tokens hammering /auth).
+        public Builder negativeTtl(Duration negativeTtl) {
+            this.negativeTtl = positive(negativeTtl, "negativeTtl");
+            return this;
+        }
+
+        // Expiry of a token (e.g. a JWT "exp" claim), or null when unknown; accepted tokens are cached until
+        // min(expiry, now + ttl). A function that throws leaves that decision uncached.
+        public Builder tokenExpiry(Function<String, Instant> tokenExpiry) {
+            this.tokenExpiry = Objects.requireNonNull(tokenExpiry, "tokenExpiry");
+            return this;
+        }
+
+        public Builder maximumEntries(int maximumEntries) {
+            if (maximumEntries <= 0) {
+                throw new IllegalArgumentException("maximumEntries must be > 0");
+            }
+            this.maximumEntries = maximumEntries;
+            return this;
+        }
+
+        public Builder maximumBytes(long maximumBytes) {
+            if (maximumBytes <= 0) {
+                throw new IllegalArgumentException("maximumBytes must be > 0");
+            }
+            this.maximumBytes = maximumBytes;
+            return this;
+        }
+
+        public MicsAuthCache build() {
+            if (negativeTtl.compareTo(ttl) > 0) {
+                throw new IllegalArgumentException("negativeTtl must not exceed ttl");
+            }
+            return new MicsAuthCache(this);
+        }
+
+        private static Duration positive(Duration d, String name) {
+            Objects.requireNonNull(d, name);
+            if (d.isNegative() || d.isZero()) {
+                throw new IllegalArgumentException(name + " must be > 0");
+            }
+            return d;
+        }
+    }
+
+    // deviceId == null: all devices of the token (revocation scope).
+    static final class Key {
+        final String tenantId;
+        final String deviceId;
+        private final long h0;
+        private final long h1;
+        private final long h2;
+        private final long h3;
+        private final int hash;
+
+        Key(String tenantId, String token, String deviceId) {
+            byte[] d = sha256(token);
+            this.tenantId = tenantId;
+            this.deviceId = deviceId;
+            this.h0 = longAt(d, 0);
+            this.h1 = longAt(d, 8);
+            this.h2 = longAt(d, 16);
+            this.h3 = longAt(d, 24);
+            this.hash = 31 * (31 * tenantId.hashCode() + Objects.hashCode(deviceId)) + Long.hashCode(h0);
+        }
+
+        private Key(Key k) {
+            this.tenantId = k.tenantId;
+            this.deviceId = null;
+            this.h0 = k.h0;
+            this.h1 = k.h1;
+            this.h2 = k.h2;
+            this.h3 = k.h3;
+            this.hash = 31 * (31 * tenantId.hashCode()) + Long.hashCode(h0);
+        }
+
+        Key withoutDevice() {
+            return new Key(this);
+        }
+
+        boolean sameToken(Key k) {
+            return h0 == k.h0 && h1 == k.h1 && h2 == k.h2 && h3 == k.h3 && tenantId.equals(k.tenantId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return sameToken(k) && Objects.equals(deviceId, k.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static byte[] sha256(String token) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        private static long longAt(byte[] b, int off) {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = v << 8 | (b[off + i] & 0xFF);
+            }
+            return v;
+        }
+    }
+
+    static final class Load {
+        final Key key;
+        final String token;
+        final long generation;
+        final long startedAt;
+
+        private Load(Key key, String token, long generation, long startedAt) {
+            this.key = key;
+            this.token = token;
+            this.generation = generation;
+            this.startedAt = startedAt;
+        }
+    }
+
+    // userId == null marks a negative (ok=false) decision.
+    private static final class Entry {
+        final byte[] body;
+        final String userId;
+        final long expiresAt;
+        final long generation;
+
+        Entry(byte[] body, String userId, long expiresAt, long generation) {
+            this.body = body;
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Fence {
+        final Object scope;
+        final long generation;
+        final long until;
+
+        Fence(Object scope, long generation, long until) {
+            this.scope = scope;
+            this.generation = generation;
+            this.until = until;
+        }
+    }
+}
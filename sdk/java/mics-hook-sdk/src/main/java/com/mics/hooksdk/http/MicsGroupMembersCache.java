@@ -0,0 +1,278 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.CodedOutputStream;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Caches serialized GetGroupMembersResponse bodies (without meta) per (tenant_id, group_id).
+// A hit is answered as meta-field bytes + cached bytes, which protobuf parses as the same message,
+// so user_ids are never re-serialized. Entries expire after the TTL and are evicted oldest-first
+// once either the entry or the byte bound is exceeded.
+//
+// Versioning: every load remembers the generation it started at; invalidateGroup leaves a tombstone at a newer
+// generation, so a load that raced with an invalidation is returned to its caller but never cached.
+public final class MicsGroupMembersCache {
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAXIMUM_ENTRIES = 10_000;
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    // Rough per-entry overhead (key, entry, map node, queue node) counted against maximumBytes.
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    private final WriteOrderedCache<Key, Entry> cache;
+    private final AtomicLong generation = new AtomicLong();
+    // Loads that started before this generation may have missed an evicted tombstone: never cache them.
+    private final AtomicLong tombstoneFloor = new AtomicLong();
+    // Same per tenant, for groups of an invalidated tenant that had no entry to tombstone (one value per tenant).
+    private final ConcurrentHashMap<String, Long> tenantFloors = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private MicsGroupMembersCache(Builder b) {
+        this(b.ttl, b.maximumEntries, b.maximumBytes, System::nanoTime);
+    }
+
+    MicsGroupMembersCache(Duration ttl, int maximumEntries, long maximumBytes, LongSupplier nanoClock) {
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.cache = new WriteOrderedCache<>(maximumEntries, maximumBytes, MicsGroupMembersCache::weight, e -> e.expiresAt,
+                nanoClock, new WriteOrderedCache.Listener<>() {
+                    @Override
+                    public void removed(Key key, Entry e) {
+                        if (e.body == null) {
+                            tombstoneFloor.accumulateAndGet(e.generation, Math::max);
+                        }
+                    }
+                });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public void invalidateGroup(String tenantId, String groupId) {
+        Key key = new Key(Objects.requireNonNull(tenantId, "tenantId"), Objects.requireNonNull(groupId, "groupId"));
+        Entry tombstone = new Entry(null, nanoClock.getAsLong() + ttlNanos, generation.incrementAndGet());
+        cache.put(key, tombstone, cur -> false);
+        invalidations.increment();
+    }
+
+    public void invalidateTenant(String tenantId) {
+        Objects.requireNonNull(tenantId, "tenantId");
+        long g = generation.incrementAndGet();
+        tenantFloors.merge(tenantId, g, Math::max);
+        cache.removeIf((k, e) -> k.tenantId.equals(tenantId));
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        // Every load in progress started below this floor, so none of them can repopulate the cache.
+        long g = generation.incrementAndGet();
+        tombstoneFloor.accumulateAndGet(g, Math::max);
+        cache.removeIf((k, e) -> true);
+        invalidations.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    // Loads that completed after their group was invalidated and were therefore not cached.
+    public long getStaleLoadCount() {
+        return staleLoads.sum();
+    }
+
+    public long getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    // Includes tombstones of recently invalidated groups.
+    public int getEntryCount() {
+        return cache.size();
+    }
+
+    public long getWeightedBytes() {
+        return cache.weightedBytes();
+    }
+
+    // Cached body without meta, or null on a miss.
+    byte[] get(String tenantId, String groupId) {
+        Key key = new Key(tenantId, groupId);
+        Entry e = cache.get(key);
+        if (e == null || e.body == null) {
+            misses.increment();
+            return null;
+        }
+        if (cache.isExpired(e)) {
+            cache.remove(key, e);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.body;
+    }
+
+    // Token to hand back to put(); read before the handler is invoked.
+    long beginLoad() {
+        return generation.get();
+    }
+
+    void put(String tenantId, String groupId, long token, GetGroupMembersResponse response) {
+        putSerialized(tenantId, groupId, token, (response.hasMeta() ? response.toBuilder().clearMeta().build() : response).toByteArray());
+    }
+
+    // body is a serialized GetGroupMembersResponse without meta.
+    void putSerialized(String tenantId, String groupId, long token, byte[] body) {
+        Key key = new Key(tenantId, groupId);
+        Entry fresh = new Entry(body, nanoClock.getAsLong() + ttlNanos, token);
+        boolean stored = cache.put(key, fresh, cur -> token < tombstoneFloor.get()
+                || token < tenantFloors.getOrDefault(tenantId, 0L)
+                || (cur != null && cur.generation > token));
+        if (!stored) {
+            staleLoads.increment();
+        }
+    }
+
+    // Response bytes for a hit: field 1 (meta) followed by the cached fields.
+    static byte[] withMeta(HookMeta meta, byte[] cachedBody) {
+        int metaSize = CodedOutputStream.computeMessageSize(1, meta);
+        byte[] out = new byte[metaSize + cachedBody.length];
+        CodedOutputStream cos = CodedOutputStream.newInstance(out, 0, metaSize);
+        try {
+            cos.writeMessage(1, meta);
+            cos.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("serializing to a byte array", e);
+        }
+        System.arraycopy(cachedBody, 0, out, metaSize, cachedBody.length);
+        return out;
+    }
+
+    void writeTo(StringBuilder sb) {
+        sb.append("# HELP mics_hook_group_members_cache_requests_total Group member cache lookups by result.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_requests_total counter\n");
+        sb.append("mics_hook_group_members_cache_requests_total{result=\"hit\"} ").append(hits.sum()).append('\n');
+        sb.append("mics_hook_group_members_cache_requests_total{result=\"miss\"} ").append(misses.sum()).append('\n');
+        sb.append("# HELP mics_hook_group_members_cache_stale_loads_total Loads discarded because the group was invalidated meanwhile.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_stale_loads_total counter\n");
+        sb.append("mics_hook_group_members_cache_stale_loads_total ").append(staleLoads.sum()).append('\n');
+        sb.append("# HELP mics_hook_group_members_cache_evictions_total Entries evicted by the size bounds.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_evictions_total counter\n");
+        sb.append("mics_hook_group_members_cache_evictions_total ").append(cache.evictionCount()).append('\n');
+        sb.append("# HELP mics_hook_group_members_cache_invalidations_total invalidateGroup/invalidateAll calls.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_invalidations_total counter\n");
+        sb.append("mics_hook_group_members_cache_invalidations_total ").append(invalidations.sum()).append('\n');
+        sb.append("# HELP mics_hook_group_members_cache_entries Cached groups, including invalidation tombstones.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_entries gauge\n");
+        sb.append("mics_hook_group_members_cache_entries ").append(cache.size()).append('\n');
+        sb.append("# HELP mics_hook_group_members_cache_bytes Cached bytes including per-entry overhead.\n");
+        sb.append("# TYPE mics_hook_group_members_cache_bytes gauge\n");
+        sb.append("mics_hook_group_members_cache_bytes ").append(cache.weightedBytes()).append('\n');
+    }
+
+    private static long weight(Entry e) {
+        return ENTRY_OVERHEAD + (e.body == null ? 0 : e.body.length);
+    }
+
+    public static final class Builder {
+        private Duration ttl = DEFAULT_TTL;
+        private int maximumEntries = DEFAULT_MAXIMUM_ENTRIES;
+        private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+
+        private Builder() {
+        }
+
+        public Builder ttl(Duration ttl) {
+            Objects.requireNonNull(ttl, "ttl");
+            if (ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("ttl must be > 0");
+            }
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder maximumEntries(int maximumEntries) {
+            if (maximumEntries <= 0) {
+                throw new IllegalArgumentException("maximumEntries must be > 0");
+            }
+            this.maximumEntries = maximumEntries;
+            return this;
+        }
+
+        public Builder maximumBytes(long maximumBytes) {
+            if (maximumBytes <= 0) {
+                throw new IllegalArgumentException("maximumBytes must be > 0");
+            }
+            this.maximumBytes = maximumBytes;
+            return this;
+        }
+
+        public MicsGroupMembersCache build() {
+            return new MicsGroupMembersCache(this);
+        }
+    }
+
+    private static final class Key {
+        final String tenantId;
+        final String groupId;
+        final int hash;
+
+        Key(String tenantId, String groupId) {
+            this.tenantId = tenantId;
+            this.groupId = groupId;
+            this.hash = 31 * tenantId.hashCode() + groupId.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return tenantId.equals(k.tenantId) && groupId.equals(k.groupId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // body == null marks a tombstone left by invalidateGroup.
+    private static final class Entry {
+        final byte[] body;
+        final long expiresAt;
+        final long generation;
+
+        Entry(byte[] body, long expiresAt, long generation) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+}
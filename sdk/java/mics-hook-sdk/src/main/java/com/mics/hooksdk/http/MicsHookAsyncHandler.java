@@ -0,0 +1,34 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+// The server completes the HTTP exchange when the returned future completes; a failed (or timed-out)
+// future yields the endpoint's "handler error" response.
+public interface MicsHookAsyncHandler {
+    CompletableFuture<AuthResponse> onAuth(AuthRequest request);
+
+    CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request);
+
+    CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request);
+
+    default CompletableFuture<GetOfflineMessagesResponse> onGetOfflineMessages(GetOfflineMessagesRequest request) {
+        return CompletableFuture.completedFuture(GetOfflineMessagesResponse.newBuilder()
+                .setOk(true)
+                .build());
+    }
+
+    // Runs the sync handler on the calling (executor) thread and wraps its result or exception.
+    static MicsHookAsyncHandler fromSync(MicsHookHandler handler) {
+        return new SyncHookHandlerAdapter(Objects.requireNonNull(handler, "handler"));
+    }
+}
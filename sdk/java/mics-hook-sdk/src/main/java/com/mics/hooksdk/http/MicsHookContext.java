@@ -0,0 +1,74 @@
+package com.mics.hooksdk.http;
+
+import java.time.Duration;
+
+// The request a handler call is serving, readable from the handler through current(). Bound to the thread only for
+// the duration of the handler method itself: async handlers must read what they need before handing off.
+public final class MicsHookContext {
+    private static final ThreadLocal<MicsHookContext> CURRENT = new ThreadLocal<>();
+
+    private final MicsHookEndpoint endpoint;
+    private final String tenantId;
+    private final String requestId;
+    private final boolean hasDeadline;
+    // System.nanoTime() based; meaningless unless hasDeadline.
+    private final long deadlineNanos;
+
+    MicsHookContext(MicsHookEndpoint endpoint, String tenantId, String requestId, boolean hasDeadline, long deadlineNanos) {
+        this.endpoint = endpoint;
+        this.tenantId = tenantId;
+        this.requestId = requestId;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    // null outside a handler call.
+    public static MicsHookContext current() {
+        return CURRENT.get();
+    }
+
+    public MicsHookEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    // false when neither the caller nor the options set one.
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    // Time left until the caller gives up, never negative; null without a deadline. Meant for downstream timeouts
+    // (database queries, RPCs) so they do not outlive the request.
+    public Duration getRemaining() {
+        if (!hasDeadline) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return hasDeadline && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    // Binds ctx to this thread; returns the previous binding for unbind().
+    static MicsHookContext bind(MicsHookContext ctx) {
+        MicsHookContext previous = CURRENT.get();
+        CURRENT.set(ctx);
+        return previous;
+    }
+
+    static void unbind(MicsHookContext previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
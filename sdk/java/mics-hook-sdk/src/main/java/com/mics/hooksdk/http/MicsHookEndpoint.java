@@ -0,0 +1,18 @@
+package com.mics.hooksdk.http;
+
+public enum MicsHookEndpoint {
+    AUTH("/auth"),
+    CHECK_MESSAGE("/check-message"),
+    GET_GROUP_MEMBERS("/get-group-members"),
+    GET_OFFLINE_MESSAGES("/get-offline-messages");
+
+    private final String path;
+
+    MicsHookEndpoint(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+}
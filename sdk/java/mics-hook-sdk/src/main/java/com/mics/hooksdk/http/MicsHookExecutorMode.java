@@ -0,0 +1,13 @@
+package com.mics.hooksdk.http;
+
+public enum MicsHookExecutorMode {
+    // Fixed-size platform thread pool with a bounded queue; when full, the JDK transport runs requests on its
+    // dispatcher thread and the NIO transport answers 503.
+    BOUNDED_POOL,
+    // One virtual thread per request (Java 21+).
+    VIRTUAL_THREADS,
+    // Handlers run on the JDK dispatcher thread; only for CPU-only, non-blocking handlers.
+    DIRECT,
+    // Caller-supplied executor; the server never shuts it down.
+    CUSTOM
+}
@@ -0,0 +1,275 @@
+package com.mics.hooksdk.http;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per endpoint and per tenant request metrics, rendered in the Prometheus text format (0.0.4).
+// Requests that never resolve a tenant secret (bad body, invalid/unknown tenant) are recorded under tenant="",
+// so label cardinality follows the configured tenants rather than whatever callers send.
+public final class MicsHookMetrics {
+    // Tenants beyond this many get folded into tenant="__other__".
+    public static final int MAX_TENANTS = 1024;
+    static final String NO_TENANT = "";
+    static final String OTHER_TENANT = "__other__";
+
+    // Durations in nanoseconds: ~1us .. ~34s.
+    private static final int TIME_MIN_SHIFT = 10;
+    private static final int TIME_BUCKETS = 26;
+    // Body sizes in bytes: 16B .. 16MiB.
+    private static final int SIZE_MIN_SHIFT = 4;
+    private static final int SIZE_BUCKETS = 21;
+
+    enum Outcome {
+        OK("ok"),
+        METHOD_NOT_ALLOWED("method_not_allowed"),
+        BAD_REQUEST("bad_request"),
+        INVALID_TENANT("invalid_tenant"),
+        UNKNOWN_TENANT("unknown_tenant"),
+        INVALID_SIGN("invalid_sign"),
+        REPLAY_REJECTED("replay_rejected"),
+        OVERLOADED("overloaded"),
+        DEADLINE_EXCEEDED("deadline_exceeded"),
+        HANDLER_ERROR("handler_error");
+
+        final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+    }
+
+    static final class Series {
+        final LongAdder inFlight = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+        final LogHistogram parseNanos = new LogHistogram(TIME_MIN_SHIFT, TIME_BUCKETS);
+        final LogHistogram verifyNanos = new LogHistogram(TIME_MIN_SHIFT, TIME_BUCKETS);
+        final LogHistogram handlerNanos = new LogHistogram(TIME_MIN_SHIFT, TIME_BUCKETS);
+        final LogHistogram requestBytes = new LogHistogram(SIZE_MIN_SHIFT, SIZE_BUCKETS);
+        final LogHistogram responseBytes = new LogHistogram(SIZE_MIN_SHIFT, SIZE_BUCKETS);
+
+        private Series() {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+        }
+
+        void count(Outcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+    }
+
+    private final boolean enabled;
+    private final MicsGroupMembersCache groupMembersCache;
+    private final MicsAuthCache authCache;
+    private final MicsReplayGuard replayGuard;
+    private final HookBulkheads bulkheads;
+    private final MicsAdaptiveLimiter adaptiveLimiter;
+    private final ConcurrentHashMap<String, Series[]> byTenant = new ConcurrentHashMap<>();
+
+    MicsHookMetrics(boolean enabled) {
+        this(enabled, null, null, null, null, null);
+    }
+
+    MicsHookMetrics(boolean enabled, MicsGroupMembersCache groupMembersCache, MicsAuthCache authCache, MicsReplayGuard replayGuard,
+                    HookBulkheads bulkheads, MicsAdaptiveLimiter adaptiveLimiter) {
+        this.enabled = enabled;
+        this.groupMembersCache = groupMembersCache;
+        this.authCache = authCache;
+        this.replayGuard = replayGuard;
+        this.bulkheads = bulkheads;
+        this.adaptiveLimiter = adaptiveLimiter;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // null when recording is disabled.
+    Series series(MicsHookEndpoint endpoint, String tenantId) {
+        if (!enabled) {
+            return null;
+        }
+        Series[] perEndpoint = byTenant.get(tenantId);
+        if (perEndpoint == null) {
+            String key = byTenant.size() >= MAX_TENANTS ? OTHER_TENANT : tenantId;
+            perEndpoint = byTenant.computeIfAbsent(key, k -> newSeries());
+        }
+        return perEndpoint[endpoint.ordinal()];
+    }
+
+    private static Series[] newSeries() {
+        Series[] s = new Series[MicsHookEndpoint.values().length];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = new Series();
+        }
+        return s;
+    }
+
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        writeTo(sb);
+        return sb.toString();
+    }
+
+    public void writeTo(Appendable out) {
+        List<String> tenants = new ArrayList<>(byTenant.keySet());
+        Collections.sort(tenants);
+        StringBuilder sb = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder(4096);
+
+        sb.append("# HELP mics_hook_requests_total Hook requests by outcome.\n");
+        sb.append("# TYPE mics_hook_requests_total counter\n");
+        for (String tenant : tenants) {
+            Series[] perEndpoint = byTenant.get(tenant);
+            for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+                Series s = perEndpoint[e.ordinal()];
+                for (Outcome o : Outcome.values()) {
+                    long n = s.outcomes[o.ordinal()].sum();
+                    if (n != 0) {
+                        sb.append("mics_hook_requests_total{");
+                        labels(sb, e, tenant);
+                        sb.append(",outcome=\"").append(o.label).append("\"} ").append(n).append('\n');
+                    }
+                }
+            }
+        }
+
+        sb.append("# HELP mics_hook_in_flight Requests past signature verification whose response has not been written.\n");
+        sb.append("# TYPE mics_hook_in_flight gauge\n");
+        for (String tenant : tenants) {
+            Series[] perEndpoint = byTenant.get(tenant);
+            for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+                sb.append("mics_hook_in_flight{");
+                labels(sb, e, tenant);
+                sb.append("} ").append(perEndpoint[e.ordinal()].inFlight.sum()).append('\n');
+            }
+        }
+
+        sb.append("# HELP mics_hook_coalesced_total Requests answered by sharing a concurrent identical request's handler call.\n");
+        sb.append("# TYPE mics_hook_coalesced_total counter\n");
+        for (String tenant : tenants) {
+            Series[] perEndpoint = byTenant.get(tenant);
+            for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+                long n = perEndpoint[e.ordinal()].coalesced.sum();
+                if (n != 0) {
+                    sb.append("mics_hook_coalesced_total{");
+                    labels(sb, e, tenant);
+                    sb.append("} ").append(n).append('\n');
+                }
+            }
+        }
+
+        long[] counts = new long[Math.max(TIME_BUCKETS, SIZE_BUCKETS) + 1];
+        histogram(sb, tenants, "mics_hook_parse_seconds", "Request body parse time.", 0, counts);
+        histogram(sb, tenants, "mics_hook_verify_seconds", "Tenant secret lookup and signature verification time.", 1, counts);
+        histogram(sb, tenants, "mics_hook_handler_seconds", "Handler time until its future completes.", 2, counts);
+        histogram(sb, tenants, "mics_hook_request_bytes", "Request body size.", 3, counts);
+        histogram(sb, tenants, "mics_hook_response_bytes", "Response body size.", 4, counts);
+        if (groupMembersCache != null) {
+            groupMembersCache.writeTo(sb);
+        }
+        if (authCache != null) {
+            authCache.writeTo(sb);
+        }
+        if (replayGuard != null) {
+            replayGuard.writeTo(sb);
+        }
+        if (bulkheads != null) {
+            bulkheads.writeTo(sb);
+        }
+        if (adaptiveLimiter != null) {
+            adaptiveLimiter.writeTo(sb);
+        }
+
+        if (sb != out) {
+            try {
+                out.append(sb);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void histogram(StringBuilder sb, List<String> tenants, String name, String help, int which, long[] counts) {
+        boolean seconds = which < 3;
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+        for (String tenant : tenants) {
+            Series[] perEndpoint = byTenant.get(tenant);
+            for (MicsHookEndpoint e : MicsHookEndpoint.values()) {
+                LogHistogram h = pick(perEndpoint[e.ordinal()], which);
+                long sum = h.snapshot(counts);
+                long total = 0;
+                for (int i = 0; i <= h.buckets(); i++) {
+                    total += counts[i];
+                }
+                if (total == 0) {
+                    continue;
+                }
+                long cumulative = 0;
+                for (int i = 0; i < h.buckets(); i++) {
+                    cumulative += counts[i];
+                    sb.append(name).append("_bucket{");
+                    labels(sb, e, tenant);
+                    sb.append(",le=\"");
+                    if (seconds) {
+                        sb.append(h.upperBound(i) / 1e9);
+                    } else {
+                        sb.append(h.upperBound(i));
+                    }
+                    sb.append("\"} ").append(cumulative).append('\n');
+                }
+                sb.append(name).append("_bucket{");
+                labels(sb, e, tenant);
+                sb.append(",le=\"+Inf\"} ").append(total).append('\n');
+                sb.append(name).append("_sum{");
+                labels(sb, e, tenant);
+                sb.append("} ");
+                if (seconds) {
+                    sb.append(sum / 1e9);
+                } else {
+                    sb.append(sum);
+                }
+                sb.append('\n');
+                sb.append(name).append("_count{");
+                labels(sb, e, tenant);
+                sb.append("} ").append(total).append('\n');
+            }
+        }
+    }
+
+    private static LogHistogram pick(Series s, int which) {
+        switch (which) {
+            case 0:
+                return s.parseNanos;
+            case 1:
+                return s.verifyNanos;
+            case 2:
+                return s.handlerNanos;
+            case 3:
+                return s.requestBytes;
+            default:
+                return s.responseBytes;
+        }
+    }
+
+    private static void labels(StringBuilder sb, MicsHookEndpoint endpoint, String tenant) {
+        sb.append("endpoint=\"").append(endpoint.getPath()).append("\",tenant=\"");
+        for (int i = 0; i < tenant.length(); i++) {
+            char c = tenant.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
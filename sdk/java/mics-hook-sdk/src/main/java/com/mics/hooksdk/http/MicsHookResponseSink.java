@@ -0,0 +1,22 @@
+package com.mics.hooksdk.http;
+
+import java.util.Iterator;
+
+// Receives the entries of a streamed list response. Each add encodes the entry into the response body right away;
+// when the client reads slower than the handler produces, add blocks. Throws UncheckedIOException once the client
+// has gone away, so the handler can stop producing.
+public interface MicsHookResponseSink<T> {
+    void add(T entry);
+
+    default void addAll(Iterable<? extends T> entries) {
+        for (T e : entries) {
+            add(e);
+        }
+    }
+
+    default void addAll(Iterator<? extends T> entries) {
+        while (entries.hasNext()) {
+            add(entries.next());
+        }
+    }
+}
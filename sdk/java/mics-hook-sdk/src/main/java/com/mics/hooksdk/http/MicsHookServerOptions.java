@@ -1,23 +1,448 @@
 package com.mics.hooksdk.http;
 
+import com.mics.hooksdk.TenantSecretResolver;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 public final class MicsHookServerOptions {
+    public static final int DEFAULT_POOL_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+    public static final int DEFAULT_POOL_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_NIO_EVENT_LOOPS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+    public static final Duration DEFAULT_REQUEST_READ_TIMEOUT = Duration.ofSeconds(30);
+    // Milliseconds the caller is still willing to wait, counted from when the request head arrives.
+    public static final String TIMEOUT_HEADER = "X-Mics-Timeout-Ms";
+
     private final Function<String, String> tenantSecretProvider;
+    private final TenantSecretResolver tenantSecretResolver;
     private final boolean requireSign;
+    private final MicsHookExecutorMode executorMode;
+    private final int poolThreads;
+    private final int poolQueueCapacity;
+    private final Executor executor;
+    private final Duration handlerTimeout;
+    private final Duration deadlineBudget;
+    private final MicsHookTransport transport;
+    private final int nioEventLoops;
+    private final boolean h2cEnabled;
+    private final Duration requestReadTimeout;
+    private final boolean metricsEnabled;
+    private final boolean metricsEndpointEnabled;
+    private final MicsGroupMembersCache groupMembersCache;
+    private final MicsAuthCache authCache;
+    private final MicsReplayGuard replayGuard;
+    private final MicsAdaptiveLimiter adaptiveLimiter;
+    private final Set<MicsHookEndpoint> coalescedEndpoints;
+    private final int maxRequestBytes;
+    private final int[] maxRequestBytesByEndpoint;
+    private final int[] bulkheadMaxConcurrent;
+    private final int[] bulkheadMaxQueued;
 
+    // Handlers run on the transport thread, one request at a time, as they did before executors were configurable;
+    // builder() defaults to BOUNDED_POOL, which runs them concurrently.
     public MicsHookServerOptions(Function<String, String> tenantSecretProvider, boolean requireSign) {
-        this.tenantSecretProvider = Objects.requireNonNull(tenantSecretProvider, "tenantSecretProvider");
-        this.requireSign = requireSign;
+        this(builder(tenantSecretProvider).requireSign(requireSign).direct());
+    }
+
+    private MicsHookServerOptions(Builder b) {
+        this.tenantSecretProvider = b.tenantSecretProvider;
+        this.tenantSecretResolver = b.tenantSecretResolver;
+        this.requireSign = b.requireSign;
+        this.executorMode = b.executorMode;
+        this.poolThreads = b.poolThreads;
+        this.poolQueueCapacity = b.poolQueueCapacity;
+        this.executor = b.executor;
+        this.handlerTimeout = b.handlerTimeout;
+        this.deadlineBudget = b.deadlineBudget;
+        this.transport = b.transport;
+        this.nioEventLoops = b.nioEventLoops;
+        this.h2cEnabled = b.h2cEnabled;
+        this.requestReadTimeout = b.requestReadTimeout;
+        this.metricsEnabled = b.metricsEnabled;
+        this.metricsEndpointEnabled = b.metricsEndpointEnabled;
+        this.groupMembersCache = b.groupMembersCache;
+        this.authCache = b.authCache;
+        this.replayGuard = b.replayGuard;
+        this.adaptiveLimiter = b.adaptiveLimiter;
+        this.coalescedEndpoints = Collections.unmodifiableSet(EnumSet.copyOf(b.coalescedEndpoints));
+        this.maxRequestBytes = b.maxRequestBytes;
+        this.maxRequestBytesByEndpoint = b.maxRequestBytesByEndpoint.clone();
+        this.bulkheadMaxConcurrent = b.bulkheadMaxConcurrent.clone();
+        this.bulkheadMaxQueued = b.bulkheadMaxQueued.clone();
+    }
+
+    public static Builder builder(Function<String, String> tenantSecretProvider) {
+        Objects.requireNonNull(tenantSecretProvider, "tenantSecretProvider");
+        return new Builder(tenantSecretProvider, TenantSecretResolver.of(tenantSecretProvider));
     }
 
+    // Not an overload of builder(): a lambda such as tid -> "secret" would fit both parameter types.
+    public static Builder builderWithResolver(TenantSecretResolver tenantSecretResolver) {
+        return new Builder(null, Objects.requireNonNull(tenantSecretResolver, "tenantSecretResolver"));
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    // Use getTenantSecretResolver(), which is set for every way of building the options. A resolver only keeps
+    // derived HMAC keys, so when the options were built from one the returned function answers null for unknown
+    // tenants and throws UnsupportedOperationException for known ones.
+    @Deprecated
     public Function<String, String> getTenantSecretProvider() {
-        return tenantSecretProvider;
+        if (tenantSecretProvider != null) {
+            return tenantSecretProvider;
+        }
+        return tenantId -> {
+            if (tenantSecretResolver.resolve(tenantId) == null) {
+                return null;
+            }
+            throw new UnsupportedOperationException("secrets are not kept when built from a TenantSecretResolver");
+        };
+    }
+
+    public TenantSecretResolver getTenantSecretResolver() {
+        return tenantSecretResolver;
     }
 
     public boolean isRequireSign() {
         return requireSign;
     }
-}
 
+    public MicsHookExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getPoolThreads() {
+        return poolThreads;
+    }
+
+    public int getPoolQueueCapacity() {
+        return poolQueueCapacity;
+    }
+
+    // Only set for CUSTOM.
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    // Duration.ZERO means handlers may take as long as they like.
+    public Duration getHandlerTimeout() {
+        return handlerTimeout;
+    }
+
+    // Zero when deadlines come from the X-Mics-Timeout-Ms header only.
+    public Duration getDeadlineBudget() {
+        return deadlineBudget;
+    }
+
+    public MicsHookTransport getTransport() {
+        return transport;
+    }
+
+    public int getNioEventLoops() {
+        return nioEventLoops;
+    }
+
+    // NIO transport only: accept HTTP/2 cleartext via prior knowledge and via "Upgrade: h2c".
+    public boolean isH2cEnabled() {
+        return h2cEnabled;
+    }
+
+    // NIO transport only: how long a request may take to arrive, from its first byte to the end of its body.
+    public Duration getRequestReadTimeout() {
+        return requestReadTimeout;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    // Serve MicsHookMetrics on GET /metrics (Prometheus text format) from the hook server itself.
+    public boolean isMetricsEndpointEnabled() {
+        return metricsEndpointEnabled;
+    }
+
+    // null unless set: every /get-group-members call reaches the handler.
+    public MicsGroupMembersCache getGroupMembersCache() {
+        return groupMembersCache;
+    }
+
+    public MicsAuthCache getAuthCache() {
+        return authCache;
+    }
+
+    // null unless set: request_id and timestamp_ms are not checked.
+    public MicsReplayGuard getReplayGuard() {
+        return replayGuard;
+    }
+
+    // null unless set: handler concurrency is not limited server-wide.
+    public MicsAdaptiveLimiter getAdaptiveLimiter() {
+        return adaptiveLimiter;
+    }
+
+    public Set<MicsHookEndpoint> getCoalescedEndpoints() {
+        return coalescedEndpoints;
+    }
+
+    // Limit for paths that are not hook endpoints (404, /metrics).
+    public int getMaxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    public int getMaxRequestBytes(MicsHookEndpoint endpoint) {
+        return maxRequestBytesByEndpoint[endpoint.ordinal()];
+    }
+
+    // Concurrent requests per tenant on this endpoint; 0 means unlimited.
+    public int getBulkheadMaxConcurrent(MicsHookEndpoint endpoint) {
+        return bulkheadMaxConcurrent[endpoint.ordinal()];
+    }
+
+    public int getBulkheadMaxQueued(MicsHookEndpoint endpoint) {
+        return bulkheadMaxQueued[endpoint.ordinal()];
+    }
+
+    public static final class Builder {
+        private final Function<String, String> tenantSecretProvider;
+        private final TenantSecretResolver tenantSecretResolver;
+        private boolean requireSign = true;
+        private MicsHookExecutorMode executorMode = MicsHookExecutorMode.BOUNDED_POOL;
+        private int poolThreads = DEFAULT_POOL_THREADS;
+        private int poolQueueCapacity = DEFAULT_POOL_QUEUE_CAPACITY;
+        private Executor executor;
+        private Duration handlerTimeout = Duration.ZERO;
+        private Duration deadlineBudget = Duration.ZERO;
+        private MicsHookTransport transport = MicsHookTransport.JDK_HTTP_SERVER;
+        private int nioEventLoops = DEFAULT_NIO_EVENT_LOOPS;
+        private boolean h2cEnabled = true;
+        private Duration requestReadTimeout = DEFAULT_REQUEST_READ_TIMEOUT;
+        private boolean metricsEnabled = true;
+        private boolean metricsEndpointEnabled;
+        private MicsGroupMembersCache groupMembersCache;
+        private MicsAuthCache authCache;
+        private MicsReplayGuard replayGuard;
+        private MicsAdaptiveLimiter adaptiveLimiter;
+        private final EnumSet<MicsHookEndpoint> coalescedEndpoints = EnumSet.noneOf(MicsHookEndpoint.class);
+        private int maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+        private final int[] maxRequestBytesByEndpoint = defaultMaxRequestBytes();
+        private final int[] bulkheadMaxConcurrent = new int[MicsHookEndpoint.values().length];
+        private final int[] bulkheadMaxQueued = new int[MicsHookEndpoint.values().length];
+
+        private Builder(Function<String, String> tenantSecretProvider, TenantSecretResolver tenantSecretResolver) {
+            this.tenantSecretProvider = tenantSecretProvider;
+            this.tenantSecretResolver = tenantSecretResolver;
+        }
+
+        public Builder requireSign(boolean requireSign) {
+            this.requireSign = requireSign;
+            return this;
+        }
+
+        public Builder boundedPool(int threads) {
+            return boundedPool(threads, DEFAULT_POOL_QUEUE_CAPACITY);
+        }
+
+        public Builder boundedPool(int threads, int queueCapacity) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be > 0");
+            }
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("queueCapacity must be > 0");
+            }
+            this.executorMode = MicsHookExecutorMode.BOUNDED_POOL;
+            this.poolThreads = threads;
+            this.poolQueueCapacity = queueCapacity;
+            this.executor = null;
+            return this;
+        }
+
+        public Builder virtualThreads() {
+            if (!VirtualThreads.isSupported()) {
+                throw new UnsupportedOperationException("virtual threads require Java 21+");
+            }
+            this.executorMode = MicsHookExecutorMode.VIRTUAL_THREADS;
+            this.executor = null;
+            return this;
+        }
+
+        public Builder direct() {
+            this.executorMode = MicsHookExecutorMode.DIRECT;
+            this.executor = null;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executorMode = MicsHookExecutorMode.CUSTOM;
+            this.executor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        // Per-request limit for a handler's future; on expiry the endpoint answers with its "handler error" response.
+        public Builder handlerTimeout(Duration timeout) {
+            Objects.requireNonNull(timeout, "timeout");
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("timeout must be >= 0");
+            }
+            this.handlerTimeout = timeout;
+            return this;
+        }
+
+        // Requests get a deadline of meta.timestamp_ms + budget (set it to the gateway's HOOK_TIMEOUT); together with
+        // the X-Mics-Timeout-Ms header the earlier one wins. Requests past it are answered "deadline exceeded"
+        // without calling the handler. Zero (the default) uses the header alone.
+        public Builder deadlineBudget(Duration budget) {
+            Objects.requireNonNull(budget, "budget");
+            if (budget.isNegative()) {
+                throw new IllegalArgumentException("budget must be >= 0");
+            }
+            this.deadlineBudget = budget;
+            return this;
+        }
+
+        public Builder transport(MicsHookTransport transport) {
+            this.transport = Objects.requireNonNull(transport, "transport");
+            return this;
+        }
+
+        public Builder nioEventLoops(int eventLoops) {
+            if (eventLoops <= 0) {
+                throw new IllegalArgumentException("eventLoops must be > 0");
+            }
+            this.nioEventLoops = eventLoops;
+            return this;
+        }
+
+        public Builder h2cEnabled(boolean enabled) {
+            this.h2cEnabled = enabled;
+            return this;
+        }
+
+        // Connections whose request head or body is still incomplete after this long are closed, however steadily
+        // the client trickles bytes in. Separate from the keep-alive idle timeout, which never closes a connection
+        // in the middle of a request. Checked about once a second.
+        public Builder requestReadTimeout(Duration timeout) {
+            Objects.requireNonNull(timeout, "timeout");
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be > 0");
+            }
+            this.requestReadTimeout = timeout;
+            return this;
+        }
+
+        public Builder metricsEnabled(boolean enabled) {
+            this.metricsEnabled = enabled;
+            return this;
+        }
+
+        public Builder metricsEndpoint(boolean enabled) {
+            this.metricsEndpointEnabled = enabled;
+            return this;
+        }
+
+        public Builder groupMembersCache(MicsGroupMembersCache cache) {
+            this.groupMembersCache = Objects.requireNonNull(cache, "cache");
+            return this;
+        }
+
+        public Builder authCache(MicsAuthCache cache) {
+            this.authCache = Objects.requireNonNull(cache, "cache");
+            return this;
+        }
+
+        // Checked after the signature, so only requests signed with the tenant secret can occupy the window.
+        public Builder replayGuard(MicsReplayGuard guard) {
+            this.replayGuard = Objects.requireNonNull(guard, "guard");
+            return this;
+        }
+
+        // Server-wide handler concurrency per endpoint, adjusted from observed handler latency. Applied after the
+        // per-tenant bulkhead, to requests that would call the handler.
+        public Builder adaptiveLimiter(MicsAdaptiveLimiter limiter) {
+            this.adaptiveLimiter = Objects.requireNonNull(limiter, "limiter");
+            return this;
+        }
+
+        // Concurrent identical requests to these endpoints share one handler call. Only the read-only endpoints
+        // qualify: /get-group-members by (tenant, group_id), /get-offline-messages by (tenant, user_id, device_id,
+        // max_messages, cursor).
+        public Builder coalesce(MicsHookEndpoint... endpoints) {
+            for (MicsHookEndpoint e : endpoints) {
+                Objects.requireNonNull(e, "endpoint");
+                if (e == MicsHookEndpoint.AUTH || e == MicsHookEndpoint.CHECK_MESSAGE) {
+                    throw new IllegalArgumentException(e.getPath() + " cannot be coalesced");
+                }
+                coalescedEndpoints.add(e);
+            }
+            return this;
+        }
+
+        // Request bodies above the limit are answered 413 before they are read (from Content-Length when present).
+        // Sets every endpoint; a per-endpoint call made afterwards overrides it for that endpoint.
+        public Builder maxRequestBytes(int bytes) {
+            checkMaxRequestBytes(bytes);
+            this.maxRequestBytes = bytes;
+            Arrays.fill(maxRequestBytesByEndpoint, bytes);
+            return this;
+        }
+
+        public Builder maxRequestBytes(MicsHookEndpoint endpoint, int bytes) {
+            Objects.requireNonNull(endpoint, "endpoint");
+            checkMaxRequestBytes(bytes);
+            maxRequestBytesByEndpoint[endpoint.ordinal()] = bytes;
+            return this;
+        }
+
+        // Per-tenant bulkhead on every endpoint: at most maxConcurrent requests of one tenant past admission (until
+        // their handler completes) and maxQueued more waiting without holding a thread. Beyond that requests are
+        // answered with the endpoint's negative response and reason "overloaded" after reading only meta.tenant_id.
+        public Builder bulkhead(int maxConcurrent, int maxQueued) {
+            checkBulkhead(maxConcurrent, maxQueued);
+            Arrays.fill(bulkheadMaxConcurrent, maxConcurrent);
+            Arrays.fill(bulkheadMaxQueued, maxQueued);
+            return this;
+        }
+
+        // Overrides one endpoint; maxConcurrent 0 turns the bulkhead off for it.
+        public Builder bulkhead(MicsHookEndpoint endpoint, int maxConcurrent, int maxQueued) {
+            Objects.requireNonNull(endpoint, "endpoint");
+            checkBulkhead(maxConcurrent, maxQueued);
+            bulkheadMaxConcurrent[endpoint.ordinal()] = maxConcurrent;
+            bulkheadMaxQueued[endpoint.ordinal()] = maxQueued;
+            return this;
+        }
+
+        private static void checkBulkhead(int maxConcurrent, int maxQueued) {
+            if (maxConcurrent < 0) {
+                throw new IllegalArgumentException("maxConcurrent must be >= 0");
+            }
+            if (maxQueued < 0) {
+                throw new IllegalArgumentException("maxQueued must be >= 0");
+            }
+        }
+
+        private static void checkMaxRequestBytes(int bytes) {
+            if (bytes <= 0 || bytes > DEFAULT_MAX_REQUEST_BYTES) {
+                throw new IllegalArgumentException("maxRequestBytes must be in (0, " + DEFAULT_MAX_REQUEST_BYTES + "]");
+            }
+        }
+
+        private static int[] defaultMaxRequestBytes() {
+            int[] limits = new int[MicsHookEndpoint.values().length];
+            Arrays.fill(limits, DEFAULT_MAX_REQUEST_BYTES);
+            return limits;
+        }
+
+        public MicsHookServerOptions build() {
+            return new MicsHookServerOptions(this);
+        }
+    }
+}
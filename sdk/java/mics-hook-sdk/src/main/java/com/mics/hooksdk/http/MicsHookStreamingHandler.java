@@ -0,0 +1,16 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+
+// Optional streaming form of the two list endpoints. When the handler passed to MicsHookHttpServer (sync or async)
+// also implements this interface, these methods are called instead of onGetGroupMembers / onGetOfflineMessages:
+// entries are encoded as they are added, so neither the response message nor its full byte array is ever built.
+// Called on the executor thread. handlerTimeout is enforced by the sinks: once it has passed, add() throws and the
+// request is answered like a timed-out handler. A group member list small enough to be sent as one sized body fills
+// groupMembersCache; streamed ones are not cached. These endpoints cannot be coalesced.
+public interface MicsHookStreamingHandler {
+    void streamGroupMembers(GetGroupMembersRequest request, MicsHookResponseSink<String> userIds) throws Exception;
+
+    void streamOfflineMessages(GetOfflineMessagesRequest request, MicsOfflineMessagesSink messages) throws Exception;
+}
@@ -0,0 +1,8 @@
+package com.mics.hooksdk.http;
+
+public enum MicsHookTransport {
+    // com.sun.net.httpserver.HttpServer: HTTP/1.1, one write per header/body.
+    JDK_HTTP_SERVER,
+    // Built-in non-blocking server: pooled direct buffers, HTTP/1.1 keep-alive + pipelining, h2c.
+    NIO
+}
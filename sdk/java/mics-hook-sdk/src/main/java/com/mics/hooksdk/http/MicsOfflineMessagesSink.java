@@ -0,0 +1,10 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.message.v1.MessageRequest;
+
+// Offline messages plus the page fields of GetOfflineMessagesResponse; ok is true when the handler returns normally.
+public interface MicsOfflineMessagesSink extends MicsHookResponseSink<MessageRequest> {
+    void nextCursor(String cursor);
+
+    void hasMore(boolean hasMore);
+}
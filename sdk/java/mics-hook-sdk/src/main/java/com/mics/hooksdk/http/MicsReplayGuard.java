@@ -0,0 +1,282 @@
+package com.mics.hooksdk.http;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Rejects signed hook requests whose meta.timestamp_ms is more than maxSkew away from the local clock, and any
+// (tenant_id, request_id) seen before within that window. Both fields are covered by the signature, so a replay
+// carries the original timestamp: ids are filed under the bucket of their own timestamp, and once a bucket is older
+// than now - maxSkew every request that could land in it is rejected as stale and the whole bucket is dropped.
+//
+// Each bucket is split into shards of open-addressing tables of 64-bit hashes (insert = probe + CAS, no locks); a
+// shard that reaches its share of maximumEntries rejects new ids until its bucket rotates out rather than forgetting
+// ids early. Hash collisions make a false "replayed" possible with probability about entries^2 / 2^65 per window.
+public final class MicsReplayGuard {
+    public static final Duration DEFAULT_MAX_SKEW = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAXIMUM_ENTRIES = 4 * 1024 * 1024;
+    public static final int DEFAULT_SHARDS = 16;
+
+    // Buckets per maxSkew; the accepted window [now - maxSkew, now + maxSkew] spans at most 2 * this + 1 buckets.
+    private static final int BUCKETS_PER_SKEW = 4;
+
+    enum Result {
+        ACCEPTED,
+        STALE,
+        REPLAYED,
+        FULL
+    }
+
+    private final long maxSkewMillis;
+    private final long bucketMillis;
+    private final int shardBits;
+    private final int shardCapacity;
+    private final int shardLimit;
+    private final LongSupplier millisClock;
+    private final AtomicReferenceArray<Bucket> ring;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder full = new LongAdder();
+
+    private MicsReplayGuard(Builder b) {
+        this(b.maxSkew, b.maximumEntries, b.shards, System::currentTimeMillis);
+    }
+
+    MicsReplayGuard(Duration maxSkew, int maximumEntries, int shards, LongSupplier millisClock) {
+        this.maxSkewMillis = maxSkew.toMillis();
+        this.bucketMillis = Math.max(1, maxSkewMillis / BUCKETS_PER_SKEW);
+        this.shardBits = Integer.numberOfTrailingZeros(shards);
+        int live = (int) (2 * maxSkewMillis / bucketMillis) + 1;
+        int perShard = Math.max(1, maximumEntries / live / shards);
+        // Tables stay at most 3/4 full so probes always end on an empty slot.
+        this.shardCapacity = Integer.highestOneBit(Math.max(2, perShard * 4 / 3) - 1) << 1;
+        this.shardLimit = perShard;
+        this.millisClock = millisClock;
+        this.ring = new AtomicReferenceArray<>(live + 1);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Duration getMaxSkew() {
+        return Duration.ofMillis(maxSkewMillis);
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    // Timestamps outside the allowed skew.
+    public long getStaleCount() {
+        return stale.sum();
+    }
+
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    // Requests rejected because their bucket was at capacity.
+    public long getFullCount() {
+        return full.sum();
+    }
+
+    // Request ids currently remembered (including buckets not yet overwritten by newer ones).
+    public long getEntryCount() {
+        long n = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket b = ring.get(i);
+            if (b != null) {
+                n += b.size();
+            }
+        }
+        return n;
+    }
+
+    Result check(String tenantId, String requestId, long timestampMs) {
+        long now = millisClock.getAsLong();
+        if (timestampMs < now - maxSkewMillis || timestampMs > now + maxSkewMillis) {
+            stale.increment();
+            return Result.STALE;
+        }
+        Bucket bucket = bucket(Math.floorDiv(timestampMs, bucketMillis));
+        if (bucket == null) {
+            // Rotated out between the clock read and here (a pause longer than a bucket): as good as stale.
+            stale.increment();
+            return Result.STALE;
+        }
+        long h = hash(tenantId, requestId);
+        Result r = bucket.shard((int) (h >>> (64 - shardBits)) & ((1 << shardBits) - 1)).insert(h);
+        switch (r) {
+            case ACCEPTED:
+                accepted.increment();
+                break;
+            case REPLAYED:
+                replayed.increment();
+                break;
+            default:
+                full.increment();
+                break;
+        }
+        return r;
+    }
+
+    void writeTo(StringBuilder sb) {
+        sb.append("# HELP mics_hook_replay_guard_requests_total Replay guard decisions by result.\n");
+        sb.append("# TYPE mics_hook_replay_guard_requests_total counter\n");
+        sb.append("mics_hook_replay_guard_requests_total{result=\"accepted\"} ").append(accepted.sum()).append('\n');
+        sb.append("mics_hook_replay_guard_requests_total{result=\"stale\"} ").append(stale.sum()).append('\n');
+        sb.append("mics_hook_replay_guard_requests_total{result=\"replayed\"} ").append(replayed.sum()).append('\n');
+        sb.append("mics_hook_replay_guard_requests_total{result=\"full\"} ").append(full.sum()).append('\n');
+        sb.append("# HELP mics_hook_replay_guard_entries Request ids remembered in the replay window.\n");
+        sb.append("# TYPE mics_hook_replay_guard_entries gauge\n");
+        sb.append("mics_hook_replay_guard_entries ").append(getEntryCount()).append('\n');
+    }
+
+    private Bucket bucket(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) ring.length());
+        while (true) {
+            Bucket b = ring.get(slot);
+            if (b != null && b.epoch == epoch) {
+                return b;
+            }
+            if (b != null && b.epoch > epoch) {
+                return null;
+            }
+            // Empty slot or a bucket at least a full window older: replace it wholesale.
+            Bucket created = new Bucket(epoch, 1 << shardBits);
+            if (ring.compareAndSet(slot, b, created)) {
+                return created;
+            }
+        }
+    }
+
+    static long hash(String tenantId, String requestId) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0, n = tenantId.length(); i < n; i++) {
+            h = (h ^ tenantId.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ 0xFFFF) * 0x100000001B3L;
+        for (int i = 0, n = requestId.length(); i < n; i++) {
+            h = (h ^ requestId.charAt(i)) * 0x100000001B3L;
+        }
+        // Murmur3 finalizer: FNV alone leaves the high bits (used for the shard) poorly mixed.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private final class Bucket {
+        private final long epoch;
+        // Allocated on first use so idle shards and buckets cost nothing.
+        private final AtomicReferenceArray<Shard> shards;
+
+        private Bucket(long epoch, int shards) {
+            this.epoch = epoch;
+            this.shards = new AtomicReferenceArray<>(shards);
+        }
+
+        private Shard shard(int i) {
+            Shard s = shards.get(i);
+            if (s == null) {
+                Shard created = new Shard(shardCapacity);
+                s = shards.compareAndSet(i, null, created) ? created : shards.get(i);
+            }
+            return s;
+        }
+
+        private long size() {
+            long n = 0;
+            for (int i = 0; i < shards.length(); i++) {
+                Shard s = shards.get(i);
+                if (s != null) {
+                    n += s.count.get();
+                }
+            }
+            return n;
+        }
+    }
+
+    private final class Shard {
+        private final AtomicLongArray table;
+        private final int mask;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Shard(int capacity) {
+            this.table = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private Result insert(long h) {
+            int i = (int) h & mask;
+            while (true) {
+                long v = table.get(i);
+                if (v == h) {
+                    return Result.REPLAYED;
+                }
+                if (v == 0) {
+                    if (count.get() >= shardLimit) {
+                        return Result.FULL;
+                    }
+                    if (table.compareAndSet(i, 0, h)) {
+                        count.incrementAndGet();
+                        return Result.ACCEPTED;
+                    }
+                    // Lost the slot: re-read it, the winner may have inserted the same id.
+                    continue;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Duration maxSkew = DEFAULT_MAX_SKEW;
+        private int maximumEntries = DEFAULT_MAXIMUM_ENTRIES;
+        private int shards = DEFAULT_SHARDS;
+
+        private Builder() {
+        }
+
+        // Accepted |timestamp_ms - now|; request ids are remembered for 2 * maxSkew.
+        public Builder maxSkew(Duration maxSkew) {
+            Objects.requireNonNull(maxSkew, "maxSkew");
+            if (maxSkew.toMillis() <= 0) {
+                throw new IllegalArgumentException("maxSkew must be >= 1ms");
+            }
+            this.maxSkew = maxSkew;
+            return this;
+        }
+
+        // Upper bound on remembered request ids across the whole window (up to ~20 bytes each once allocated).
+        // Size it as peak requests per second * 2 * maxSkew in seconds.
+        public Builder maximumEntries(int maximumEntries) {
+            if (maximumEntries <= 0) {
+                throw new IllegalArgumentException("maximumEntries must be > 0");
+            }
+            this.maximumEntries = maximumEntries;
+            return this;
+        }
+
+        public Builder shards(int shards) {
+            if (shards <= 0 || shards > 1 << 16 || Integer.bitCount(shards) != 1) {
+                throw new IllegalArgumentException("shards must be a power of two in [1, 65536]");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        public MicsReplayGuard build() {
+            return new MicsReplayGuard(this);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.mics.hooksdk.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+// A streamed response body written from a handler thread. Each write is framed on the calling thread and handed to
+// the event loop; the writer blocks while more than MAX_BUFFERED bytes are handed over but not yet flushed to the
+// socket, so a slow client throttles the handler instead of growing the heap. On the event loop thread itself
+// (direct executor) it cannot wait and only buffers.
+abstract class NioBodyStream extends OutputStream {
+    static final int MAX_BUFFERED = 256 * 1024;
+    // Re-checks the connection while waiting, in case it died with chunks still queued in the codec.
+    private static final long WAIT_MILLIS = 100;
+
+    final NioConnection conn;
+    private long buffered;
+    private boolean closed;
+
+    NioBodyStream(NioConnection conn) {
+        this.conn = conn;
+    }
+
+    // Called on the writer's thread: the bytes to hand over for b[off, off + len).
+    abstract byte[] frame(byte[] b, int off, int len);
+
+    // Event loop: send the framed chunk; release must run once it is flushed or dropped.
+    abstract void onChunk(byte[] chunk, Runnable release);
+
+    // Event loop: the body is complete.
+    abstract void onEnd();
+
+    // True once nothing written can reach the client any more.
+    boolean isBroken() {
+        return conn.isClosed();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (len == 0) {
+            return;
+        }
+        byte[] chunk = frame(b, off, len);
+        int weight = chunk.length;
+        reserve(weight);
+        conn.execute(() -> onChunk(chunk, () -> release(weight)));
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        conn.execute(this::onEnd);
+    }
+
+    private synchronized void reserve(int n) throws IOException {
+        if (!conn.loop.inLoop()) {
+            while (buffered > 0 && buffered + n > MAX_BUFFERED) {
+                if (isBroken()) {
+                    throw new IOException("connection closed");
+                }
+                try {
+                    wait(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+        if (isBroken()) {
+            throw new IOException("connection closed");
+        }
+        buffered += n;
+    }
+
+    private synchronized void release(int n) {
+        buffered -= n;
+        notifyAll();
+    }
+}
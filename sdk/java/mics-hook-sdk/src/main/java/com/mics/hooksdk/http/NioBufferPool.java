@@ -0,0 +1,30 @@
+package com.mics.hooksdk.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Per-event-loop pool of fixed-size direct buffers; only touched from its loop thread, so no synchronization.
+// Connections hold a buffer only while they have unconsumed input or unflushed output.
+final class NioBufferPool {
+    // Fits an 8 KiB HTTP/1.1 header section or a full 16 KiB HTTP/2 frame plus its header.
+    static final int BUFFER_SIZE = 32 * 1024;
+
+    private final ArrayDeque<ByteBuffer> idle = new ArrayDeque<>();
+    private final int maxIdle;
+
+    NioBufferPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer b = idle.pollFirst();
+        return b != null ? b : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    void release(ByteBuffer b) {
+        b.clear();
+        if (idle.size() < maxIdle) {
+            idle.addFirst(b);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.mics.hooksdk.http;
+
+import java.nio.ByteBuffer;
+
+// Protocol state of one NIO connection; all methods run on the connection's event loop.
+interface NioCodec {
+    // Consumes as many complete protocol units as are available; partial units stay in the buffer.
+    void onData(ByteBuffer in);
+
+    // True when no request is being received or awaiting its response.
+    boolean isIdle();
+
+    // True when a request (or, for h2, a frame) started arriving more than timeoutNanos ago and is still incomplete.
+    boolean isReceivingLongerThan(long now, long timeoutNanos);
+}
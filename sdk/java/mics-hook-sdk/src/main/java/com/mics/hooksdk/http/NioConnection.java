@@ -0,0 +1,274 @@
+package com.mics.hooksdk.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+// Socket plus its pooled buffers; confined to the owning event loop thread.
+final class NioConnection {
+    final NioEventLoop loop;
+
+    private final SocketChannel channel;
+    // Array-backed views (offset 0) whose position tracks how much has been copied out.
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    // Run once every array queued before them has been copied into the (bounded) socket-side buffer.
+    private final ArrayDeque<FlushCallback> callbacks = new ArrayDeque<>();
+    private long queuedArrays;
+    private long flushedArrays;
+    private SelectionKey key;
+    private NioCodec codec;
+    // Fill mode; held only while it contains bytes the codec has not consumed yet.
+    private ByteBuffer in;
+    // Fill mode; held only while it contains bytes the socket has not accepted yet.
+    private ByteBuffer out;
+    private boolean flushScheduled;
+    private boolean readPaused;
+    private boolean processing;
+    private boolean closeAfterFlush;
+    // Read by handler threads that stream a response body.
+    private volatile boolean closed;
+    private long lastActivityNanos = System.nanoTime();
+
+    NioConnection(NioEventLoop loop, SocketChannel channel) throws IOException {
+        this.loop = loop;
+        this.channel = channel;
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    void setCodec(NioCodec codec) {
+        this.codec = codec;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isReadPaused() {
+        return readPaused;
+    }
+
+    boolean isIdleSince(long now, long timeoutNanos) {
+        return now - lastActivityNanos > timeoutNanos && codec.isIdle() && pending.isEmpty() && out == null;
+    }
+
+    // Only while reading: a request stuck behind our own back-pressure is not the client's doing.
+    boolean isReceivingLongerThan(long now, long timeoutNanos) {
+        return !readPaused && codec.isReceivingLongerThan(now, timeoutNanos);
+    }
+
+    void onReadable() {
+        if (in == null) {
+            in = loop.pool.acquire();
+        }
+        int n;
+        try {
+            n = channel.read(in);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (n < 0) {
+            close();
+            return;
+        }
+        lastActivityNanos = System.nanoTime();
+        process();
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    // Applies the codec to buffered input; re-runs when the codec hands the connection over to another one.
+    private void process() {
+        in.flip();
+        processing = true;
+        NioCodec current;
+        try {
+            do {
+                current = codec;
+                current.onData(in);
+            } while (current != codec && in.hasRemaining() && !readPaused && !closed);
+        } finally {
+            processing = false;
+        }
+        if (closed) {
+            return;
+        }
+        if (in.hasRemaining()) {
+            in.compact();
+            if (!in.hasRemaining() && !readPaused) {
+                // A full buffer the codec cannot make progress on: codecs bound their units below the buffer size.
+                close();
+            }
+        } else {
+            loop.pool.release(in);
+            in = null;
+        }
+    }
+
+    // Runs task on the owning loop (inline when already there); a task that throws closes this connection.
+    void execute(Runnable task) {
+        loop.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                close();
+            }
+        });
+    }
+
+    void pauseReading() {
+        if (!readPaused && !closed) {
+            readPaused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    void resumeReading() {
+        if (!readPaused || closed) {
+            return;
+        }
+        readPaused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        // Inside onData (inline completion) the running codec loop picks the buffered bytes up itself.
+        if (in != null && !processing) {
+            process();
+        }
+    }
+
+    void write(byte[] data) {
+        write(data, data.length);
+    }
+
+    // Writes data[0, length).
+    void write(byte[] data, int length) {
+        if (closed || closeAfterFlush) {
+            return;
+        }
+        pending.add(ByteBuffer.wrap(data, 0, length));
+        queuedArrays++;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            loop.scheduleFlush(this);
+        }
+    }
+
+    // onFlushed also runs when the connection closes first.
+    void write(byte[] data, Runnable onFlushed) {
+        write(data, data.length, onFlushed);
+    }
+
+    void write(byte[] data, int length, Runnable onFlushed) {
+        if (closed || closeAfterFlush) {
+            onFlushed.run();
+            return;
+        }
+        write(data, length);
+        callbacks.add(new FlushCallback(queuedArrays, onFlushed));
+    }
+
+    void closeAfterFlush() {
+        if (closed) {
+            return;
+        }
+        closeAfterFlush = true;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            loop.scheduleFlush(this);
+        }
+    }
+
+    void flush() {
+        flushScheduled = false;
+        if (closed) {
+            return;
+        }
+        if (out == null) {
+            out = loop.pool.acquire();
+        }
+        while (true) {
+            while (out.hasRemaining() && !pending.isEmpty()) {
+                ByteBuffer head = pending.peekFirst();
+                int n = Math.min(out.remaining(), head.remaining());
+                out.put(head.array(), head.position(), n);
+                head.position(head.position() + n);
+                if (!head.hasRemaining()) {
+                    pending.pollFirst();
+                    flushedArrays++;
+                    while (!callbacks.isEmpty() && callbacks.peekFirst().seq <= flushedArrays) {
+                        callbacks.pollFirst().callback.run();
+                    }
+                }
+            }
+            out.flip();
+            if (!out.hasRemaining()) {
+                break;
+            }
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            out.compact();
+            if (out.position() > 0) {
+                // Socket buffer full: resume from the selector once it drains.
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        loop.pool.release(out);
+        out = null;
+        if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (closeAfterFlush) {
+            close();
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // best effort
+        }
+        if (in != null) {
+            loop.pool.release(in);
+            in = null;
+        }
+        if (out != null) {
+            loop.pool.release(out);
+            out = null;
+        }
+        pending.clear();
+        FlushCallback c;
+        while ((c = callbacks.pollFirst()) != null) {
+            c.callback.run();
+        }
+    }
+
+    private static final class FlushCallback {
+        final long seq;
+        final Runnable callback;
+
+        FlushCallback(long seq, Runnable callback) {
+            this.seq = seq;
+            this.callback = callback;
+        }
+    }
+}
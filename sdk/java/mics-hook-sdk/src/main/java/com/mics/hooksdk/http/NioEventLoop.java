@@ -0,0 +1,188 @@
+package com.mics.hooksdk.http;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// One selector thread owning a set of connections, their buffers and their protocol state.
+final class NioEventLoop implements Runnable {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    final NioBufferPool pool = new NioBufferPool(256);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final long idleTimeoutNanos;
+    private final long readTimeoutNanos;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ArrayDeque<NioConnection> toFlush = new ArrayDeque<>();
+    private volatile boolean running = true;
+
+    NioEventLoop(String name, long idleTimeoutNanos, long readTimeoutNanos) throws IOException {
+        this.selector = Selector.open();
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.readTimeoutNanos = readTimeoutNanos;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    // Runs inline when already on this loop; otherwise queues and wakes the selector. Work that belongs to a
+    // connection goes through NioConnection.execute, so that a failing task closes only that connection.
+    void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    void register(SocketChannel channel, Function<NioConnection, NioCodec> codecFactory) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                NioConnection conn = new NioConnection(this, channel);
+                conn.setCodec(codecFactory.apply(conn));
+                conn.attach(channel.register(selector, SelectionKey.OP_READ, conn));
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    // Writes are coalesced: every connection written to during this iteration is flushed once at the end.
+    void scheduleFlush(NioConnection conn) {
+        toFlush.add(conn);
+    }
+
+    @Override
+    public void run() {
+        long nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+        try {
+            while (running) {
+                selector.select(1000);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection conn = (NioConnection) key.attachment();
+                    if (!key.isValid()) {
+                        conn.close();
+                        continue;
+                    }
+                    try {
+                        if (key.isWritable()) {
+                            conn.onWritable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            conn.onReadable();
+                        }
+                    } catch (RuntimeException e) {
+                        // Codec, dispatcher or user code (DIRECT mode) failed: lose this connection, not the loop.
+                        conn.close();
+                    }
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // Not bound to a connection (those close themselves): drop it and keep serving.
+                    }
+                }
+
+                NioConnection conn;
+                while ((conn = toFlush.poll()) != null) {
+                    try {
+                        conn.flush();
+                    } catch (RuntimeException e) {
+                        conn.close();
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    nextSweep = now + SWEEP_INTERVAL_NANOS;
+                    closeExpired(now);
+                }
+            }
+        } catch (IOException e) {
+            // Selector failure: fall through and tear everything down.
+        } finally {
+            closeAll();
+        }
+    }
+
+    // Idle keep-alive connections, and connections whose request has been arriving for too long: activity alone
+    // does not keep a slowly trickled request alive.
+    private void closeExpired(long now) {
+        ArrayList<NioConnection> expired = new ArrayList<>();
+        for (SelectionKey key : selector.keys()) {
+            NioConnection conn = (NioConnection) key.attachment();
+            if (conn != null && (conn.isIdleSince(now, idleTimeoutNanos) || conn.isReceivingLongerThan(now, readTimeoutNanos))) {
+                expired.add(conn);
+            }
+        }
+        for (NioConnection conn : expired) {
+            conn.close();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            NioConnection conn = (NioConnection) key.attachment();
+            if (conn != null) {
+                conn.close();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // best effort
+        }
+        // Late completions find their connections closed; nothing left to run.
+        tasks.clear();
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception ignored) {
+            // best effort
+        }
+    }
+}
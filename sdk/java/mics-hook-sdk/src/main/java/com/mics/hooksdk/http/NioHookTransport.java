@@ -0,0 +1,116 @@
+package com.mics.hooksdk.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Non-blocking transport: one acceptor thread hands sockets round-robin to selector loops, which speak
+// HTTP/1.1 (keep-alive, pipelining) and, when enabled, h2c via prior knowledge or "Upgrade: h2c".
+final class NioHookTransport implements HookTransport {
+    static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    final HookDispatcher dispatcher;
+    final boolean h2cEnabled;
+    // Cap on request body bytes buffered per connection (pipelined HTTP/1.1 requests, h2 receive window).
+    final int maxConnectionBufferedBytes;
+
+    private final Executor executor;
+    private final ServerSocketChannel server;
+    private final NioEventLoop[] loops;
+    private final Thread acceptor;
+    private volatile boolean running;
+
+    NioHookTransport(InetSocketAddress address, HookDispatcher dispatcher, Executor executor, MicsHookServerOptions options) throws IOException {
+        this.dispatcher = dispatcher;
+        this.executor = executor;
+        this.h2cEnabled = options.isH2cEnabled();
+        this.maxConnectionBufferedBytes = dispatcher.maxConnectionBufferedBytes();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(address, 1024);
+            loops = new NioEventLoop[options.getNioEventLoops()];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new NioEventLoop("mics-hook-nio-" + (i + 1), IDLE_TIMEOUT_NANOS, options.getRequestReadTimeout().toNanos());
+            }
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        this.acceptor = new Thread(this::acceptLoop, "mics-hook-nio-accept");
+        this.acceptor.setDaemon(true);
+    }
+
+    @Override
+    public InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException("server socket closed", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (NioEventLoop loop : loops) {
+            loop.start();
+        }
+        acceptor.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // best effort
+        }
+        for (NioEventLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    // Runs the task on the configured executor, or inline on the event loop for DIRECT mode.
+    void dispatch(Runnable task, Runnable onRejected) {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // e.g. EMFILE: back off briefly instead of spinning.
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            NioEventLoop loop = loops[next];
+            next = next + 1 == loops.length ? 0 : next + 1;
+            loop.register(channel, conn -> new Http1Codec(conn, this));
+        }
+    }
+}
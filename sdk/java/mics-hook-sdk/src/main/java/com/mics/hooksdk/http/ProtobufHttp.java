@@ -1,23 +1,98 @@
 package com.mics.hooksdk.http;
 
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
 
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 final class ProtobufHttp {
     private ProtobufHttp() {
     }
 
-    static byte[] readBody(HttpExchange exchange) throws IOException {
-        return exchange.getRequestBody().readAllBytes();
+    // Request body in a pooled array: array[0, length).
+    static final class PooledBody {
+        final byte[] array;
+        final int length;
+
+        private PooledBody(byte[] array, int length) {
+            this.array = array;
+            this.length = length;
+        }
+    }
+
+    // null when the body is larger than maxBytes: a declared Content-Length is checked before anything is read,
+    // a chunked body once more than maxBytes arrived. The caller releases the array back to the pool.
+    static PooledBody readBody(HttpExchange exchange, HeapBufferPool pool, int maxBytes) throws IOException {
+        long declared = contentLength(exchange);
+        if (declared > maxBytes) {
+            return null;
+        }
+        InputStream in = exchange.getRequestBody();
+        // A declared body is read up to its length, without a further read for EOF; a chunked one until it is
+        // known to be over the limit.
+        int limit = declared >= 0 ? (int) declared : maxBytes + 1;
+        byte[] buf = pool.acquire(HeapBufferPool.bodyCapacity(declared, 0, 0));
+        int length = 0;
+        try {
+            while (length < limit) {
+                if (length == buf.length) {
+                    buf = pool.grow(buf, length, Math.min(limit, HeapBufferPool.bodyCapacity(declared, buf.length, length + 1)));
+                }
+                int n = in.read(buf, length, Math.min(buf.length, limit) - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(buf);
+            throw e;
+        }
+        if (length > maxBytes) {
+            pool.release(buf);
+            return null;
+        }
+        return new PooledBody(buf, length);
+    }
+
+    // -1 when absent or unparsable (the JDK server rejects conflicting framing itself).
+    private static long contentLength(HttpExchange exchange) {
+        String v = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (v == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Serializes into a pooled array that goes back to the pool once the socket stream took the bytes.
+    static void writeProtobuf(HttpExchange exchange, int statusCode, Message message, HeapBufferPool pool) throws IOException {
+        int size = message.getSerializedSize();
+        byte[] buf = pool.acquire(size);
+        try {
+            CodedOutputStream cos = CodedOutputStream.newInstance(buf, 0, size);
+            message.writeTo(cos);
+            cos.checkNoSpaceLeft();
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "application/protobuf");
+            exchange.sendResponseHeaders(statusCode, size);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(buf, 0, size);
+            }
+        } finally {
+            pool.release(buf);
+        }
     }
 
-    static void writeProtobuf(HttpExchange exchange, int statusCode, Message message) throws IOException {
-        byte[] payload = message.toByteArray();
+    static void writeProtobuf(HttpExchange exchange, int statusCode, byte[] payload) throws IOException {
         Headers headers = exchange.getResponseHeaders();
         headers.set("Content-Type", "application/protobuf");
         exchange.sendResponseHeaders(statusCode, payload.length);
@@ -26,6 +101,13 @@ final class ProtobufHttp {
         }
     }
 
+    // Chunked 200 application/protobuf; closing the returned stream ends the exchange.
+    static OutputStream openProtobufStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/protobuf");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
     static void writeText(HttpExchange exchange, int statusCode, String text) throws IOException {
         byte[] payload = (text == null ? "" : text).getBytes(java.nio.charset.StandardCharsets.UTF_8);
         Headers headers = exchange.getResponseHeaders();
@@ -0,0 +1,172 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.CodedOutputStream;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.contracts.message.v1.MessageRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// Encodes GetGroupMembersResponse / GetOfflineMessagesResponse field by field; protobuf accepts fields in any order,
+// so meta goes first, the repeated field as the handler fills it and the scalar page fields last.
+// The first HEAD_BYTES are held back: a small response still goes out as one sized body, and a handler that fails
+// early still gets the regular "handler error" response. Past that the transport's body stream is opened.
+// With a handler timeout, add() and the end of the response fail once it has passed, like a timed-out future.
+final class StreamingResponseWriter extends OutputStream {
+    static final int HEAD_BYTES = 8 * 1024;
+    private static final int ENCODER_BUFFER = 4 * 1024;
+
+    private final HookDispatcher.Responder responder;
+    private final CodedOutputStream cos;
+    private final int metaLength;
+    private final boolean hasDeadline;
+    // System.nanoTime() based; meaningless unless hasDeadline.
+    private final long deadlineNanos;
+    // The sized body, when the whole response fit under HEAD_BYTES.
+    private byte[] sized;
+    private byte[] head = new byte[HEAD_BYTES];
+    private int headLength;
+    private OutputStream body;
+    private long bytes;
+    private String nextCursor = "";
+    private boolean hasMore;
+
+    StreamingResponseWriter(HookDispatcher.Responder responder, HookMeta meta) {
+        this(responder, meta, false, 0);
+    }
+
+    StreamingResponseWriter(HookDispatcher.Responder responder, HookMeta meta, boolean hasDeadline, long deadlineNanos) {
+        this.responder = responder;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+        this.metaLength = CodedOutputStream.computeMessageSize(1, meta);
+        this.cos = CodedOutputStream.newInstance(this, ENCODER_BUFFER);
+        try {
+            cos.writeMessage(1, meta);
+        } catch (IOException e) {
+            // Nothing reaches the transport before HEAD_BYTES.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    MicsHookResponseSink<String> userIds() {
+        return userId -> {
+            try {
+                checkDeadline();
+                cos.writeString(2, userId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    MicsOfflineMessagesSink offlineMessages() {
+        return new MicsOfflineMessagesSink() {
+            @Override
+            public void add(MessageRequest message) {
+                try {
+                    checkDeadline();
+                    cos.writeMessage(3, message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void nextCursor(String cursor) {
+                nextCursor = cursor == null ? "" : cursor;
+            }
+
+            @Override
+            public void hasMore(boolean more) {
+                hasMore = more;
+            }
+        };
+    }
+
+    // Trailing GetOfflineMessagesResponse fields: ok (2), next_cursor (5), has_more (6).
+    void finishOfflineMessages() throws IOException {
+        cos.writeBool(2, true);
+        if (!nextCursor.isEmpty()) {
+            cos.writeString(5, nextCursor);
+        }
+        if (hasMore) {
+            cos.writeBool(6, true);
+        }
+        finish();
+    }
+
+    void finish() throws IOException {
+        checkDeadline();
+        cos.flush();
+        if (body == null) {
+            sized = Arrays.copyOf(head, headLength);
+            responder.protobuf(sized);
+            head = null;
+        } else {
+            body.close();
+        }
+    }
+
+    boolean isCommitted() {
+        return body != null;
+    }
+
+    // After finish(): the response without its meta field, as MicsGroupMembersCache stores it; null when it was
+    // streamed, since keeping a copy of a large body is what streaming avoids.
+    byte[] bodyWithoutMeta() {
+        return sized == null ? null : Arrays.copyOfRange(sized, metaLength, sized.length);
+    }
+
+    private void checkDeadline() throws InterruptedIOException {
+        if (hasDeadline && deadlineNanos - System.nanoTime() <= 0) {
+            throw new InterruptedIOException("handler timeout");
+        }
+    }
+
+    // Ends a body that is already on the wire with a zero tag, which no protobuf parser accepts,
+    // so the caller fails instead of taking a truncated list for a complete one. The encoder is flushed first:
+    // the handler failed between two entries, and the tag must not land inside a half-written field. The body is
+    // closed even when the client is gone, so the transport sees the response end.
+    void abort() {
+        try {
+            cos.flush();
+            body.write(0);
+        } catch (IOException | RuntimeException ignored) {
+            // the client is gone already
+        }
+        try {
+            body.close();
+        } catch (IOException | RuntimeException ignored) {
+            // nothing more to tell the client
+        }
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bytes += len;
+        if (body == null) {
+            if (headLength + len <= HEAD_BYTES) {
+                System.arraycopy(b, off, head, headLength, len);
+                headLength += len;
+                return;
+            }
+            body = responder.stream();
+            body.write(head, 0, headLength);
+            head = null;
+        }
+        body.write(b, off, len);
+    }
+}
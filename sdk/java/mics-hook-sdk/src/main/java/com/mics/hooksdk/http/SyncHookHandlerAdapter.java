@@ -0,0 +1,56 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+final class SyncHookHandlerAdapter implements MicsHookAsyncHandler {
+    private final MicsHookHandler handler;
+
+    SyncHookHandlerAdapter(MicsHookHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletableFuture<AuthResponse> onAuth(AuthRequest request) {
+        try {
+            return CompletableFuture.completedFuture(handler.onAuth(request));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+        try {
+            return CompletableFuture.completedFuture(handler.onCheckMessage(request));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request) {
+        try {
+            return CompletableFuture.completedFuture(handler.onGetGroupMembers(request));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<GetOfflineMessagesResponse> onGetOfflineMessages(GetOfflineMessagesRequest request) {
+        try {
+            return CompletableFuture.completedFuture(handler.onGetOfflineMessages(request));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.mics.hooksdk.http;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Java 17 baseline. On 21+ the multi-release jar serves META-INF/versions/21 instead; the reflective path
+// only runs when this jar was built without the java21 profile or repackaged without the Multi-Release flag.
+final class VirtualThreads {
+    private static final MethodHandle FACTORY = lookupFactory();
+    private static final MethodHandle NEW_EXECUTOR = lookupNewExecutor();
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return FACTORY != null && NEW_EXECUTOR != null;
+    }
+
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual threads require Java 21+");
+        }
+        try {
+            ThreadFactory factory = (ThreadFactory) FACTORY.invoke(namePrefix, 0L);
+            return (ExecutorService) NEW_EXECUTOR.invoke(factory);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("cannot create virtual thread executor", e);
+        }
+    }
+
+    // Thread.ofVirtual().name(prefix, start).factory()
+    private static MethodHandle lookupFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle create = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual));
+            MethodHandle name = lookup.findVirtual(ofVirtual, "name", MethodType.methodType(ofVirtual, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            MethodHandle named = MethodHandles.foldArguments(name, 0, create);
+            return MethodHandles.filterReturnValue(named, factory.asType(MethodType.methodType(ThreadFactory.class, ofVirtual)));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Executors.newThreadPerTaskExecutor(factory)
+    private static MethodHandle lookupNewExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.mics.hooksdk.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+// Map behind the hook response caches: entries are evicted oldest-write-first once either maximumEntries or
+// maximumBytes is exceeded, and expired entries reaching the head of the write order are dropped on the way.
+// Expiry on read and versioning are left to the caller.
+final class WriteOrderedCache<K, V> {
+    interface Listener<K, V> {
+        // Runs inside the compute that stored value over previous (null when the key was absent).
+        default void stored(K key, V previous, V value) {
+        }
+
+        // After value left the map: removed, expired or evicted.
+        default void removed(K key, V value) {
+        }
+    }
+
+    private final int maximumEntries;
+    private final long maximumBytes;
+    private final ToLongFunction<V> weigher;
+    private final ToLongFunction<V> expiresAt;
+    private final LongSupplier nanoClock;
+    private final Listener<K, V> listener;
+
+    private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+    // Write order; nodes whose entry has since been replaced are skipped when polled.
+    private final ConcurrentLinkedQueue<Node<K, V>> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+
+    WriteOrderedCache(int maximumEntries, long maximumBytes, ToLongFunction<V> weigher, ToLongFunction<V> expiresAt,
+                      LongSupplier nanoClock, Listener<K, V> listener) {
+        this.maximumEntries = maximumEntries;
+        this.maximumBytes = maximumBytes;
+        this.weigher = weigher;
+        this.expiresAt = expiresAt;
+        this.nanoClock = nanoClock;
+        this.listener = listener;
+    }
+
+    V get(K key) {
+        return map.get(key);
+    }
+
+    boolean isExpired(V value) {
+        return expiresAt.applyAsLong(value) - nanoClock.getAsLong() <= 0;
+    }
+
+    // Stores value unless keepCurrent, tested under the key's lock with the current value (or null), says otherwise.
+    boolean put(K key, V value, Predicate<? super V> keepCurrent) {
+        boolean[] stored = new boolean[1];
+        map.compute(key, (k, cur) -> {
+            if (keepCurrent.test(cur)) {
+                return cur;
+            }
+            account(cur, value);
+            listener.stored(k, cur, value);
+            stored[0] = true;
+            return value;
+        });
+        if (!stored[0]) {
+            return false;
+        }
+        order.add(new Node<>(key, value));
+        queued.incrementAndGet();
+        evictIfNeeded();
+        return true;
+    }
+
+    boolean remove(K key, V value) {
+        if (!map.remove(key, value)) {
+            return false;
+        }
+        entries.decrementAndGet();
+        bytes.addAndGet(-weigher.applyAsLong(value));
+        listener.removed(key, value);
+        return true;
+    }
+
+    void removeIf(BiPredicate<? super K, ? super V> filter) {
+        for (Map.Entry<K, V> e : map.entrySet()) {
+            if (filter.test(e.getKey(), e.getValue())) {
+                remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    int size() {
+        return entries.get();
+    }
+
+    long weightedBytes() {
+        return bytes.get();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    // Runs inside map.compute for the key, so each transition is accounted exactly once.
+    private void account(V previous, V next) {
+        if (previous == null) {
+            entries.incrementAndGet();
+        }
+        bytes.addAndGet(weigher.applyAsLong(next) - (previous == null ? 0 : weigher.applyAsLong(previous)));
+    }
+
+    private void evictIfNeeded() {
+        // Stale nodes (entry since replaced or removed) are dropped as well, which keeps the queue near the map size.
+        while (overBound() || queued.get() > 2 * Math.max(16, entries.get())) {
+            Node<K, V> head = order.peek();
+            if (head == null || (!overBound() && isLive(head) && !isExpired(head.value))) {
+                // Only trimming, and the oldest node is still a live entry: nothing more to drop yet.
+                return;
+            }
+            Node<K, V> n = order.poll();
+            if (n == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (!isLive(n)) {
+                continue;
+            }
+            boolean overBound = overBound();
+            if (!overBound && !isExpired(n.value)) {
+                // Lost a race for the head; keep the live entry.
+                order.add(n);
+                queued.incrementAndGet();
+                return;
+            }
+            remove(n.key, n.value);
+            if (overBound) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private boolean overBound() {
+        return entries.get() > maximumEntries || bytes.get() > maximumBytes;
+    }
+
+    private boolean isLive(Node<K, V> n) {
+        return map.get(n.key) == n.value;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.mics.hooksdk.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Java 21+ variant packaged under META-INF/versions/21.
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    static ExecutorService newPerTaskExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
@@ -0,0 +1,219 @@
+package com.mics.hooksdk;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingTenantSecretResolverTest {
+    @Test
+    void stale_entries_should_be_served_while_refreshing_ahead() {
+        AtomicLong nanos = new AtomicLong();
+        Map<String, List<String>> store = new ConcurrentHashMap<>(Map.of("t1", List.of("s1")));
+        AtomicInteger calls = new AtomicInteger();
+        List<Runnable> refreshes = new ArrayList<>();
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(tid -> {
+            calls.incrementAndGet();
+            return store.getOrDefault(tid, List.of());
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, refreshes::add, nanos::get);
+
+        TenantKeys first = resolver.resolve("t1");
+        assertThat(resolver.resolve("t1")).isSameAs(first);
+        assertThat(calls.get()).isEqualTo(1);
+
+        store.put("t1", List.of("s2"));
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertThat(resolver.resolve("t1")).isSameAs(first);
+        assertThat(resolver.resolve("t1")).isSameAs(first);
+        assertThat(refreshes).hasSize(1);
+        refreshes.remove(0).run();
+        assertThat(resolver.resolve("t1")).isNotSameAs(first);
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(resolver.getRefreshCount()).isEqualTo(1);
+
+        // Past expireAfter the request waits for the loader.
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+        resolver.resolve("t1");
+        assertThat(refreshes).isEmpty();
+        assertThat(resolver.getLoadCount()).isEqualTo(2);
+    }
+
+    @Test
+    void failed_loads_should_keep_serving_previous_keys() {
+        AtomicLong nanos = new AtomicLong();
+        AtomicInteger fail = new AtomicInteger();
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(tid -> {
+            if (fail.get() > 0) {
+                throw new IllegalStateException("store down");
+            }
+            return List.of("s1");
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, Runnable::run, nanos::get);
+
+        TenantKeys keys = resolver.resolve("t1");
+        fail.set(1);
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+        assertThat(resolver.resolve("t1")).isSameAs(keys);
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertThat(resolver.resolve("t1")).isSameAs(keys);
+        assertThat(resolver.getFailureCount()).isEqualTo(2);
+
+        assertThatThrownBy(() -> resolver.resolve("t2"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("t2");
+    }
+
+    @Test
+    void invalidating_one_tenant_should_not_drop_another_tenants_refresh() {
+        AtomicLong nanos = new AtomicLong();
+        Map<String, List<String>> store = new ConcurrentHashMap<>(Map.of("t1", List.of("s1"), "t2", List.of("s2")));
+        List<Runnable> refreshes = new ArrayList<>();
+        AtomicReference<Runnable> duringLoad = new AtomicReference<>(() -> { });
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(tid -> {
+            duringLoad.get().run();
+            return store.get(tid);
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, refreshes::add, nanos::get);
+
+        TenantKeys first = resolver.resolve("t1");
+        resolver.resolve("t2");
+        store.put("t1", List.of("s1-new"));
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertThat(resolver.resolve("t1")).isSameAs(first);
+        assertThat(refreshes).hasSize(1);
+
+        duringLoad.set(() -> resolver.invalidate("t2"));
+        refreshes.remove(0).run();
+        assertThat(resolver.resolve("t1")).isNotSameAs(first);
+    }
+
+    @Test
+    void invalidate_should_keep_an_in_flight_miss_out_of_the_cache() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(tid -> {
+            if (calls.incrementAndGet() == 1) {
+                loading.countDown();
+                release.await();
+            }
+            return List.of("s1");
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, Runnable::run, System::nanoTime);
+
+        CompletableFuture<TenantKeys> miss = CompletableFuture.supplyAsync(() -> resolver.resolve("t1"));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        resolver.invalidate("t1");
+        release.countDown();
+        assertThat(miss.get(10, TimeUnit.SECONDS)).isNotNull();
+
+        assertThat(resolver.size()).isZero();
+        resolver.resolve("t1");
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void callers_joining_a_load_should_get_its_error() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(tid -> {
+            loading.countDown();
+            release.await();
+            throw new OutOfMemoryError("boom");
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, Runnable::run, System::nanoTime);
+
+        CompletableFuture<Throwable> leader = CompletableFuture.supplyAsync(() -> failure(() -> resolver.resolve("t1")));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Throwable> joiner = CompletableFuture.supplyAsync(() -> failure(() -> resolver.resolve("t1")));
+        // The joiner has to find the leader's future before it completes.
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(leader.get(10, TimeUnit.SECONDS)).isInstanceOf(OutOfMemoryError.class);
+        assertThat(joiner.get(10, TimeUnit.SECONDS)).isInstanceOf(OutOfMemoryError.class);
+    }
+
+    @Test
+    void preload_should_fill_cache_and_unknown_tenants_should_be_cached_briefly() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        AtomicInteger calls = new AtomicInteger();
+        CachingTenantSecretResolver resolver = new CachingTenantSecretResolver(new TenantSecretLoader() {
+            @Override
+            public List<String> load(String tenantId) {
+                calls.incrementAndGet();
+                return List.of();
+            }
+
+            @Override
+            public Map<String, List<String>> loadAll() {
+                return Map.of("t1", List.of("s1"), "t2", List.of("s2-new", "s2-old"));
+            }
+        }, Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(10), 16, Runnable::run, nanos::get);
+
+        assertThat(resolver.preload()).isEqualTo(2);
+        assertThat(resolver.resolve("t1")).isNotNull();
+        assertThat(resolver.resolve("t2").secondary()).isNotNull();
+        assertThat(calls.get()).isZero();
+
+        assertThat(resolver.resolve("nope")).isNull();
+        assertThat(resolver.resolve("nope")).isNull();
+        assertThat(calls.get()).isEqualTo(1);
+        nanos.addAndGet(Duration.ofSeconds(11).toNanos());
+        assertThat(resolver.resolve("nope")).isNull();
+        assertThat(calls.get()).isEqualTo(2);
+
+        resolver.invalidate("t1");
+        assertThat(resolver.resolve("t1")).isNull();
+    }
+
+    @Test
+    void both_secrets_should_verify_during_rotation() {
+        TenantKeys rotating = TenantKeys.ofSecrets(List.of("new", "old"));
+        byte[] signedWithOld = signedAuth("old");
+        byte[] signedWithNew = signedAuth("new");
+        byte[] signedWithOther = signedAuth("other");
+
+        assertThat(HookSigner.verify(rotating, signedWithNew, 0, signedWithNew.length, true)).isTrue();
+        assertThat(HookSigner.verify(rotating, signedWithOld, 0, signedWithOld.length, true)).isTrue();
+        assertThat(HookSigner.verify(rotating, signedWithOther, 0, signedWithOther.length, true)).isFalse();
+        TenantKeys settled = TenantKeys.ofSecrets(List.of("new"));
+        assertThat(HookSigner.verify(settled, signedWithOld, 0, signedWithOld.length, true)).isFalse();
+
+        assertThatThrownBy(() -> TenantKeys.ofSecrets(List.of("a", "b", "c"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void function_adapter_should_reuse_shared_keys() {
+        TenantSecretResolver resolver = TenantSecretResolver.of(tid -> tid.equals("t1") ? "secret" : "");
+        assertThat(resolver.resolve("t1").primary()).isSameAs(resolver.resolve("t1").primary());
+        assertThat(resolver.resolve("t1").secondary()).isNull();
+        assertThat(resolver.resolve("t2")).isNull();
+    }
+
+    private static Throwable failure(Runnable r) {
+        try {
+            r.run();
+            return null;
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+
+    private static byte[] signedAuth(String secret) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").setTimestampMs(1L).build();
+        AuthRequest unsigned = AuthRequest.newBuilder().setMeta(meta).setToken("tok").build();
+        String sign = HookSigner.computeBase64(HmacSha256Key.of(secret), meta, unsigned);
+        return unsigned.toBuilder().setMeta(meta.toBuilder().setSign(sign)).build().toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.contracts.hook.v1.MqEvent;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CanonicalBase64Test {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    @Test
+    void matches_should_agree_with_jdk_encoder_for_all_lengths() {
+        Random random = new Random(42);
+        for (int len = 1; len <= 40; len++) {
+            byte[] expected = new byte[len];
+            random.nextBytes(expected);
+            String encoded = Base64.getEncoder().encodeToString(expected);
+            byte[] ascii = encoded.getBytes(StandardCharsets.US_ASCII);
+
+            assertThat(CanonicalBase64.matches(expected, encoded)).isTrue();
+            assertThat(CanonicalBase64.matches(expected, ascii, 0, ascii.length)).isTrue();
+
+            byte[] other = expected.clone();
+            other[len - 1] ^= 1;
+            assertThat(CanonicalBase64.matches(other, encoded)).isFalse();
+        }
+    }
+
+    @Test
+    void matches_should_reject_non_canonical_forms() {
+        byte[] mac = HmacSha256Key.of("secret").sign("payload".getBytes(StandardCharsets.UTF_8));
+        String sign = Base64.getEncoder().encodeToString(mac);
+        assertThat(sign).hasSize(44).endsWith("=");
+
+        assertThat(CanonicalBase64.matches(mac, sign.substring(0, 43))).isFalse();
+        assertThat(CanonicalBase64.matches(mac, sign + "=")).isFalse();
+        assertThat(CanonicalBase64.matches(mac, sign.substring(0, 43) + "A")).isFalse();
+        assertThat(CanonicalBase64.matches(mac, sign.substring(0, 10) + "\u0141" + sign.substring(11))).isFalse();
+
+        // Same decoded bytes under a lenient decoder, but the two unused trailing bits are set.
+        char last = sign.charAt(42);
+        char flipped = ALPHABET.charAt(ALPHABET.indexOf(last) ^ 1);
+        assertThat(CanonicalBase64.matches(mac, sign.substring(0, 42) + flipped + "=")).isFalse();
+    }
+
+    @Test
+    void verify_paths_should_not_allocate_in_steady_state() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        HmacSha256Key key = HmacSha256Key.of("secret");
+        byte[] mac = key.sign("payload".getBytes(StandardCharsets.UTF_8));
+        String sign = Base64.getEncoder().encodeToString(mac);
+        byte[] signAscii = sign.getBytes(StandardCharsets.US_ASCII);
+        byte[] hookBody = signedHookBody(key);
+        byte[] mqRecord = signedMqRecord(key);
+
+        int iterations = 20_000;
+        boolean ok = true;
+        for (int i = 0; i < iterations; i++) {
+            ok &= CanonicalBase64.matches(mac, sign);
+            ok &= CanonicalBase64.matches(mac, signAscii, 0, signAscii.length);
+            ok &= HookSigner.verify(key, hookBody, 0, hookBody.length, true);
+            ok &= MqEventSigner.verify(key, mqRecord, 0, mqRecord.length, true);
+        }
+        assertThat(ok).isTrue();
+
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < iterations; i++) {
+            ok &= CanonicalBase64.matches(mac, sign);
+            ok &= CanonicalBase64.matches(mac, signAscii, 0, signAscii.length);
+            ok &= HookSigner.verify(key, hookBody, 0, hookBody.length, true);
+            ok &= MqEventSigner.verify(key, mqRecord, 0, mqRecord.length, true);
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+        assertThat(ok).isTrue();
+        // Allow for the counter's own bookkeeping; anything per-call would be >= iterations * 16 bytes.
+        assertThat(allocated).isLessThan(iterations);
+    }
+
+    private static byte[] signedHookBody(HmacSha256Key key) {
+        HookMeta meta = HookMeta.newBuilder()
+                .setTenantId("t1")
+                .setRequestId("rid-1")
+                .setTimestampMs(123L)
+                .build();
+        AuthRequest unsigned = AuthRequest.newBuilder()
+                .setMeta(meta)
+                .setToken("valid:u1")
+                .setDeviceId("dev1")
+                .build();
+        String sign = HookSigner.computeBase64(key, meta, unsigned);
+        return unsigned.toBuilder().setMeta(meta.toBuilder().setSign(sign)).build().toByteArray();
+    }
+
+    private static byte[] signedMqRecord(HmacSha256Key key) {
+        MqEvent unsigned = MqEvent.newBuilder()
+                .setTenantId("t1")
+                .setEventType(EventType.SINGLE_CHAT_MSG)
+                .setMsgId("m1")
+                .setUserId("u1")
+                .setEventData(ByteString.copyFromUtf8("payload"))
+                .setTimestamp(1L)
+                .setNodeId("node-1")
+                .build();
+        return unsigned.toBuilder().setSign(MqEventSigner.computeBase64(key, unsigned)).build().toByteArray();
+    }
+}
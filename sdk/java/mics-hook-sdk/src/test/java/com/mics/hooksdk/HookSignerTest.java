@@ -1,9 +1,17 @@
 package com.mics.hooksdk;
 
+import com.google.protobuf.CodedOutputStream;
 import com.mics.contracts.hook.v1.AuthRequest;
 import com.mics.contracts.hook.v1.HookMeta;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class HookSignerTest {
@@ -63,5 +71,93 @@ public class HookSignerTest {
 
         assertThat(HookSigner.verify(secret, meta, payloadForVerify, true)).isFalse();
     }
-}
 
+    @Test
+    void verify_request_bytes_should_match_message_path() {
+        String secret = "secret";
+
+        HookMeta metaNoSign = HookMeta.newBuilder()
+                .setTenantId("t1")
+                .setRequestId("rid-1")
+                .setTimestampMs(123456789L)
+                .setTraceId("tr-1")
+                .build();
+        AuthRequest payloadForSign = AuthRequest.newBuilder()
+                .setMeta(metaNoSign)
+                .setToken("valid:u1")
+                .setDeviceId("dev1")
+                .build();
+
+        String sign = HookSigner.computeBase64(secret, metaNoSign, payloadForSign);
+        AuthRequest signed = payloadForSign.toBuilder().setMeta(metaNoSign.toBuilder().setSign(sign)).build();
+        byte[] body = signed.toByteArray();
+
+        assertThat(HookSigner.verify(secret, body, true)).isTrue();
+        assertThat(HookSigner.verify(HmacSha256Key.of(secret), body, true)).isTrue();
+        assertThat(HookSigner.verify("other", body, true)).isFalse();
+
+        byte[] tampered = signed.toBuilder().setToken("valid:u2").build().toByteArray();
+        assertThat(HookSigner.verify(secret, tampered, true)).isFalse();
+
+        byte[] framed = new byte[body.length + 7];
+        System.arraycopy(body, 0, framed, 3, body.length);
+        assertThat(HookSigner.verify(HmacSha256Key.of(secret), framed, 3, body.length, true)).isTrue();
+    }
+
+    @Test
+    void verify_request_bytes_should_honor_require_sign() {
+        byte[] unsigned = AuthRequest.newBuilder()
+                .setMeta(HookMeta.newBuilder().setTenantId("t1").setRequestId("rid-1"))
+                .setToken("valid:u1")
+                .build()
+                .toByteArray();
+
+        assertThat(HookSigner.verify("secret", unsigned, false)).isTrue();
+        assertThat(HookSigner.verify("secret", unsigned, true)).isFalse();
+        assertThat(HookSigner.verify(new byte[0], unsigned, false)).isTrue();
+        assertThat(HookSigner.verify("secret", new byte[]{0x0A, 0x7F}, false)).isFalse();
+    }
+
+    @Test
+    void verify_request_bytes_should_accept_fields_unknown_to_this_sdk() throws IOException {
+        HmacSha256Key key = HmacSha256Key.of("secret");
+
+        // A newer gateway emitting an unknown meta field between request_id and timestamp_ms.
+        byte[] metaNoSign = meta(null);
+        byte[] unsignedBody = request(metaNoSign);
+        byte[] tsLe = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(42L).array();
+        String sign = Base64.getEncoder().encodeToString(key.sign(unsignedBody, "rid-9".getBytes(StandardCharsets.UTF_8), tsLe));
+
+        byte[] body = request(meta(sign));
+        assertThat(HookSigner.verify(key, body, true)).isTrue();
+
+        AuthRequest parsed = AuthRequest.parseFrom(body);
+        AuthRequest legacyPayload = parsed.toBuilder().setMeta(parsed.getMeta().toBuilder().clearSign()).build();
+        assertThat(HookSigner.verify(key, parsed.getMeta(), legacyPayload, true)).isFalse();
+    }
+
+    private static byte[] meta(String sign) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeString(1, "t1");
+        out.writeString(2, "rid-9");
+        out.writeUInt64(99, 7L);
+        out.writeInt64(3, 42L);
+        if (sign != null) {
+            out.writeString(4, sign);
+        }
+        out.writeString(5, "tr-9");
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] request(byte[] meta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        out.writeByteArray(1, meta);
+        out.writeString(2, "valid:u1");
+        out.writeString(3, "dev1");
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,181 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MqEventBatchTest {
+    @Test
+    void batch_should_decode_what_verifies_and_flag_the_rest() {
+        Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+        // t3 is mid-rotation: records signed with either secret are accepted.
+        TenantSecretResolver resolver = tenantId -> {
+            lookups.computeIfAbsent(tenantId, k -> new AtomicInteger()).incrementAndGet();
+            switch (tenantId) {
+                case "t1":
+                    return TenantKeys.of(HmacSha256Key.of("s1"));
+                case "t2":
+                    return TenantKeys.of(HmacSha256Key.of("s2"));
+                case "t3":
+                    return TenantKeys.of(HmacSha256Key.of("s3-new"), HmacSha256Key.of("s3-old"));
+                default:
+                    return null;
+            }
+        };
+
+        List<byte[]> records = new ArrayList<>();
+        List<Boolean> expectOk = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            // Runs of one tenant with the occasional switch, like a topic shared by a few tenants.
+            String tenant = i % 100 < 80 ? "t1" : i % 100 < 90 ? "t2" : "t3";
+            String secret = tenant.equals("t1") ? "s1" : tenant.equals("t2") ? "s2" : i % 2 == 0 ? "s3-new" : "s3-old";
+            switch (i % 50) {
+                case 7:
+                    records.add(signed(message(tenant, EventType.SINGLE_CHAT_MSG, "m" + i), "wrong"));
+                    expectOk.add(false);
+                    break;
+                case 13:
+                    records.add(new byte[]{0x0A, 0x7F});
+                    expectOk.add(false);
+                    break;
+                case 17:
+                    records.add(null);
+                    expectOk.add(false);
+                    break;
+                case 23:
+                    records.add(signed(message("unknown", EventType.SINGLE_CHAT_MSG, "m" + i), "s1"));
+                    expectOk.add(false);
+                    break;
+                case 29:
+                    records.add(message(tenant, EventType.SINGLE_CHAT_MSG, "m" + i).toByteArray());
+                    expectOk.add(false);
+                    break;
+                case 31:
+                    records.add(signed(message(tenant, EventType.SINGLE_CHAT_MSG, "m" + i).toBuilder()
+                            .setEventData(ByteString.copyFrom(new byte[]{0x0A, 0x7F})).build(), secret));
+                    expectOk.add(false);
+                    break;
+                case 37:
+                    records.add(signed(connect(tenant, EventType.CONNECT_OFFLINE, "d" + i), secret));
+                    expectOk.add(true);
+                    break;
+                case 41:
+                    records.add(signed(message(tenant, EventType.OFFLINE_MESSAGE, "m" + i), secret));
+                    expectOk.add(true);
+                    break;
+                default:
+                    records.add(signed(message(tenant, i % 2 == 0 ? EventType.SINGLE_CHAT_MSG : EventType.GROUP_CHAT_MSG, "m" + i), secret));
+                    expectOk.add(true);
+                    break;
+            }
+        }
+
+        MqEventBatch sequential = MqEventDecoder.verifyAndDecodeBatch(resolver, records, true);
+        assertThat(lookups.get("t1").get()).isLessThanOrEqualTo(1);
+        assertThat(lookups.get("t2").get()).isLessThanOrEqualTo(1);
+        assertThat(lookups.get("t3").get()).isLessThanOrEqualTo(1);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MqEventBatch parallel = MqEventDecoder.verifyAndDecodeBatch(resolver, records, true, pool);
+            for (MqEventBatch batch : List.of(sequential, parallel)) {
+                assertThat(batch.size()).isEqualTo(records.size());
+                assertThat(batch.getFailureCount()).isEqualTo((int) expectOk.stream().filter(ok -> !ok).count());
+                for (int i = 0; i < records.size(); i++) {
+                    assertThat(batch.isFailed(i)).as("record %d", i).isEqualTo(!expectOk.get(i));
+                    if (!expectOk.get(i)) {
+                        assertThat(batch.getMessage(i)).isNull();
+                        assertThat(batch.getEventType(i)).isNull();
+                        continue;
+                    }
+                    MqEvent evt = parse(records.get(i));
+                    assertThat(batch.getTenantId(i)).isEqualTo(evt.getTenantId());
+                    assertThat(batch.getEventType(i)).isEqualTo(evt.getEventType());
+                    if (evt.getEventType() == EventType.CONNECT_OFFLINE) {
+                        assertThat(batch.getConnectAck(i).getDeviceId()).isEqualTo("d" + i);
+                        assertThat(batch.getMessage(i)).isNull();
+                    } else {
+                        assertThat(batch.getMessage(i).getMsgId()).isEqualTo("m" + i);
+                        assertThat(batch.getConnectAck(i)).isNull();
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void next_failure_should_walk_the_bitmap_across_words() {
+        TenantSecretResolver resolver = tenantId -> TenantKeys.of(HmacSha256Key.of("s1"));
+        byte[] good = signed(message("t1", EventType.SINGLE_CHAT_MSG, "m"), "s1");
+        byte[][] records = new byte[200][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = i == 0 || i == 63 || i == 64 || i == 199 ? null : good;
+        }
+        MqEventBatch batch = MqEventDecoder.verifyAndDecodeBatch(resolver, records, true, null);
+
+        List<Integer> failed = new ArrayList<>();
+        for (int i = batch.nextFailure(0); i >= 0; i = batch.nextFailure(i + 1)) {
+            failed.add(i);
+        }
+        assertThat(failed).containsExactly(0, 63, 64, 199);
+        assertThat(batch.getFailureCount()).isEqualTo(4);
+        assertThat(batch.nextFailure(200)).isEqualTo(-1);
+
+        MqEventBatch empty = MqEventDecoder.verifyAndDecodeBatch(resolver, List.of(), true);
+        assertThat(empty.size()).isZero();
+        assertThat(empty.nextFailure(0)).isEqualTo(-1);
+    }
+
+    private static MqEvent message(String tenantId, EventType type, String msgId) {
+        MessageRequest msg = MessageRequest.newBuilder()
+                .setTenantId(tenantId)
+                .setUserId("u1")
+                .setMsgId(msgId)
+                .setMsgBody(ByteString.copyFromUtf8("hi"))
+                .build();
+        return MqEvent.newBuilder()
+                .setTenantId(tenantId)
+                .setEventType(type)
+                .setMsgId(msgId)
+                .setUserId("u1")
+                .setEventData(msg.toByteString())
+                .build();
+    }
+
+    private static MqEvent connect(String tenantId, EventType type, String deviceId) {
+        ConnectAck ack = ConnectAck.newBuilder().setTenantId(tenantId).setUserId("u1").setDeviceId(deviceId).build();
+        return MqEvent.newBuilder()
+                .setTenantId(tenantId)
+                .setEventType(type)
+                .setUserId("u1")
+                .setDeviceId(deviceId)
+                .setEventData(ack.toByteString())
+                .build();
+    }
+
+    private static byte[] signed(MqEvent evt, String secret) {
+        return evt.toBuilder().setSign(MqEventSigner.computeBase64(secret, evt)).build().toByteArray();
+    }
+
+    private static MqEvent parse(byte[] record) {
+        try {
+            return MqEvent.parseFrom(record);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
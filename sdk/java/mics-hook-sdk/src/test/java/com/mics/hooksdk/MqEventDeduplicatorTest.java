@@ -0,0 +1,141 @@
+package com.mics.hooksdk;
+
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.MessageRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MqEventDeduplicatorTest {
+    @Test
+    void dedup_should_tell_repeated_ids_per_tenant_and_ignore_empty_ids() {
+        MqEventDeduplicator dedup = MqEventDeduplicator.builder().maximumIdsPerWindow(10_000).build();
+
+        assertThat(dedup.check("t1", "m1")).isEqualTo(MqEventDeduplicator.Result.NEW);
+        assertThat(dedup.check("t1", "m1")).isEqualTo(MqEventDeduplicator.Result.DUPLICATE);
+        assertThat(dedup.check("t2", "m1")).isEqualTo(MqEventDeduplicator.Result.NEW);
+        // The separator keeps ("t1", "m1") and ("t1m", "1") apart.
+        assertThat(dedup.check("t1m", "1")).isEqualTo(MqEventDeduplicator.Result.NEW);
+
+        assertThat(dedup.isDuplicate("t1", "")).isFalse();
+        assertThat(dedup.isDuplicate("t1", "")).isFalse();
+
+        MessageRequest msg = MessageRequest.newBuilder().setTenantId("t1").setMsgId("m2").build();
+        MqEvent evt = MqEvent.newBuilder().setTenantId("t1").setEventType(EventType.SINGLE_CHAT_MSG).setMsgId("m2").build();
+        assertThat(dedup.isDuplicate(msg)).isFalse();
+        assertThat(dedup.isDuplicate(evt)).isTrue();
+
+        assertThat(dedup.getNewCount()).isEqualTo(4);
+        assertThat(dedup.getDuplicateCount()).isEqualTo(2);
+        assertThat(dedup.getProbableDuplicateCount()).isZero();
+
+        assertThatThrownBy(() -> MqEventDeduplicator.builder().falsePositiveRate(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MqEventDeduplicator.builder().window(Duration.ofMillis(1))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void ids_should_be_remembered_for_the_window_once_evicted_from_the_exact_tier() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        MqEventDeduplicator dedup = new MqEventDeduplicator(Duration.ofMillis(3_000), 1_000, 1e-6, 4, now::get);
+
+        assertThat(dedup.check("t1", "old")).isEqualTo(MqEventDeduplicator.Result.NEW);
+        for (int i = 0; i < 64; i++) {
+            dedup.check("t1", "filler-" + i);
+        }
+        // Only 4 exact slots: "old" is gone from them, the Bloom filters still have it.
+        assertThat(dedup.check("t1", "old")).isEqualTo(MqEventDeduplicator.Result.PROBABLE_DUPLICATE);
+
+        now.addAndGet(2_500);
+        assertThat(dedup.isDuplicate("t1", "old")).isTrue();
+
+        // Seen again 2.5s in, so recorded in that generation too; 5s after that it is forgotten.
+        now.addAndGet(5_000);
+        for (int i = 0; i < 64; i++) {
+            dedup.check("t1", "filler2-" + i);
+        }
+        assertThat(dedup.check("t1", "old")).isEqualTo(MqEventDeduplicator.Result.NEW);
+    }
+
+    @Test
+    void false_positive_rate_should_hold_at_capacity() {
+        for (double p : new double[]{1e-2, 1e-4}) {
+            AtomicLong now = new AtomicLong();
+            MqEventDeduplicator dedup = new MqEventDeduplicator(Duration.ofMillis(3_000), 150_000, p, 1024, now::get);
+            // Three full generations behind the current one, then fresh ids up to the current one's share.
+            for (int g = 0; g < 3; g++) {
+                for (int i = 0; i < 50_000; i++) {
+                    dedup.check("t1", "fill-" + g + "-" + i);
+                }
+                now.addAndGet(1_000);
+            }
+            long before = dedup.getProbableDuplicateCount();
+            for (int i = 0; i < 50_000; i++) {
+                dedup.check("t1", "query-" + i);
+            }
+            long falsePositives = dedup.getProbableDuplicateCount() - before;
+            assertThat(falsePositives).as("p=%s", p).isLessThanOrEqualTo((long) Math.ceil(50_000 * p * 2));
+            assertThat(dedup.getDuplicateCount()).isZero();
+        }
+    }
+
+    @Test
+    void racing_checks_of_one_id_should_see_new_once() throws Exception {
+        MqEventDeduplicator dedup = MqEventDeduplicator.builder().maximumIdsPerWindow(100_000).build();
+        int threads = 4;
+        int ids = 20_000;
+        AtomicInteger fresh = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ids; i++) {
+                    if (!dedup.isDuplicate("t1", "m" + i)) {
+                        fresh.incrementAndGet();
+                    }
+                }
+            });
+            w.start();
+            workers.add(w);
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        assertThat(fresh.get()).isEqualTo(ids);
+        assertThat(dedup.getNewCount()).isEqualTo(ids);
+        assertThat(dedup.getDuplicateCount() + dedup.getProbableDuplicateCount()).isEqualTo((long) ids * (threads - 1));
+    }
+
+    @Test
+    void view_should_hash_like_the_strings() {
+        MqEventDeduplicator dedup = MqEventDeduplicator.builder().maximumIdsPerWindow(10_000).build();
+        MqEventView view = new MqEventView();
+        String[][] ids = {{"t1", "m1"}, {"租户", "消息-𝄞"}, {"t1", "éࠀ"}};
+        for (String[] id : ids) {
+            byte[] record = MqEvent.newBuilder().setTenantId(id[0]).setMsgId(id[1]).build().toByteArray();
+            assertThat(view.wrap(record).dedupHash()).isEqualTo(MqEventDeduplicator.hash(id[0], id[1]));
+            assertThat(dedup.isDuplicate(view)).isFalse();
+            assertThat(dedup.check(id[0], id[1])).isEqualTo(MqEventDeduplicator.Result.DUPLICATE);
+        }
+
+        view.wrap(MqEvent.newBuilder().setTenantId("t1").setEventType(EventType.CONNECT_ONLINE).build().toByteArray());
+        assertThat(dedup.isDuplicate(view)).isFalse();
+        assertThat(dedup.isDuplicate(view)).isFalse();
+    }
+}
@@ -0,0 +1,85 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MqEventRouterTest {
+    @Test
+    void router_should_decode_once_and_call_the_listeners_of_the_type() {
+        List<String> calls = new ArrayList<>();
+        List<Object> payloads = new ArrayList<>();
+        MqEventRouter router = MqEventRouter.builder()
+                .onConnectAck(EventType.CONNECT_ONLINE, (evt, ack) -> calls.add("online " + ack.getDeviceId()))
+                .onConnectAck((evt, ack) -> calls.add("connect " + evt.getEventType()))
+                .onMessage(EventType.GROUP_CHAT_MSG, (evt, msg) -> {
+                    calls.add("group " + msg.getGroupId());
+                    payloads.add(msg);
+                })
+                .onMessage(EventType.GROUP_CHAT_MSG, (evt, msg) -> payloads.add(msg))
+                .onMessage(EventType.OFFLINE_MESSAGE, (evt, msg) -> calls.add("offline " + msg.getMsgId()))
+                .fallback((evt, reason) -> calls.add("fallback " + evt.getEventType() + " " + reason))
+                .build();
+
+        ConnectAck ack = ConnectAck.newBuilder().setUserId("u1").setDeviceId("d1").build();
+        MessageRequest msg = MessageRequest.newBuilder().setMsgId("m1").setGroupId("g1").build();
+        assertThat(router.route(event(EventType.CONNECT_ONLINE, ack.toByteString()))).isTrue();
+        assertThat(router.route(event(EventType.CONNECT_OFFLINE, ack.toByteString()))).isTrue();
+        assertThat(router.route(event(EventType.GROUP_CHAT_MSG, msg.toByteString()))).isTrue();
+        assertThat(router.route(event(EventType.OFFLINE_MESSAGE, msg.toByteString()))).isTrue();
+        assertThat(router.route(event(EventType.SINGLE_CHAT_MSG, msg.toByteString()))).isFalse();
+
+        assertThat(calls).containsExactly(
+                "online d1",
+                "connect CONNECT_ONLINE",
+                "connect CONNECT_OFFLINE",
+                "group g1",
+                "offline m1",
+                "fallback SINGLE_CHAT_MSG NO_LISTENER");
+        assertThat(payloads).hasSize(2);
+        assertThat(payloads.get(0)).isSameAs(payloads.get(1)).isEqualTo(msg);
+    }
+
+    @Test
+    void router_should_send_what_it_cannot_route_to_the_fallback() {
+        List<MqEventRouter.Reason> reasons = new ArrayList<>();
+        MqEventRouter router = MqEventRouter.builder()
+                .onConnectAck((evt, ack) -> {
+                    throw new AssertionError("no connect event is routable here");
+                })
+                .onMessage((evt, msg) -> {
+                    throw new AssertionError("no message event is routable here");
+                })
+                .fallback((evt, reason) -> reasons.add(reason))
+                .build();
+
+        assertThat(router.route(MqEvent.newBuilder().setEventTypeValue(42).setEventData(ByteString.copyFromUtf8("x")).build())).isFalse();
+        assertThat(router.route(event(EventType.CONNECT_ONLINE, ByteString.EMPTY))).isFalse();
+        assertThat(router.route(event(EventType.GROUP_CHAT_MSG, ByteString.copyFrom(new byte[]{0x0A, 0x7F})))).isFalse();
+        assertThat(reasons).containsExactly(
+                MqEventRouter.Reason.UNKNOWN_TYPE,
+                MqEventRouter.Reason.EMPTY_EVENT_DATA,
+                MqEventRouter.Reason.MALFORMED_EVENT_DATA);
+
+        // Without a fallback, unroutable events are dropped.
+        assertThat(MqEventRouter.builder().build().route(event(EventType.CONNECT_ONLINE, ByteString.EMPTY))).isFalse();
+
+        assertThatThrownBy(() -> MqEventRouter.builder().onMessage(EventType.CONNECT_ONLINE, (evt, msg) -> {
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MqEventRouter.builder().onConnectAck(EventType.UNRECOGNIZED, (evt, ack) -> {
+        })).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static MqEvent event(EventType type, ByteString data) {
+        return MqEvent.newBuilder().setTenantId("t1").setEventType(type).setEventData(data).build();
+    }
+}
@@ -8,6 +8,8 @@ import com.mics.contracts.message.v1.MessageRequest;
 import com.mics.contracts.message.v1.MessageType;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class MqEventSignerDecoderTest {
@@ -73,5 +75,65 @@ public class MqEventSignerDecoderTest {
         assertThat(MqEventDecoder.tryDecodeConnectAck(evt).isPresent()).isTrue();
         assertThat(MqEventDecoder.tryDecodeConnectAck(evt).get().getUserId()).isEqualTo("u1");
     }
-}
 
+    @Test
+    void mq_raw_record_verify_and_decode_in_one_pass() {
+        String secret = "secret";
+        MqEvent evt = signedMessageEvent(secret);
+        byte[] record = evt.toByteArray();
+
+        assertThat(MqEventSigner.verify(secret, record, true)).isTrue();
+        assertThat(MqEventSigner.verify(secret.getBytes(StandardCharsets.UTF_8), record, true)).isTrue();
+        assertThat(MqEventSigner.verify(HmacSha256Key.of(secret), record, true)).isTrue();
+        assertThat(MqEventSigner.verify("other", record, true)).isFalse();
+
+        assertThat(MqEventDecoder.tryVerifyAndDecodeMessage(secret, record, true))
+                .hasValueSatisfying(m -> assertThat(m.getMsgId()).isEqualTo("m1"));
+        assertThat(MqEventDecoder.tryVerifyAndDecodeMessage("other", record, true)).isEmpty();
+        assertThat(MqEventDecoder.tryVerifyAndDecodeConnectAck(secret, record, true)).isEmpty();
+
+        byte[] tampered = evt.toBuilder().setGroupId("g-x").build().toByteArray();
+        assertThat(MqEventSigner.verify(secret, tampered, true)).isFalse();
+        assertThat(MqEventDecoder.tryVerifyAndDecodeMessage(secret, tampered, true)).isEmpty();
+    }
+
+    @Test
+    void mq_raw_record_should_honor_require_sign() {
+        MqEvent unsigned = signedMessageEvent("secret").toBuilder().clearSign().build();
+        byte[] record = unsigned.toByteArray();
+
+        assertThat(MqEventSigner.verify("secret", record, false)).isTrue();
+        assertThat(MqEventSigner.verify("secret", record, true)).isFalse();
+        assertThat(MqEventDecoder.tryVerifyAndDecodeMessage("secret", record, false)).isPresent();
+        assertThat(MqEventDecoder.tryVerifyAndDecodeMessage("secret", record, true)).isEmpty();
+        assertThat(MqEventSigner.verify("secret", new byte[]{0x0A, 0x05, 0x01}, false)).isFalse();
+    }
+
+    private static MqEvent signedMessageEvent(String secret) {
+        MessageRequest msg = MessageRequest.newBuilder()
+                .setTenantId("t1")
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setMsgId("m1")
+                .setMsgType(MessageType.GROUP_CHAT)
+                .setGroupId("g1")
+                .setMsgBody(ByteString.copyFromUtf8("hi"))
+                .setTimestampMs(1L)
+                .build();
+
+        MqEvent evtNoSign = MqEvent.newBuilder()
+                .setTenantId("t1")
+                .setEventType(EventType.GROUP_CHAT_MSG)
+                .setMsgId("m1")
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setGroupId("g1")
+                .setEventData(msg.toByteString())
+                .setTimestamp(2L)
+                .setNodeId("node-1")
+                .setTraceId("tr")
+                .build();
+
+        return evtNoSign.toBuilder().setSign(MqEventSigner.computeBase64(secret, evtNoSign)).build();
+    }
+}
@@ -0,0 +1,165 @@
+package com.mics.hooksdk;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MqEventViewTest {
+    @Test
+    void view_should_read_the_same_fields_as_the_parsed_message() {
+        MessageRequest msg = MessageRequest.newBuilder().setMsgId("m1").setGroupId("群-𝄞").setMsgBody(ByteString.copyFromUtf8("hi")).build();
+        MqEvent evt = MqEvent.newBuilder()
+                .setTenantId("t1")
+                .setEventType(EventType.GROUP_CHAT_MSG)
+                .setMsgId("m1")
+                .setUserId("u1")
+                .setDeviceId("d1")
+                .setToUserId("")
+                .setGroupId("群-𝄞")
+                .setEventData(msg.toByteString())
+                .setTimestamp(-5L)
+                .setNodeId("node-1")
+                .setSign("c2lnbg==")
+                .setTraceId("trace-1")
+                .build();
+        byte[] bytes = evt.toByteArray();
+        byte[] padded = new byte[bytes.length + 7];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 7);
+        direct.position(3);
+        direct.put(bytes);
+        direct.position(3).limit(3 + bytes.length);
+
+        MqEventView view = new MqEventView();
+        List<Runnable> wraps = List.of(
+                () -> view.wrap(bytes),
+                () -> view.wrap(padded, 3, bytes.length),
+                () -> view.wrap(ByteBuffer.wrap(padded, 3, bytes.length).slice()),
+                () -> view.wrap(direct));
+        for (Runnable wrap : wraps) {
+            wrap.run();
+            assertThat(view.isValid()).isTrue();
+            assertThat(view.getTenantId()).isEqualTo("t1");
+            assertThat(view.getEventType()).isEqualTo(EventType.GROUP_CHAT_MSG);
+            assertThat(view.eventType()).isEqualTo(EventType.GROUP_CHAT_MSG_VALUE);
+            assertThat(view.getMsgId()).isEqualTo("m1");
+            assertThat(view.getUserId()).isEqualTo("u1");
+            assertThat(view.getDeviceId()).isEqualTo("d1");
+            assertThat(view.getToUserId()).isEmpty();
+            assertThat(view.getGroupId()).isEqualTo("群-𝄞");
+            assertThat(view.timestamp()).isEqualTo(-5L);
+            assertThat(view.getNodeId()).isEqualTo("node-1");
+            assertThat(view.getTraceId()).isEqualTo("trace-1");
+            assertThat(view.getEventDataLength()).isEqualTo(msg.getSerializedSize());
+            assertThat(view.getEventData()).isEqualTo(msg.toByteString());
+            assertThat(view.decodeMessage()).isEqualTo(msg);
+            assertThat(view.decodeConnectAck()).isNull();
+            assertThat(view.toMqEvent()).isEqualTo(evt);
+
+            assertThat(view.groupIdEquals("群-𝄞")).isTrue();
+            assertThat(view.groupIdEquals("群-")).isFalse();
+            assertThat(view.groupIdEquals("群-𝄞x")).isFalse();
+            assertThat(view.groupIdEquals("群-\uD834")).isFalse();
+            assertThat(view.tenantIdEquals("t1")).isTrue();
+            assertThat(view.tenantIdEquals("t2")).isFalse();
+            assertThat(view.userIdEquals(new StringBuilder("u1"))).isTrue();
+            assertThat(view.toUserIdEquals("")).isTrue();
+            assertThat(view.msgIdEquals("m1")).isTrue();
+            assertThat(view.nodeIdEquals("node-2")).isFalse();
+        }
+        assertThat(direct.position()).isEqualTo(3);
+    }
+
+    @Test
+    void view_should_skip_unknown_fields_keep_the_last_duplicate_and_reject_malformed_records() {
+        ConnectAck ack = ConnectAck.newBuilder().setCode(1000).setDeviceId("d1").build();
+        MqEvent evt = MqEvent.newBuilder()
+                .setTenantId("t1")
+                .setEventType(EventType.CONNECT_ONLINE)
+                .setEventData(ack.toByteString())
+                .setUnknownFields(UnknownFieldSet.newBuilder()
+                        .addField(20, UnknownFieldSet.Field.newBuilder().addVarint(7).addFixed32(1).addFixed64(2)
+                                .addLengthDelimited(ByteString.copyFromUtf8("x"))
+                                .addGroup(UnknownFieldSet.newBuilder()
+                                        .addField(1, UnknownFieldSet.Field.newBuilder().addVarint(1).build()).build())
+                                .build())
+                        .build())
+                .build();
+        byte[] twice = concat(evt.toByteArray(), MqEvent.newBuilder().setTenantId("t2").build().toByteArray());
+
+        MqEventView view = new MqEventView().wrap(twice);
+        assertThat(view.isValid()).isTrue();
+        assertThat(view.getTenantId()).isEqualTo("t2");
+        assertThat(view.getEventType()).isEqualTo(EventType.CONNECT_ONLINE);
+        assertThat(view.decodeConnectAck()).isEqualTo(ack);
+        assertThat(view.decodeMessage()).isNull();
+
+        view.wrap(new byte[0]);
+        assertThat(view.isValid()).isTrue();
+        assertThat(view.getTenantId()).isEmpty();
+        assertThat(view.getEventType()).isEqualTo(EventType.CONNECT_ONLINE);
+        assertThat(view.decodeConnectAck()).isNull();
+
+        for (byte[] bad : List.of(new byte[]{0x0A, 0x7F}, new byte[]{0x10}, new byte[]{0x12, 0x01, 0x00}, new byte[]{0x00, 0x00})) {
+            view.wrap(bad);
+            assertThat(view.isValid()).as(Arrays.toString(bad)).isFalse();
+            assertThatThrownBy(view::eventType).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void filtering_should_not_allocate() {
+        byte[][] records = new byte[64][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = MqEvent.newBuilder()
+                    .setTenantId("t1")
+                    .setEventType(i % 2 == 0 ? EventType.GROUP_CHAT_MSG : EventType.SINGLE_CHAT_MSG)
+                    .setUserId("u" + i)
+                    .setGroupId("g" + (i % 4))
+                    .setEventData(ByteString.copyFrom(new byte[256]))
+                    .build()
+                    .toByteArray();
+        }
+        MqEventView view = new MqEventView();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        int matched = filter(view, records, 1_000);
+        long before = threads.getThreadAllocatedBytes(id);
+        matched += filter(view, records, 10_000);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+
+        assertThat(matched).isEqualTo(11_000 * 16);
+        assertThat(allocated).isLessThan(64 * 1024);
+    }
+
+    private static int filter(MqEventView view, byte[][] records, int rounds) {
+        int matched = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (byte[] record : records) {
+                if (view.wrap(record).isValid() && view.eventType() == EventType.GROUP_CHAT_MSG_VALUE && view.groupIdEquals("g2")) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+}
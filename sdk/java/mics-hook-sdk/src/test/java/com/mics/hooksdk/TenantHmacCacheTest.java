@@ -0,0 +1,160 @@
+package com.mics.hooksdk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TenantHmacCacheTest {
+    @Test
+    void key_should_match_jdk_mac() throws Exception {
+        byte[] a = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "world".getBytes(StandardCharsets.UTF_8);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        mac.update(a);
+        mac.update(b);
+        byte[] expected = mac.doFinal();
+
+        HmacSha256Key key = HmacSha256Key.of("secret");
+        assertThat(key.sign(a, b)).isEqualTo(expected);
+        assertThat(key.sign(a, null, b)).isEqualTo(expected);
+        assertThat(key.sign(a, b)).isEqualTo(expected);
+    }
+
+    // Key lengths around the 64-byte block (longer keys are hashed first), messages around the SHA-256 padding
+    // boundary (55/56) and over several blocks.
+    static Stream<Arguments> keyAndMessageLengths() {
+        List<Arguments> cases = new ArrayList<>();
+        for (int keyLength : new int[]{1, 32, 64, 65, 200}) {
+            for (int messageLength : new int[]{0, 55, 56, 64, 1000, 4099}) {
+                cases.add(Arguments.of(keyLength, messageLength));
+            }
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("keyAndMessageLengths")
+    void key_should_match_jdk_mac_across_block_boundaries(int keyLength, int messageLength) throws Exception {
+        Random random = new Random(31L * keyLength + messageLength);
+        byte[] secret = new byte[keyLength];
+        byte[] message = new byte[messageLength];
+        random.nextBytes(secret);
+        random.nextBytes(message);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        byte[] expected = mac.doFinal(message);
+
+        HmacSha256Key key = HmacSha256Key.of(secret);
+        assertThat(key.sign(message)).isEqualTo(expected);
+        // Split across updates, and again on an engine that was used and reset before.
+        int half = messageLength / 2;
+        assertThat(key.sign(Arrays.copyOfRange(message, 0, half), Arrays.copyOfRange(message, half, messageLength))).isEqualTo(expected);
+        HmacEngine engine = key.lease();
+        try {
+            for (byte b : message) {
+                engine.update(b);
+            }
+            assertThat(engine.doFinal()).isEqualTo(expected);
+        } finally {
+            key.release(engine);
+        }
+    }
+
+    // SecretKeySpec refuses empty keys; a single zero byte pads to the same key block, so that Mac stands in for it.
+    @Test
+    void engine_with_an_empty_key_should_match_jdk_mac_with_a_zero_byte_key() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[1], "HmacSHA256"));
+        byte[] message = "payload".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = mac.doFinal(message);
+
+        byte[][] pads = HmacEngine.pads(new byte[0]);
+        HmacEngine engine = new HmacEngine(pads[0], pads[1]);
+        engine.update(message, 0, message.length);
+        assertThat(engine.doFinal()).isEqualTo(expected);
+    }
+
+    @Test
+    void empty_keys_should_be_rejected() {
+        assertThatThrownBy(() -> HmacSha256Key.of(new byte[0])).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> HmacSha256Key.of("")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void get_should_reuse_key_until_secret_rotates() {
+        TenantHmacCache cache = new TenantHmacCache(16);
+
+        HmacSha256Key k1 = cache.get("t1", "secret-1");
+        assertThat(cache.get("t1", "secret-1")).isSameAs(k1);
+
+        HmacSha256Key rotated = cache.get("t1", "secret-2");
+        assertThat(rotated).isNotSameAs(k1);
+        assertThat(rotated.sign(new byte[]{1})).isEqualTo(HmacSha256Key.of("secret-2").sign(new byte[]{1}));
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.invalidate("t1");
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("t1", "secret-2")).isNotSameAs(rotated);
+    }
+
+    @Test
+    void get_should_stay_bounded() {
+        TenantHmacCache cache = new TenantHmacCache(8);
+        for (int i = 0; i < 100; i++) {
+            cache.get("t" + i, "secret-" + i);
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    void get_should_reject_blank_secret() {
+        TenantHmacCache cache = new TenantHmacCache(8);
+        assertThatThrownBy(() -> cache.get("t1", " ")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void key_should_be_safe_for_concurrent_use() throws Exception {
+        HmacSha256Key key = HmacSha256Key.of("secret");
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = key.sign(payload);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        if (!Arrays.equals(expected, key.sign(payload))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> f : futures) {
+                assertThat(f.get()).isTrue();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
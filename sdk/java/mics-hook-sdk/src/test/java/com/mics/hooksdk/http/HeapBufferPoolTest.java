@@ -0,0 +1,66 @@
+package com.mics.hooksdk.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeapBufferPoolTest {
+    @Test
+    void arrays_should_come_in_power_of_two_classes_and_be_reused() {
+        HeapBufferPool pool = new HeapBufferPool();
+        assertThat(pool.acquire(0)).hasSize(1024);
+        assertThat(pool.acquire(1024)).hasSize(1024);
+        assertThat(pool.acquire(1025)).hasSize(2048);
+        assertThat(pool.acquire(65536)).hasSize(65536);
+
+        byte[] b = pool.acquire(3000);
+        assertThat(b).hasSize(4096);
+        pool.release(b);
+        assertThat(pool.acquire(2049)).isSameAs(b);
+        // Each released array is handed out once.
+        assertThat(pool.acquire(4096)).isNotSameAs(b);
+    }
+
+    @Test
+    void foreign_and_oversized_arrays_should_not_be_pooled() {
+        HeapBufferPool pool = new HeapBufferPool();
+        byte[] odd = new byte[3000];
+        pool.release(odd);
+        assertThat(pool.acquire(3000)).isNotSameAs(odd);
+
+        byte[] huge = pool.acquire((1 << 20) + 1);
+        assertThat(huge).hasSize((1 << 20) + 1);
+        pool.release(huge);
+        assertThat(pool.acquire((1 << 20) + 1)).isNotSameAs(huge);
+        assertThat(HeapBufferPool.classOf((1 << 20) + 1)).isEqualTo(-1);
+    }
+
+    @Test
+    void body_capacity_should_trust_declared_lengths_only_up_to_the_initial_cap() {
+        // First array: small declared bodies exactly, large ones capped, unknown ones empty.
+        assertThat(HeapBufferPool.bodyCapacity(300, 0, 0)).isEqualTo(300);
+        assertThat(HeapBufferPool.bodyCapacity(16 << 20, 0, 0)).isEqualTo(HeapBufferPool.MAX_INITIAL_BODY);
+        assertThat(HeapBufferPool.bodyCapacity(-1, 0, 0)).isZero();
+
+        // Growth doubles from what arrived, never past the declared length, always fitting what is needed.
+        assertThat(HeapBufferPool.bodyCapacity(16 << 20, 64 << 10, (64 << 10) + 1)).isEqualTo(128 << 10);
+        assertThat(HeapBufferPool.bodyCapacity(100_000, 64 << 10, (64 << 10) + 1)).isEqualTo(100_000);
+        assertThat(HeapBufferPool.bodyCapacity(-1, 1024, 5000)).isEqualTo(5000);
+        assertThat(HeapBufferPool.bodyCapacity(-1, 0, 16384)).isEqualTo(16384);
+        // A client that sends more than it declared still gets room for it (the caller enforces the limit).
+        assertThat(HeapBufferPool.bodyCapacity(10, 1024, 2000)).isEqualTo(2048);
+    }
+
+    @Test
+    void grow_should_keep_the_used_bytes_and_return_the_old_array() {
+        HeapBufferPool pool = new HeapBufferPool();
+        byte[] b = pool.acquire(1024);
+        b[0] = 1;
+        b[1023] = 2;
+        byte[] grown = pool.grow(b, 1024, 1025);
+        assertThat(grown).hasSize(2048);
+        assertThat(grown[0]).isEqualTo((byte) 1);
+        assertThat(grown[1023]).isEqualTo((byte) 2);
+        assertThat(pool.acquire(1024)).isSameAs(b);
+    }
+}
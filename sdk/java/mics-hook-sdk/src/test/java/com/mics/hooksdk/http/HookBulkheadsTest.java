@@ -0,0 +1,162 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HookBulkheadsTest {
+    @Test
+    void permits_should_pass_to_waiters_in_order_and_compartments_should_be_isolated() {
+        int[] limits = new int[MicsHookEndpoint.values().length];
+        int[] queues = new int[MicsHookEndpoint.values().length];
+        limits[MicsHookEndpoint.CHECK_MESSAGE.ordinal()] = 1;
+        queues[MicsHookEndpoint.CHECK_MESSAGE.ordinal()] = 2;
+        HookBulkheads bulkheads = new HookBulkheads(limits, queues, null);
+        List<String> ran = new ArrayList<>();
+
+        HookBulkheads.Ticket a = bulkheads.acquire(MicsHookEndpoint.CHECK_MESSAGE, "t1");
+        HookBulkheads.Ticket b = bulkheads.acquire(MicsHookEndpoint.CHECK_MESSAGE, "t1");
+        HookBulkheads.Ticket c = bulkheads.acquire(MicsHookEndpoint.CHECK_MESSAGE, "t1");
+        assertThat(bulkheads.acquire(MicsHookEndpoint.CHECK_MESSAGE, "t1")).isNull();
+        // Other tenants and unlimited endpoints are unaffected.
+        assertThat(bulkheads.acquire(MicsHookEndpoint.CHECK_MESSAGE, "t2")).isNotNull();
+        assertThat(bulkheads.acquire(MicsHookEndpoint.AUTH, "t1")).isSameAs(HookBulkheads.Ticket.UNLIMITED);
+
+        a.run(() -> ran.add("a"));
+        c.run(() -> ran.add("c"));
+        b.run(() -> ran.add("b"));
+        assertThat(ran).containsExactly("a");
+
+        // b abandons its place (e.g. failed verification) before getting a permit; c is next.
+        b.release();
+        a.release();
+        a.release();
+        assertThat(ran).containsExactly("a", "c");
+        c.release();
+        assertThat(bulkheads.getRejectedCount(MicsHookEndpoint.CHECK_MESSAGE)).isEqualTo(1);
+        // Only t2's compartment is still alive.
+        assertThat(bulkheads.compartmentCount()).isEqualTo(1);
+    }
+
+    @Test
+    void handoff_to_synchronous_continuations_should_not_recurse() {
+        int[] limits = new int[MicsHookEndpoint.values().length];
+        int[] queues = new int[MicsHookEndpoint.values().length];
+        Arrays.fill(limits, 1);
+        Arrays.fill(queues, 100_000);
+        HookBulkheads bulkheads = new HookBulkheads(limits, queues, null);
+        HookBulkheads.Ticket first = bulkheads.acquire(MicsHookEndpoint.AUTH, "t1");
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 100_000; i++) {
+            HookBulkheads.Ticket t = bulkheads.acquire(MicsHookEndpoint.AUTH, "t1");
+            // Like a synchronous handler: done as soon as it runs.
+            t.run(() -> {
+                ran.incrementAndGet();
+                t.release();
+            });
+        }
+        first.release();
+        assertThat(ran.get()).isEqualTo(100_000);
+        assertThat(bulkheads.compartmentCount()).isZero();
+    }
+
+    @Test
+    void a_saturated_tenant_should_be_rejected_early_without_affecting_others() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            CountDownLatch release = new CountDownLatch(1);
+            BlockingHandler handler = new BlockingHandler(release);
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .boundedPool(8)
+                    .bulkhead(2, 1)
+                    .build();
+            try (MicsHookHttpServer server = start(handler, options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    pending.add(client.sendAsync(check(port, "t1", "rid-" + i), HttpResponse.BodyHandlers.ofByteArray()));
+                }
+                assertThat(handler.started.tryAcquire(2, 5, TimeUnit.SECONDS)).isTrue();
+                waitForQueued(server, transport);
+
+                CheckMessageResponse overloaded = CheckMessageResponse.parseFrom(
+                        client.send(check(port, "t1", "rid-x"), HttpResponse.BodyHandlers.ofByteArray()).body());
+                assertThat(overloaded.getAllow()).isFalse();
+                assertThat(overloaded.getReason()).isEqualTo("overloaded");
+                assertThat(overloaded.getMeta().getTenantId()).isEqualTo("t1");
+
+                // Another tenant still gets through while t1 is saturated.
+                handler.passThrough = "t2";
+                CheckMessageResponse other = CheckMessageResponse.parseFrom(
+                        client.send(check(port, "t2", "rid-t2"), HttpResponse.BodyHandlers.ofByteArray()).body());
+                assertThat(other.getAllow()).isTrue();
+
+                release.countDown();
+                for (CompletableFuture<HttpResponse<byte[]>> f : pending) {
+                    assertThat(CheckMessageResponse.parseFrom(f.get(5, TimeUnit.SECONDS).body()).getAllow()).isTrue();
+                }
+                assertThat(handler.calls.get()).isEqualTo(4);
+                assertThat(server.getMetrics().scrape())
+                        .contains("mics_hook_bulkhead_requests_total{endpoint=\"/check-message\",result=\"rejected\"} 1")
+                        .contains("mics_hook_bulkhead_requests_total{endpoint=\"/check-message\",result=\"queued\"} 1")
+                        .contains("outcome=\"overloaded\"");
+            }
+        }
+    }
+
+    private static void waitForQueued(MicsHookHttpServer server, MicsHookTransport transport) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!server.getMetrics().scrape().contains("mics_hook_bulkhead_queued{endpoint=\"/check-message\"} 1")) {
+            assertThat(System.nanoTime()).as("third request queued on %s", transport).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static HttpRequest check(int port, String tenantId, String requestId) {
+        CheckMessageRequest req = CheckMessageRequest.newBuilder()
+                .setMeta(HookMeta.newBuilder().setTenantId(tenantId).setRequestId(requestId))
+                .build();
+        return post(port, "/check-message", req.toByteArray());
+    }
+
+    private static final class BlockingHandler extends HookTestSupport.UnsupportedHandler {
+        private final CountDownLatch release;
+        private final Semaphore started = new Semaphore(0);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile String passThrough = "";
+
+        private BlockingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) throws Exception {
+            calls.incrementAndGet();
+            if (!passThrough.equals(request.getMeta().getTenantId())) {
+                started.release();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return CheckMessageResponse.newBuilder().setAllow(true).build();
+        }
+    }
+}
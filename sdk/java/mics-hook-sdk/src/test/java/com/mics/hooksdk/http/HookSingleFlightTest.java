@@ -0,0 +1,168 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntSupplier;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HookSingleFlightTest {
+    @Test
+    void concurrent_identical_requests_should_share_one_handler_call() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            PendingHandler handler = new PendingHandler();
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .direct()
+                    .coalesce(MicsHookEndpoint.GET_GROUP_MEMBERS, MicsHookEndpoint.GET_OFFLINE_MESSAGES)
+                    .build();
+            try (MicsHookHttpServer server = start(handler, options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                List<CompletableFuture<HttpResponse<byte[]>>> calls = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    calls.add(postAsync(client, port, "/get-group-members", groupMembers("t1", "g1", "rid-" + i)));
+                }
+                // Different tenant, same group: its own handler call.
+                calls.add(postAsync(client, port, "/get-group-members", groupMembers("t2", "g1", "rid-t2")));
+                awaitScrape(server, "mics_hook_coalesced_total{endpoint=\"/get-group-members\",tenant=\"t1\"} 7");
+                awaitSize(handler.groups, 2);
+                assertThat(handler.groups).hasSize(2);
+
+                for (CompletableFuture<GetGroupMembersResponse> f : handler.groups) {
+                    // A handler-set meta must not leak to the callers that joined this call.
+                    f.complete(GetGroupMembersResponse.newBuilder()
+                            .setMeta(HookMeta.newBuilder().setRequestId("handler-meta"))
+                            .addUserIds("u1")
+                            .build());
+                }
+                List<String> requestIds = new ArrayList<>();
+                for (CompletableFuture<HttpResponse<byte[]>> call : calls) {
+                    HttpResponse<byte[]> resp = call.get();
+                    assertThat(resp.statusCode()).isEqualTo(200);
+                    GetGroupMembersResponse parsed = GetGroupMembersResponse.parseFrom(resp.body());
+                    assertThat(parsed.getUserIdsList()).containsExactly("u1");
+                    requestIds.add(parsed.getMeta().getRequestId());
+                }
+                // The leader keeps the meta its handler set; everyone else gets their own echo.
+                assertThat(requestIds).filteredOn(id -> id.equals("handler-meta")).hasSize(2);
+                assertThat(requestIds).filteredOn(id -> id.startsWith("rid-")).hasSize(7);
+
+                // Finished calls are not reused.
+                CompletableFuture<HttpResponse<byte[]>> later = postAsync(client, port, "/get-group-members", groupMembers("t1", "g1", "rid-later"));
+                awaitSize(handler.groups, 3);
+                handler.groups.get(2).complete(GetGroupMembersResponse.newBuilder().addUserIds("u2").build());
+                assertThat(GetGroupMembersResponse.parseFrom(later.get().body()).getUserIdsList()).containsExactly("u2");
+
+                // Offline messages coalesce on the full (tenant, user, device, max, cursor) key; failures are shared.
+                CompletableFuture<HttpResponse<byte[]>> a = postAsync(client, port, "/get-offline-messages", offline("u1", "c1", "rid-a"));
+                CompletableFuture<HttpResponse<byte[]>> b = postAsync(client, port, "/get-offline-messages", offline("u1", "c1", "rid-b"));
+                CompletableFuture<HttpResponse<byte[]>> c = postAsync(client, port, "/get-offline-messages", offline("u1", "c2", "rid-c"));
+                awaitScrape(server, "mics_hook_coalesced_total{endpoint=\"/get-offline-messages\",tenant=\"t1\"} 1");
+                awaitSize(handler.offline, 2);
+                handler.offline.get("c1").completeExceptionally(new IllegalStateException("boom"));
+                handler.offline.get("c2").complete(GetOfflineMessagesResponse.newBuilder().setOk(true).build());
+                GetOfflineMessagesResponse ra = GetOfflineMessagesResponse.parseFrom(a.get().body());
+                GetOfflineMessagesResponse rb = GetOfflineMessagesResponse.parseFrom(b.get().body());
+                GetOfflineMessagesResponse rc = GetOfflineMessagesResponse.parseFrom(c.get().body());
+                assertThat(ra.getOk()).isFalse();
+                assertThat(rb.getOk()).isFalse();
+                assertThat(rb.getReason()).isEqualTo("handler error");
+                assertThat(rb.getMeta().getRequestId()).isEqualTo("rid-b");
+                assertThat(rc.getOk()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void coalescing_should_be_limited_to_read_only_endpoints() {
+        assertThatThrownBy(() -> MicsHookServerOptions.builder(tid -> "secret").coalesce(MicsHookEndpoint.AUTH))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MicsHookServerOptions.builder(tid -> "secret").coalesce(MicsHookEndpoint.CHECK_MESSAGE))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(MicsHookServerOptions.builder(tid -> "secret").build().getCoalescedEndpoints()).isEmpty();
+    }
+
+    private static byte[] groupMembers(String tenant, String group, String requestId) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId(tenant).setRequestId(requestId).build();
+        return GetGroupMembersRequest.newBuilder().setMeta(meta).setGroupId(group).build().toByteArray();
+    }
+
+    private static byte[] offline(String user, String cursor, String requestId) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).build();
+        return GetOfflineMessagesRequest.newBuilder()
+                .setMeta(meta)
+                .setUserId(user)
+                .setDeviceId("d1")
+                .setMaxMessages(100)
+                .setCursor(cursor)
+                .build()
+                .toByteArray();
+    }
+
+    private static CompletableFuture<HttpResponse<byte[]>> postAsync(HttpClient client, int port, String path, byte[] body) {
+        return client.sendAsync(post(port, path, body), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static void awaitScrape(MicsHookHttpServer server, String line) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!server.getMetrics().scrape().contains(line + "\n")) {
+            assertThat(System.nanoTime()).as("waiting for %s", line).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        awaitSize(list::size, size);
+    }
+
+    private static void awaitSize(Map<?, ?> map, int size) throws InterruptedException {
+        awaitSize(map::size, size);
+    }
+
+    private static void awaitSize(IntSupplier current, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (current.getAsInt() < size) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static final class PendingHandler extends HookTestSupport.UnsupportedAsyncHandler {
+        final List<CompletableFuture<GetGroupMembersResponse>> groups = new CopyOnWriteArrayList<>();
+        final Map<String, CompletableFuture<GetOfflineMessagesResponse>> offline = new ConcurrentHashMap<>();
+
+        @Override
+        public CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request) {
+            CompletableFuture<GetGroupMembersResponse> f = new CompletableFuture<>();
+            groups.add(f);
+            return f;
+        }
+
+        @Override
+        public CompletableFuture<GetOfflineMessagesResponse> onGetOfflineMessages(GetOfflineMessagesRequest request) {
+            CompletableFuture<GetOfflineMessagesResponse> f = new CompletableFuture<>();
+            assertThat(offline.put(request.getCursor(), f)).isNull();
+            return f;
+        }
+    }
+}
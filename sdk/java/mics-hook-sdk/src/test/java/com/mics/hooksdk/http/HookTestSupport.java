@@ -0,0 +1,98 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Loopback server, request and handler scaffolding shared by the http tests.
+final class HookTestSupport {
+    private HookTestSupport() {
+    }
+
+    static MicsHookHttpServer start(MicsHookHandler handler, MicsHookServerOptions options) throws IOException {
+        MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options);
+        server.start();
+        return server;
+    }
+
+    static MicsHookHttpServer start(MicsHookAsyncHandler handler, MicsHookServerOptions options) throws IOException {
+        MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options);
+        server.start();
+        return server;
+    }
+
+    static HttpRequest post(int port, String path, byte[] body) {
+        return postBuilder(port, path, body).build();
+    }
+
+    // For requests that need extra headers.
+    static HttpRequest.Builder postBuilder(int port, String path, byte[] body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://127.0.0.1:" + port + path))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    // Sends request, expects 200 and parses the body.
+    static <T> T send(HttpClient client, HttpRequest request, Parser<T> parser) throws IOException, InterruptedException {
+        HttpResponse<byte[]> resp = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(resp.statusCode()).isEqualTo(200);
+        try {
+            return parser.parseFrom(resp.body());
+        } catch (InvalidProtocolBufferException e) {
+            throw new AssertionError("unparseable response body", e);
+        }
+    }
+
+    // Test handlers extend these and override the endpoints they serve; the rest throw.
+    static class UnsupportedHandler implements MicsHookHandler {
+        @Override
+        public AuthResponse onAuth(AuthRequest request) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class UnsupportedAsyncHandler implements MicsHookAsyncHandler {
+        @Override
+        public CompletableFuture<AuthResponse> onAuth(AuthRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsAdaptiveLimiterTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void limit_should_track_a_backend_whose_latency_changes() {
+        AtomicLong now = new AtomicLong();
+        MicsAdaptiveLimiter limiter = limiter(MicsAdaptiveLimiter.DEFAULT_INITIAL_LIMIT, MicsAdaptiveLimiter.DEFAULT_MIN_LIMIT,
+                MicsAdaptiveLimiter.DEFAULT_MAX_LIMIT, now);
+        // A database with 10 connections: 5ms per call, slower in proportion once more than 10 calls share it.
+        // Capacity is 2 calls/ms; the load below is twice that.
+        Backend db = new Backend(limiter, now, 10);
+
+        db.run(5, 1, 2_000);
+        assertThat(limiter.getBaseline(MicsHookEndpoint.CHECK_MESSAGE)).isEqualTo(Duration.ofMillis(5));
+
+        Phase overload = db.run(5, 4, 10_000);
+        assertThat(overload.throughput()).isGreaterThan(1.9);
+        assertThat(overload.avgLatencyMillis()).isLessThan(15);
+        assertThat(overload.rejected).isPositive();
+
+        // The database slows down 8x: capacity drops to 0.25 calls/ms. Admitted calls stay under the gateway's
+        // 150ms hook timeout from the first moment, and the limit settles where the slower backend still serves
+        // at capacity rather than collapsing.
+        Phase slow = db.run(40, 4, 30_000);
+        assertThat(slow.maxLatency).isLessThan(150 * MS);
+        assertThat(slow.avgLatencyMillis()).isLessThan(100);
+        assertThat(slow.throughput()).isGreaterThan(0.22);
+
+        // Back to normal: the baseline raised during the slowdown is dropped again.
+        Phase recovered = db.run(5, 4, 10_000);
+        assertThat(recovered.throughput()).isGreaterThan(1.9);
+        assertThat(recovered.avgLatencyMillis()).isLessThan(15);
+        assertThat(limiter.getBaseline(MicsHookEndpoint.CHECK_MESSAGE)).isEqualTo(Duration.ofMillis(5));
+    }
+
+    @Test
+    void a_static_limit_that_suits_normal_load_should_blow_the_timeout_when_the_backend_slows() {
+        AtomicLong now = new AtomicLong();
+        // Fixed at 100: no rejections at all at 5ms.
+        Backend db = new Backend(limiter(100, 100, 100, now), now, 10);
+        assertThat(db.run(5, 4, 5_000).maxLatency).isLessThan(100 * MS);
+        assertThat(db.run(40, 4, 5_000).avgLatencyMillis()).isGreaterThan(150);
+    }
+
+    @Test
+    void server_should_answer_overloaded_once_handlers_reach_the_limit() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            MicsAdaptiveLimiter limiter = MicsAdaptiveLimiter.builder().initialLimit(2).minLimit(2).maxLimit(2).build();
+            CountDownLatch release = new CountDownLatch(1);
+            Semaphore started = new Semaphore(0);
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .boundedPool(8)
+                    .adaptiveLimiter(limiter)
+                    .build();
+            try (MicsHookHttpServer server = start(new BlockingHandler(started, release), options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    pending.add(client.sendAsync(check(port, "rid-" + i), HttpResponse.BodyHandlers.ofByteArray()));
+                }
+                assertThat(started.tryAcquire(2, 5, TimeUnit.SECONDS)).isTrue();
+
+                CheckMessageResponse overloaded = CheckMessageResponse.parseFrom(
+                        client.send(check(port, "rid-x"), HttpResponse.BodyHandlers.ofByteArray()).body());
+                assertThat(overloaded.getAllow()).isFalse();
+                assertThat(overloaded.getReason()).isEqualTo("overloaded");
+                assertThat(overloaded.getMeta().getRequestId()).isEqualTo("rid-x");
+
+                release.countDown();
+                for (CompletableFuture<HttpResponse<byte[]>> f : pending) {
+                    assertThat(CheckMessageResponse.parseFrom(f.get(5, TimeUnit.SECONDS).body()).getAllow()).isTrue();
+                }
+                assertThat(limiter.getInFlight(MicsHookEndpoint.CHECK_MESSAGE)).isZero();
+                assertThat(limiter.getRejectedCount(MicsHookEndpoint.CHECK_MESSAGE)).isEqualTo(1);
+                assertThat(server.getMetrics().scrape())
+                        .contains("mics_hook_adaptive_limit{endpoint=\"/check-message\"} 2")
+                        .contains("mics_hook_requests_total{endpoint=\"/check-message\",tenant=\"t1\",outcome=\"overloaded\"} 1");
+            }
+        }
+    }
+
+    @Test
+    void a_failure_before_the_handler_runs_should_give_the_permit_back() {
+        MicsAdaptiveLimiter limiter = MicsAdaptiveLimiter.builder().initialLimit(1).minLimit(1).maxLimit(1).build();
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .direct()
+                .coalesce(MicsHookEndpoint.GET_OFFLINE_MESSAGES)
+                .adaptiveLimiter(limiter)
+                .build();
+        HookDispatcher dispatcher = new HookDispatcher(new HookTestSupport.UnsupportedAsyncHandler(), null, options,
+                new MicsHookMetrics(true), null);
+        HookEndpoint<GetOfflineMessagesRequest, GetOfflineMessagesResponse> throwingKey =
+                new HookEndpoint<>(MicsHookEndpoint.GET_OFFLINE_MESSAGES) {
+                    @Override
+                    GetOfflineMessagesRequest parse(byte[] body, int length) throws InvalidProtocolBufferException {
+                        return HookEndpoint.GET_OFFLINE_MESSAGES.parse(body, length);
+                    }
+
+                    @Override
+                    HookMeta meta(GetOfflineMessagesRequest request) {
+                        return request.getMeta();
+                    }
+
+                    @Override
+                    Object coalesceKey(String tenantId, GetOfflineMessagesRequest request) {
+                        throw new IllegalStateException("bad key");
+                    }
+
+                    @Override
+                    CompletableFuture<GetOfflineMessagesResponse> invoke(MicsHookAsyncHandler handler, GetOfflineMessagesRequest request) {
+                        return HookEndpoint.GET_OFFLINE_MESSAGES.invoke(handler, request);
+                    }
+
+                    @Override
+                    GetOfflineMessagesResponse reject(HookMeta meta, String reason) {
+                        return HookEndpoint.GET_OFFLINE_MESSAGES.reject(meta, reason);
+                    }
+
+                    @Override
+                    GetOfflineMessagesResponse clearMeta(GetOfflineMessagesResponse response) {
+                        return HookEndpoint.GET_OFFLINE_MESSAGES.clearMeta(response);
+                    }
+
+                    @Override
+                    GetOfflineMessagesResponse complete(GetOfflineMessagesResponse response, HookMeta meta) {
+                        return HookEndpoint.GET_OFFLINE_MESSAGES.complete(response, meta);
+                    }
+                };
+        byte[] body = GetOfflineMessagesRequest.newBuilder()
+                .setMeta(HookMeta.newBuilder().setTenantId("t1").setRequestId("rid"))
+                .setUserId("u1")
+                .build()
+                .toByteArray();
+
+        // With a limit of 1, a leaked permit would turn the second request into "overloaded".
+        for (int i = 0; i < 2; i++) {
+            List<Message> responses = new ArrayList<>();
+            dispatcher.dispatch(throwingKey, "POST", body, body.length, System.nanoTime(), -1, new HookDispatcher.Responder() {
+                @Override
+                public void protobuf(Message response) {
+                    responses.add(response);
+                }
+
+                @Override
+                public void protobuf(byte[] serialized) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void text(int statusCode, String text) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public OutputStream stream() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+            assertThat(responses).singleElement()
+                    .satisfies(r -> assertThat(((GetOfflineMessagesResponse) r).getReason()).isEqualTo("handler error"));
+            assertThat(limiter.getInFlight(MicsHookEndpoint.GET_OFFLINE_MESSAGES)).isZero();
+        }
+    }
+
+    private static MicsAdaptiveLimiter limiter(int initial, int min, int max, AtomicLong now) {
+        return new MicsAdaptiveLimiter(initial, min, max, MicsAdaptiveLimiter.DEFAULT_TOLERANCE, MicsAdaptiveLimiter.DEFAULT_LATENCY_TARGET,
+                MicsAdaptiveLimiter.DEFAULT_WINDOW_SAMPLES, now::get);
+    }
+
+    private static HttpRequest check(int port, String requestId) {
+        CheckMessageRequest req = CheckMessageRequest.newBuilder()
+                .setMeta(HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId))
+                .build();
+        return post(port, "/check-message", req.toByteArray());
+    }
+
+    // Discrete-event model of a handler in front of a shared backend, driven in 1ms ticks on a fake clock.
+    private static final class Backend {
+        private final MicsAdaptiveLimiter limiter;
+        private final AtomicLong now;
+        private final int connections;
+        // {end, start}
+        private final PriorityQueue<long[]> running = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+        private Backend(MicsAdaptiveLimiter limiter, AtomicLong now, int connections) {
+            this.limiter = limiter;
+            this.now = now;
+            this.connections = connections;
+        }
+
+        private Phase run(int serviceMillis, int arrivalsPerMilli, int millis) {
+            Phase p = new Phase(millis);
+            for (int tick = 0; tick < millis; tick++) {
+                long t = now.addAndGet(MS);
+                while (!running.isEmpty() && running.peek()[0] <= t) {
+                    long[] done = running.poll();
+                    limiter.release(MicsHookEndpoint.CHECK_MESSAGE, done[1], true);
+                    p.record(done[0] - done[1], tick >= millis / 2);
+                }
+                for (int i = 0; i < arrivalsPerMilli; i++) {
+                    if (!limiter.tryAcquire(MicsHookEndpoint.CHECK_MESSAGE)) {
+                        p.rejected++;
+                        continue;
+                    }
+                    int sharing = limiter.getInFlight(MicsHookEndpoint.CHECK_MESSAGE);
+                    long latency = serviceMillis * MS * Math.max(connections, sharing) / connections;
+                    running.add(new long[]{t + latency, t});
+                }
+            }
+            return p;
+        }
+    }
+
+    private static final class Phase {
+        private final int millis;
+        private long completedSecondHalf;
+        private long rejected;
+        private long maxLatency;
+        private long sumLatencySecondHalf;
+
+        private Phase(int millis) {
+            this.millis = millis;
+        }
+
+        private void record(long latency, boolean secondHalf) {
+            maxLatency = Math.max(maxLatency, latency);
+            if (secondHalf) {
+                completedSecondHalf++;
+                sumLatencySecondHalf += latency;
+            }
+        }
+
+        // Completions per ms over the second half of the phase.
+        private double throughput() {
+            return completedSecondHalf / (millis / 2.0);
+        }
+
+        private double avgLatencyMillis() {
+            return completedSecondHalf == 0 ? 0 : sumLatencySecondHalf / (double) completedSecondHalf / MS;
+        }
+    }
+
+    private static final class BlockingHandler extends HookTestSupport.UnsupportedHandler {
+        private final Semaphore started;
+        private final CountDownLatch release;
+
+        private BlockingHandler(Semaphore started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) throws Exception {
+            started.release();
+            release.await(10, TimeUnit.SECONDS);
+            return CheckMessageResponse.newBuilder().setAllow(true).build();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.send;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsAuthCacheTest {
+    @Test
+    void reconnects_should_reach_on_auth_once_per_token_and_device() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MicsAuthCache cache = MicsAuthCache.builder().ttl(Duration.ofMinutes(1)).build();
+
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            calls.set(0);
+            cache.invalidateAll();
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .authCache(cache)
+                    .build();
+            try (MicsHookHttpServer server = start(new AuthHandler(calls), options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                for (int i = 0; i < 3; i++) {
+                    AuthResponse resp = auth(client, port, "valid:u1", "d1", "rid-" + i);
+                    assertThat(resp.getOk()).isTrue();
+                    assertThat(resp.getUserId()).isEqualTo("u1");
+                    assertThat(resp.getDeviceId()).isEqualTo("d1");
+                    assertThat(resp.getMeta().getRequestId()).isEqualTo("rid-" + i);
+                }
+                assertThat(calls.get()).isEqualTo(1);
+
+                auth(client, port, "valid:u1", "d2", "rid-d2");
+                assertThat(calls.get()).isEqualTo(2);
+
+                // Rejections are cached too.
+                assertThat(auth(client, port, "bogus", "d1", "rid-bad-1").getReason()).isEqualTo("invalid token");
+                assertThat(auth(client, port, "bogus", "d1", "rid-bad-2").getMeta().getRequestId()).isEqualTo("rid-bad-2");
+                assertThat(calls.get()).isEqualTo(3);
+
+                cache.invalidateUser("t1", "u1");
+                auth(client, port, "valid:u1", "d1", "rid-after");
+                assertThat(calls.get()).isEqualTo(4);
+
+                assertThat(server.getMetrics().scrape())
+                        .contains("mics_hook_auth_cache_requests_total{result=\"hit\"} ")
+                        .contains("mics_hook_auth_cache_requests_total{result=\"negative_hit\"} ");
+            }
+        }
+    }
+
+    @Test
+    void ttl_should_follow_token_expiry_and_negative_ttl() {
+        AtomicLong nanos = new AtomicLong();
+        AtomicLong millis = new AtomicLong(1_000_000);
+        MicsAuthCache cache = new MicsAuthCache(Duration.ofMinutes(5), Duration.ofSeconds(5), 100, 1 << 20,
+                token -> token.startsWith("exp:") ? Instant.ofEpochMilli(Long.parseLong(token.substring(4))) : null,
+                nanos::get, millis::get);
+
+        MicsAuthCache.Key shortLived = MicsAuthCache.key("t1", "exp:1030000", "d1");
+        cache.put(cache.beginLoad(shortLived, "exp:1030000"), ok("u1"));
+        MicsAuthCache.Key unknownExpiry = MicsAuthCache.key("t1", "plain", "d1");
+        cache.put(cache.beginLoad(unknownExpiry, "plain"), ok("u2"));
+        MicsAuthCache.Key rejected = MicsAuthCache.key("t1", "bad", "d1");
+        cache.put(cache.beginLoad(rejected, "bad"), AuthResponse.newBuilder().setOk(false).setReason("invalid token").build());
+        // Already expired: not cached at all.
+        MicsAuthCache.Key expired = MicsAuthCache.key("t1", "exp:999000", "d1");
+        cache.put(cache.beginLoad(expired, "exp:999000"), ok("u3"));
+        assertThat(cache.getEntryCount()).isEqualTo(3);
+
+        nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertThat(cache.get(rejected)).isNull();
+        assertThat(cache.get(shortLived)).isNotNull();
+
+        nanos.addAndGet(Duration.ofSeconds(25).toNanos());
+        assertThat(cache.get(shortLived)).isNull();
+        assertThat(cache.get(unknownExpiry)).isNotNull();
+
+        nanos.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertThat(cache.get(unknownExpiry)).isNull();
+    }
+
+    @Test
+    void revocations_should_drop_entries_and_fence_loads_in_progress() {
+        AtomicLong nanos = new AtomicLong();
+        MicsAuthCache cache = new MicsAuthCache(Duration.ofMinutes(5), Duration.ofSeconds(5), 100, 1 << 20, null, nanos::get, () -> 0L);
+        MicsAuthCache.Key d1 = MicsAuthCache.key("t1", "tok", "d1");
+        MicsAuthCache.Key d2 = MicsAuthCache.key("t1", "tok", "d2");
+        MicsAuthCache.Key other = MicsAuthCache.key("t1", "tok-2", "d1");
+        MicsAuthCache.Key otherTenant = MicsAuthCache.key("t2", "tok", "d1");
+        cache.put(cache.beginLoad(d1, "tok"), ok("u1"));
+        cache.put(cache.beginLoad(d2, "tok"), ok("u1"));
+        cache.put(cache.beginLoad(other, "tok-2"), ok("u1"));
+        cache.put(cache.beginLoad(otherTenant, "tok"), ok("u1"));
+
+        cache.invalidateToken("t1", "tok");
+        assertThat(cache.get(d1)).isNull();
+        assertThat(cache.get(d2)).isNull();
+        assertThat(cache.get(other)).isNotNull();
+        assertThat(cache.get(otherTenant)).isNotNull();
+
+        // A load that started before the revocation is answered but not cached.
+        MicsAuthCache.Load racing = cache.beginLoad(MicsAuthCache.key("t1", "tok-3", "d1"), "tok-3");
+        cache.invalidateUser("t1", "u1");
+        assertThat(cache.get(other)).isNull();
+        cache.put(racing, ok("u1"));
+        assertThat(cache.get(racing.key)).isNull();
+        assertThat(cache.getStaleLoadCount()).isEqualTo(1);
+        // Another user's load of the same age is unaffected.
+        MicsAuthCache.Load unrelated = cache.beginLoad(MicsAuthCache.key("t1", "tok-4", "d1"), "tok-4");
+        cache.invalidateUser("t1", "u1");
+        cache.put(unrelated, ok("u9"));
+        assertThat(cache.get(unrelated.key)).isNotNull();
+
+        cache.put(cache.beginLoad(d1, "tok"), ok("u1"));
+        assertThat(cache.get(d1)).isNotNull();
+        cache.invalidateTenant("t1");
+        assertThat(cache.get(d1)).isNull();
+        assertThat(cache.get(otherTenant)).isNotNull();
+
+        // Loads slower than the ttl are never cached.
+        MicsAuthCache.Load slow = cache.beginLoad(MicsAuthCache.key("t1", "tok-5", "d1"), "tok-5");
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+        cache.put(slow, ok("u5"));
+        assertThat(cache.get(slow.key)).isNull();
+    }
+
+    @Test
+    void fences_should_stay_bounded_and_keep_fencing_older_loads() {
+        AtomicLong nanos = new AtomicLong();
+        MicsAuthCache cache = new MicsAuthCache(Duration.ofMinutes(5), Duration.ofSeconds(5), 100, 1 << 20, null, nanos::get, () -> 0L);
+        MicsAuthCache.Load racing = cache.beginLoad(MicsAuthCache.key("t1", "tok", "d1"), "tok");
+        for (int i = 0; i < 10_000; i++) {
+            cache.invalidateUser("t1", "u" + i);
+        }
+        assertThat(cache.getFenceCount()).isLessThanOrEqualTo(4096);
+        // u0's fence was folded into the floor, so the load that raced with it is still not cached.
+        cache.put(racing, ok("u0"));
+        assertThat(cache.get(racing.key)).isNull();
+
+        MicsAuthCache.Load later = cache.beginLoad(MicsAuthCache.key("t1", "tok-2", "d1"), "tok-2");
+        cache.put(later, ok("u0"));
+        assertThat(cache.get(later.key)).isNotNull();
+
+        // Expired fences go on the next revocation.
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+        cache.invalidateTenant("t2");
+        assertThat(cache.getFenceCount()).isEqualTo(1);
+    }
+
+    @Test
+    void entries_should_respect_size_bounds() {
+        AtomicLong nanos = new AtomicLong();
+        MicsAuthCache cache = new MicsAuthCache(Duration.ofMinutes(5), Duration.ofSeconds(5), 3, 1 << 20, null, nanos::get, () -> 0L);
+        for (int i = 0; i < 5; i++) {
+            cache.put(cache.beginLoad(MicsAuthCache.key("t1", "tok-" + i, "d1"), "tok-" + i), ok("u" + i));
+            nanos.addAndGet(1_000_000);
+        }
+        assertThat(cache.getEntryCount()).isEqualTo(3);
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+        assertThat(cache.get(MicsAuthCache.key("t1", "tok-0", "d1"))).isNull();
+        assertThat(cache.get(MicsAuthCache.key("t1", "tok-4", "d1"))).isNotNull();
+    }
+
+    private static AuthResponse ok(String userId) {
+        return AuthResponse.newBuilder().setOk(true).setUserId(userId).build();
+    }
+
+    private static AuthResponse auth(HttpClient client, int port, String token, String deviceId, String requestId) throws Exception {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).build();
+        byte[] body = AuthRequest.newBuilder().setMeta(meta).setToken(token).setDeviceId(deviceId).build().toByteArray();
+        return send(client, post(port, "/auth", body), AuthResponse.parser());
+    }
+
+    private static final class AuthHandler extends HookTestSupport.UnsupportedHandler {
+        private final AtomicInteger calls;
+
+        private AuthHandler(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public AuthResponse onAuth(AuthRequest request) {
+            calls.incrementAndGet();
+            if (!request.getToken().startsWith("valid:")) {
+                return AuthResponse.newBuilder().setOk(false).setReason("invalid token").build();
+            }
+            return AuthResponse.newBuilder()
+                    .setOk(true)
+                    .setUserId(request.getToken().substring("valid:".length()))
+                    .setDeviceId(request.getDeviceId())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.send;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsGroupMembersCacheTest {
+    @Test
+    void hits_should_skip_the_handler_and_echo_each_callers_meta() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MicsHookHandler handler = new MembersHandler(calls);
+        MicsGroupMembersCache cache = MicsGroupMembersCache.builder().ttl(Duration.ofMinutes(1)).build();
+
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            calls.set(0);
+            cache.invalidateAll();
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .groupMembersCache(cache)
+                    .build();
+            try (MicsHookHttpServer server = start(handler, options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                for (int i = 0; i < 3; i++) {
+                    GetGroupMembersResponse resp = members(client, port, "t1", "g1", "rid-" + i);
+                    assertThat(resp.getUserIdsList()).containsExactly("g1-a", "g1-b");
+                    assertThat(resp.getMeta().getRequestId()).isEqualTo("rid-" + i);
+                    assertThat(resp.getMeta().getTraceId()).isEqualTo("tr-rid-" + i);
+                }
+                assertThat(calls.get()).isEqualTo(1);
+
+                // Same group id, different tenant: separate entry.
+                assertThat(members(client, port, "t2", "g1", "rid-x").getMeta().getTenantId()).isEqualTo("t2");
+                assertThat(calls.get()).isEqualTo(2);
+
+                cache.invalidateGroup("t1", "g1");
+                members(client, port, "t1", "g1", "rid-after");
+                members(client, port, "t1", "g1", "rid-after-2");
+                assertThat(calls.get()).isEqualTo(3);
+
+                assertThat(server.getMetrics().scrape())
+                        .contains("mics_hook_group_members_cache_requests_total{result=\"hit\"} ")
+                        .contains("mics_hook_group_members_cache_invalidations_total ");
+            }
+        }
+        assertThat(cache.getHitCount()).isEqualTo(6);
+    }
+
+    @Test
+    void load_racing_an_invalidation_should_not_be_cached() {
+        MicsGroupMembersCache cache = new MicsGroupMembersCache(Duration.ofSeconds(30), 100, 1 << 20, System::nanoTime);
+        GetGroupMembersResponse stale = GetGroupMembersResponse.newBuilder().addUserIds("old").build();
+        GetGroupMembersResponse fresh = GetGroupMembersResponse.newBuilder().addUserIds("new").build();
+
+        assertThat(cache.get("t1", "g1")).isNull();
+        long token = cache.beginLoad();
+        cache.invalidateGroup("t1", "g1");
+        cache.put("t1", "g1", token, stale);
+        assertThat(cache.get("t1", "g1")).isNull();
+        assertThat(cache.getStaleLoadCount()).isEqualTo(1);
+
+        cache.put("t1", "g1", cache.beginLoad(), fresh);
+        assertThat(cache.get("t1", "g1")).isEqualTo(fresh.toByteArray());
+
+        // invalidateTenant also fences loads of groups that were not cached yet.
+        long tenantLoad = cache.beginLoad();
+        cache.invalidateTenant("t1");
+        cache.put("t1", "g2", tenantLoad, stale);
+        assertThat(cache.get("t1", "g2")).isNull();
+        assertThat(cache.get("t1", "g1")).isNull();
+        cache.put("t2", "g2", tenantLoad, fresh);
+        assertThat(cache.get("t2", "g2")).isNotNull();
+        cache.put("t1", "g1", cache.beginLoad(), fresh);
+
+        // Tombstones evicted by invalidateAll still fence older loads.
+        long before = cache.beginLoad();
+        cache.invalidateAll();
+        cache.put("t1", "g1", before, stale);
+        assertThat(cache.get("t1", "g1")).isNull();
+    }
+
+    @Test
+    void entries_should_expire_and_respect_size_bounds() {
+        AtomicLong now = new AtomicLong();
+        MicsGroupMembersCache cache = new MicsGroupMembersCache(Duration.ofSeconds(10), 3, 1 << 20, now::get);
+        for (int i = 0; i < 5; i++) {
+            cache.put("t1", "g" + i, cache.beginLoad(), GetGroupMembersResponse.newBuilder().addUserIds("u" + i).build());
+            now.addAndGet(1_000_000);
+        }
+        assertThat(cache.getEntryCount()).isEqualTo(3);
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+        // Oldest written go first.
+        assertThat(cache.get("t1", "g0")).isNull();
+        assertThat(cache.get("t1", "g1")).isNull();
+        assertThat(cache.get("t1", "g4")).isNotNull();
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        assertThat(cache.get("t1", "g4")).isNull();
+
+        MicsGroupMembersCache small = new MicsGroupMembersCache(Duration.ofSeconds(10), 100, 3000, now::get);
+        GetGroupMembersResponse.Builder big = GetGroupMembersResponse.newBuilder();
+        for (int i = 0; i < 200; i++) {
+            big.addUserIds("user-" + i);
+        }
+        small.put("t1", "a", small.beginLoad(), big.build());
+        small.put("t1", "b", small.beginLoad(), big.build());
+        assertThat(small.getWeightedBytes()).isLessThanOrEqualTo(3000);
+        assertThat(small.get("t1", "a")).isNull();
+        assertThat(small.get("t1", "b")).isNotNull();
+    }
+
+    @Test
+    void cached_body_with_meta_should_parse_as_the_full_response() throws Exception {
+        GetGroupMembersResponse original = GetGroupMembersResponse.newBuilder()
+                .setMeta(HookMeta.newBuilder().setRequestId("handler-meta"))
+                .addUserIds("u1")
+                .addUserIds("u2")
+                .build();
+        MicsGroupMembersCache cache = MicsGroupMembersCache.builder().build();
+        cache.put("t1", "g1", cache.beginLoad(), original);
+
+        HookMeta echo = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").build();
+        GetGroupMembersResponse parsed = GetGroupMembersResponse.parseFrom(MicsGroupMembersCache.withMeta(echo, cache.get("t1", "g1")));
+        assertThat(parsed).isEqualTo(original.toBuilder().setMeta(echo).build());
+    }
+
+    private static GetGroupMembersResponse members(HttpClient client, int port, String tenant, String group, String requestId) throws Exception {
+        HookMeta meta = HookMeta.newBuilder().setTenantId(tenant).setRequestId(requestId).setTraceId("tr-" + requestId).build();
+        byte[] body = GetGroupMembersRequest.newBuilder().setMeta(meta).setGroupId(group).build().toByteArray();
+        return send(client, post(port, "/get-group-members", body), GetGroupMembersResponse.parser());
+    }
+
+    private static final class MembersHandler extends HookTestSupport.UnsupportedHandler {
+        private final AtomicInteger calls;
+
+        private MembersHandler(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+            calls.incrementAndGet();
+            return GetGroupMembersResponse.newBuilder()
+                    .addUserIds(request.getGroupId() + "-a")
+                    .addUserIds(request.getGroupId() + "-b")
+                    .build();
+        }
+    }
+}
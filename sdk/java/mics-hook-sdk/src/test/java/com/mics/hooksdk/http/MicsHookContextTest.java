@@ -0,0 +1,141 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.mics.hooksdk.http.HookTestSupport.postBuilder;
+import static com.mics.hooksdk.http.HookTestSupport.send;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsHookContextTest {
+    @Test
+    void handlers_should_see_the_remaining_budget_and_expired_requests_should_skip_them() throws Exception {
+        List<HttpClient.Version> h1 = List.of(HttpClient.Version.HTTP_1_1);
+        List<HttpClient.Version> h1h2 = List.of(HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_2);
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            for (HttpClient.Version version : transport == MicsHookTransport.NIO ? h1h2 : h1) {
+                RecordingHandler handler = new RecordingHandler(null);
+                MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                        .requireSign(false)
+                        .transport(transport)
+                        .build();
+                try (MicsHookHttpServer server = start(handler, options)) {
+                    HttpClient client = HttpClient.newBuilder().version(version).build();
+                    int port = server.getAddress().getPort();
+                    String where = transport + "/" + version;
+
+                    // On HTTP/2 the first request is the h2c upgrade, the others are streams.
+                    assertThat(check(client, port, "rid-1", System.currentTimeMillis(), "5000").getAllow()).as(where).isTrue();
+                    CheckMessageResponse expired = check(client, port, "rid-2", System.currentTimeMillis(), "0");
+                    assertThat(expired.getAllow()).as(where).isFalse();
+                    assertThat(expired.getReason()).isEqualTo("deadline exceeded");
+                    assertThat(check(client, port, "rid-3", System.currentTimeMillis(), null).getAllow()).as(where).isTrue();
+
+                    assertThat(handler.seen).as(where).hasSize(2);
+                    MicsHookContext first = handler.seen.get(0);
+                    assertThat(first.getRequestId()).isEqualTo("rid-1");
+                    assertThat(first.getTenantId()).isEqualTo("t1");
+                    assertThat(first.getEndpoint()).isEqualTo(MicsHookEndpoint.CHECK_MESSAGE);
+                    assertThat(first.hasDeadline()).isTrue();
+                    assertThat(handler.remaining.get(0)).isBetween(Duration.ofSeconds(4), Duration.ofSeconds(5));
+                    assertThat(handler.seen.get(1).hasDeadline()).isFalse();
+                    assertThat(handler.seen.get(1).getRemaining()).isNull();
+                    assertThat(server.getMetrics().scrape()).contains("outcome=\"deadline_exceeded\"} 1");
+                }
+            }
+        }
+        assertThat(MicsHookContext.current()).isNull();
+    }
+
+    @Test
+    void requests_that_wait_past_timestamp_plus_budget_should_not_reach_the_handler() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            CountDownLatch release = new CountDownLatch(1);
+            RecordingHandler handler = new RecordingHandler(release);
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .requireSign(false)
+                    .transport(transport)
+                    .boundedPool(1)
+                    .deadlineBudget(Duration.ofMillis(300))
+                    .build();
+            try (MicsHookHttpServer server = start(handler, options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                // The only worker is busy with the first request while the second waits in the queue.
+                List<CompletableFuture<HttpResponse<byte[]>>> pending = new ArrayList<>();
+                pending.add(client.sendAsync(request(port, "rid-busy", System.currentTimeMillis(), null), HttpResponse.BodyHandlers.ofByteArray()));
+                assertThat(handler.started.await(5, TimeUnit.SECONDS)).isTrue();
+                pending.add(client.sendAsync(request(port, "rid-queued", System.currentTimeMillis(), null), HttpResponse.BodyHandlers.ofByteArray()));
+                Thread.sleep(500);
+                release.countDown();
+
+                assertThat(CheckMessageResponse.parseFrom(pending.get(0).get(5, TimeUnit.SECONDS).body()).getAllow()).isTrue();
+                CheckMessageResponse queued = CheckMessageResponse.parseFrom(pending.get(1).get(5, TimeUnit.SECONDS).body());
+                assertThat(queued.getAllow()).isFalse();
+                assertThat(queued.getReason()).isEqualTo("deadline exceeded");
+                assertThat(queued.getMeta().getRequestId()).isEqualTo("rid-queued");
+                assertThat(handler.seen).hasSize(1);
+
+                // A timestamp already older than the budget is expired on arrival.
+                CheckMessageResponse old = check(client, port, "rid-old", System.currentTimeMillis() - 1000, null);
+                assertThat(old.getReason()).isEqualTo("deadline exceeded");
+                assertThat(handler.seen).hasSize(1);
+            }
+        }
+    }
+
+    private static CheckMessageResponse check(HttpClient client, int port, String requestId, long timestampMs, String timeout) throws Exception {
+        return send(client, request(port, requestId, timestampMs, timeout), CheckMessageResponse.parser());
+    }
+
+    private static HttpRequest request(int port, String requestId, long timestampMs, String timeout) {
+        CheckMessageRequest req = CheckMessageRequest.newBuilder()
+                .setMeta(HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).setTimestampMs(timestampMs))
+                .build();
+        HttpRequest.Builder b = postBuilder(port, "/check-message", req.toByteArray());
+        if (timeout != null) {
+            b.header(MicsHookServerOptions.TIMEOUT_HEADER, timeout);
+        }
+        return b.build();
+    }
+
+    private static final class RecordingHandler extends HookTestSupport.UnsupportedHandler {
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final List<MicsHookContext> seen = new CopyOnWriteArrayList<>();
+        private final List<Duration> remaining = new CopyOnWriteArrayList<>();
+
+        private RecordingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) throws Exception {
+            MicsHookContext ctx = MicsHookContext.current();
+            seen.add(ctx);
+            if (ctx.hasDeadline()) {
+                remaining.add(ctx.getRemaining());
+            }
+            started.countDown();
+            if (release != null) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return CheckMessageResponse.newBuilder().setAllow(true).build();
+        }
+    }
+}
@@ -1,23 +1,41 @@
 package com.mics.hooksdk.http;
 
 import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
 import com.mics.contracts.hook.v1.CheckMessageRequest;
 import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
 import com.mics.contracts.hook.v1.HookMeta;
 import com.mics.contracts.message.v1.MessageRequest;
 import com.mics.contracts.message.v1.MessageType;
+import com.mics.hooksdk.CachingTenantSecretResolver;
+import com.mics.hooksdk.HmacSha256Key;
 import com.mics.hooksdk.HookSigner;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class MicsHookHttpServerTest {
     @Test
@@ -42,6 +60,7 @@ public class MicsHookHttpServerTest {
         };
 
         MicsHookServerOptions options = new MicsHookServerOptions(tid -> Map.of("t1", secret).get(tid), true);
+        assertThat(options.getExecutorMode()).isEqualTo(MicsHookExecutorMode.DIRECT);
         try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
             server.start();
             int port = server.getAddress().getPort();
@@ -91,5 +110,304 @@ public class MicsHookHttpServerTest {
             assertThat(pb.getMeta().getTraceId()).isEqualTo("tr");
         }
     }
-}
 
+    @Test
+    void slow_handler_should_not_stall_other_endpoints() throws Exception {
+        CountDownLatch groupMembersEntered = new CountDownLatch(1);
+        CountDownLatch releaseGroupMembers = new CountDownLatch(1);
+        MicsHookHandler handler = new MicsHookHandler() {
+            @Override
+            public AuthResponse onAuth(AuthRequest request) {
+                return AuthResponse.newBuilder().setOk(true).setUserId("u1").build();
+            }
+
+            @Override
+            public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) throws Exception {
+                groupMembersEntered.countDown();
+                releaseGroupMembers.await(5, TimeUnit.SECONDS);
+                return GetGroupMembersResponse.newBuilder().addUserIds("u1").build();
+            }
+        };
+
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .boundedPool(2)
+                .build();
+        try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            int port = server.getAddress().getPort();
+
+            HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").build();
+            CompletableFuture<HttpResponse<byte[]>> slow = client.sendAsync(
+                    post(port, "/get-group-members", GetGroupMembersRequest.newBuilder().setMeta(meta).setGroupId("g1").build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(groupMembersEntered.await(2, TimeUnit.SECONDS)).isTrue();
+
+            HttpResponse<byte[]> auth = client.send(
+                    post(port, "/auth", AuthRequest.newBuilder().setMeta(meta).setToken("t").build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(auth.statusCode()).isEqualTo(200);
+            assertThat(AuthResponse.parseFrom(auth.body()).getOk()).isTrue();
+            assertThat(slow).isNotDone();
+
+            releaseGroupMembers.countDown();
+            assertThat(GetGroupMembersResponse.parseFrom(slow.get(2, TimeUnit.SECONDS).body()).getUserIdsList()).containsExactly("u1");
+        }
+    }
+
+    @Test
+    void virtual_thread_mode_should_run_handlers_on_virtual_threads_when_supported() throws Exception {
+        MicsHookServerOptions.Builder builder = MicsHookServerOptions.builder(tid -> "secret").requireSign(false);
+        if (Runtime.version().feature() < 21) {
+            assertThat(MicsHookServerOptions.isVirtualThreadsSupported()).isFalse();
+            assertThatThrownBy(builder::virtualThreads).isInstanceOf(UnsupportedOperationException.class);
+            return;
+        }
+
+        AtomicReference<String> threadName = new AtomicReference<>();
+        MicsHookHandler handler = new MicsHookHandler() {
+            @Override
+            public AuthResponse onAuth(AuthRequest request) {
+                threadName.set(Thread.currentThread().getName());
+                return AuthResponse.newBuilder().setOk(true).build();
+            }
+
+            @Override
+            public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        MicsHookServerOptions options = builder.virtualThreads().build();
+        assertThat(options.getExecutorMode()).isEqualTo(MicsHookExecutorMode.VIRTUAL_THREADS);
+        try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
+            server.start();
+            HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").build();
+            HttpResponse<byte[]> resp = HttpClient.newHttpClient().send(
+                    post(server.getAddress().getPort(), "/auth", AuthRequest.newBuilder().setMeta(meta).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(AuthResponse.parseFrom(resp.body()).getOk()).isTrue();
+            assertThat(threadName.get()).startsWith("mics-hook-vt-");
+        }
+    }
+
+    @Test
+    void async_handler_should_complete_exchange_when_future_completes() throws Exception {
+        CompletableFuture<CheckMessageResponse> pending = new CompletableFuture<>();
+        CountDownLatch invoked = new CountDownLatch(1);
+        MicsHookAsyncHandler handler = new MicsHookAsyncHandler() {
+            @Override
+            public CompletableFuture<AuthResponse> onAuth(AuthRequest request) {
+                return new CompletableFuture<>();
+            }
+
+            @Override
+            public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+                invoked.countDown();
+                return pending;
+            }
+
+            @Override
+            public CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request) {
+                return CompletableFuture.failedFuture(new IllegalStateException("db down"));
+            }
+        };
+
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .direct()
+                .handlerTimeout(Duration.ofSeconds(1))
+                .build();
+        try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            int port = server.getAddress().getPort();
+            HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").setTraceId("tr").build();
+
+            // Completed later from another thread; the dispatcher thread is free in the meantime (direct mode).
+            CompletableFuture<HttpResponse<byte[]>> check = client.sendAsync(
+                    post(port, "/check-message", CheckMessageRequest.newBuilder().setMeta(meta).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(invoked.await(2, TimeUnit.SECONDS)).isTrue();
+            HttpResponse<byte[]> offline = client.send(
+                    post(port, "/get-offline-messages", GetOfflineMessagesRequest.newBuilder().setMeta(meta).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(GetOfflineMessagesResponse.parseFrom(offline.body()).getOk()).isTrue();
+            new Thread(() -> pending.complete(CheckMessageResponse.newBuilder().setAllow(true).build())).start();
+            CheckMessageResponse checkResp = CheckMessageResponse.parseFrom(check.get(2, TimeUnit.SECONDS).body());
+            assertThat(checkResp.getAllow()).isTrue();
+            assertThat(checkResp.getMeta().getTraceId()).isEqualTo("tr");
+
+            // Never completes: the timeout falls back to the endpoint's handler error response.
+            AuthResponse auth = AuthResponse.parseFrom(client.send(
+                    post(port, "/auth", AuthRequest.newBuilder().setMeta(meta).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray()).body());
+            assertThat(auth.getOk()).isFalse();
+            assertThat(auth.getReason()).isEqualTo("handler error");
+            assertThat(auth.getMeta().getRequestId()).isEqualTo("rid");
+
+            GetGroupMembersResponse members = GetGroupMembersResponse.parseFrom(client.send(
+                    post(port, "/get-group-members", GetGroupMembersRequest.newBuilder().setMeta(meta).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray()).body());
+            assertThat(members.getUserIdsList()).isEmpty();
+            assertThat(members.getMeta().getTenantId()).isEqualTo("t1");
+        }
+    }
+
+    @Test
+    void jdk_transport_should_reject_bodies_over_the_endpoint_limit_with_413() throws Exception {
+        MicsHookHandler handler = new MicsHookHandler() {
+            @Override
+            public AuthResponse onAuth(AuthRequest request) {
+                return AuthResponse.newBuilder().setOk(true).setUserId(request.getToken()).build();
+            }
+
+            @Override
+            public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+                return CheckMessageResponse.newBuilder().setAllow(true).build();
+            }
+
+            @Override
+            public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .maxRequestBytes(4096)
+                .maxRequestBytes(MicsHookEndpoint.AUTH, 64)
+                .build();
+        try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
+            server.start();
+            int port = server.getAddress().getPort();
+
+            // Declared length over the limit: answered without waiting for the body.
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write("POST /auth HTTP/1.1\r\nHost: test\r\nContent-Length: 1048576\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                byte[] head = socket.getInputStream().readNBytes(12);
+                assertThat(new String(head, StandardCharsets.ISO_8859_1)).isEqualTo("HTTP/1.1 413");
+            }
+
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            AuthRequest small = AuthRequest.newBuilder().setMeta(HookMeta.newBuilder().setTenantId("t1")).setToken("u1").build();
+            AuthRequest large = small.toBuilder().setToken("u".repeat(100)).build();
+            assertThat(AuthResponse.parseFrom(client.send(post(port, "/auth", small.toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray()).body()).getUserId()).isEqualTo("u1");
+            // Chunked (no Content-Length): counted while reading.
+            HttpRequest chunked = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/auth"))
+                    .timeout(Duration.ofSeconds(5))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(large.toByteArray())))
+                    .build();
+            assertThat(client.send(chunked, HttpResponse.BodyHandlers.ofByteArray()).statusCode()).isEqualTo(413);
+
+            CheckMessageRequest check = CheckMessageRequest.newBuilder()
+                    .setMeta(HookMeta.newBuilder().setTenantId("t1"))
+                    .setMessage(MessageRequest.newBuilder().setMsgBody(ByteString.copyFrom(new byte[1000])))
+                    .build();
+            HttpResponse<byte[]> allowed = client.send(post(port, "/check-message", check.toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(CheckMessageResponse.parseFrom(allowed.body()).getAllow()).isTrue();
+            CheckMessageRequest tooLarge = check.toBuilder()
+                    .setMessage(MessageRequest.newBuilder().setMsgBody(ByteString.copyFrom(new byte[5000])))
+                    .build();
+            assertThat(client.send(post(port, "/check-message", tooLarge.toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray()).statusCode()).isEqualTo(413);
+        }
+    }
+
+    @Test
+    void resolver_options_should_accept_both_secrets_of_a_rotating_tenant() throws Exception {
+        MicsHookHandler handler = new MicsHookHandler() {
+            @Override
+            public AuthResponse onAuth(AuthRequest request) {
+                return AuthResponse.newBuilder().setOk(true).setUserId(request.getToken()).build();
+            }
+
+            @Override
+            public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        CachingTenantSecretResolver resolver = CachingTenantSecretResolver
+                .builder(tid -> tid.equals("t1") ? List.of("new", "old") : List.of())
+                .build();
+        MicsHookServerOptions options = MicsHookServerOptions.builderWithResolver(resolver).build();
+        @SuppressWarnings("deprecation")
+        Function<String, String> provider = options.getTenantSecretProvider();
+        assertThat(provider.apply("t2")).isNull();
+        assertThatThrownBy(() -> provider.apply("t1")).isInstanceOf(UnsupportedOperationException.class);
+        try (MicsHookHttpServer server = new MicsHookHttpServer(new InetSocketAddress("127.0.0.1", 0), handler, options)) {
+            server.start();
+            int port = server.getAddress().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            for (String secret : List.of("new", "old", "other")) {
+                HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").setTimestampMs(1L).build();
+                AuthRequest unsigned = AuthRequest.newBuilder().setMeta(meta).setToken("u1").build();
+                String sign = HookSigner.computeBase64(HmacSha256Key.of(secret), meta, unsigned);
+                AuthRequest req = unsigned.toBuilder().setMeta(meta.toBuilder().setSign(sign)).build();
+                AuthResponse resp = AuthResponse.parseFrom(client.send(post(port, "/auth", req.toByteArray()),
+                        HttpResponse.BodyHandlers.ofByteArray()).body());
+                assertThat(resp.getOk()).as(secret).isEqualTo(!secret.equals("other"));
+            }
+
+            HookMeta unknown = HookMeta.newBuilder().setTenantId("t9").build();
+            AuthResponse resp = AuthResponse.parseFrom(client.send(
+                    post(port, "/auth", AuthRequest.newBuilder().setMeta(unknown).build().toByteArray()),
+                    HttpResponse.BodyHandlers.ofByteArray()).body());
+            assertThat(resp.getReason()).isEqualTo("unknown tenant");
+        }
+    }
+
+    @Test
+    void sync_adapter_should_turn_exceptions_into_failed_futures() {
+        MicsHookAsyncHandler adapted = MicsHookAsyncHandler.fromSync(new MicsHookHandler() {
+            @Override
+            public AuthResponse onAuth(AuthRequest request) throws Exception {
+                throw new java.io.IOException("user service down");
+            }
+
+            @Override
+            public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+                return CheckMessageResponse.newBuilder().setAllow(true).build();
+            }
+
+            @Override
+            public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+                return null;
+            }
+        });
+
+        assertThat(adapted.onAuth(AuthRequest.getDefaultInstance())).isCompletedExceptionally();
+        assertThat(adapted.onCheckMessage(CheckMessageRequest.getDefaultInstance()).join().getAllow()).isTrue();
+        assertThat(adapted.onGetGroupMembers(GetGroupMembersRequest.getDefaultInstance()).join()).isNull();
+        assertThat(adapted.onGetOfflineMessages(GetOfflineMessagesRequest.getDefaultInstance()).join().getOk()).isTrue();
+    }
+
+    private static HttpRequest post(int port, String path, byte[] body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://127.0.0.1:" + port + path))
+                .timeout(Duration.ofSeconds(2))
+                .header("Content-Type", "application/protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+}
@@ -0,0 +1,186 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.hooksdk.HookSigner;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsHookMetricsTest {
+    private static final String SECRET = "secret";
+
+    @Test
+    void log_histogram_should_bucket_by_power_of_two() {
+        LogHistogram h = new LogHistogram(4, 4);
+        assertThat(h.bucketOf(0)).isZero();
+        assertThat(h.bucketOf(16)).isZero();
+        assertThat(h.bucketOf(17)).isEqualTo(1);
+        assertThat(h.bucketOf(32)).isEqualTo(1);
+        assertThat(h.bucketOf(128)).isEqualTo(3);
+        assertThat(h.bucketOf(129)).isEqualTo(4);
+        assertThat(h.bucketOf(Long.MAX_VALUE)).isEqualTo(4);
+
+        h.record(10);
+        h.record(20);
+        h.record(1000);
+        long[] counts = new long[5];
+        assertThat(h.snapshot(counts)).isEqualTo(1030);
+        assertThat(counts).containsExactly(1, 1, 0, 0, 1);
+    }
+
+    @Test
+    void log_histogram_should_not_lose_counts_under_contention() throws Exception {
+        LogHistogram h = new LogHistogram(10, 26);
+        int threads = 8;
+        int perThread = 50_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    h.record(i);
+                }
+            });
+        }
+        go.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        long[] counts = new long[27];
+        long sum = h.snapshot(counts);
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        assertThat(total).isEqualTo((long) threads * perThread);
+        assertThat(sum).isEqualTo((long) threads * perThread * (perThread - 1) / 2);
+    }
+
+    @Test
+    void server_should_record_outcomes_and_serve_prometheus_text() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> Map.of("t1", SECRET).get(tid))
+                    .transport(transport)
+                    .metricsEndpoint(true)
+                    .build();
+            try (MicsHookHttpServer server = start(new FailingGroupHandler(), options)) {
+                int port = server.getAddress().getPort();
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+                HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId("rid").setTimestampMs(1L).build();
+                AuthRequest unsigned = AuthRequest.newBuilder().setMeta(meta).setToken("tok").build();
+                AuthRequest signed = unsigned.toBuilder()
+                        .setMeta(meta.toBuilder().setSign(HookSigner.computeBase64(SECRET, meta, unsigned)))
+                        .build();
+                client.send(post(port, "/auth", signed.toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+                client.send(post(port, "/auth", signed.toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+                client.send(post(port, "/auth", signed.toBuilder().setToken("other").build().toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+                client.send(post(port, "/auth", AuthRequest.newBuilder().setMeta(meta.toBuilder().setTenantId("t9")).build().toByteArray()),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                client.send(post(port, "/check-message", new byte[]{(byte) 0xFF}), HttpResponse.BodyHandlers.ofByteArray());
+
+                GetGroupMembersRequest members = GetGroupMembersRequest.newBuilder().setMeta(meta).setGroupId("g1").build();
+                GetGroupMembersRequest signedMembers = members.toBuilder()
+                        .setMeta(meta.toBuilder().setSign(HookSigner.computeBase64(SECRET, meta, members)))
+                        .build();
+                client.send(post(port, "/get-group-members", signedMembers.toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+
+                HttpResponse<String> scrape = client.send(
+                        HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertThat(scrape.statusCode()).isEqualTo(200);
+                assertThat(scrape.body())
+                        .contains("mics_hook_requests_total{endpoint=\"/auth\",tenant=\"t1\",outcome=\"ok\"} 2\n")
+                        .contains("mics_hook_requests_total{endpoint=\"/auth\",tenant=\"t1\",outcome=\"invalid_sign\"} 1\n")
+                        .contains("mics_hook_requests_total{endpoint=\"/auth\",tenant=\"\",outcome=\"unknown_tenant\"} 1\n")
+                        .contains("mics_hook_requests_total{endpoint=\"/check-message\",tenant=\"\",outcome=\"bad_request\"} 1\n")
+                        .contains("mics_hook_requests_total{endpoint=\"/get-group-members\",tenant=\"t1\",outcome=\"handler_error\"} 1\n")
+                        .contains("mics_hook_in_flight{endpoint=\"/auth\",tenant=\"t1\"} 0\n")
+                        .contains("mics_hook_handler_seconds_count{endpoint=\"/auth\",tenant=\"t1\"} 2\n")
+                        .contains("mics_hook_verify_seconds_count{endpoint=\"/auth\",tenant=\"t1\"} 3\n")
+                        .contains("mics_hook_parse_seconds_bucket{endpoint=\"/auth\",tenant=\"t1\",le=\"+Inf\"} 3\n")
+                        .contains("mics_hook_request_bytes_count{endpoint=\"/auth\",tenant=\"t1\"} 3\n")
+                        .contains("mics_hook_response_bytes_count{endpoint=\"/auth\",tenant=\"t1\"} 3\n")
+                        .doesNotContain("tenant=\"t9\"");
+
+                HttpResponse<String> post = client.send(post(port, "/metrics", new byte[0]), HttpResponse.BodyHandlers.ofString());
+                assertThat(post.statusCode()).isEqualTo(405);
+            }
+        }
+    }
+
+    @Test
+    void disabled_metrics_should_record_nothing_and_not_expose_endpoint() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .metricsEnabled(false)
+                .build();
+        try (MicsHookHttpServer server = start(new FailingGroupHandler(), options)) {
+            int port = server.getAddress().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            HookMeta meta = HookMeta.newBuilder().setTenantId("t1").build();
+            client.send(post(port, "/auth", AuthRequest.newBuilder().setMeta(meta).build().toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+
+            assertThat(server.getMetrics().isEnabled()).isFalse();
+            assertThat(server.getMetrics().scrape()).doesNotContain("tenant=");
+            HttpResponse<String> scrape = client.send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertThat(scrape.statusCode()).isEqualTo(404);
+        }
+    }
+
+    @Test
+    void tenants_beyond_the_cap_should_share_one_series() {
+        MicsHookMetrics metrics = new MicsHookMetrics(true);
+        for (int i = 0; i < MicsHookMetrics.MAX_TENANTS; i++) {
+            metrics.series(MicsHookEndpoint.AUTH, "t" + i).count(MicsHookMetrics.Outcome.OK);
+        }
+        MicsHookMetrics.Series a = metrics.series(MicsHookEndpoint.AUTH, "late-1");
+        MicsHookMetrics.Series b = metrics.series(MicsHookEndpoint.AUTH, "late-2");
+        assertThat(a).isSameAs(b);
+        assertThat(metrics.series(MicsHookEndpoint.AUTH, "t0")).isNotSameAs(a);
+        a.count(MicsHookMetrics.Outcome.OK);
+        assertThat(metrics.scrape()).contains("tenant=\"__other__\",outcome=\"ok\"} 1\n");
+    }
+
+    private static final class FailingGroupHandler implements MicsHookHandler {
+        @Override
+        public AuthResponse onAuth(AuthRequest request) {
+            return AuthResponse.newBuilder().setOk(true).setUserId("u1").build();
+        }
+
+        @Override
+        public CheckMessageResponse onCheckMessage(CheckMessageRequest request) {
+            return CheckMessageResponse.newBuilder().setAllow(true).build();
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+            throw new IllegalStateException("group service down");
+        }
+    }
+}
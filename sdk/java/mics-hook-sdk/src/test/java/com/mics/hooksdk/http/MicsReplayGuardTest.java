@@ -0,0 +1,149 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.hooksdk.HmacSha256Key;
+import com.mics.hooksdk.HookSigner;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.send;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MicsReplayGuardTest {
+    @Test
+    void requests_should_be_rejected_outside_the_skew_or_when_replayed() {
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        MicsReplayGuard guard = new MicsReplayGuard(Duration.ofSeconds(30), 1 << 16, 4, now::get);
+        long t = now.get();
+
+        assertThat(guard.check("t1", "r1", t)).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        assertThat(guard.check("t1", "r1", t)).isEqualTo(MicsReplayGuard.Result.REPLAYED);
+        assertThat(guard.check("t2", "r1", t)).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        assertThat(guard.check("t1", "r2", t + 29_000)).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        assertThat(guard.check("t1", "r3", t - 31_000)).isEqualTo(MicsReplayGuard.Result.STALE);
+        assertThat(guard.check("t1", "r3", t + 31_000)).isEqualTo(MicsReplayGuard.Result.STALE);
+
+        // Still remembered up to the end of the skew window, stale right after.
+        now.addAndGet(30_000);
+        assertThat(guard.check("t1", "r1", t)).isEqualTo(MicsReplayGuard.Result.REPLAYED);
+        now.addAndGet(1);
+        assertThat(guard.check("t1", "r1", t)).isEqualTo(MicsReplayGuard.Result.STALE);
+
+        // Buckets rotate out as time moves on: memory stays bounded by the live window.
+        for (int i = 0; i < 1000; i++) {
+            now.addAndGet(1000);
+            assertThat(guard.check("t1", "r-" + i, now.get())).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        }
+        assertThat(guard.getEntryCount()).isLessThanOrEqualTo(70);
+        assertThat(guard.getReplayedCount()).isEqualTo(2);
+        assertThat(guard.getStaleCount()).isEqualTo(3);
+    }
+
+    @Test
+    void full_buckets_should_reject_instead_of_forgetting() {
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        // 9 live buckets of one shard each: 100 / 9 = 11 ids per bucket.
+        MicsReplayGuard guard = new MicsReplayGuard(Duration.ofSeconds(30), 100, 1, now::get);
+        for (int i = 0; i < 11; i++) {
+            assertThat(guard.check("t1", "r" + i, now.get())).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        }
+        assertThat(guard.check("t1", "r11", now.get())).isEqualTo(MicsReplayGuard.Result.FULL);
+        assertThat(guard.check("t1", "r0", now.get())).isEqualTo(MicsReplayGuard.Result.REPLAYED);
+        assertThat(guard.check("t1", "r11", now.get() + 10_000)).isEqualTo(MicsReplayGuard.Result.ACCEPTED);
+        assertThat(guard.getFullCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrent_duplicates_should_be_accepted_exactly_once() throws Exception {
+        MicsReplayGuard guard = MicsReplayGuard.builder().maximumEntries(1 << 20).build();
+        long t = System.currentTimeMillis();
+        int threads = 8;
+        int ids = 20_000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int n = 0; n < threads; n++) {
+                futures.add(pool.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < ids; i++) {
+                        if (guard.check("t1", "rid-" + i, t) == MicsReplayGuard.Result.ACCEPTED) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(accepted.get()).isEqualTo(ids);
+        assertThat(guard.getEntryCount()).isEqualTo(ids);
+        assertThat(guard.getReplayedCount()).isEqualTo((long) ids * (threads - 1));
+    }
+
+    @Test
+    void server_should_reject_a_replayed_signed_request() throws Exception {
+        MicsReplayGuard guard = MicsReplayGuard.builder().maxSkew(Duration.ofMinutes(1)).build();
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                    .transport(transport)
+                    .replayGuard(guard)
+                    .build();
+            try (MicsHookHttpServer server = start(new OkHandler(), options)) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                byte[] body = signedAuth("rid-" + transport, System.currentTimeMillis());
+                assertThat(auth(client, port, body).getOk()).isTrue();
+                AuthResponse replay = auth(client, port, body);
+                assertThat(replay.getOk()).isFalse();
+                assertThat(replay.getReason()).isEqualTo("replayed request");
+
+                AuthResponse old = auth(client, port, signedAuth("rid-old-" + transport, System.currentTimeMillis() - 120_000));
+                assertThat(old.getReason()).isEqualTo("stale timestamp");
+
+                assertThat(server.getMetrics().scrape())
+                        .contains("mics_hook_replay_guard_requests_total{result=\"replayed\"} ")
+                        .contains("outcome=\"replay_rejected\"");
+            }
+        }
+    }
+
+    private static byte[] signedAuth(String requestId, long timestampMs) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).setTimestampMs(timestampMs).build();
+        AuthRequest unsigned = AuthRequest.newBuilder().setMeta(meta).setToken("tok").build();
+        String sign = HookSigner.computeBase64(HmacSha256Key.of("secret"), meta, unsigned);
+        return unsigned.toBuilder().setMeta(meta.toBuilder().setSign(sign)).build().toByteArray();
+    }
+
+    private static AuthResponse auth(HttpClient client, int port, byte[] body) throws Exception {
+        return send(client, post(port, "/auth", body), AuthResponse.parser());
+    }
+
+    private static final class OkHandler extends HookTestSupport.UnsupportedHandler {
+        @Override
+        public AuthResponse onAuth(AuthRequest request) {
+            return AuthResponse.newBuilder().setOk(true).setUserId("u1").build();
+        }
+    }
+}
@@ -0,0 +1,870 @@
+package com.mics.hooksdk.http;
+
+import com.mics.contracts.hook.v1.AuthRequest;
+import com.mics.contracts.hook.v1.AuthResponse;
+import com.mics.contracts.hook.v1.CheckMessageRequest;
+import com.mics.contracts.hook.v1.CheckMessageResponse;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.hooksdk.HookSigner;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NioHookTransportTest {
+    private static final String SECRET = "secret";
+
+    @Test
+    void http1_keep_alive_should_keep_endpoint_semantics_and_signature_checks() throws Exception {
+        try (MicsHookHttpServer server = start(new EchoHandler(), nioOptions(true))) {
+            int port = server.getAddress().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            HookMeta meta = meta("rid-1");
+            AuthRequest unsigned = AuthRequest.newBuilder().setMeta(meta).setToken("valid:u1").setDeviceId("d1").build();
+            AuthRequest signed = unsigned.toBuilder()
+                    .setMeta(meta.toBuilder().setSign(HookSigner.computeBase64(SECRET, meta, unsigned)))
+                    .build();
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<byte[]> resp = client.send(post(port, "/auth?x=1", signed.toByteArray()), HttpResponse.BodyHandlers.ofByteArray());
+                assertThat(resp.statusCode()).isEqualTo(200);
+                assertThat(resp.headers().firstValue("Content-Type")).hasValue("application/protobuf");
+                AuthResponse auth = AuthResponse.parseFrom(resp.body());
+                assertThat(auth.getOk()).isTrue();
+                assertThat(auth.getUserId()).isEqualTo("u1");
+                assertThat(auth.getMeta().getRequestId()).isEqualTo("rid-1");
+                assertThat(auth.getMeta().getTraceId()).isEqualTo("tr");
+            }
+
+            AuthRequest tampered = signed.toBuilder().setToken("valid:u2").build();
+            AuthResponse rejected = AuthResponse.parseFrom(client.send(post(port, "/auth", tampered.toByteArray()), HttpResponse.BodyHandlers.ofByteArray()).body());
+            assertThat(rejected.getOk()).isFalse();
+            assertThat(rejected.getReason()).isEqualTo("invalid sign");
+
+            AuthRequest unknownTenant = AuthRequest.newBuilder().setMeta(meta.toBuilder().setTenantId("nope")).build();
+            AuthResponse unknown = AuthResponse.parseFrom(client.send(post(port, "/auth", unknownTenant.toByteArray()), HttpResponse.BodyHandlers.ofByteArray()).body());
+            assertThat(unknown.getReason()).isEqualTo("unknown tenant");
+
+            HttpResponse<byte[]> garbage = client.send(post(port, "/check-message", new byte[]{(byte) 0xFF}), HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(garbage.statusCode()).isEqualTo(400);
+
+            HttpRequest get = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/auth")).GET().build();
+            assertThat(client.send(get, HttpResponse.BodyHandlers.ofByteArray()).statusCode()).isEqualTo(405);
+            assertThat(client.send(post(port, "/nope", new byte[0]), HttpResponse.BodyHandlers.ofByteArray()).statusCode()).isEqualTo(404);
+        }
+    }
+
+    @Test
+    void pipelined_requests_should_be_answered_in_request_order() throws Exception {
+        CompletableFuture<CheckMessageResponse> first = new CompletableFuture<>();
+        EchoHandler handler = new EchoHandler() {
+            @Override
+            public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+                return first;
+            }
+        };
+        try (MicsHookHttpServer server = start(handler, nioOptions(false));
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-check")).build().toByteArray();
+            byte[] offline = GetOfflineMessagesRequest.newBuilder().setMeta(meta("rid-offline")).build().toByteArray();
+            byte[] members = GetGroupMembersRequest.newBuilder().setMeta(meta("rid-members")).setGroupId("g1").build().toByteArray();
+
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            batch.write(http1Request("/check-message", check, false));
+            batch.write(http1Request("/get-offline-messages", offline, false));
+            batch.write(http1Request("/get-group-members", members, true));
+            OutputStream out = socket.getOutputStream();
+            out.write(batch.toByteArray());
+            out.flush();
+
+            // The later requests finish first but must wait behind the pending check-message response.
+            Thread.sleep(100);
+            assertThat(socket.getInputStream().available()).isZero();
+            first.complete(CheckMessageResponse.newBuilder().setAllow(true).build());
+
+            InputStream in = socket.getInputStream();
+            CheckMessageResponse c = CheckMessageResponse.parseFrom(readHttp1Body(in));
+            GetOfflineMessagesResponse o = GetOfflineMessagesResponse.parseFrom(readHttp1Body(in));
+            GetGroupMembersResponse m = GetGroupMembersResponse.parseFrom(readHttp1Body(in));
+            assertThat(c.getMeta().getRequestId()).isEqualTo("rid-check");
+            assertThat(c.getAllow()).isTrue();
+            assertThat(o.getMeta().getRequestId()).isEqualTo("rid-offline");
+            assertThat(m.getMeta().getRequestId()).isEqualTo("rid-members");
+            assertThat(m.getUserIdsList()).containsExactly("g1-owner");
+            // "Connection: close" on the last request.
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void h2c_upgrade_should_multiplex_requests_on_one_connection() throws Exception {
+        try (MicsHookHttpServer server = start(new EchoHandler(), nioOptions(false))) {
+            int port = server.getAddress().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+            // The first request carries "Upgrade: h2c" and is answered as stream 1 of the new connection.
+            byte[] offline = GetOfflineMessagesRequest.newBuilder().setMeta(meta("rid-upgrade")).build().toByteArray();
+            HttpResponse<byte[]> upgraded = client.send(post(port, "/get-offline-messages", offline), HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(upgraded.version()).isEqualTo(HttpClient.Version.HTTP_2);
+            assertThat(GetOfflineMessagesResponse.parseFrom(upgraded.body()).getMeta().getRequestId()).isEqualTo("rid-upgrade");
+
+            List<CompletableFuture<HttpResponse<byte[]>>> calls = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                byte[] body = GetGroupMembersRequest.newBuilder().setMeta(meta("rid-" + i)).setGroupId("g" + i).build().toByteArray();
+                calls.add(client.sendAsync(post(port, "/get-group-members", body), HttpResponse.BodyHandlers.ofByteArray()));
+            }
+            for (int i = 0; i < calls.size(); i++) {
+                HttpResponse<byte[]> resp = calls.get(i).get();
+                assertThat(resp.version()).isEqualTo(HttpClient.Version.HTTP_2);
+                assertThat(resp.statusCode()).isEqualTo(200);
+                GetGroupMembersResponse members = GetGroupMembersResponse.parseFrom(resp.body());
+                assertThat(members.getMeta().getRequestId()).isEqualTo("rid-" + i);
+                assertThat(members.getUserIdsList()).containsExactly("g" + i + "-owner");
+            }
+        }
+    }
+
+    @Test
+    void h2_prior_knowledge_should_serve_requests_and_split_large_responses() throws Exception {
+        try (MicsHookHttpServer server = start(new EchoHandler(), nioOptions(false));
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            out.write(Http2Codec.PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            // 40 KiB of members forces several DATA frames under the default 16 KiB frame size.
+            GetGroupMembersRequest req = GetGroupMembersRequest.newBuilder().setMeta(meta("rid-h2")).setGroupId("big").build();
+            byte[] body = req.toByteArray();
+            writeFrame(out, 0x1, 0x4, 1, requestHeaderBlock("/get-group-members", body.length));
+            writeFrame(out, 0x0, 0x1, 1, body);
+            out.flush();
+
+            Integer status = null;
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            int dataFrames = 0;
+            boolean ended = false;
+            while (!ended) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamId = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == 0x4 && (flags & 0x1) == 0) {
+                    writeFrame(out, 0x4, 0x1, 0, new byte[0]);
+                } else if (type == 0x1) {
+                    assertThat(streamId).isEqualTo(1);
+                    assertThat(payload[0] & 0xFF).isEqualTo(0x88);
+                    status = 200;
+                } else if (type == 0x0) {
+                    assertThat(streamId).isEqualTo(1);
+                    data.write(payload);
+                    dataFrames++;
+                    ended = (flags & 0x1) != 0;
+                }
+            }
+            assertThat(status).isEqualTo(200);
+            assertThat(dataFrames).isGreaterThan(1);
+            GetGroupMembersResponse members = GetGroupMembersResponse.parseFrom(data.toByteArray());
+            assertThat(members.getMeta().getRequestId()).isEqualTo("rid-h2");
+            assertThat(members.getUserIdsCount()).isEqualTo(4000);
+        }
+    }
+
+    @Test
+    void bodies_over_the_endpoint_limit_should_be_rejected_before_they_are_read() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .maxRequestBytes(MicsHookEndpoint.AUTH, 64)
+                .build();
+        try (MicsHookHttpServer server = start(new EchoHandler(), options)) {
+            int port = server.getAddress().getPort();
+            byte[] members = GetGroupMembersRequest.newBuilder().setMeta(meta("rid-ok")).setGroupId("g1").build().toByteArray();
+
+            // HTTP/1.1: answered from the declared length alone, none of the 1 MiB is ever sent.
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                out.write("POST /auth HTTP/1.1\r\nHost: test\r\nContent-Length: 1048576\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+                assertThat(response).startsWith("HTTP/1.1 413 Payload Too Large\r\n");
+            }
+            // Other endpoints keep the default limit.
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(http1Request("/get-group-members", members, true));
+                assertThat(GetGroupMembersResponse.parseFrom(readHttp1Body(socket.getInputStream())).getUserIdsList()).containsExactly("g1-owner");
+            }
+
+            // HTTP/2: by content-length on HEADERS, and by the DATA actually received when no length is declared.
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                OutputStream out = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                out.write(Http2Codec.PREFACE);
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                writeFrame(out, 0x1, 0x4, 1, requestHeaderBlock("/auth", 1 << 20));
+                writeFrame(out, 0x1, 0x4, 3, requestHeaderBlock("/auth", -1));
+                writeFrame(out, 0x0, 0, 3, new byte[40]);
+                writeFrame(out, 0x0, 0x1, 3, new byte[40]);
+                writeFrame(out, 0x1, 0x4, 5, requestHeaderBlock("/get-group-members", members.length));
+                writeFrame(out, 0x0, 0x1, 5, members);
+                out.flush();
+
+                Map<Integer, String> statuses = new ConcurrentHashMap<>();
+                Map<Integer, ByteArrayOutputStream> bodies = new ConcurrentHashMap<>();
+                int ended = 0;
+                while (ended < 3) {
+                    int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                    int type = in.readUnsignedByte();
+                    int flags = in.readUnsignedByte();
+                    int streamId = in.readInt();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (type == 0x1) {
+                        statuses.put(streamId, (payload[0] & 0xFF) == 0x88 ? "200" : new String(payload, 2, 3, StandardCharsets.ISO_8859_1));
+                    } else if (type == 0x0) {
+                        bodies.computeIfAbsent(streamId, id -> new ByteArrayOutputStream()).write(payload);
+                    }
+                    if ((type == 0x0 || type == 0x1) && (flags & 0x1) != 0) {
+                        ended++;
+                    }
+                }
+                assertThat(statuses).containsEntry(1, "413").containsEntry(3, "413").containsEntry(5, "200");
+                assertThat(bodies.get(1).toString(StandardCharsets.UTF_8)).isEqualTo("Payload Too Large");
+                assertThat(GetGroupMembersResponse.parseFrom(bodies.get(5).toByteArray()).getUserIdsList()).containsExactly("g1-owner");
+            }
+        }
+    }
+
+    @Test
+    void a_saturated_pool_should_answer_503_instead_of_running_handlers_on_the_event_loop() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> handlerThreads = new ConcurrentHashMap<>();
+        EchoHandler handler = new EchoHandler() {
+            @Override
+            public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+                handlerThreads.put(request.getMeta().getRequestId(), Thread.currentThread().getName());
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.onCheckMessage(request);
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .boundedPool(1, 1)
+                .build();
+        try (MicsHookHttpServer server = start(handler, options);
+             Socket running = new Socket("127.0.0.1", server.getAddress().getPort());
+             Socket queued = new Socket("127.0.0.1", server.getAddress().getPort());
+             Socket rejected = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            for (Socket s : List.of(running, queued, rejected)) {
+                s.setSoTimeout(5000);
+            }
+            running.getOutputStream().write(http1Request("/check-message", CheckMessageRequest.newBuilder().setMeta(meta("rid-1")).build().toByteArray(), true));
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+            queued.getOutputStream().write(http1Request("/check-message", CheckMessageRequest.newBuilder().setMeta(meta("rid-2")).build().toByteArray(), true));
+            // Give the event loop time to queue the second request behind the first.
+            Thread.sleep(100);
+            rejected.getOutputStream().write(http1Request("/check-message", CheckMessageRequest.newBuilder().setMeta(meta("rid-3")).build().toByteArray(), true));
+
+            String response = new String(rejected.getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+            assertThat(response).startsWith("HTTP/1.1 503 Service Unavailable\r\n");
+            release.countDown();
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(running.getInputStream())).getAllow()).isTrue();
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(queued.getInputStream())).getAllow()).isTrue();
+            assertThat(handlerThreads).containsOnlyKeys("rid-1", "rid-2").allSatisfy((rid, thread) -> assertThat(thread).startsWith("mics-hook-"));
+            assertThat(handlerThreads.values()).noneMatch(thread -> thread.startsWith("mics-hook-nio-"));
+        }
+    }
+
+    @Test
+    void requests_still_arriving_after_the_read_timeout_should_close_their_connections() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .requestReadTimeout(Duration.ofMillis(300))
+                .build();
+        byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-ok")).build().toByteArray();
+        try (MicsHookHttpServer server = start(new EchoHandler(), options);
+             Socket partialHead = new Socket("127.0.0.1", server.getAddress().getPort());
+             Socket trickledBody = new Socket("127.0.0.1", server.getAddress().getPort());
+             Socket openStream = new Socket("127.0.0.1", server.getAddress().getPort());
+             Socket keepAlive = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            for (Socket s : List.of(partialHead, trickledBody, openStream, keepAlive)) {
+                s.setSoTimeout(5000);
+            }
+            partialHead.getOutputStream().write("POST /check-message HTTP/1.1\r\nHost: te".getBytes(StandardCharsets.ISO_8859_1));
+            OutputStream out = openStream.getOutputStream();
+            out.write(Http2Codec.PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            writeFrame(out, 0x1, 0x4, 1, requestHeaderBlock("/check-message", 100));
+            writeFrame(out, 0x0, 0, 1, new byte[10]);
+            keepAlive.getOutputStream().write(http1Request("/check-message", check, false));
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(keepAlive.getInputStream())).getAllow()).isTrue();
+
+            // A byte every 100 ms keeps the connection active, but the request never completes.
+            trickledBody.getOutputStream().write("POST /check-message HTTP/1.1\r\nHost: test\r\nContent-Length: 1000\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            long started = System.nanoTime();
+            boolean closed = false;
+            while (!closed && System.nanoTime() - started < TimeUnit.SECONDS.toNanos(10)) {
+                try {
+                    trickledBody.getOutputStream().write(0);
+                    Thread.sleep(100);
+                } catch (IOException e) {
+                    closed = true;
+                }
+            }
+            assertThat(closed).isTrue();
+
+            assertThat(partialHead.getInputStream().read()).isEqualTo(-1);
+            openStream.getInputStream().readAllBytes();
+            // A connection between requests is left to the (longer) idle timeout.
+            keepAlive.getOutputStream().write(http1Request("/check-message", check, true));
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(keepAlive.getInputStream())).getAllow()).isTrue();
+        }
+    }
+
+    @Test
+    void declared_lengths_should_not_reserve_memory_before_the_body_arrives() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .build();
+        int declared = MicsHookServerOptions.DEFAULT_MAX_REQUEST_BYTES;
+        int clients = 16;
+        List<Socket> sockets = new ArrayList<>();
+        try (MicsHookHttpServer server = start(new EchoHandler(), options)) {
+            int port = server.getAddress().getPort();
+            long before = usedHeapAfterGc();
+
+            // HTTP/1.1: "100 Continue" is written once the head is parsed and the body array acquired.
+            byte[] head = ("POST /check-message HTTP/1.1\r\nHost: test\r\nExpect: 100-continue\r\nContent-Length: " + declared + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            for (int i = 0; i < clients; i++) {
+                Socket socket = new Socket("127.0.0.1", port);
+                sockets.add(socket);
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(head);
+                assertThat(new String(socket.getInputStream().readNBytes(25), StandardCharsets.ISO_8859_1)).isEqualTo("HTTP/1.1 100 Continue\r\n\r\n");
+                socket.getOutputStream().write(0);
+            }
+
+            // HTTP/2: one byte of DATA on each of 16 streams; the PING is answered once the frames before it were read.
+            Socket h2 = new Socket("127.0.0.1", port);
+            sockets.add(h2);
+            h2.setSoTimeout(5000);
+            OutputStream out = h2.getOutputStream();
+            out.write(Http2Codec.PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            for (int i = 0; i < clients; i++) {
+                writeFrame(out, 0x1, 0x4, 2 * i + 1, requestHeaderBlock("/check-message", declared));
+                writeFrame(out, 0x0, 0, 2 * i + 1, new byte[1]);
+            }
+            writeFrame(out, 0x6, 0, 0, new byte[8]);
+            out.flush();
+            DataInputStream in = new DataInputStream(h2.getInputStream());
+            boolean pingAcked = false;
+            while (!pingAcked) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                in.readInt();
+                in.readNBytes(length);
+                pingAcked = type == 0x6 && (flags & 0x1) != 0;
+            }
+
+            // 32 bodies sized from their declared length would pin 512 MiB; grown from what arrived, a few MiB.
+            assertThat(usedHeapAfterGc() - before).isLessThan(32L << 20);
+        } finally {
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    void a_throwing_resolver_should_answer_500_and_keep_the_event_loop_running() throws Exception {
+        // DIRECT mode: the resolver runs on the single selector thread.
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> {
+                    if (tid.equals("boom")) {
+                        throw new IllegalStateException("secret store down");
+                    }
+                    return SECRET;
+                })
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .build();
+        byte[] failing = CheckMessageRequest.newBuilder().setMeta(meta("rid-boom").toBuilder().setTenantId("boom")).build().toByteArray();
+        byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-ok")).build().toByteArray();
+        try (MicsHookHttpServer server = start(new EchoHandler(), options)) {
+            int port = server.getAddress().getPort();
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                // Answered 500; the pipelined request behind it is not held up.
+                socket.getOutputStream().write(http1Request("/check-message", failing, false));
+                socket.getOutputStream().write(http1Request("/check-message", check, true));
+                InputStream in = socket.getInputStream();
+                StringBuilder head = new StringBuilder();
+                while (!head.toString().endsWith("\r\n\r\n")) {
+                    head.append((char) in.read());
+                }
+                assertThat(head.toString()).startsWith("HTTP/1.1 500 Internal Server Error\r\n");
+                int idx = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+                in.readNBytes(Integer.parseInt(head.substring(idx, head.indexOf("\r\n", idx))));
+                assertThat(CheckMessageResponse.parseFrom(readHttp1Body(in)).getAllow()).isTrue();
+            }
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(http1Request("/check-message", check, true));
+                assertThat(CheckMessageResponse.parseFrom(readHttp1Body(socket.getInputStream())).getAllow()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void pipelined_bodies_past_the_connection_cap_should_wait_for_earlier_responses() throws Exception {
+        CompletableFuture<CheckMessageResponse> first = new CompletableFuture<>();
+        CountDownLatch secondSeen = new CountDownLatch(1);
+        EchoHandler handler = new EchoHandler() {
+            @Override
+            public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+                if (request.getMeta().getRequestId().equals("rid-1")) {
+                    return first;
+                }
+                secondSeen.countDown();
+                return super.onCheckMessage(request);
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .maxRequestBytes(64 * 1024)
+                .build();
+        String padding = "x".repeat(40 * 1024);
+        byte[] big1 = CheckMessageRequest.newBuilder().setMeta(meta("rid-1").toBuilder().setTraceId(padding)).build().toByteArray();
+        byte[] big2 = CheckMessageRequest.newBuilder().setMeta(meta("rid-2").toBuilder().setTraceId(padding)).build().toByteArray();
+        try (MicsHookHttpServer server = start(handler, options);
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(http1Request("/check-message", big1, false));
+            out.write(http1Request("/check-message", big2, true));
+            out.flush();
+
+            // 80 KiB of bodies would exceed the 64 KiB per-connection cap: the second is not read yet.
+            assertThat(secondSeen.await(300, TimeUnit.MILLISECONDS)).isFalse();
+            first.complete(CheckMessageResponse.newBuilder().setAllow(true).build());
+            assertThat(secondSeen.await(5, TimeUnit.SECONDS)).isTrue();
+            InputStream in = socket.getInputStream();
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(in)).getMeta().getRequestId()).isEqualTo("rid-1");
+            assertThat(CheckMessageResponse.parseFrom(readHttp1Body(in)).getMeta().getRequestId()).isEqualTo("rid-2");
+        }
+    }
+
+    @Test
+    void h2_data_past_the_connection_window_should_be_a_flow_control_error() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .maxRequestBytes(64 * 1024)
+                .build();
+        try (MicsHookHttpServer server = start(new EchoHandler(), options);
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            // 40 KiB on each of 32 unfinished streams: 1.25 MiB buffered against a 1 MiB connection window, which is
+            // only refilled as bodies are dispatched.
+            try {
+                out.write(Http2Codec.PREFACE);
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                for (int i = 0; i < 32; i++) {
+                    int streamId = 2 * i + 1;
+                    writeFrame(out, 0x1, 0x4, streamId, requestHeaderBlock("/check-message", -1));
+                    for (int k = 0; k < 4; k++) {
+                        writeFrame(out, 0x0, 0, streamId, new byte[10 * 1024]);
+                    }
+                }
+                out.flush();
+            } catch (IOException e) {
+                // The server may already have closed the connection.
+            }
+
+            int goAwayError = -1;
+            while (goAwayError < 0) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                in.readUnsignedByte();
+                in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == 0x7) {
+                    goAwayError = (payload[4] & 0xFF) << 24 | (payload[5] & 0xFF) << 16 | (payload[6] & 0xFF) << 8 | (payload[7] & 0xFF);
+                }
+            }
+            assertThat(goAwayError).isEqualTo(0x3);
+        }
+    }
+
+    @Test
+    void reset_streams_should_count_against_the_stream_limit_until_answered() throws Exception {
+        List<CompletableFuture<CheckMessageResponse>> held = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        EchoHandler handler = new EchoHandler() {
+            @Override
+            public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+                calls.incrementAndGet();
+                if (held.size() == 256) {
+                    return super.onCheckMessage(request);
+                }
+                CompletableFuture<CheckMessageResponse> f = new CompletableFuture<>();
+                held.add(f);
+                return f;
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .build();
+        byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-1")).build().toByteArray();
+        try (MicsHookHttpServer server = start(handler, options);
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(Http2Codec.PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            // Each request is dispatched and then cancelled; its handler is still running.
+            for (int i = 0; i < 256; i++) {
+                int streamId = 2 * i + 1;
+                writeFrame(out, 0x1, 0x4, streamId, requestHeaderBlock("/check-message", check.length));
+                writeFrame(out, 0x0, 0x1, streamId, check);
+                writeFrame(out, 0x3, 0, streamId, hex("00000008"));
+            }
+            writeFrame(out, 0x1, 0x4, 513, requestHeaderBlock("/check-message", check.length));
+            writeFrame(out, 0x0, 0x1, 513, check);
+            out.flush();
+            Frame refused = readFrame(in, 513);
+            assertThat(refused.type).isEqualTo(0x3);
+            assertThat(refused.payload).isEqualTo(hex("00000007"));
+            assertThat(calls.get()).isEqualTo(256);
+
+            // Once the handlers answer, the slots are free again.
+            for (CompletableFuture<CheckMessageResponse> f : held) {
+                f.complete(CheckMessageResponse.newBuilder().setAllow(true).build());
+            }
+            int streamId = 515;
+            while (true) {
+                writeFrame(out, 0x1, 0x4, streamId, requestHeaderBlock("/check-message", check.length));
+                writeFrame(out, 0x0, 0x1, streamId, check);
+                out.flush();
+                Frame f = readFrame(in, streamId);
+                if (f.type == 0x1) {
+                    break;
+                }
+                // Refused: the answers were still queued for the event loop.
+                assertThat(streamId).isLessThan(1000);
+                streamId += 2;
+                Thread.sleep(20);
+            }
+            assertThat(calls.get()).isEqualTo(257);
+        }
+    }
+
+    @Test
+    void a_peer_resetting_streams_in_a_loop_should_get_enhance_your_calm() throws Exception {
+        byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-1")).build().toByteArray();
+        try (MicsHookHttpServer server = start(new EchoHandler(), nioOptions(false));
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            try {
+                out.write(Http2Codec.PREFACE);
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                for (int i = 0; i < 1000; i++) {
+                    int streamId = 2 * i + 1;
+                    writeFrame(out, 0x1, 0x4, streamId, requestHeaderBlock("/check-message", check.length));
+                    writeFrame(out, 0x0, 0x1, streamId, check);
+                    writeFrame(out, 0x3, 0, streamId, hex("00000008"));
+                }
+                out.flush();
+            } catch (IOException e) {
+                // The server may already have closed the connection.
+            }
+            Frame goAway = readFrame(in, 0, 0x7);
+            assertThat(Arrays.copyOfRange(goAway.payload, 4, 8)).isEqualTo(hex("0000000b"));
+        }
+    }
+
+    @Test
+    void h2_table_size_update_should_keep_the_entries_that_still_fit() throws Exception {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> SECRET)
+                .requireSign(false)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(1)
+                .direct()
+                .build();
+        byte[] check = CheckMessageRequest.newBuilder().setMeta(meta("rid-1")).build().toByteArray();
+        String length = Integer.toString(check.length);
+        try (MicsHookHttpServer server = start(new EchoHandler(), options);
+             Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(Http2Codec.PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+
+            // Stream 1 indexes x-pad: yyyy (41 bytes) and then :path /check-message (51 bytes, dynamic index 62).
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            first.writeBytes(hex("8386"));
+            first.writeBytes(hex("4005782d70616404" + "79797979"));
+            first.write(0x44);
+            first.write("/check-message".length());
+            first.writeBytes("/check-message".getBytes(StandardCharsets.ISO_8859_1));
+            first.write(0x0F);
+            first.write(28 - 15);
+            first.write(length.length());
+            first.writeBytes(length.getBytes(StandardCharsets.ISO_8859_1));
+            writeFrame(out, 0x1, 0x4, 1, first.toByteArray());
+            writeFrame(out, 0x0, 0x1, 1, check);
+
+            // Stream 3 shrinks the table to 60 bytes, which evicts only x-pad, then refers to :path by index.
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            second.writeBytes(hex("3f1d" + "8386" + "be"));
+            second.write(0x0F);
+            second.write(28 - 15);
+            second.write(length.length());
+            second.writeBytes(length.getBytes(StandardCharsets.ISO_8859_1));
+            writeFrame(out, 0x1, 0x4, 3, second.toByteArray());
+            writeFrame(out, 0x0, 0x1, 3, check);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Set<Integer> answered = new HashSet<>();
+            while (answered.size() < 2) {
+                int frameLength = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamId = in.readInt();
+                byte[] payload = in.readNBytes(frameLength);
+                assertThat(type).as("GOAWAY").isNotEqualTo(0x7);
+                if (type == 0x0 && (flags & 0x1) != 0) {
+                    assertThat(CheckMessageResponse.parseFrom(payload).getAllow()).isTrue();
+                    answered.add(streamId);
+                }
+            }
+            assertThat(answered).containsExactlyInAnyOrder(1, 3);
+        }
+    }
+
+    @Test
+    void hpack_decoder_should_decode_rfc7541_huffman_examples() {
+        HpackDecoder decoder = new HpackDecoder(4096);
+        Map<String, String> headers = new ConcurrentHashMap<>();
+        // RFC 7541 C.4.1 - C.4.3: requests with Huffman-coded literals sharing one dynamic table.
+        assertThat(decoder.decode(hex("828684418cf1e3c2e5f23a6ba0ab90f4ff"), 0, 17, headers::put)).isTrue();
+        assertThat(headers).containsEntry(":authority", "www.example.com").containsEntry(":path", "/");
+        headers.clear();
+        assertThat(decoder.decode(hex("828684be5886a8eb10649cbf"), 0, 12, headers::put)).isTrue();
+        assertThat(headers).containsEntry(":authority", "www.example.com").containsEntry("cache-control", "no-cache");
+        headers.clear();
+        byte[] third = hex("828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf");
+        assertThat(decoder.decode(third, 0, third.length, headers::put)).isTrue();
+        assertThat(headers).containsEntry(":path", "/index.html").containsEntry("custom-key", "custom-value");
+
+        // Padding longer than 7 bits is a decoding error.
+        assertThat(new HpackDecoder(4096).decode(hex("0481ffff"), 0, 4, headers::put)).isFalse();
+    }
+
+    private static MicsHookServerOptions nioOptions(boolean requireSign) {
+        return MicsHookServerOptions.builder(tid -> Map.of("t1", SECRET).get(tid))
+                .requireSign(requireSign)
+                .transport(MicsHookTransport.NIO)
+                .nioEventLoops(2)
+                .direct()
+                .build();
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static HookMeta meta(String requestId) {
+        return HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).setTimestampMs(1L).setTraceId("tr").build();
+    }
+
+    private static byte[] http1Request(String path, byte[] body, boolean close) {
+        String head = "POST " + path + " HTTP/1.1\r\nHost: test\r\nContent-Type: application/protobuf\r\nContent-Length: " + body.length
+                + (close ? "\r\nConnection: close" : "") + "\r\n\r\n";
+        byte[] h = head.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] out = new byte[h.length + body.length];
+        System.arraycopy(h, 0, out, 0, h.length);
+        System.arraycopy(body, 0, out, h.length, body.length);
+        return out;
+    }
+
+    private static byte[] readHttp1Body(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            assertThat(b).isNotEqualTo(-1);
+            head.append((char) b);
+        }
+        assertThat(head.toString()).startsWith("HTTP/1.1 200 OK\r\n");
+        int idx = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int length = Integer.parseInt(head.substring(idx, head.indexOf("\r\n", idx)));
+        return in.readNBytes(length);
+    }
+
+    // :method POST (static 3), :scheme http (static 6), :path and content-length (when >= 0) as literals without indexing.
+    private static byte[] requestHeaderBlock(String path, int contentLength) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x83);
+        out.write(0x86);
+        out.write(0x04);
+        out.write(path.length());
+        out.writeBytes(path.getBytes(StandardCharsets.ISO_8859_1));
+        if (contentLength < 0) {
+            return out.toByteArray();
+        }
+        String length = Integer.toString(contentLength);
+        out.write(0x0F);
+        out.write(28 - 15);
+        out.write(length.length());
+        out.writeBytes(length.getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+
+    // Skips frames until one on streamId (of the given type, when type >= 0).
+    private static Frame readFrame(DataInputStream in, int streamId) throws IOException {
+        return readFrame(in, streamId, -1);
+    }
+
+    private static Frame readFrame(DataInputStream in, int streamId, int type) throws IOException {
+        while (true) {
+            int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+            int frameType = in.readUnsignedByte();
+            in.readUnsignedByte();
+            Frame f = new Frame(frameType, in.readInt() & 0x7FFFFFFF, new byte[length]);
+            in.readFully(f.payload);
+            if (f.streamId == streamId && (type < 0 || f.type == type)) {
+                return f;
+            }
+        }
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+        out.write(new byte[]{
+                (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                (byte) type, (byte) flags,
+                (byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId});
+        out.write(payload);
+    }
+
+    private static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+
+    private static final class Frame {
+        final int type;
+        final int streamId;
+        final byte[] payload;
+
+        Frame(int type, int streamId, byte[] payload) {
+            this.type = type;
+            this.streamId = streamId;
+            this.payload = payload;
+        }
+    }
+
+    private static class EchoHandler implements MicsHookAsyncHandler {
+        @Override
+        public CompletableFuture<AuthResponse> onAuth(AuthRequest request) {
+            String userId = request.getToken().startsWith("valid:") ? request.getToken().substring("valid:".length()) : "";
+            return CompletableFuture.completedFuture(AuthResponse.newBuilder().setOk(!userId.isEmpty()).setUserId(userId).build());
+        }
+
+        @Override
+        public CompletableFuture<CheckMessageResponse> onCheckMessage(CheckMessageRequest request) {
+            return CompletableFuture.completedFuture(CheckMessageResponse.newBuilder().setAllow(true).build());
+        }
+
+        @Override
+        public CompletableFuture<GetGroupMembersResponse> onGetGroupMembers(GetGroupMembersRequest request) {
+            GetGroupMembersResponse.Builder b = GetGroupMembersResponse.newBuilder();
+            if (request.getGroupId().equals("big")) {
+                for (int i = 0; i < 4000; i++) {
+                    b.addUserIds("member-" + i);
+                }
+            } else {
+                b.addUserIds(request.getGroupId() + "-owner");
+            }
+            return CompletableFuture.completedFuture(b.build());
+        }
+    }
+}
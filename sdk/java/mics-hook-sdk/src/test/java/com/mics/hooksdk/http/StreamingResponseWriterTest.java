@@ -0,0 +1,267 @@
+package com.mics.hooksdk.http;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.mics.contracts.hook.v1.GetGroupMembersRequest;
+import com.mics.contracts.hook.v1.GetGroupMembersResponse;
+import com.mics.contracts.hook.v1.GetOfflineMessagesRequest;
+import com.mics.contracts.hook.v1.GetOfflineMessagesResponse;
+import com.mics.contracts.hook.v1.HookMeta;
+import com.mics.contracts.message.v1.MessageRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static com.mics.hooksdk.http.HookTestSupport.post;
+import static com.mics.hooksdk.http.HookTestSupport.start;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamingResponseWriterTest {
+    private static final int MEMBERS = 50_000;
+
+    @Test
+    void streamed_responses_should_parse_as_the_full_message_on_every_transport() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            for (HttpClient.Version version : HttpClient.Version.values()) {
+                try (MicsHookHttpServer server = start(new StreamingHandler(), options(transport))) {
+                    HttpClient client = HttpClient.newBuilder().version(version).build();
+                    int port = server.getAddress().getPort();
+
+                    HttpResponse<byte[]> big = client.send(post(port, "/get-group-members", members("g-big", "rid-big")), HttpResponse.BodyHandlers.ofByteArray());
+                    assertThat(big.statusCode()).isEqualTo(200);
+                    assertThat(big.headers().firstValue("Content-Length")).isEmpty();
+                    GetGroupMembersResponse parsed = GetGroupMembersResponse.parseFrom(big.body());
+                    assertThat(parsed.getMeta().getRequestId()).isEqualTo("rid-big");
+                    assertThat(parsed.getUserIdsList()).hasSize(MEMBERS).startsWith("user-0").endsWith("user-" + (MEMBERS - 1));
+
+                    // Under the held-back head: one sized body.
+                    HttpResponse<byte[]> small = client.send(post(port, "/get-group-members", members("g-small", "rid-small")), HttpResponse.BodyHandlers.ofByteArray());
+                    assertThat(small.headers().firstValue("Content-Length")).hasValue(Integer.toString(small.body().length));
+                    assertThat(GetGroupMembersResponse.parseFrom(small.body()).getUserIdsList()).containsExactly("user-0", "user-1");
+
+                    HttpResponse<byte[]> page = client.send(post(port, "/get-offline-messages", offline("u1", "rid-page")), HttpResponse.BodyHandlers.ofByteArray());
+                    GetOfflineMessagesResponse offline = GetOfflineMessagesResponse.parseFrom(page.body());
+                    assertThat(offline.getOk()).isTrue();
+                    assertThat(offline.getMessagesCount()).isEqualTo(100);
+                    assertThat(offline.getMessages(99).getMsgBody().size()).isEqualTo(4096);
+                    assertThat(offline.getNextCursor()).isEqualTo("c-100");
+                    assertThat(offline.getHasMore()).isTrue();
+                    assertThat(offline.getMeta().getRequestId()).isEqualTo("rid-page");
+                }
+            }
+        }
+    }
+
+    @Test
+    void handler_failures_should_answer_handler_error_or_break_the_body() throws Exception {
+        for (MicsHookTransport transport : MicsHookTransport.values()) {
+            try (MicsHookHttpServer server = start(new StreamingHandler(), options(transport))) {
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                int port = server.getAddress().getPort();
+
+                // Nothing sent yet: the endpoint's regular handler error response.
+                HttpResponse<byte[]> early = client.send(post(port, "/get-offline-messages", offline("fail-early", "rid-1")), HttpResponse.BodyHandlers.ofByteArray());
+                GetOfflineMessagesResponse rejected = GetOfflineMessagesResponse.parseFrom(early.body());
+                assertThat(rejected.getOk()).isFalse();
+                assertThat(rejected.getReason()).isEqualTo("handler error");
+                assertThat(rejected.getMeta().getRequestId()).isEqualTo("rid-1");
+
+                // Already streaming: the body must not parse as a complete (truncated) list.
+                HttpResponse<byte[]> late = client.send(post(port, "/get-group-members", members("g-fail", "rid-2")), HttpResponse.BodyHandlers.ofByteArray());
+                assertThat(late.statusCode()).isEqualTo(200);
+                assertThatThrownBy(() -> GetGroupMembersResponse.parseFrom(late.body())).isInstanceOf(InvalidProtocolBufferException.class);
+
+                // The connection stays usable.
+                HttpResponse<byte[]> after = client.send(post(port, "/get-group-members", members("g-small", "rid-3")), HttpResponse.BodyHandlers.ofByteArray());
+                assertThat(GetGroupMembersResponse.parseFrom(after.body()).getUserIdsCount()).isEqualTo(2);
+            }
+        }
+    }
+
+    @Test
+    void nio_should_block_a_handler_whose_client_stops_reading() throws Exception {
+        AtomicLong produced = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        StreamingHandler slowClient = new StreamingHandler() {
+            @Override
+            public void streamGroupMembers(GetGroupMembersRequest request, MicsHookResponseSink<String> userIds) {
+                String id = "x".repeat(1000);
+                try {
+                    for (int i = 0; i < 1_000_000; i++) {
+                        userIds.add(id);
+                        produced.addAndGet(id.length());
+                    }
+                } catch (RuntimeException e) {
+                    failure.set(e);
+                    throw e;
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        try (MicsHookHttpServer server = start(slowClient, options(MicsHookTransport.NIO))) {
+            try (Socket socket = new Socket("127.0.0.1", server.getAddress().getPort())) {
+                socket.setReceiveBufferSize(64 * 1024);
+                byte[] body = members("g1", "rid-1");
+                OutputStream out = socket.getOutputStream();
+                out.write(("POST /get-group-members HTTP/1.1\r\nHost: x\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+                InputStream in = socket.getInputStream();
+                assertThat(new String(in.readNBytes(12), StandardCharsets.ISO_8859_1)).isEqualTo("HTTP/1.1 200");
+
+                // 1 GB would be produced without backpressure; the writer stalls once the socket buffers are full.
+                Thread.sleep(1000);
+                long stalled = produced.get();
+                Thread.sleep(300);
+                assertThat(produced.get()).isEqualTo(stalled).isLessThan(64L * 1024 * 1024);
+                assertThat(done.getCount()).isEqualTo(1);
+            }
+            // Client gone: the blocked add fails and the handler is released.
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(failure.get()).isInstanceOf(UncheckedIOException.class);
+        }
+    }
+
+    @Test
+    void handler_timeout_should_apply_to_streaming_handlers() throws Exception {
+        StreamingHandler slow = new StreamingHandler() {
+            @Override
+            public void streamGroupMembers(GetGroupMembersRequest request, MicsHookResponseSink<String> userIds) {
+                for (int i = 0; ; i++) {
+                    userIds.add("user-" + i);
+                    if (request.getGroupId().equals("g-slow")) {
+                        sleep(50);
+                    }
+                }
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .handlerTimeout(Duration.ofMillis(200))
+                .build();
+        try (MicsHookHttpServer server = start(slow, options)) {
+            HttpClient client = HttpClient.newHttpClient();
+            int port = server.getAddress().getPort();
+
+            // Still under the held-back head: the regular handler error response.
+            HttpResponse<byte[]> early = client.send(post(port, "/get-group-members", members("g-slow", "rid-1")), HttpResponse.BodyHandlers.ofByteArray());
+            GetGroupMembersResponse rejected = GetGroupMembersResponse.parseFrom(early.body());
+            assertThat(rejected.getUserIdsCount()).isZero();
+            assertThat(rejected.getMeta().getRequestId()).isEqualTo("rid-1");
+
+            // Already streaming an endless list: the body is broken off instead of running forever.
+            HttpResponse<byte[]> late = client.send(post(port, "/get-group-members", members("g-endless", "rid-2")), HttpResponse.BodyHandlers.ofByteArray());
+            assertThatThrownBy(() -> GetGroupMembersResponse.parseFrom(late.body())).isInstanceOf(InvalidProtocolBufferException.class);
+        }
+    }
+
+    @Test
+    void small_streamed_member_lists_should_fill_the_group_members_cache() throws Exception {
+        AtomicLong calls = new AtomicLong();
+        StreamingHandler counting = new StreamingHandler() {
+            @Override
+            public void streamGroupMembers(GetGroupMembersRequest request, MicsHookResponseSink<String> userIds) {
+                calls.incrementAndGet();
+                super.streamGroupMembers(request, userIds);
+            }
+        };
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .groupMembersCache(MicsGroupMembersCache.builder().build())
+                .build();
+        try (MicsHookHttpServer server = start(counting, options)) {
+            HttpClient client = HttpClient.newHttpClient();
+            int port = server.getAddress().getPort();
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<byte[]> resp = client.send(post(port, "/get-group-members", members("g-small", "rid-" + i)), HttpResponse.BodyHandlers.ofByteArray());
+                GetGroupMembersResponse parsed = GetGroupMembersResponse.parseFrom(resp.body());
+                assertThat(parsed.getUserIdsList()).containsExactly("user-0", "user-1");
+                assertThat(parsed.getMeta().getRequestId()).isEqualTo("rid-" + i);
+            }
+            assertThat(calls.get()).isEqualTo(1);
+
+            // Streamed lists are not copied into the cache.
+            for (int i = 0; i < 2; i++) {
+                client.send(post(port, "/get-group-members", members("g-big", "rid-big")), HttpResponse.BodyHandlers.ofByteArray());
+            }
+            assertThat(calls.get()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void coalescing_streamed_endpoints_should_be_rejected() {
+        MicsHookServerOptions options = MicsHookServerOptions.builder(tid -> "secret")
+                .coalesce(MicsHookEndpoint.GET_GROUP_MEMBERS)
+                .build();
+        assertThatThrownBy(() -> start(new StreamingHandler(), options)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MicsHookServerOptions options(MicsHookTransport transport) {
+        return MicsHookServerOptions.builder(tid -> "secret")
+                .requireSign(false)
+                .transport(transport)
+                .build();
+    }
+
+    private static byte[] members(String group, String requestId) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).build();
+        return GetGroupMembersRequest.newBuilder().setMeta(meta).setGroupId(group).build().toByteArray();
+    }
+
+    private static byte[] offline(String user, String requestId) {
+        HookMeta meta = HookMeta.newBuilder().setTenantId("t1").setRequestId(requestId).build();
+        return GetOfflineMessagesRequest.newBuilder().setMeta(meta).setUserId(user).setMaxMessages(100).build().toByteArray();
+    }
+
+    private static class StreamingHandler extends HookTestSupport.UnsupportedHandler implements MicsHookStreamingHandler {
+        @Override
+        public void streamGroupMembers(GetGroupMembersRequest request, MicsHookResponseSink<String> userIds) {
+            int n = request.getGroupId().equals("g-small") ? 2 : MEMBERS;
+            userIds.addAll(IntStream.range(0, n).mapToObj(i -> "user-" + i).iterator());
+            if (request.getGroupId().equals("g-fail")) {
+                throw new IllegalStateException("member store went away");
+            }
+        }
+
+        @Override
+        public void streamOfflineMessages(GetOfflineMessagesRequest request, MicsOfflineMessagesSink messages) {
+            if (request.getUserId().equals("fail-early")) {
+                throw new IllegalStateException("offline store went away");
+            }
+            ByteString media = ByteString.copyFrom(new byte[4096]);
+            for (int i = 0; i < request.getMaxMessages(); i++) {
+                messages.add(MessageRequest.newBuilder().setMsgId("m-" + i).setMsgBody(media).build());
+            }
+            messages.nextCursor("c-100");
+            messages.hasMore(true);
+        }
+
+        @Override
+        public GetGroupMembersResponse onGetGroupMembers(GetGroupMembersRequest request) {
+            throw new UnsupportedOperationException("streamGroupMembers is used instead");
+        }
+    }
+}
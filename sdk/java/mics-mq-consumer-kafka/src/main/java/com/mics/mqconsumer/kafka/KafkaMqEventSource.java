@@ -0,0 +1,169 @@
+package com.mics.mqconsumer.kafka;
+
+import com.mics.mqconsumer.MqEventSource;
+import com.mics.mqconsumer.MqPartition;
+import com.mics.mqconsumer.MqRecord;
+import org.apache.kafka.clients.consumer.CommitFailedException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RebalanceInProgressException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+// MqEventSource over a Kafka consumer subscribed to the gateway's event topics. Offsets are committed synchronously
+// from commit(), so the consumer must not auto-commit; create() turns auto-commit off.
+//
+// Revoked and lost partitions are reported to the revocation listener from inside poll(), as Kafka runs the
+// rebalance callbacks there. Commits for partitions no longer assigned are dropped, and a commit the group rejects
+// because it is rebalancing is given up: the new owner starts from the last offset that did get committed, so the
+// records in between are delivered again rather than lost.
+public final class KafkaMqEventSource implements MqEventSource {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Consumer<byte[], byte[]> consumer;
+    private final Map<TopicPartition, MqPartition> partitions = new HashMap<>();
+    private java.util.function.Consumer<Collection<MqPartition>> revocationListener;
+
+    // Takes ownership of the consumer and subscribes it to the topics.
+    public KafkaMqEventSource(Consumer<byte[], byte[]> consumer, Collection<String> topics) {
+        this.consumer = Objects.requireNonNull(consumer, "consumer");
+        consumer.subscribe(List.copyOf(topics), new Rebalance());
+    }
+
+    // config needs bootstrap.servers and group.id; deserializers and enable.auto.commit are set here.
+    public static KafkaMqEventSource create(Properties config, Collection<String> topics) {
+        Properties props = new Properties();
+        props.putAll(config);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return new KafkaMqEventSource(new KafkaConsumer<>(props, new ByteArrayDeserializer(), new ByteArrayDeserializer()), topics);
+    }
+
+    @Override
+    public List<MqRecord> poll(Duration timeout) {
+        ConsumerRecords<byte[], byte[]> records;
+        try {
+            records = consumer.poll(timeout);
+        } catch (WakeupException e) {
+            return List.of();
+        }
+        List<MqRecord> out = new ArrayList<>(records.count());
+        for (ConsumerRecord<byte[], byte[]> r : records) {
+            // A tombstone is not an event; as an empty one it is reported invalid and committed past.
+            byte[] value = r.value() == null ? EMPTY : r.value();
+            out.add(new MqRecord(partition(new TopicPartition(r.topic(), r.partition())), r.offset(), value));
+        }
+        return out;
+    }
+
+    @Override
+    public void commit(Map<MqPartition, Long> nextOffsets) {
+        Set<TopicPartition> assigned = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (Map.Entry<MqPartition, Long> e : nextOffsets.entrySet()) {
+            TopicPartition tp = new TopicPartition(e.getKey().getTopic(), e.getKey().getPartition());
+            if (assigned.contains(tp)) {
+                offsets.put(tp, new OffsetAndMetadata(e.getValue()));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(offsets);
+        } catch (CommitFailedException | RebalanceInProgressException e) {
+            // See the class comment: redelivered, not lost.
+        } catch (WakeupException e) {
+            // Only close() wakes the consumer; the final commit after the poll loop ends is made without it.
+        }
+    }
+
+    @Override
+    public void pause(Collection<MqPartition> partitions) {
+        consumer.pause(assigned(partitions));
+    }
+
+    @Override
+    public void resume(Collection<MqPartition> partitions) {
+        consumer.resume(assigned(partitions));
+    }
+
+    @Override
+    public void setRevocationListener(java.util.function.Consumer<Collection<MqPartition>> listener) {
+        this.revocationListener = listener;
+    }
+
+    @Override
+    public void wakeup() {
+        consumer.wakeup();
+    }
+
+    @Override
+    public void close() {
+        consumer.close();
+    }
+
+    // Kafka rejects pausing a partition the consumer does not own, which a partition revoked since it was read is.
+    private List<TopicPartition> assigned(Collection<MqPartition> partitions) {
+        Set<TopicPartition> assigned = consumer.assignment();
+        List<TopicPartition> out = new ArrayList<>(partitions.size());
+        for (MqPartition p : partitions) {
+            TopicPartition tp = new TopicPartition(p.getTopic(), p.getPartition());
+            if (assigned.contains(tp)) {
+                out.add(tp);
+            }
+        }
+        return out;
+    }
+
+    private MqPartition partition(TopicPartition tp) {
+        return partitions.computeIfAbsent(tp, k -> MqPartition.of(k.topic(), k.partition()));
+    }
+
+    private final class Rebalance implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> revoked) {
+            handOver(revoked);
+        }
+
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> lost) {
+            handOver(lost);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> assigned) {
+        }
+
+        private void handOver(Collection<TopicPartition> gone) {
+            if (gone.isEmpty()) {
+                return;
+            }
+            if (revocationListener != null) {
+                List<MqPartition> out = new ArrayList<>(gone.size());
+                for (TopicPartition tp : gone) {
+                    out.add(partition(tp));
+                }
+                revocationListener.accept(out);
+            }
+            for (TopicPartition tp : gone) {
+                partitions.remove(tp);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mics.mqconsumer.kafka;
+
+import com.mics.mqconsumer.MqPartition;
+import com.mics.mqconsumer.MqRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KafkaMqEventSourceTest {
+    private static final String TOPIC = "im-mics-t1-event";
+    private static final TopicPartition TP0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition TP1 = new TopicPartition(TOPIC, 1);
+    private static final MqPartition P0 = MqPartition.of(TOPIC, 0);
+    private static final MqPartition P1 = MqPartition.of(TOPIC, 1);
+
+    @Test
+    void source_should_map_records_commits_and_pauses_onto_the_consumer() {
+        MockConsumer<byte[], byte[]> kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        KafkaMqEventSource source = new KafkaMqEventSource(kafka, List.of(TOPIC));
+        kafka.rebalance(List.of(TP0, TP1));
+        kafka.updateBeginningOffsets(Map.of(TP0, 0L, TP1, 0L));
+        kafka.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, null, new byte[]{1}));
+        kafka.addRecord(new ConsumerRecord<>(TOPIC, 1, 0, null, null));
+        kafka.addRecord(new ConsumerRecord<>(TOPIC, 0, 1, null, new byte[]{2}));
+
+        List<MqRecord> records = source.poll(Duration.ZERO);
+        assertThat(records).extracting(MqRecord::toString).containsExactlyInAnyOrder(TOPIC + "-0@0", TOPIC + "-0@1", TOPIC + "-1@0");
+        assertThat(records).filteredOn(r -> r.getPartition().equals(P1)).singleElement()
+                .satisfies(r -> assertThat(r.getValue()).isEmpty());
+
+        // P2 was never assigned to this consumer: its commit is dropped rather than failing the others.
+        source.commit(Map.of(P0, 2L, P1, 1L, MqPartition.of(TOPIC, 2), 5L));
+        assertThat(kafka.committed(Set.of(TP0, TP1))).containsEntry(TP0, new OffsetAndMetadata(2L)).containsEntry(TP1, new OffsetAndMetadata(1L));
+
+        source.pause(List.of(P0, MqPartition.of(TOPIC, 2)));
+        assertThat(kafka.paused()).containsExactly(TP0);
+        kafka.addRecord(new ConsumerRecord<>(TOPIC, 0, 2, null, new byte[]{3}));
+        kafka.addRecord(new ConsumerRecord<>(TOPIC, 1, 1, null, new byte[]{4}));
+        assertThat(source.poll(Duration.ZERO)).extracting(MqRecord::toString).containsExactly(TOPIC + "-1@1");
+        source.resume(List.of(P0));
+        assertThat(kafka.paused()).isEmpty();
+        assertThat(source.poll(Duration.ZERO)).extracting(MqRecord::toString).containsExactly(TOPIC + "-0@2");
+
+        source.wakeup();
+        assertThat(source.poll(Duration.ofSeconds(30))).isEmpty();
+
+        source.close();
+        assertThat(kafka.closed()).isTrue();
+    }
+
+    @Test
+    void revoked_partitions_should_reach_the_listener_while_they_can_still_be_committed() {
+        MockConsumer<byte[], byte[]> kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        KafkaMqEventSource source = new KafkaMqEventSource(kafka, List.of(TOPIC));
+        List<Collection<MqPartition>> revoked = new ArrayList<>();
+        List<Map<TopicPartition, OffsetAndMetadata>> committedOnRevoke = new ArrayList<>();
+        source.setRevocationListener(partitions -> {
+            revoked.add(partitions);
+            source.commit(Map.of(P1, 7L));
+            committedOnRevoke.add(kafka.committed(Set.of(TP1)));
+        });
+        kafka.rebalance(List.of(TP0, TP1));
+        kafka.rebalance(List.of(TP0));
+
+        assertThat(revoked).containsExactly(List.of(P1));
+        assertThat(committedOnRevoke).singleElement().satisfies(m -> assertThat(m).containsEntry(TP1, new OffsetAndMetadata(7L)));
+
+        // Not assigned any more: the commit is dropped.
+        source.commit(Map.of(P1, 9L));
+        assertThat(kafka.committed(Set.of(TP1)).get(TP1)).isNotEqualTo(new OffsetAndMetadata(9L));
+    }
+}
@@ -0,0 +1,508 @@
+package com.mics.mqconsumer;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.hooksdk.MqEventSigner;
+import com.mics.hooksdk.TenantKeys;
+import com.mics.hooksdk.TenantSecretResolver;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Reads MqEvent records from a source on one poll thread and handles them on a pool of workers. Each record goes to
+// the worker its ordering key hashes to, so events of one user or group keep their order while different keys run
+// in parallel. Parsing, signature checks and the handler all run on the workers.
+//
+// Offsets are committed every commitInterval, per partition up to the first record that is not done yet: a crash
+// redelivers whatever was in flight and never skips it. A partition with maxPendingPerPartition records not yet
+// committed is paused at the source until half of them are done.
+//
+// If polling or committing throws, or a handler throws an Error, the consumer stops: the failure is passed to the
+// onFailure listener, returned by getFailure() and rethrown by close().
+public final class MicsMqConsumer implements AutoCloseable {
+    public static final int DEFAULT_MAX_PENDING_PER_PARTITION = 1000;
+    public static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private static final Ticket STOP = new Ticket(null, null);
+
+    private final MqEventSource source;
+    private final MqEventHandler handler;
+    private final TenantSecretResolver secretResolver;
+    private final boolean requireSign;
+    private final int maxPendingPerPartition;
+    private final long commitIntervalNanos;
+    private final Duration pollTimeout;
+    private final Consumer<Throwable> failureListener;
+    private final Worker[] workers;
+    private final Thread pollThread;
+
+    // Poll thread only.
+    private final Map<MqPartition, PartitionState> partitions = new HashMap<>();
+
+    private final Map<MqPartition, Long> committed = new ConcurrentHashMap<>();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running;
+    // The first exception that stopped the consumer, from the poll thread or a worker. Guarded by this for writes.
+    private volatile Throwable failure;
+    // Guarded by this.
+    private boolean closed;
+
+    private MicsMqConsumer(Builder b) {
+        this.source = b.source;
+        this.handler = b.handler;
+        this.secretResolver = b.secretResolver;
+        this.requireSign = b.requireSign;
+        this.maxPendingPerPartition = b.maxPendingPerPartition;
+        this.commitIntervalNanos = b.commitInterval.toNanos();
+        this.pollTimeout = b.pollTimeout;
+        this.failureListener = b.failureListener;
+        this.workers = new Worker[b.workers];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("mics-mq-worker-" + (i + 1));
+        }
+        this.pollThread = new Thread(this::pollLoop, "mics-mq-poll");
+    }
+
+    public static Builder builder(MqEventSource source, MqEventHandler handler) {
+        return new Builder(source, handler);
+    }
+
+    // The threads are not daemons: a started consumer keeps the JVM alive until close().
+    public synchronized void start() {
+        if (closed || pollThread.getState() != Thread.State.NEW) {
+            throw new IllegalStateException(closed ? "closed" : "already started");
+        }
+        running = true;
+        source.setRevocationListener(this::revoke);
+        for (Worker w : workers) {
+            w.thread.start();
+        }
+        pollThread.start();
+    }
+
+    // Stops polling, lets the handlers that are running finish, commits what is done and closes the source.
+    // Records still queued are left for the next consumer of their partition. Throws IllegalStateException when the
+    // consumer had already stopped on a failure.
+    @Override
+    public void close() {
+        synchronized (this) {
+            boolean first = !closed;
+            closed = true;
+            if (pollThread.getState() == Thread.State.NEW) {
+                if (first) {
+                    source.close();
+                }
+                return;
+            }
+        }
+        running = false;
+        source.wakeup();
+        if (Thread.currentThread() == pollThread) {
+            return;
+        }
+        boolean interrupted = false;
+        while (pollThread.isAlive()) {
+            try {
+                pollThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable f = failure;
+        if (f != null) {
+            throw new IllegalStateException("consumer stopped on a failure", f);
+        }
+    }
+
+    // The exception that stopped the consumer; null while it runs or after a clean close().
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    // Next offset to read after a restart as last committed by this consumer; -1 before the first commit.
+    public long getCommittedOffset(MqPartition partition) {
+        Long offset = committed.get(partition);
+        return offset == null ? -1 : offset;
+    }
+
+    public long getHandledCount() {
+        return handled.sum();
+    }
+
+    public long getInvalidCount() {
+        return invalid.sum();
+    }
+
+    // Handler calls that threw.
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private void pollLoop() {
+        try {
+            long lastCommit = System.nanoTime();
+            while (running) {
+                List<MqRecord> records = source.poll(pollTimeout);
+                for (MqRecord r : records) {
+                    dispatch(r);
+                }
+                applyBackpressure();
+                long now = System.nanoTime();
+                if (now - lastCommit >= commitIntervalNanos) {
+                    commit();
+                    lastCommit = now;
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            running = false;
+            for (PartitionState p : partitions.values()) {
+                p.revoked = true;
+            }
+            for (Worker w : workers) {
+                w.queue.add(STOP);
+            }
+            for (Worker w : workers) {
+                w.awaitStop();
+            }
+            try {
+                commit();
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                try {
+                    source.close();
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+            Throwable f = failure;
+            if (f != null && failureListener != null) {
+                try {
+                    failureListener.accept(f);
+                } catch (RuntimeException ignored) {
+                    // The consumer is down either way; close() still reports f.
+                }
+            }
+        }
+    }
+
+    // Keeps the first failure; later ones during shutdown are attached to it.
+    private synchronized void fail(Throwable e) {
+        Throwable f = failure;
+        if (f == null) {
+            failure = e;
+        } else if (f != e) {
+            f.addSuppressed(e);
+        }
+    }
+
+    private void dispatch(MqRecord r) {
+        PartitionState p = partitions.get(r.getPartition());
+        if (p == null) {
+            p = new PartitionState(r.getPartition());
+            partitions.put(r.getPartition(), p);
+        }
+        Ticket t = new Ticket(r, p);
+        p.pending.addLast(t);
+        workers[Math.floorMod(OrderingKey.hash(r.getValue()), workers.length)].queue.add(t);
+    }
+
+    private void applyBackpressure() {
+        List<MqPartition> pause = new ArrayList<>();
+        List<MqPartition> resume = new ArrayList<>();
+        for (PartitionState p : partitions.values()) {
+            p.advance();
+            int pending = p.pending.size();
+            if (!p.paused && pending >= maxPendingPerPartition) {
+                p.paused = true;
+                pause.add(p.partition);
+            } else if (p.paused && pending <= maxPendingPerPartition / 2) {
+                p.paused = false;
+                resume.add(p.partition);
+            }
+        }
+        if (!pause.isEmpty()) {
+            source.pause(pause);
+        }
+        if (!resume.isEmpty()) {
+            source.resume(resume);
+        }
+    }
+
+    private void commit() {
+        Map<MqPartition, Long> offsets = new HashMap<>();
+        for (PartitionState p : partitions.values()) {
+            p.advance();
+            if (p.nextOffset > p.committedOffset) {
+                offsets.put(p.partition, p.nextOffset);
+            }
+        }
+        commit(offsets);
+    }
+
+    private void commit(Map<MqPartition, Long> offsets) {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        source.commit(offsets);
+        for (Map.Entry<MqPartition, Long> e : offsets.entrySet()) {
+            PartitionState p = partitions.get(e.getKey());
+            if (p != null) {
+                p.committedOffset = e.getValue();
+            }
+            committed.put(e.getKey(), e.getValue());
+        }
+    }
+
+    // From inside source.poll(): commit what is done, then forget the partitions. Their queued records are skipped
+    // and the ones being handled right now will be delivered again to the new owner.
+    private void revoke(Collection<MqPartition> revoked) {
+        Map<MqPartition, Long> offsets = new HashMap<>();
+        for (MqPartition partition : revoked) {
+            PartitionState p = partitions.get(partition);
+            if (p == null) {
+                continue;
+            }
+            p.revoked = true;
+            p.advance();
+            if (p.nextOffset > p.committedOffset) {
+                offsets.put(partition, p.nextOffset);
+            }
+        }
+        try {
+            commit(offsets);
+        } finally {
+            for (MqPartition partition : revoked) {
+                partitions.remove(partition);
+            }
+        }
+    }
+
+    private void process(MqRecord record) {
+        byte[] value = record.getValue();
+        MqEvent evt;
+        try {
+            evt = MqEvent.parseFrom(value);
+        } catch (InvalidProtocolBufferException e) {
+            reject(record, MqEventHandler.InvalidReason.MALFORMED);
+            return;
+        }
+        if (secretResolver != null) {
+            TenantKeys keys = secretResolver.resolve(evt.getTenantId());
+            if (keys == null) {
+                reject(record, MqEventHandler.InvalidReason.UNKNOWN_TENANT);
+                return;
+            }
+            if (!MqEventSigner.verify(keys, value, 0, value.length, requireSign)) {
+                reject(record, MqEventHandler.InvalidReason.INVALID_SIGN);
+                return;
+            }
+        }
+        try {
+            handler.onEvent(evt, record);
+            handled.increment();
+        } catch (Exception e) {
+            failed.increment();
+            handler.onError(evt, record, e);
+        }
+    }
+
+    private void reject(MqRecord record, MqEventHandler.InvalidReason reason) {
+        invalid.increment();
+        handler.onInvalid(record, reason);
+    }
+
+    // Records of one partition in offset order, from dispatch until every record before them is done too.
+    private static final class PartitionState {
+        private final MqPartition partition;
+        // Poll thread only.
+        private final ArrayDeque<Ticket> pending = new ArrayDeque<>();
+        private long nextOffset = -1;
+        private long committedOffset = -1;
+        private boolean paused;
+        // Set by the poll thread, read by workers.
+        private volatile boolean revoked;
+
+        private PartitionState(MqPartition partition) {
+            this.partition = partition;
+        }
+
+        private void advance() {
+            Iterator<Ticket> it = pending.iterator();
+            while (it.hasNext()) {
+                Ticket t = it.next();
+                if (!t.done) {
+                    return;
+                }
+                nextOffset = t.record.getOffset() + 1;
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Ticket {
+        private final MqRecord record;
+        private final PartitionState partition;
+        // Set by the worker once the handler is through with the record; never for skipped records.
+        private volatile boolean done;
+
+        private Ticket(MqRecord record, PartitionState partition) {
+            this.record = record;
+            this.partition = partition;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final LinkedBlockingQueue<Ticket> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private Worker(String name) {
+            this.thread = new Thread(this, name);
+        }
+
+        @Override
+        public void run() {
+            boolean broken = false;
+            while (true) {
+                Ticket t;
+                try {
+                    t = queue.take();
+                } catch (InterruptedException e) {
+                    // Only STOP ends a worker: the poll thread waits for it.
+                    continue;
+                }
+                if (t == STOP) {
+                    return;
+                }
+                if (broken || t.partition.revoked) {
+                    continue;
+                }
+                try {
+                    process(t.record);
+                } catch (RuntimeException e) {
+                    // Thrown by onInvalid/onError or the secret resolver; the record is done either way.
+                    failed.increment();
+                } catch (Throwable e) {
+                    // An Error from the handler: the record stays uncommitted for redelivery, the records queued
+                    // behind it are skipped to keep their order, and the consumer stops.
+                    broken = true;
+                    failed.increment();
+                    fail(e);
+                    running = false;
+                    source.wakeup();
+                    continue;
+                }
+                t.done = true;
+            }
+        }
+
+        private void awaitStop() {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final MqEventSource source;
+        private final MqEventHandler handler;
+        private TenantSecretResolver secretResolver;
+        private boolean requireSign = true;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int maxPendingPerPartition = DEFAULT_MAX_PENDING_PER_PARTITION;
+        private Duration commitInterval = DEFAULT_COMMIT_INTERVAL;
+        private Duration pollTimeout = DEFAULT_POLL_TIMEOUT;
+        private Consumer<Throwable> failureListener;
+
+        private Builder(MqEventSource source, MqEventHandler handler) {
+            this.source = Objects.requireNonNull(source, "source");
+            this.handler = Objects.requireNonNull(handler, "handler");
+        }
+
+        // Verifies every record against the keys of its tenant_id; without a resolver records are not verified.
+        public Builder secretResolver(TenantSecretResolver secretResolver) {
+            this.secretResolver = Objects.requireNonNull(secretResolver, "secretResolver");
+            return this;
+        }
+
+        // Whether unsigned records are rejected when a secret resolver is set (default true).
+        public Builder requireSign(boolean requireSign) {
+            this.requireSign = requireSign;
+            return this;
+        }
+
+        public Builder workers(int workers) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("workers must be > 0");
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        public Builder maxPendingPerPartition(int maxPendingPerPartition) {
+            if (maxPendingPerPartition <= 1) {
+                throw new IllegalArgumentException("maxPendingPerPartition must be > 1");
+            }
+            this.maxPendingPerPartition = maxPendingPerPartition;
+            return this;
+        }
+
+        public Builder commitInterval(Duration commitInterval) {
+            Objects.requireNonNull(commitInterval, "commitInterval");
+            if (commitInterval.isNegative()) {
+                throw new IllegalArgumentException("commitInterval must be >= 0");
+            }
+            this.commitInterval = commitInterval;
+            return this;
+        }
+
+        // Upper bound on how long a paused partition waits to be resumed and a commit waits for its interval.
+        public Builder pollTimeout(Duration pollTimeout) {
+            Objects.requireNonNull(pollTimeout, "pollTimeout");
+            if (pollTimeout.isNegative() || pollTimeout.isZero()) {
+                throw new IllegalArgumentException("pollTimeout must be > 0");
+            }
+            this.pollTimeout = pollTimeout;
+            return this;
+        }
+
+        // Called once, on the poll thread after the workers have stopped, when the consumer stops because source.poll,
+        // commit or another source call threw, or a handler threw an Error. Typically used to restart the consumer or
+        // fail a health check.
+        public Builder onFailure(Consumer<Throwable> failureListener) {
+            this.failureListener = Objects.requireNonNull(failureListener, "failureListener");
+            return this;
+        }
+
+        public MicsMqConsumer build() {
+            return new MicsMqConsumer(this);
+        }
+    }
+}
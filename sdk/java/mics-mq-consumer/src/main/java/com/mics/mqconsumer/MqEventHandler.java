@@ -0,0 +1,25 @@
+package com.mics.mqconsumer;
+
+import com.mics.contracts.hook.v1.MqEvent;
+
+// Called on the consumer's worker threads. Events with the same ordering key (group_id for group messages, user_id
+// otherwise) are delivered one at a time in offset order; different keys run in parallel.
+@FunctionalInterface
+public interface MqEventHandler {
+    // A record counts as done once this returns or throws; throwing does not redeliver it. Retry inside the
+    // handler when a failure is transient.
+    void onEvent(MqEvent event, MqRecord record) throws Exception;
+
+    // Records that could not be parsed or verified. They are committed past like handled ones.
+    default void onInvalid(MqRecord record, InvalidReason reason) {
+    }
+
+    default void onError(MqEvent event, MqRecord record, Exception error) {
+    }
+
+    enum InvalidReason {
+        MALFORMED,
+        UNKNOWN_TENANT,
+        INVALID_SIGN
+    }
+}
@@ -0,0 +1,34 @@
+package com.mics.mqconsumer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Where MicsMqConsumer reads records from. Everything except wakeup() is called from the consumer's poll thread
+// only, so a client that is not thread-safe (KafkaConsumer) can be wrapped without locking.
+public interface MqEventSource extends AutoCloseable {
+    // Records from partitions that are not paused, in offset order within each partition. Returns an empty list
+    // once timeout passes without any, or early after wakeup().
+    List<MqRecord> poll(Duration timeout);
+
+    // Stores, per partition, the offset of the next record to read after a restart or a rebalance.
+    void commit(Map<MqPartition, Long> nextOffsets);
+
+    void pause(Collection<MqPartition> partitions);
+
+    void resume(Collection<MqPartition> partitions);
+
+    // For sources whose partitions can move to another consumer: the listener must run on the poll thread, from
+    // inside poll(), before the partitions are handed over, so that their completed offsets can still be committed.
+    default void setRevocationListener(Consumer<Collection<MqPartition>> listener) {
+    }
+
+    // Makes a blocked poll() return; the one method that may be called from any thread.
+    default void wakeup() {
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,220 @@
+package com.mics.mqconsumer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Reads MqEvents from a file of length-prefixed records, the format MqEvent.writeDelimitedTo writes (a varint byte
+// count, then the serialized event), through a read-only memory mapping. The file is one partition named after it;
+// offsets count records from the start of the file, like Kafka's, so a committed offset can be handed back to open()
+// to resume there. Records appended while the source is open are picked up, like tailing a log; a record whose
+// bytes are not all written yet is waited for.
+public final class MqFileSource implements MqEventSource {
+    public static final int DEFAULT_MAX_POLL_RECORDS = 500;
+
+    // Bytes mapped at a time; a longer record gets a mapping of its own.
+    private static final long WINDOW = 64L << 20;
+    // How often a poll with nothing to read looks at the file size again.
+    private static final long TAIL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int MAX_VARINT32_BYTES = 5;
+
+    private final FileChannel channel;
+    private final MqPartition partition;
+    private final int maxPollRecords;
+    private MappedByteBuffer map;
+    private long mapStart;
+    private long size;
+    // Byte position and ordinal of the next record.
+    private long position;
+    private long index;
+    private long valueStart;
+    private long recordEnd;
+    private boolean paused;
+    private volatile long committed = -1;
+    private volatile Thread waiter;
+    private volatile boolean woken;
+
+    private MqFileSource(FileChannel channel, MqPartition partition, int maxPollRecords) {
+        this.channel = channel;
+        this.partition = partition;
+        this.maxPollRecords = maxPollRecords;
+    }
+
+    public static MqFileSource open(Path file) throws IOException {
+        return open(file, 0, DEFAULT_MAX_POLL_RECORDS);
+    }
+
+    // offset: the record to start at, 0 or an offset committed earlier. The records before it are stepped over by
+    // their length prefixes, without being read.
+    public static MqFileSource open(Path file, long offset, int maxPollRecords) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must be >= 0");
+        }
+        if (maxPollRecords <= 0) {
+            throw new IllegalArgumentException("maxPollRecords must be > 0");
+        }
+        MqFileSource source = new MqFileSource(FileChannel.open(file, StandardOpenOption.READ),
+                MqPartition.of(file.getFileName().toString(), 0), maxPollRecords);
+        try {
+            source.skip(offset);
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        return source;
+    }
+
+    public MqPartition getPartition() {
+        return partition;
+    }
+
+    // -1 until something was committed.
+    public long getCommittedOffset() {
+        return committed;
+    }
+
+    @Override
+    public List<MqRecord> poll(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                List<MqRecord> out = paused ? new ArrayList<>() : read();
+                long left = deadline - System.nanoTime();
+                if (!out.isEmpty() || left <= 0 || woken) {
+                    woken = false;
+                    return out;
+                }
+                waiter = Thread.currentThread();
+                if (!woken) {
+                    LockSupport.parkNanos(this, Math.min(left, TAIL_CHECK_NANOS));
+                }
+                waiter = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<MqRecord> read() throws IOException {
+        List<MqRecord> out = new ArrayList<>();
+        size = channel.size();
+        while (out.size() < maxPollRecords && next()) {
+            byte[] value = new byte[(int) (recordEnd - valueStart)];
+            map.get((int) (valueStart - mapStart), value);
+            out.add(new MqRecord(partition, index++, value));
+            position = recordEnd;
+        }
+        return out;
+    }
+
+    private void skip(long records) throws IOException {
+        size = channel.size();
+        for (long i = 0; i < records; i++) {
+            if (!next()) {
+                throw new IllegalArgumentException(partition + " holds only " + index + " records, cannot start at " + records);
+            }
+            index++;
+            position = recordEnd;
+        }
+    }
+
+    // Finds the bounds of the record at position; false when it is not all in the file yet.
+    private boolean next() throws IOException {
+        int prefix = (int) Math.min(MAX_VARINT32_BYTES, size - position);
+        if (prefix <= 0 || !mapped(position, position + prefix)) {
+            return false;
+        }
+        int base = (int) (position - mapStart);
+        long length = 0;
+        int n = 0;
+        boolean complete = false;
+        while (n < prefix && !complete) {
+            byte b = map.get(base + n);
+            length |= (long) (b & 0x7F) << (7 * n);
+            complete = b >= 0;
+            n++;
+        }
+        if (!complete) {
+            if (n == MAX_VARINT32_BYTES) {
+                throw new IllegalStateException(partition + ": malformed record length at byte " + position);
+            }
+            // The length prefix itself is not all written yet.
+            return false;
+        }
+        if (length > Integer.MAX_VALUE - MAX_VARINT32_BYTES) {
+            throw new IllegalStateException(partition + ": record length " + length + " at byte " + position);
+        }
+        long end = position + n + length;
+        if (end > size || !mapped(position, end)) {
+            return false;
+        }
+        valueStart = position + n;
+        recordEnd = end;
+        return true;
+    }
+
+    // Makes map cover [from, to) of the file; false when the file is shorter than that.
+    private boolean mapped(long from, long to) throws IOException {
+        if (map != null && from >= mapStart && to <= mapStart + map.limit()) {
+            return true;
+        }
+        if (to > size) {
+            return false;
+        }
+        long length = Math.min(size - from, Math.max(WINDOW, to - from));
+        map = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        mapStart = from;
+        return true;
+    }
+
+    @Override
+    public void commit(Map<MqPartition, Long> nextOffsets) {
+        Long offset = nextOffsets.get(partition);
+        if (offset != null) {
+            committed = offset;
+        }
+    }
+
+    @Override
+    public void pause(Collection<MqPartition> partitions) {
+        if (partitions.contains(partition)) {
+            paused = true;
+        }
+    }
+
+    @Override
+    public void resume(Collection<MqPartition> partitions) {
+        if (partitions.contains(partition)) {
+            paused = false;
+        }
+    }
+
+    @Override
+    public void wakeup() {
+        woken = true;
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    @Override
+    public void close() {
+        map = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
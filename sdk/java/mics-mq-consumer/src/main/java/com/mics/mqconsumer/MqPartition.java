@@ -0,0 +1,48 @@
+package com.mics.mqconsumer;
+
+import java.util.Objects;
+
+// One ordered log of a source, e.g. a Kafka topic partition. Offsets are only comparable within a partition.
+public final class MqPartition {
+    private final String topic;
+    private final int partition;
+
+    private MqPartition(String topic, int partition) {
+        this.topic = Objects.requireNonNull(topic, "topic");
+        this.partition = partition;
+    }
+
+    public static MqPartition of(String topic, int partition) {
+        return new MqPartition(topic, partition);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MqPartition)) {
+            return false;
+        }
+        MqPartition other = (MqPartition) o;
+        return partition == other.partition && topic.equals(other.topic);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * topic.hashCode() + partition;
+    }
+
+    @Override
+    public String toString() {
+        return topic + "-" + partition;
+    }
+}
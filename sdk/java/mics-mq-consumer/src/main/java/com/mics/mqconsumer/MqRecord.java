@@ -0,0 +1,34 @@
+package com.mics.mqconsumer;
+
+import java.util.Objects;
+
+// A serialized MqEvent as read from a source. The value array is handed to the handler as is and must not be
+// modified once the record has been returned from poll().
+public final class MqRecord {
+    private final MqPartition partition;
+    private final long offset;
+    private final byte[] value;
+
+    public MqRecord(MqPartition partition, long offset, byte[] value) {
+        this.partition = Objects.requireNonNull(partition, "partition");
+        this.offset = offset;
+        this.value = Objects.requireNonNull(value, "value");
+    }
+
+    public MqPartition getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return partition + "@" + offset;
+    }
+}
@@ -0,0 +1,229 @@
+package com.mics.mqconsumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// An in-process source: producers offer serialized MqEvents into bounded rings, one per partition, and the poll
+// thread drains them. For tests, load tests and benchmarks that should run without a broker.
+//
+// Each ring is a bounded multi-producer single-consumer queue: a producer claims a slot with one CAS on the tail and
+// publishes it with a volatile write of the slot's sequence, so offer() never blocks and never takes a lock. A
+// record's offset is its position in the partition since the source was created. Records leave the ring when they
+// are polled, so commits are only recorded (getCommittedOffset), nothing is read again.
+public final class MqRingSource implements MqEventSource {
+    public static final int DEFAULT_MAX_POLL_RECORDS = 500;
+
+    private final String topic;
+    private final Ring[] rings;
+    private final int maxPollRecords;
+    private final Map<MqPartition, Long> committed = new ConcurrentHashMap<>();
+    private volatile Thread waiter;
+    private volatile boolean woken;
+    private volatile boolean closed;
+    private int nextRing;
+
+    public MqRingSource(String topic, int partitions, int capacityPerPartition) {
+        this(topic, partitions, capacityPerPartition, DEFAULT_MAX_POLL_RECORDS);
+    }
+
+    // capacityPerPartition is rounded up to a power of two.
+    public MqRingSource(String topic, int partitions, int capacityPerPartition, int maxPollRecords) {
+        this.topic = Objects.requireNonNull(topic, "topic");
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be > 0");
+        }
+        if (capacityPerPartition <= 0 || capacityPerPartition > 1 << 30) {
+            throw new IllegalArgumentException("capacityPerPartition must be in (0, 2^30]");
+        }
+        if (maxPollRecords <= 0) {
+            throw new IllegalArgumentException("maxPollRecords must be > 0");
+        }
+        int capacity = Integer.highestOneBit(capacityPerPartition * 2 - 1);
+        this.rings = new Ring[partitions];
+        for (int i = 0; i < partitions; i++) {
+            rings[i] = new Ring(MqPartition.of(topic, i), capacity);
+        }
+        this.maxPollRecords = maxPollRecords;
+    }
+
+    public MqPartition partition(int partition) {
+        return rings[partition].partition;
+    }
+
+    // Into the partition MicsMqConsumer would order the record by (group_id for group messages, user_id otherwise),
+    // like a gateway producing with that key. false when the partition is full or the source is closed.
+    public boolean offer(byte[] value) {
+        return offer(Math.floorMod(OrderingKey.hash(value), rings.length), value);
+    }
+
+    public boolean offer(int partition, byte[] value) {
+        Objects.requireNonNull(value, "value");
+        if (closed || !rings[partition].offer(value)) {
+            return false;
+        }
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    // -1 until a commit covered the partition.
+    public long getCommittedOffset(int partition) {
+        return committed.getOrDefault(rings[partition].partition, -1L);
+    }
+
+    @Override
+    public List<MqRecord> poll(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            List<MqRecord> out = drain();
+            if (!out.isEmpty() || closed) {
+                return out;
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0 || woken) {
+                woken = false;
+                return out;
+            }
+            waiter = Thread.currentThread();
+            // Re-checked after publishing the waiter: an offer in between either sees it or is seen here.
+            if (isEmpty() && !woken && !closed) {
+                LockSupport.parkNanos(this, left);
+            }
+            waiter = null;
+        }
+    }
+
+    private List<MqRecord> drain() {
+        List<MqRecord> out = new ArrayList<>();
+        // Start one partition further each time so that a busy partition does not starve the others.
+        int start = nextRing;
+        nextRing = (start + 1) % rings.length;
+        for (int i = 0; i < rings.length && out.size() < maxPollRecords; i++) {
+            Ring r = rings[(start + i) % rings.length];
+            if (!r.paused) {
+                r.drainTo(out, maxPollRecords);
+            }
+        }
+        return out;
+    }
+
+    private boolean isEmpty() {
+        for (Ring r : rings) {
+            if (!r.paused && r.hasNext()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void commit(Map<MqPartition, Long> nextOffsets) {
+        committed.putAll(nextOffsets);
+    }
+
+    @Override
+    public void pause(Collection<MqPartition> partitions) {
+        setPaused(partitions, true);
+    }
+
+    @Override
+    public void resume(Collection<MqPartition> partitions) {
+        setPaused(partitions, false);
+    }
+
+    private void setPaused(Collection<MqPartition> partitions, boolean paused) {
+        for (MqPartition p : partitions) {
+            if (p.getTopic().equals(topic) && p.getPartition() >= 0 && p.getPartition() < rings.length) {
+                rings[p.getPartition()].paused = paused;
+            }
+        }
+    }
+
+    @Override
+    public void wakeup() {
+        woken = true;
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    // Later offers fail; records still in the rings are dropped.
+    @Override
+    public void close() {
+        closed = true;
+        wakeup();
+    }
+
+    private static final class Ring {
+        private final MqPartition partition;
+        private final int mask;
+        // sequences[i] == n: slot i is free for the producer claiming position n; n + 1: it holds position n.
+        private final AtomicLongArray sequences;
+        // Published by the volatile write to sequences, read after the volatile read of it.
+        private final byte[][] values;
+        private final AtomicLong tail = new AtomicLong();
+        // Poll thread only.
+        private long head;
+        private boolean paused;
+
+        private Ring(MqPartition partition, int capacity) {
+            this.partition = partition;
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+            this.values = new byte[capacity][];
+        }
+
+        private boolean offer(byte[] value) {
+            long t = tail.get();
+            while (true) {
+                int slot = (int) t & mask;
+                long diff = sequences.get(slot) - t;
+                if (diff == 0) {
+                    if (tail.compareAndSet(t, t + 1)) {
+                        values[slot] = value;
+                        sequences.set(slot, t + 1);
+                        return true;
+                    }
+                    t = tail.get();
+                } else if (diff < 0) {
+                    // The consumer has not freed the slot from one lap ago: full.
+                    return false;
+                } else {
+                    t = tail.get();
+                }
+            }
+        }
+
+        private boolean hasNext() {
+            return sequences.get((int) head & mask) == head + 1;
+        }
+
+        private void drainTo(List<MqRecord> out, int max) {
+            while (out.size() < max) {
+                int slot = (int) head & mask;
+                if (sequences.get(slot) != head + 1) {
+                    return;
+                }
+                byte[] value = values[slot];
+                values[slot] = null;
+                sequences.set(slot, head + mask + 1);
+                out.add(new MqRecord(partition, head, value));
+                head++;
+            }
+        }
+    }
+}
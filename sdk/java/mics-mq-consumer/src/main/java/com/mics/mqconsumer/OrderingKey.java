@@ -0,0 +1,120 @@
+package com.mics.mqconsumer;
+
+import com.mics.contracts.hook.v1.EventType;
+
+// Picks the worker of a record from its top-level MqEvent fields without parsing it: group_id for group messages,
+// user_id for everything else. Runs on the poll thread, so it reads only tags and lengths and allocates nothing.
+// Records that do not scan all hash to 0; the worker reports them as malformed.
+final class OrderingKey {
+    private static final int EVENT_TYPE = 2;
+    private static final int USER_ID = 4;
+    private static final int GROUP_ID = 7;
+
+    private OrderingKey() {
+    }
+
+    static int hash(byte[] buf) {
+        int eventType = 0;
+        int userStart = 0;
+        int userEnd = 0;
+        int groupStart = 0;
+        int groupEnd = 0;
+
+        int end = buf.length;
+        int pos = 0;
+        while (pos < end) {
+            long tag = varint(buf, pos, end);
+            if (tag < 0) {
+                return 0;
+            }
+            pos = varintEnd(buf, pos);
+            int field = (int) (tag >>> 3);
+            switch ((int) (tag & 7)) {
+                case 0: {
+                    if (field == EVENT_TYPE) {
+                        long v = varint(buf, pos, end);
+                        if (v < 0) {
+                            return 0;
+                        }
+                        eventType = (int) v;
+                    }
+                    for (int i = 0; ; i++) {
+                        if (pos >= end || i == 10) {
+                            return 0;
+                        }
+                        if (buf[pos++] >= 0) {
+                            break;
+                        }
+                    }
+                    break;
+                }
+                case 1:
+                    pos += 8;
+                    break;
+                case 2: {
+                    long len = varint(buf, pos, end);
+                    if (len < 0) {
+                        return 0;
+                    }
+                    pos = varintEnd(buf, pos);
+                    if (len > end - pos) {
+                        return 0;
+                    }
+                    if (field == USER_ID) {
+                        userStart = pos;
+                        userEnd = pos + (int) len;
+                    } else if (field == GROUP_ID) {
+                        groupStart = pos;
+                        groupEnd = pos + (int) len;
+                    }
+                    pos += (int) len;
+                    break;
+                }
+                case 5:
+                    pos += 4;
+                    break;
+                default:
+                    return 0;
+            }
+        }
+        if (pos != end) {
+            return 0;
+        }
+        if (eventType == EventType.GROUP_CHAT_MSG_VALUE && groupEnd > groupStart) {
+            return mix(buf, groupStart, groupEnd);
+        }
+        return mix(buf, userStart, userEnd);
+    }
+
+    // Non-negative varint below 2^31, or -1 when truncated or larger.
+    private static long varint(byte[] buf, int pos, int end) {
+        long v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos >= end) {
+                return -1;
+            }
+            byte b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v <= Integer.MAX_VALUE ? v : -1;
+            }
+        }
+        return -1;
+    }
+
+    // Only called after varint() accepted the same position.
+    private static int varintEnd(byte[] buf, int pos) {
+        while (buf[pos] < 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private static int mix(byte[] buf, int start, int end) {
+        int h = 1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,373 @@
+package com.mics.mqconsumer;
+
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import com.mics.hooksdk.MqEventSigner;
+import com.mics.hooksdk.TenantSecretResolver;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MicsMqConsumerTest {
+    private static final MqPartition P0 = MqPartition.of("im-mics-t1-event", 0);
+    private static final MqPartition P1 = MqPartition.of("im-mics-t1-event", 1);
+
+    @Test
+    void events_of_one_user_or_group_should_stay_in_order_across_workers() throws Exception {
+        InMemorySource source = new InMemorySource();
+        Map<String, List<Long>> seenByKey = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        MqEventHandler handler = (evt, record) -> {
+            threads.add(Thread.currentThread().getName());
+            String key = evt.getEventType() == EventType.GROUP_CHAT_MSG ? "g:" + evt.getGroupId() : "u:" + evt.getUserId();
+            seenByKey.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(Long.parseLong(evt.getMsgId()));
+            if (record.getOffset() % 7 == 0) {
+                Thread.sleep(0, 100_000);
+            }
+        };
+
+        long seq = 0;
+        for (int i = 0; i < 2_000; i++) {
+            MqPartition p = i % 2 == 0 ? P0 : P1;
+            boolean group = i % 3 == 0;
+            source.append(p, event("t1", group ? EventType.GROUP_CHAT_MSG : EventType.SINGLE_CHAT_MSG,
+                    "u" + (i % 50), group ? "g" + (i % 10) : "", Long.toString(seq++)).toByteArray());
+        }
+
+        try (MicsMqConsumer consumer = MicsMqConsumer.builder(source, handler)
+                .workers(4)
+                .commitInterval(Duration.ofMillis(10))
+                .pollTimeout(Duration.ofMillis(10))
+                .build()) {
+            consumer.start();
+            awaitTrue(() -> consumer.getCommittedOffset(P0) == 1_000 && consumer.getCommittedOffset(P1) == 1_000);
+            assertThat(consumer.getHandledCount()).isEqualTo(2_000);
+        }
+
+        assertThat(seenByKey.values().stream().mapToInt(List::size).sum()).isEqualTo(2_000);
+        for (Map.Entry<String, List<Long>> e : seenByKey.entrySet()) {
+            assertThat(e.getValue()).as(e.getKey()).isSorted();
+        }
+        assertThat(threads).hasSizeGreaterThan(1);
+        assertThat(source.committed).containsEntry(P0, 1_000L).containsEntry(P1, 1_000L);
+        assertThat(source.closed).isTrue();
+    }
+
+    @Test
+    void commits_should_stop_at_an_unfinished_record_and_a_full_partition_should_be_paused() throws Exception {
+        InMemorySource source = new InMemorySource();
+        CountDownLatch release = new CountDownLatch(1);
+        MqEventHandler handler = (evt, record) -> {
+            if (record.getOffset() == 10) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+        };
+        for (int i = 0; i < 500; i++) {
+            // The record at offset 10 is the only one from "slow"; everything else spreads over many users.
+            source.append(P0, event("t1", EventType.SINGLE_CHAT_MSG, i == 10 ? "slow" : "u" + i, "", Integer.toString(i)).toByteArray());
+        }
+
+        try (MicsMqConsumer consumer = MicsMqConsumer.builder(source, handler)
+                .workers(4)
+                .maxPendingPerPartition(100)
+                .commitInterval(Duration.ofMillis(10))
+                .pollTimeout(Duration.ofMillis(10))
+                .build()) {
+            consumer.start();
+            awaitTrue(() -> source.paused.contains(P0));
+            awaitTrue(() -> consumer.getCommittedOffset(P0) == 10);
+            Thread.sleep(100);
+            // Everything before the slow record is committed, nothing past it, and the source stopped handing out
+            // records well short of the 500 available.
+            assertThat(consumer.getCommittedOffset(P0)).isEqualTo(10);
+            assertThat(source.position(P0)).isLessThan(200);
+
+            release.countDown();
+            awaitTrue(() -> consumer.getCommittedOffset(P0) == 500);
+            assertThat(source.paused).isEmpty();
+            assertThat(source.resumes).isPositive();
+            assertThat(consumer.getHandledCount()).isEqualTo(500);
+        }
+    }
+
+    @Test
+    void records_that_fail_verification_should_be_reported_and_committed_past() throws Exception {
+        InMemorySource source = new InMemorySource();
+        List<String> seen = new CopyOnWriteArrayList<>();
+        MqEventHandler handler = new MqEventHandler() {
+            @Override
+            public void onEvent(MqEvent event, MqRecord record) {
+                if (event.getMsgId().equals("boom")) {
+                    throw new IllegalStateException("boom");
+                }
+                seen.add("ok@" + record.getOffset());
+            }
+
+            @Override
+            public void onInvalid(MqRecord record, InvalidReason reason) {
+                seen.add(reason + "@" + record.getOffset());
+            }
+
+            @Override
+            public void onError(MqEvent event, MqRecord record, Exception error) {
+                seen.add("error@" + record.getOffset());
+            }
+        };
+
+        source.append(P0, signed("t1", "secret", "m0"));
+        source.append(P0, signed("t1", "wrong", "m1"));
+        source.append(P0, new byte[]{(byte) 0x0A, 0x7F});
+        source.append(P0, signed("t2", "secret", "m3"));
+        source.append(P0, event("t1", EventType.SINGLE_CHAT_MSG, "u1", "", "m4").toByteArray());
+        source.append(P0, signed("t1", "secret", "boom"));
+
+        try (MicsMqConsumer consumer = MicsMqConsumer.builder(source, handler)
+                .workers(1)
+                .secretResolver(TenantSecretResolver.of(tid -> tid.equals("t1") ? "secret" : null))
+                .commitInterval(Duration.ofMillis(10))
+                .pollTimeout(Duration.ofMillis(10))
+                .build()) {
+            consumer.start();
+            awaitTrue(() -> consumer.getCommittedOffset(P0) == 6);
+            assertThat(consumer.getHandledCount()).isEqualTo(1);
+            assertThat(consumer.getInvalidCount()).isEqualTo(4);
+            assertThat(consumer.getFailedCount()).isEqualTo(1);
+        }
+        assertThat(seen).containsExactly("ok@0", "INVALID_SIGN@1", "MALFORMED@2", "UNKNOWN_TENANT@3", "INVALID_SIGN@4", "error@5");
+    }
+
+    @Test
+    void revoked_partitions_should_commit_what_is_done_and_skip_the_rest() throws Exception {
+        InMemorySource source = new InMemorySource();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        MqEventHandler handler = (evt, record) -> {
+            if (record.getOffset() == 3) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            handled.add(record.getOffset());
+        };
+        for (int i = 0; i < 10; i++) {
+            source.append(P0, event("t1", EventType.SINGLE_CHAT_MSG, "u1", "", Integer.toString(i)).toByteArray());
+        }
+
+        try (MicsMqConsumer consumer = MicsMqConsumer.builder(source, handler)
+                .workers(2)
+                .commitInterval(Duration.ofHours(1))
+                .pollTimeout(Duration.ofMillis(10))
+                .build()) {
+            consumer.start();
+            awaitTrue(() -> handled.size() == 3);
+            source.revokeOnNextPoll(P0);
+            awaitTrue(() -> consumer.getCommittedOffset(P0) == 3);
+            release.countDown();
+            Thread.sleep(100);
+            // The record that was running finishes; the ones queued behind it are left for the new owner.
+            assertThat(handled).containsExactly(0L, 1L, 2L, 3L);
+        }
+        assertThat(source.committed).containsEntry(P0, 3L);
+    }
+
+    @Test
+    void a_failing_poll_should_stop_the_consumer_and_be_reported() throws Exception {
+        InMemorySource source = new InMemorySource();
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        List<Throwable> reported = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            source.append(P0, event("t1", EventType.SINGLE_CHAT_MSG, "u1", "", Integer.toString(i)).toByteArray());
+        }
+        MicsMqConsumer consumer = MicsMqConsumer.builder(source, (evt, record) -> handled.add(record.getOffset()))
+                .commitInterval(Duration.ofHours(1))
+                .pollTimeout(Duration.ofMillis(10))
+                .onFailure(reported::add)
+                .build();
+        consumer.start();
+        awaitTrue(() -> handled.size() == 5);
+        IllegalStateException broken = new IllegalStateException("broker gone");
+        source.pollFailure = broken;
+
+        awaitTrue(() -> !reported.isEmpty());
+        assertThat(reported).containsExactly(broken);
+        assertThat(consumer.getFailure()).isSameAs(broken);
+        // Stopping still commits what was handled and closes the source.
+        assertThat(source.committed).containsEntry(P0, 5L);
+        assertThat(source.closed).isTrue();
+        assertThatThrownBy(consumer::close).isInstanceOf(IllegalStateException.class).hasCause(broken);
+    }
+
+    @Test
+    void an_error_from_a_handler_should_stop_the_consumer_and_leave_the_record_uncommitted() throws Exception {
+        InMemorySource source = new InMemorySource();
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        List<Throwable> reported = new CopyOnWriteArrayList<>();
+        AssertionError broken = new AssertionError("handler bug");
+        MqEventHandler handler = (evt, record) -> {
+            if (record.getOffset() == 3) {
+                throw broken;
+            }
+            handled.add(record.getOffset());
+        };
+        for (int i = 0; i < 10; i++) {
+            source.append(P0, event("t1", EventType.SINGLE_CHAT_MSG, "u1", "", Integer.toString(i)).toByteArray());
+        }
+        MicsMqConsumer consumer = MicsMqConsumer.builder(source, handler)
+                .workers(2)
+                .commitInterval(Duration.ofHours(1))
+                .pollTimeout(Duration.ofMillis(10))
+                .onFailure(reported::add)
+                .build();
+        consumer.start();
+
+        awaitTrue(() -> !reported.isEmpty());
+        assertThat(reported).containsExactly(broken);
+        assertThat(consumer.getFailure()).isSameAs(broken);
+        // Records of the same key behind the failed one are not handled out of order.
+        assertThat(handled).containsExactly(0L, 1L, 2L);
+        assertThat(source.committed).containsEntry(P0, 3L);
+        assertThat(source.closed).isTrue();
+        assertThatThrownBy(consumer::close).isInstanceOf(IllegalStateException.class).hasCause(broken);
+    }
+
+    private static MqEvent event(String tenantId, EventType type, String userId, String groupId, String msgId) {
+        return MqEvent.newBuilder()
+                .setTenantId(tenantId)
+                .setEventType(type)
+                .setMsgId(msgId)
+                .setUserId(userId)
+                .setGroupId(groupId)
+                .setTimestamp(1L)
+                .build();
+    }
+
+    private static byte[] signed(String tenantId, String secret, String msgId) {
+        MqEvent evt = event(tenantId, EventType.SINGLE_CHAT_MSG, "u1", "", msgId);
+        return evt.toBuilder().setSign(MqEventSigner.computeBase64(secret, evt)).build().toByteArray();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            Thread.sleep(5);
+        }
+    }
+
+    // Partitions as growing lists; hands out at most 50 records per poll, like a fetch size.
+    private static final class InMemorySource implements MqEventSource {
+        private final Map<MqPartition, List<byte[]>> logs = new HashMap<>();
+        private final Map<MqPartition, Integer> positions = new HashMap<>();
+        private final Set<MqPartition> paused = ConcurrentHashMap.newKeySet();
+        private final Map<MqPartition, Long> committed = new ConcurrentHashMap<>();
+        private final Set<MqPartition> toRevoke = new HashSet<>();
+        private Consumer<Collection<MqPartition>> revocationListener;
+        private volatile int resumes;
+        private volatile boolean closed;
+        private volatile RuntimeException pollFailure;
+        private boolean woken;
+
+        synchronized void append(MqPartition p, byte[] value) {
+            logs.computeIfAbsent(p, k -> new ArrayList<>()).add(value);
+            positions.putIfAbsent(p, 0);
+            notifyAll();
+        }
+
+        synchronized int position(MqPartition p) {
+            return positions.get(p);
+        }
+
+        synchronized void revokeOnNextPoll(MqPartition p) {
+            toRevoke.add(p);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized List<MqRecord> poll(Duration timeout) {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (true) {
+                if (pollFailure != null) {
+                    throw pollFailure;
+                }
+                if (!toRevoke.isEmpty()) {
+                    revocationListener.accept(new ArrayList<>(toRevoke));
+                    for (MqPartition p : toRevoke) {
+                        logs.remove(p);
+                        positions.remove(p);
+                        paused.remove(p);
+                    }
+                    toRevoke.clear();
+                }
+                List<MqRecord> out = new ArrayList<>();
+                for (Map.Entry<MqPartition, List<byte[]>> e : logs.entrySet()) {
+                    if (paused.contains(e.getKey())) {
+                        continue;
+                    }
+                    int pos = positions.get(e.getKey());
+                    while (pos < e.getValue().size() && out.size() < 50) {
+                        out.add(new MqRecord(e.getKey(), pos, e.getValue().get(pos)));
+                        pos++;
+                    }
+                    positions.put(e.getKey(), pos);
+                }
+                long left = deadline - System.nanoTime();
+                if (!out.isEmpty() || left <= 0 || woken) {
+                    woken = false;
+                    return out;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return out;
+                }
+            }
+        }
+
+        @Override
+        public void commit(Map<MqPartition, Long> nextOffsets) {
+            committed.putAll(nextOffsets);
+        }
+
+        @Override
+        public void pause(Collection<MqPartition> partitions) {
+            paused.addAll(partitions);
+        }
+
+        @Override
+        public void resume(Collection<MqPartition> partitions) {
+            paused.removeAll(partitions);
+            resumes++;
+        }
+
+        @Override
+        public void setRevocationListener(Consumer<Collection<MqPartition>> listener) {
+            this.revocationListener = listener;
+        }
+
+        @Override
+        public synchronized void wakeup() {
+            woken = true;
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mics.mqconsumer;
+
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MqFileSourceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void source_should_read_delimited_events_in_batches_and_resume_from_a_committed_offset() throws Exception {
+        Path file = dir.resolve("events.bin");
+        List<MqEvent> events = new ArrayList<>();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < 1_200; i++) {
+                // Bodies up to 300 bytes, so length prefixes are both one and two bytes long.
+                MqEvent evt = event(i, i % 300);
+                evt.writeDelimitedTo(out);
+                events.add(evt);
+            }
+        }
+
+        List<MqRecord> records = new ArrayList<>();
+        try (MqFileSource source = MqFileSource.open(file)) {
+            assertThat(source.getPartition()).isEqualTo(MqPartition.of("events.bin", 0));
+            List<MqRecord> batch = source.poll(Duration.ZERO);
+            assertThat(batch).hasSize(MqFileSource.DEFAULT_MAX_POLL_RECORDS);
+            records.addAll(batch);
+            records.addAll(source.poll(Duration.ZERO));
+            records.addAll(source.poll(Duration.ZERO));
+            assertThat(source.poll(Duration.ofMillis(30))).isEmpty();
+
+            source.commit(Map.of(source.getPartition(), 700L));
+            assertThat(source.getCommittedOffset()).isEqualTo(700);
+        }
+        assertThat(records).hasSize(1_200);
+        for (int i = 0; i < records.size(); i++) {
+            assertThat(records.get(i).getOffset()).isEqualTo(i);
+            assertThat(MqEvent.parseFrom(records.get(i).getValue())).isEqualTo(events.get(i));
+        }
+
+        try (MqFileSource source = MqFileSource.open(file, 700, 1_000)) {
+            List<MqRecord> rest = source.poll(Duration.ZERO);
+            assertThat(rest).hasSize(500);
+            assertThat(rest.get(0).getOffset()).isEqualTo(700);
+            assertThat(MqEvent.parseFrom(rest.get(0).getValue())).isEqualTo(events.get(700));
+        }
+        assertThatThrownBy(() -> MqFileSource.open(file, 1_201, 1_000)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void source_should_tail_appends_and_wait_for_partly_written_records() throws Exception {
+        Path file = dir.resolve("tail.bin");
+        Files.write(file, new byte[0]);
+        byte[] first = delimited(event(1, 200));
+        byte[] second = delimited(event(2, 10));
+
+        try (MqFileSource source = MqFileSource.open(file)) {
+            assertThat(source.poll(Duration.ZERO)).isEmpty();
+
+            // Only the first byte of the two-byte length prefix, then all but the last byte of the record.
+            append(file, Arrays.copyOfRange(first, 0, 1));
+            assertThat(source.poll(Duration.ZERO)).isEmpty();
+            append(file, Arrays.copyOfRange(first, 1, first.length - 1));
+            assertThat(source.poll(Duration.ZERO)).isEmpty();
+            append(file, Arrays.copyOfRange(first, first.length - 1, first.length));
+            append(file, second);
+
+            source.pause(List.of(source.getPartition()));
+            assertThat(source.poll(Duration.ZERO)).isEmpty();
+            source.resume(List.of(source.getPartition()));
+            List<MqRecord> records = source.poll(Duration.ofSeconds(5));
+            assertThat(records).extracting(MqRecord::getOffset).containsExactly(0L, 1L);
+            assertThat(MqEvent.parseFrom(records.get(1).getValue()).getMsgId()).isEqualTo("2");
+        }
+    }
+
+    @Test
+    void a_corrupt_length_prefix_should_fail_the_poll() throws Exception {
+        Path file = dir.resolve("corrupt.bin");
+        Files.write(file, new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+        try (MqFileSource source = MqFileSource.open(file)) {
+            assertThatThrownBy(() -> source.poll(Duration.ZERO))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("byte 0");
+        }
+    }
+
+    private static MqEvent event(int i, int bodySize) {
+        return MqEvent.newBuilder()
+                .setTenantId("t1")
+                .setEventType(EventType.SINGLE_CHAT_MSG)
+                .setUserId("u" + (i % 7))
+                .setMsgId(Integer.toString(i))
+                .setEventData(ByteString.copyFrom(new byte[bodySize]))
+                .build();
+    }
+
+    private static byte[] delimited(MqEvent evt) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        evt.writeDelimitedTo(out);
+        return out.toByteArray();
+    }
+
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+}
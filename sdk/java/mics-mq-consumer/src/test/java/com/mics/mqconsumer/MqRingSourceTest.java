@@ -0,0 +1,158 @@
+package com.mics.mqconsumer;
+
+import com.mics.contracts.hook.v1.EventType;
+import com.mics.contracts.hook.v1.MqEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MqRingSourceTest {
+    @Test
+    void concurrent_producers_should_lose_nothing_and_keep_their_own_order() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        MqRingSource source = new MqRingSource("events", 2, 256);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    byte[] value = {(byte) producer, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+                    while (!source.offer(producer % 2, value)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+
+        Map<Integer, Integer> nextByProducer = new HashMap<>();
+        long[] nextOffset = new long[2];
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < producers * perProducer && System.nanoTime() < deadline) {
+            for (MqRecord r : source.poll(Duration.ofMillis(100))) {
+                int partition = r.getPartition().getPartition();
+                assertThat(r.getOffset()).isEqualTo(nextOffset[partition]++);
+                byte[] v = r.getValue();
+                int producer = v[0];
+                int seq = (v[1] & 0xFF) << 16 | (v[2] & 0xFF) << 8 | (v[3] & 0xFF);
+                assertThat(seq).isEqualTo(nextByProducer.getOrDefault(producer, 0));
+                nextByProducer.put(producer, seq + 1);
+                received++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertThat(received).isEqualTo(producers * perProducer);
+        assertThat(nextOffset).containsExactly((long) perProducer * 2, (long) perProducer * 2);
+    }
+
+    @Test
+    void full_and_paused_partitions_and_wakeup_should_behave_like_a_broker_client() throws Exception {
+        MqRingSource source = new MqRingSource("events", 2, 3, 3);
+        for (int i = 0; i < 4; i++) {
+            assertThat(source.offer(0, new byte[]{(byte) i})).isTrue();
+        }
+        // Capacity rounds up to 4.
+        assertThat(source.offer(0, new byte[]{9})).isFalse();
+        assertThat(source.offer(1, new byte[]{1})).isTrue();
+
+        source.pause(List.of(source.partition(0)));
+        assertThat(source.poll(Duration.ZERO)).extracting(MqRecord::toString).containsExactly("events-1@0");
+        source.resume(List.of(source.partition(0)));
+        // maxPollRecords is 3.
+        assertThat(source.poll(Duration.ZERO)).extracting(MqRecord::getOffset).containsExactly(0L, 1L, 2L);
+        assertThat(source.offer(0, new byte[]{4})).isTrue();
+        assertThat(source.poll(Duration.ZERO)).extracting(MqRecord::getOffset).containsExactly(3L, 4L);
+
+        source.commit(Map.of(source.partition(0), 5L));
+        assertThat(source.getCommittedOffset(0)).isEqualTo(5);
+        assertThat(source.getCommittedOffset(1)).isEqualTo(-1);
+
+        AtomicReference<List<MqRecord>> polled = new AtomicReference<>();
+        Thread poller = new Thread(() -> polled.set(source.poll(Duration.ofSeconds(30))));
+        poller.start();
+        Thread.sleep(50);
+        source.offer(1, new byte[]{2});
+        poller.join(5_000);
+        assertThat(polled.get()).extracting(MqRecord::getOffset).containsExactly(1L);
+
+        long started = System.nanoTime();
+        Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            source.wakeup();
+        });
+        waker.start();
+        assertThat(source.poll(Duration.ofSeconds(30))).isEmpty();
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(10));
+        waker.join();
+
+        source.close();
+        assertThat(source.offer(1, new byte[]{3})).isFalse();
+    }
+
+    @Test
+    void consumer_should_drain_a_ring_fed_by_key() throws Exception {
+        MqRingSource source = new MqRingSource("im-mics-t1-event", 4, 1024);
+        try (MicsMqConsumer consumer = MicsMqConsumer.builder(source, (evt, record) -> {
+                })
+                .workers(2)
+                .commitInterval(Duration.ofMillis(10))
+                .pollTimeout(Duration.ofMillis(10))
+                .build()) {
+            consumer.start();
+            for (int i = 0; i < 2_000; i++) {
+                byte[] value = MqEvent.newBuilder()
+                        .setTenantId("t1")
+                        .setEventType(EventType.SINGLE_CHAT_MSG)
+                        .setUserId("u" + (i % 16))
+                        .setMsgId(Integer.toString(i))
+                        .build()
+                        .toByteArray();
+                while (!source.offer(value)) {
+                    Thread.onSpinWait();
+                }
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (consumer.getHandledCount() < 2_000 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(consumer.getHandledCount()).isEqualTo(2_000);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            long committed = 0;
+            while (committed < 2_000 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+                committed = 0;
+                for (int p = 0; p < 4; p++) {
+                    committed += Math.max(0, source.getCommittedOffset(p));
+                }
+            }
+            assertThat(committed).isEqualTo(2_000);
+        }
+    }
+}
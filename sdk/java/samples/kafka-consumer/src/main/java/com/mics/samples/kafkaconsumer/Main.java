@@ -1,23 +1,39 @@
 package com.mics.samples.kafkaconsumer;
 
+import com.google.protobuf.ByteString;
+import com.mics.contracts.hook.v1.EventType;
 import com.mics.contracts.hook.v1.MqEvent;
-import com.mics.hooksdk.MqEventDecoder;
+import com.mics.contracts.message.v1.ConnectAck;
+import com.mics.contracts.message.v1.MessageRequest;
+import com.mics.hooksdk.MqEventRouter;
 import com.mics.hooksdk.MqEventSigner;
+import com.mics.mqconsumer.MqEventSource;
+import com.mics.mqconsumer.MqFileSource;
+import com.mics.mqconsumer.MqPartition;
+import com.mics.mqconsumer.MqRecord;
+import com.mics.mqconsumer.kafka.KafkaMqEventSource;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.common.serialization.ByteArrayDeserializer;
-import org.apache.kafka.common.serialization.StringDeserializer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class Main {
-    public static void main(String[] args) {
+    private static final MqEventRouter ROUTER = MqEventRouter.builder()
+            .onConnectAck((evt, ack) -> System.out.println(prefix(evt) + " connect user=" + ack.getUserId() + " device=" + ack.getDeviceId() + " node=" + ack.getNodeId()))
+            .onMessage((evt, msg) -> System.out.println(prefix(evt) + " msgId=" + msg.getMsgId() + " from=" + msg.getUserId() + " to=" + msg.getToUserId() + " group=" + msg.getGroupId() + " bytes=" + msg.getMsgBody().size()))
+            .fallback((evt, reason) -> System.out.println(prefix(evt) + " (event_data decode skipped: " + reason + ")"))
+            .build();
+
+    public static void main(String[] args) throws IOException {
         String tenantId = env("TENANT_ID", "").trim();
         if (tenantId.isBlank()) {
             System.err.println("TENANT_ID is required");
@@ -26,7 +42,30 @@ public final class Main {
 
         String tenantSecret = env("TENANT_SECRET", "").trim();
         boolean requireSign = envBool("REQUIRE_SIGN", false);
+        String eventsFile = env("EVENTS_FILE", "").trim();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> running.set(false)));
+
+        try (MqEventSource source = eventsFile.isBlank()
+                ? kafkaSource(tenantId, requireSign)
+                : fileSource(Path.of(eventsFile), tenantId, tenantSecret, requireSign)) {
+            while (running.get()) {
+                List<MqRecord> records = source.poll(Duration.ofMillis(500));
+                Map<MqPartition, Long> nextOffsets = new HashMap<>();
+                for (MqRecord r : records) {
+                    handleRecord(r, tenantSecret, requireSign);
+                    nextOffsets.put(r.getPartition(), r.getOffset() + 1);
+                }
+                if (!nextOffsets.isEmpty()) {
+                    source.commit(nextOffsets);
+                }
+            }
+        }
+        System.out.println("Stopped.");
+    }
 
+    private static MqEventSource kafkaSource(String tenantId, boolean requireSign) {
         String brokers = env("KAFKA_BROKERS", "localhost:9092");
         String topic = env("TOPIC", "im-mics-" + tenantId + "-event");
         String groupId = env("GROUP_ID", "mics-hook-sample-" + UUID.randomUUID());
@@ -34,38 +73,68 @@ public final class Main {
         Properties props = new Properties();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
-
-        AtomicBoolean running = new AtomicBoolean(true);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> running.set(false)));
 
         System.out.println("Consuming topic=" + topic + " brokers=" + brokers + " requireSign=" + requireSign);
-        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props)) {
-            consumer.subscribe(List.of(topic));
-            while (running.get()) {
-                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(500));
-                for (ConsumerRecord<String, byte[]> r : records) {
-                    handleRecord(r, tenantSecret, requireSign);
+        return KafkaMqEventSource.create(props, List.of(topic));
+    }
+
+    // Offline: reads length-prefixed MqEvents from a file and keeps tailing it. With GENERATE_EVENTS=n the file is
+    // first (re)written with n demo events, signed with TENANT_SECRET when it is set.
+    private static MqEventSource fileSource(Path file, String tenantId, String tenantSecret, boolean requireSign) throws IOException {
+        int generate = Integer.parseInt(env("GENERATE_EVENTS", "0").trim());
+        if (generate > 0) {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (int i = 0; i < generate; i++) {
+                    MqEvent evt = demoEvent(tenantId, i);
+                    if (!tenantSecret.isBlank()) {
+                        evt = evt.toBuilder().setSign(MqEventSigner.computeBase64(tenantSecret, evt)).build();
+                    }
+                    evt.writeDelimitedTo(out);
                 }
             }
+            System.out.println("Wrote " + generate + " demo events to " + file);
         }
-        System.out.println("Stopped.");
+        System.out.println("Reading file=" + file + " requireSign=" + requireSign);
+        return MqFileSource.open(file);
+    }
+
+    private static MqEvent demoEvent(String tenantId, int i) {
+        String userId = "u" + (i % 3);
+        MqEvent.Builder b = MqEvent.newBuilder()
+                .setTenantId(tenantId)
+                .setUserId(userId)
+                .setDeviceId("d1")
+                .setNodeId("node-1")
+                .setTimestamp(System.currentTimeMillis())
+                .setTraceId("demo-" + i);
+        if (i % 4 == 0) {
+            ConnectAck ack = ConnectAck.newBuilder().setTenantId(tenantId).setUserId(userId).setDeviceId("d1").setNodeId("node-1").build();
+            return b.setEventType(EventType.CONNECT_ONLINE).setEventData(ack.toByteString()).build();
+        }
+        MessageRequest msg = MessageRequest.newBuilder()
+                .setTenantId(tenantId)
+                .setUserId(userId)
+                .setDeviceId("d1")
+                .setMsgId("demo-" + i)
+                .setToUserId("u" + ((i + 1) % 3))
+                .setMsgBody(ByteString.copyFromUtf8("hello " + i))
+                .build();
+        return b.setEventType(EventType.SINGLE_CHAT_MSG).setMsgId(msg.getMsgId()).setToUserId(msg.getToUserId())
+                .setEventData(msg.toByteString()).build();
     }
 
-    private static void handleRecord(ConsumerRecord<String, byte[]> record, String tenantSecret, boolean requireSign) {
+    private static void handleRecord(MqRecord record, String tenantSecret, boolean requireSign) {
         MqEvent evt;
         try {
-            evt = MqEvent.parseFrom(record.value());
+            evt = MqEvent.parseFrom(record.getValue());
         } catch (Exception e) {
-            System.err.println("invalid protobuf payload at offset=" + record.offset());
+            System.err.println("invalid protobuf payload at " + record);
             return;
         }
 
         if (!tenantSecret.isBlank()) {
-            boolean ok = MqEventSigner.verify(tenantSecret, evt, requireSign);
+            boolean ok = MqEventSigner.verify(tenantSecret, record.getValue(), requireSign);
             if (!ok) {
                 System.err.println("invalid sign tenant=" + evt.getTenantId() + " type=" + evt.getEventType());
                 return;
@@ -74,14 +143,11 @@ public final class Main {
             System.err.println("REQUIRE_SIGN=true but TENANT_SECRET is empty, skipping verification");
         }
 
-        String prefix = "tenant=" + evt.getTenantId() + " type=" + evt.getEventType() + " traceId=" + evt.getTraceId();
-        MqEventDecoder.tryDecodeConnectAck(evt).ifPresentOrElse(
-                ack -> System.out.println(prefix + " connect user=" + ack.getUserId() + " device=" + ack.getDeviceId() + " node=" + ack.getNodeId()),
-                () -> MqEventDecoder.tryDecodeMessage(evt).ifPresentOrElse(
-                        msg -> System.out.println(prefix + " msgId=" + msg.getMsgId() + " from=" + msg.getUserId() + " to=" + msg.getToUserId() + " group=" + msg.getGroupId() + " bytes=" + msg.getMsgBody().size()),
-                        () -> System.out.println(prefix + " (event_data decode skipped)")
-                )
-        );
+        ROUTER.route(evt);
+    }
+
+    private static String prefix(MqEvent evt) {
+        return "tenant=" + evt.getTenantId() + " type=" + evt.getEventType() + " traceId=" + evt.getTraceId();
     }
 
     private static String env(String key, String defaultValue) {